@@ -16,10 +16,10 @@
 package org.mybatis.guice;
 
 import static com.google.inject.matcher.Matchers.annotatedWith;
-import static com.google.inject.matcher.Matchers.any;
 import static com.google.inject.matcher.Matchers.not;
 import static com.google.inject.name.Names.named;
 import static com.google.inject.util.Providers.guicify;
+import static org.mybatis.guice.Preconditions.checkArgument;
 
 import com.google.inject.AbstractModule;
 import com.google.inject.Binder;
@@ -27,13 +27,27 @@ import com.google.inject.Scopes;
 import com.google.inject.matcher.AbstractMatcher;
 
 import java.lang.reflect.Method;
+import java.util.HashSet;
+import java.util.Set;
 
+import javax.sql.DataSource;
+
+import org.apache.ibatis.mapping.DatabaseIdProvider;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.Configuration;
 import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
 import org.apache.ibatis.session.SqlSessionManager;
+import org.apache.ibatis.transaction.TransactionFactory;
+import org.mybatis.guice.boot.BootPhaseProvisionListener;
+import org.mybatis.guice.boot.BootProfiler;
 import org.mybatis.guice.mappers.MapperProvider;
+import org.mybatis.guice.mappers.SingleFlightGroup;
 import org.mybatis.guice.session.SqlSessionManagerProvider;
 import org.mybatis.guice.transactional.Transactional;
+import org.mybatis.guice.transactional.TransactionalInvoker;
 import org.mybatis.guice.transactional.TransactionalMethodInterceptor;
+import org.mybatis.guice.transactional.TransactionalWrapper;
 
 abstract class AbstractMyBatisModule extends AbstractModule {
 
@@ -55,12 +69,19 @@ abstract class AbstractMyBatisModule extends AbstractModule {
 
   private ClassLoader driverClassLoader = getDefaultClassLoader();
 
+  private BootProfiler bootProfiler = BootProfiler.DISABLED;
+
+  private Set<Class<?>> wrappedTypes = new HashSet<Class<?>>();
+
   @Override
   protected final void configure() {
+    // the matchers of a previous injector keep their own set
+    wrappedTypes = new HashSet<Class<?>>();
     try {
       // sql session manager
       bind(SqlSessionManager.class).toProvider(SqlSessionManagerProvider.class).in(Scopes.SINGLETON);
       bind(SqlSession.class).to(SqlSessionManager.class).in(Scopes.SINGLETON);
+      bind(SingleFlightGroup.class);
 
       internalConfigure();
 
@@ -70,6 +91,7 @@ abstract class AbstractMyBatisModule extends AbstractModule {
     } finally {
       resourcesClassLoader = getDefaultClassLoader();
       driverClassLoader = getDefaultClassLoader();
+      bootProfiler = BootProfiler.DISABLED;
     }
   }
 
@@ -80,15 +102,67 @@ abstract class AbstractMyBatisModule extends AbstractModule {
     // transactional interceptor
     TransactionalMethodInterceptor interceptor = new TransactionalMethodInterceptor();
     requestInjection(interceptor);
-    bindInterceptor(any(), not(SYNTHETIC).and(not(DECLARED_BY_OBJECT)).and(annotatedWith(Transactional.class)),
-        interceptor);
+    // the transaction templates and the compile-time wrappers run through the same interceptor
+    bind(TransactionalInvoker.class).to(TransactionalMethodInterceptor.class);
+    // classes bound to their compile-time wrapper are left alone, the wrapper runs the interceptor
+    bindInterceptor(notTransactionalWrapped(),
+        not(SYNTHETIC).and(not(DECLARED_BY_OBJECT)).and(annotatedWith(Transactional.class)), interceptor);
     // Intercept classes annotated with Transactional, but avoid "double"
     // interception when a mathod is also annotated inside an annotated
     // class.
-    bindInterceptor(annotatedWith(Transactional.class),
+    bindInterceptor(notTransactionalWrapped().and(annotatedWith(Transactional.class)),
         not(SYNTHETIC).and(not(DECLARED_BY_OBJECT)).and(not(annotatedWith(Transactional.class))), interceptor);
   }
 
+  /**
+   * Matches the classes that are neither bound to a wrapper by {@link #bindTransactionalWrapper(Class)} nor such a
+   * wrapper.
+   */
+  final AbstractMatcher<Class<?>> notTransactionalWrapped() {
+    final Set<Class<?>> types = wrappedTypes;
+    return new AbstractMatcher<Class<?>>() {
+      @Override
+      public boolean matches(Class<?> type) {
+        return !types.contains(type);
+      }
+    };
+  }
+
+  /**
+   * Binds the compile-time wrapper of a {@link TransactionalWrapper} class in place of the class itself, or of the
+   * interfaces it implements when the class is final.
+   *
+   * @param <T>
+   *          the generic type
+   * @param type
+   *          the class annotated with {@link TransactionalWrapper}
+   * @since 3.12
+   */
+  @SuppressWarnings("unchecked")
+  protected final <T> void bindTransactionalWrapper(Class<T> type) {
+    checkArgument(type != null, "Parameter 'type' must be not null");
+    String packagePrefix = type.getPackage() == null ? "" : type.getPackage().getName() + ".";
+    String wrapperName = packagePrefix + type.getName().substring(packagePrefix.length()).replace('$', '_')
+        + TransactionalWrapper.SUFFIX;
+    Class<?> wrapper;
+    try {
+      wrapper = Class.forName(wrapperName, true, type.getClassLoader());
+    } catch (ClassNotFoundException e) {
+      addError("Transactional wrapper %s of %s was not generated, check %s is annotated with @TransactionalWrapper "
+          + "and the annotation processor runs", wrapperName, type.getName(), type.getSimpleName());
+      return;
+    }
+    wrappedTypes.add(type);
+    wrappedTypes.add(wrapper);
+    if (type.isAssignableFrom(wrapper)) {
+      bind(type).to((Class<? extends T>) wrapper);
+    } else {
+      for (Class<?> interfaceType : wrapper.getInterfaces()) {
+        bind((Class<Object>) interfaceType).to((Class<Object>) wrapper);
+      }
+    }
+  }
+
   /**
    * Bind mapper.
    *
@@ -101,6 +175,44 @@ abstract class AbstractMyBatisModule extends AbstractModule {
     bind(mapperType).toProvider(guicify(new MapperProvider<T>(mapperType))).in(Scopes.SINGLETON);
   }
 
+  /**
+   * Makes the bound mappers resolve their statements once and dispatch the calls directly to the managed
+   * SqlSession, instead of going through the MyBatis mapper proxy and the SqlSessionManager session proxy.
+   *
+   * @param directDispatch
+   *          true to enable the direct dispatch mappers
+   * @since 3.12
+   */
+  protected final void useDirectMapperDispatch(boolean directDispatch) {
+    bindConstant().annotatedWith(named("mybatis.mapper.directDispatch")).to(directDispatch);
+  }
+
+  /**
+   * Records the boot phases in a {@link BootProfiler}, bound to be retrieved once the Injector is created. To include
+   * the package scans of the module, it has to be called before them.
+   *
+   * @since 3.12
+   */
+  protected final void enableBootProfiling() {
+    if (bootProfiler.isEnabled()) {
+      return;
+    }
+    bootProfiler = BootProfiler.create();
+    bind(BootProfiler.class).toInstance(bootProfiler);
+    bindListener(BootPhaseProvisionListener.bindingsOf(DataSource.class, TransactionFactory.class, Environment.class,
+        DatabaseIdProvider.class, Configuration.class, SqlSessionFactory.class, SqlSessionManager.class),
+        new BootPhaseProvisionListener(bootProfiler));
+  }
+
+  /**
+   * Gets the boot profiler.
+   *
+   * @return the profiler, disabled unless {@link #enableBootProfiling()} was called
+   */
+  final BootProfiler getBootProfiler() {
+    return bootProfiler;
+  }
+
   /**
    * Use resource class loader.
    *
@@ -16,7 +16,6 @@
 package org.mybatis.guice;
 
 import static com.google.inject.matcher.Matchers.annotatedWith;
-import static com.google.inject.matcher.Matchers.any;
 import static com.google.inject.matcher.Matchers.not;
 import static org.mybatis.guice.Preconditions.checkArgument;
 
@@ -30,7 +29,9 @@ import org.apache.ibatis.transaction.TransactionFactory;
 import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
 import org.apache.ibatis.transaction.managed.ManagedTransactionFactory;
 import org.mybatis.guice.transactional.Transactional;
+import org.mybatis.guice.transactional.TransactionalInvoker;
 import org.mybatis.guice.transactional.TransactionalMethodInterceptor;
+import org.mybatis.guice.transactional.TxTransactionalInvoker;
 import org.mybatis.guice.transactional.TxTransactionalMethodInterceptor;
 import org.mybatis.guice.transactional.XASqlSessionManagerProvider;
 
@@ -68,12 +69,15 @@ public abstract class MyBatisJtaModule extends MyBatisModule {
 
       bind(TransactionManager.class).toInstance(manager);
 
-      bindInterceptor(any(), not(DECLARED_BY_OBJECT).and(annotatedWith(Transactional.class)), interceptorTx,
-          interceptor);
+      // the transaction templates and the compile-time wrappers run through the same interceptors
+      bind(TransactionalInvoker.class).to(TxTransactionalInvoker.class);
+
+      bindInterceptor(notTransactionalWrapped(), not(DECLARED_BY_OBJECT).and(annotatedWith(Transactional.class)),
+          interceptorTx, interceptor);
       // Intercept classes annotated with Transactional, but avoid "double"
       // interception when a mathod is also annotated inside an annotated
       // class.
-      bindInterceptor(annotatedWith(Transactional.class),
+      bindInterceptor(notTransactionalWrapped().and(annotatedWith(Transactional.class)),
           not(DECLARED_BY_OBJECT).and(not(annotatedWith(Transactional.class))), interceptorTx, interceptor);
     }
   }
@@ -43,6 +43,7 @@ import org.apache.ibatis.type.Alias;
 import org.apache.ibatis.type.TypeHandler;
 import org.mybatis.guice.binder.AliasBinder;
 import org.mybatis.guice.binder.TypeHandlerBinder;
+import org.mybatis.guice.boot.BootPhase;
 import org.mybatis.guice.configuration.ConfigurationProvider;
 import org.mybatis.guice.configuration.ConfigurationSettingListener;
 import org.mybatis.guice.configuration.settings.AggressiveLazyLoadingConfigurationSetting;
@@ -65,13 +66,19 @@ import org.mybatis.guice.configuration.settings.ObjectWrapperFactoryConfiguratio
 import org.mybatis.guice.configuration.settings.TypeHandlerConfigurationSettingProvider;
 import org.mybatis.guice.configuration.settings.UseColumnLabelConfigurationSetting;
 import org.mybatis.guice.configuration.settings.UseGeneratedKeysConfigurationSetting;
+import org.mybatis.guice.datasource.cache.PreparedStatementCache;
+import org.mybatis.guice.datasource.state.ConnectionStateCache;
+import org.mybatis.guice.datasource.tenant.TenantSchemaRouter;
 import org.mybatis.guice.environment.EnvironmentProvider;
+import org.mybatis.guice.mappers.AsyncMapperExecutor;
+import org.mybatis.guice.mappers.AsyncMapperProvider;
 import org.mybatis.guice.provision.ConfigurationProviderProvisionListener;
 import org.mybatis.guice.provision.KeyMatcher;
 import org.mybatis.guice.session.SqlSessionFactoryProvider;
 import org.mybatis.guice.type.TypeHandlerProvider;
 
 import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.Set;
 
 import javax.inject.Provider;
@@ -101,8 +108,33 @@ public abstract class MyBatisModule extends AbstractMyBatisModule {
 
   private Class<? extends Provider<? extends Configuration>> configurationProviderType = ConfigurationProvider.class;
 
+  /**
+   * The mapper classes added by {@link #initialize()}, registered once it returns.
+   */
+  private final Set<Class<?>> mapperClasses = new LinkedHashSet<Class<?>>();
+
+  /**
+   * The asynchronous facades added by {@link #initialize()}, never registered as mappers.
+   */
+  private final Set<Class<?>> asyncMapperClasses = new LinkedHashSet<Class<?>>();
+
+  private boolean asyncMappersAdded;
+
+  private int asyncMapperThreads = 10;
+
+  private int asyncMapperQueueCapacity = 1000;
+
+  /**
+   * The settings applied to the Configuration, all registered with a single provision listener.
+   */
+  private ConfigurationProviderProvisionListener configurationSettings;
+
   @Override
   final void internalConfigure() {
+    configurationSettings = null;
+    mapperClasses.clear();
+    asyncMapperClasses.clear();
+
     try {
       initialize();
 
@@ -110,6 +142,14 @@ public abstract class MyBatisModule extends AbstractMyBatisModule {
 
     }
 
+    // mappers, each once, whichever of addMapperClass, addMapperClasses and addAsyncMapperClass added it
+    for (Class<?> mapperClass : mapperClasses) {
+      if (!asyncMapperClasses.contains(mapperClass)) {
+        configurationSettings().addMapperConfigurationSetting(new MapperConfigurationSetting(mapperClass));
+        bindMapper(mapperClass);
+      }
+    }
+
     // fixed bindings
     bind(Environment.class).toProvider(EnvironmentProvider.class).in(Scopes.SINGLETON);
 
@@ -124,6 +164,10 @@ public abstract class MyBatisModule extends AbstractMyBatisModule {
     bindConfigurationSettingProvider(new ObjectFactoryConfigurationSetting(objectFactoryType));
     bindConfigurationSettingProvider(new ObjectWrapperFactoryConfigurationSetting(objectWrapperFactoryType));
     bindConfigurationSetting(new DefaultScriptingLanguageTypeConfigurationSetting(defaultScriptingLanguageType));
+
+    if (asyncMappersAdded) {
+      bind(AsyncMapperExecutor.class).toInstance(new AsyncMapperExecutor(asyncMapperThreads, asyncMapperQueueCapacity));
+    }
   }
 
   /**
@@ -229,6 +273,17 @@ public abstract class MyBatisModule extends AbstractMyBatisModule {
     bindBoolean("mybatis.configuration.failFast", failFast);
   }
 
+  /**
+   * Parses the mappers on first use, rather than when the MyBatis configuration is built.
+   *
+   * @param lazyMapperRegistration
+   *          true to register the mappers lazily
+   * @since 3.12
+   */
+  protected final void lazyMapperRegistration(boolean lazyMapperRegistration) {
+    bindBoolean("mybatis.configuration.lazyMapperRegistration", lazyMapperRegistration);
+  }
+
   /**
    * Maps underscores to camel case.
    *
@@ -250,14 +305,20 @@ public abstract class MyBatisModule extends AbstractMyBatisModule {
   }
 
   protected final void bindConfigurationSetting(final ConfigurationSetting configurationSetting) {
-    bindListener(KeyMatcher.create(Key.get(ConfigurationSettingListener.class)),
-        ConfigurationProviderProvisionListener.create(configurationSetting));
+    configurationSettings().addConfigurationSetting(configurationSetting);
   }
 
   protected final <P extends Provider<? extends ConfigurationSetting>> void bindConfigurationSettingProvider(
       P configurationSettingProvider) {
-    bindListener(KeyMatcher.create(Key.get(ConfigurationSettingListener.class)),
-        ConfigurationProviderProvisionListener.create(configurationSettingProvider, binder()));
+    configurationSettings().addConfigurationSettingProvider(configurationSettingProvider, binder());
+  }
+
+  private ConfigurationProviderProvisionListener configurationSettings() {
+    if (configurationSettings == null) {
+      configurationSettings = ConfigurationProviderProvisionListener.create();
+      bindListener(KeyMatcher.create(Key.get(ConfigurationSettingListener.class)), configurationSettings);
+    }
+    return configurationSettings;
   }
 
   private final void bindBoolean(String name, boolean value) {
@@ -331,6 +392,44 @@ public abstract class MyBatisModule extends AbstractMyBatisModule {
     bind(DataSource.class).toProvider(dataSourceProvider).in(Scopes.SINGLETON);
   }
 
+  /**
+   * Caches the statements prepared on the bound DataSource per physical connection, so that they are reused across
+   * SqlSessions.
+   *
+   * @param maxStatementsPerConnection
+   *          the maximum number of statements kept open on each connection
+   * @since 3.12
+   */
+  protected final void usePreparedStatementCache(int maxStatementsPerConnection) {
+    checkArgument(maxStatementsPerConnection > 0, "Parameter 'maxStatementsPerConnection' must be greater than 0");
+    bind(PreparedStatementCache.class).toInstance(new PreparedStatementCache(maxStatementsPerConnection));
+  }
+
+  /**
+   * Remembers the state of the connections of the bound DataSource, so that the isolation, auto-commit, read-only and
+   * catalog calls that do not change it never reach the driver.
+   *
+   * @since 3.12
+   */
+  protected final void useConnectionStateCache() {
+    bind(ConnectionStateCache.class).toInstance(ConnectionStateCache.create());
+  }
+
+  /**
+   * Routes the connections of the bound DataSource to the schema of the tenant set in the {@code TenantContext}, so
+   * that the tenants share one pool.
+   *
+   * @param mode
+   *          how the tenant is selected on a connection
+   * @param defaultSchema
+   *          the schema of the connections checked out without a tenant, null to reject them
+   * @since 3.12
+   */
+  protected final void useTenantSchemaRouting(TenantSchemaRouter.Mode mode, String defaultSchema) {
+    checkArgument(mode != null, "Parameter 'mode' must be not null");
+    bind(TenantSchemaRouter.class).toInstance(new TenantSchemaRouter(mode, defaultSchema));
+  }
+
   /**
    * Bind database id provider.
    *
@@ -591,8 +690,15 @@ public abstract class MyBatisModule extends AbstractMyBatisModule {
    */
   protected final void addTypeHandlerClasses(String packageName) {
     checkArgument(packageName != null, "Parameter 'packageName' must not be null");
-    addTypeHandlersClasses(
-        new ResolverUtil<TypeHandler<?>>().find(new ResolverUtil.IsA(TypeHandler.class), packageName).getClasses());
+    Set<Class<? extends TypeHandler<?>>> typeHandlerClasses;
+    BootPhase phase = getBootProfiler().start("scan type handlers " + packageName);
+    try {
+      typeHandlerClasses = new ResolverUtil<TypeHandler<?>>().find(new ResolverUtil.IsA(TypeHandler.class), packageName)
+          .getClasses();
+    } finally {
+      phase.close();
+    }
+    addTypeHandlersClasses(typeHandlerClasses);
   }
 
   /**
@@ -628,12 +734,20 @@ public abstract class MyBatisModule extends AbstractMyBatisModule {
    */
   protected final void addInterceptorsClasses(String packageName) {
     checkArgument(packageName != null, "Parameter 'packageName' must not be null");
-    addInterceptorsClasses(
-        new ResolverUtil<Interceptor>().find(new ResolverUtil.IsA(Interceptor.class), packageName).getClasses());
+    Set<Class<? extends Interceptor>> interceptorClasses;
+    BootPhase phase = getBootProfiler().start("scan interceptors " + packageName);
+    try {
+      interceptorClasses = new ResolverUtil<Interceptor>().find(new ResolverUtil.IsA(Interceptor.class), packageName)
+          .getClasses();
+    } finally {
+      phase.close();
+    }
+    addInterceptorsClasses(interceptorClasses);
   }
 
   /**
-   * Adds the user defined mapper classes.
+   * Adds the user defined mapper classes. A mapper added more than once is registered once, and a class added as an
+   * asynchronous facade is not registered as a mapper.
    *
    * @param mapperClass
    *          the user defined mapper classes.
@@ -641,9 +755,51 @@ public abstract class MyBatisModule extends AbstractMyBatisModule {
   protected final void addMapperClass(Class<?> mapperClass) {
     checkArgument(mapperClass != null, "Parameter 'mapperClass' must not be null");
 
-    bindListener(KeyMatcher.create(Key.get(ConfigurationSettingListener.class)),
-        ConfigurationProviderProvisionListener.create(new MapperConfigurationSetting(mapperClass)));
-    bindMapper(mapperClass);
+    mapperClasses.add(mapperClass);
+  }
+
+  /**
+   * Adds the asynchronous facade of a mapper, whose methods return a {@code CompletableFuture} and run the mapper
+   * method with the same name and parameters on the {@link AsyncMapperExecutor}. The mapper is added as well, unless
+   * it is already, so several facades can wrap the same mapper, and the facade is not added as a mapper by the
+   * package scans of {@link #addMapperClasses(String)}.
+   *
+   * @param <T>
+   *          the facade type
+   * @param asyncMapperClass
+   *          the facade interface
+   * @param mapperClass
+   *          the user defined mapper class the calls are dispatched to
+   * @since 3.12
+   */
+  protected final <T> void addAsyncMapperClass(Class<T> asyncMapperClass, Class<?> mapperClass) {
+    checkArgument(asyncMapperClass != null, "Parameter 'asyncMapperClass' must not be null");
+    checkArgument(mapperClass != null, "Parameter 'mapperClass' must not be null");
+
+    if (!asyncMapperClasses.add(asyncMapperClass)) {
+      return;
+    }
+    addMapperClass(mapperClass);
+    bind(asyncMapperClass).toProvider(guicify(new AsyncMapperProvider<T>(asyncMapperClass, mapperClass)))
+        .in(Scopes.SINGLETON);
+    asyncMappersAdded = true;
+  }
+
+  /**
+   * Sets the size of the {@link AsyncMapperExecutor} running the asynchronous mapper calls; defaults to 10 threads
+   * and 1000 waiting calls.
+   *
+   * @param threads
+   *          the number of threads
+   * @param queueCapacity
+   *          the maximum number of calls waiting for a thread, further calls are rejected
+   * @since 3.12
+   */
+  protected final void asyncMapperExecutor(int threads, int queueCapacity) {
+    checkArgument(threads > 0, "Parameter 'threads' must be greater than 0");
+    checkArgument(queueCapacity > 0, "Parameter 'queueCapacity' must be greater than 0");
+    this.asyncMapperThreads = threads;
+    this.asyncMapperQueueCapacity = queueCapacity;
   }
 
   /**
@@ -689,7 +845,7 @@ public abstract class MyBatisModule extends AbstractMyBatisModule {
    *          the package has to be analyzed.
    * @return a set of all classes contained in the given package.
    */
-  private static Set<Class<?>> getClasses(String packageName) {
+  private Set<Class<?>> getClasses(String packageName) {
     return getClasses(new ResolverUtil.IsA(Object.class), packageName);
   }
 
@@ -702,9 +858,14 @@ public abstract class MyBatisModule extends AbstractMyBatisModule {
    *          the package has to be analyzed.
    * @return a set of all classes contained in the given package.
    */
-  private static Set<Class<?>> getClasses(ResolverUtil.Test test, String packageName) {
+  private Set<Class<?>> getClasses(ResolverUtil.Test test, String packageName) {
     checkArgument(test != null, "Parameter 'test' must not be null");
     checkArgument(packageName != null, "Parameter 'packageName' must not be null");
-    return new ResolverUtil<Object>().find(test, packageName).getClasses();
+    BootPhase phase = getBootProfiler().start("scan " + packageName);
+    try {
+      return new ResolverUtil<Object>().find(test, packageName).getClasses();
+    } finally {
+      phase.close();
+    }
   }
 }
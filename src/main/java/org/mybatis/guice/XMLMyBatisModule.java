@@ -28,6 +28,7 @@ import org.apache.ibatis.session.Configuration;
 import org.apache.ibatis.session.SqlSessionFactory;
 import org.apache.ibatis.session.SqlSessionFactoryBuilder;
 import org.apache.ibatis.type.TypeHandler;
+import org.mybatis.guice.boot.BootPhase;
 
 /**
  * Easy to use helper Module that alleviates users to write the boilerplate google-guice bindings to create the
@@ -88,7 +89,13 @@ public abstract class XMLMyBatisModule extends AbstractMyBatisModule {
     Reader reader = null;
     try {
       reader = getResourceAsReader(getResourceClassLoader(), classPathResource);
-      SqlSessionFactory sessionFactory = new SqlSessionFactoryBuilder().build(reader, environmentId, properties);
+      SqlSessionFactory sessionFactory;
+      BootPhase phase = getBootProfiler().start("parse " + classPathResource);
+      try {
+        sessionFactory = new SqlSessionFactoryBuilder().build(reader, environmentId, properties);
+      } finally {
+        phase.close();
+      }
       bind(SqlSessionFactory.class).toInstance(sessionFactory);
 
       Configuration configuration = sessionFactory.getConfiguration();
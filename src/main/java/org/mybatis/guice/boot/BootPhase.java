@@ -0,0 +1,103 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.boot;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A timed phase of the Injector boot, closed when the phase completes.
+ *
+ * @since 3.12
+ */
+public final class BootPhase implements AutoCloseable {
+
+  static final BootPhase NONE = new BootPhase(null, null, null, 0);
+
+  private final BootProfiler profiler;
+
+  private final BootPhase parent;
+
+  private final String name;
+
+  private final long startNanos;
+
+  private final List<BootPhase> children = new ArrayList<BootPhase>();
+
+  private long durationNanos = -1;
+
+  BootPhase(BootProfiler profiler, BootPhase parent, String name, long startNanos) {
+    this.profiler = profiler;
+    this.parent = parent;
+    this.name = name;
+    this.startNanos = startNanos;
+  }
+
+  /**
+   * Ends the phase, a no-op when the profiler is disabled or the phase is already ended.
+   */
+  @Override
+  public void close() {
+    if (profiler != null) {
+      profiler.end(this);
+    }
+  }
+
+  BootPhase getParent() {
+    return parent;
+  }
+
+  void addChild(BootPhase child) {
+    children.add(child);
+  }
+
+  void setDurationNanos(long durationNanos) {
+    this.durationNanos = durationNanos;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Returns the names of the enclosing phases and of this phase, separated by {@code /}.
+   *
+   * @return the phase path
+   */
+  public String getPath() {
+    return parent == null ? name : parent.getPath() + "/" + name;
+  }
+
+  /**
+   * @return the start of the phase, in nanoseconds since the profiler creation
+   */
+  public long getStartNanos() {
+    return startNanos;
+  }
+
+  /**
+   * @return the duration of the phase in nanoseconds, -1 while it is running
+   */
+  public long getDurationNanos() {
+    return durationNanos;
+  }
+
+  public List<BootPhase> getChildren() {
+    return Collections.unmodifiableList(children);
+  }
+
+}
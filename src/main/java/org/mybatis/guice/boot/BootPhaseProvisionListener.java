@@ -0,0 +1,90 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.boot;
+
+import com.google.inject.Binding;
+import com.google.inject.Key;
+import com.google.inject.TypeLiteral;
+import com.google.inject.matcher.AbstractMatcher;
+import com.google.inject.matcher.Matcher;
+import com.google.inject.spi.ProvisionListener;
+
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.inject.Provider;
+
+/**
+ * Times the provisioning of the bindings it is registered for as boot phases.
+ *
+ * @since 3.12
+ */
+public final class BootPhaseProvisionListener implements ProvisionListener {
+
+  /**
+   * Matches the bindings of the given types and of the providers of these types, whose construction, as done by the
+   * DataSource providers creating their pool, is timed as well.
+   *
+   * @param types
+   *          the profiled types
+   * @return the binding matcher
+   */
+  public static Matcher<Binding<?>> bindingsOf(Class<?>... types) {
+    final Set<Class<?>> profiledTypes = new HashSet<Class<?>>(Arrays.asList(types));
+    return new AbstractMatcher<Binding<?>>() {
+      @Override
+      public boolean matches(Binding<?> binding) {
+        TypeLiteral<?> type = binding.getKey().getTypeLiteral();
+        if (profiledTypes.contains(type.getRawType())) {
+          return true;
+        }
+        if (!Provider.class.isAssignableFrom(type.getRawType()) || type.getRawType().isInterface()) {
+          return false;
+        }
+        Type provider = type.getSupertype(Provider.class).getType();
+        return provider instanceof ParameterizedType && profiledTypes
+            .contains(TypeLiteral.get(((ParameterizedType) provider).getActualTypeArguments()[0]).getRawType());
+      }
+    };
+  }
+
+  private final BootProfiler profiler;
+
+  public BootPhaseProvisionListener(BootProfiler profiler) {
+    this.profiler = profiler;
+  }
+
+  @Override
+  public <T> void onProvision(ProvisionInvocation<T> provision) {
+    Key<?> key = provision.getBinding().getKey();
+    String name = "provision " + key.getTypeLiteral();
+    if (key.getAnnotation() != null) {
+      name += " " + key.getAnnotation();
+    } else if (key.getAnnotationType() != null) {
+      name += " @" + key.getAnnotationType().getName();
+    }
+    BootPhase phase = profiler.start(name);
+    try {
+      provision.provision();
+    } finally {
+      phase.close();
+    }
+  }
+
+}
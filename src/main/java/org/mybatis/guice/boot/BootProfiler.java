@@ -0,0 +1,204 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.boot;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Records the phases of the Injector boot as a tree: package scans, configuration parsing, settings and mappers
+ * applied to the Configuration, database id lookup and provisioning of the DataSource, Environment, Configuration and
+ * factories.
+ * <p>
+ * Each phase is emitted as a {@code org.mybatis.guice.BootPhase} JFR event when it ends, if the JVM supports JFR, and
+ * the whole tree is available as JSON from {@link #toJson()}. Phases are nested per thread.
+ * </p>
+ *
+ * @since 3.12
+ */
+public final class BootProfiler {
+
+  /**
+   * The profiler used when profiling is not enabled, recording nothing.
+   */
+  public static final BootProfiler DISABLED = new BootProfiler(false);
+
+  private final boolean enabled;
+
+  private final long originNanos = System.nanoTime();
+
+  private final List<BootPhase> phases = new ArrayList<BootPhase>();
+
+  private final ThreadLocal<Deque<BootPhase>> openPhases = new ThreadLocal<Deque<BootPhase>>() {
+    @Override
+    protected Deque<BootPhase> initialValue() {
+      return new ArrayDeque<BootPhase>();
+    }
+  };
+
+  private final JfrBootPhaseEvents jfrEvents;
+
+  private BootProfiler(boolean enabled) {
+    this.enabled = enabled;
+    this.jfrEvents = enabled ? JfrBootPhaseEvents.create() : null;
+  }
+
+  /**
+   * Creates an enabled profiler, starting the boot clock.
+   *
+   * @return the profiler
+   */
+  public static BootProfiler create() {
+    return new BootProfiler(true);
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Starts a phase, nested in the phase currently open on this thread, if any.
+   *
+   * @param name
+   *          the phase name
+   * @return the phase, to be closed when it completes
+   */
+  public BootPhase start(String name) {
+    if (!enabled) {
+      return BootPhase.NONE;
+    }
+    Deque<BootPhase> open = openPhases.get();
+    BootPhase parent = open.peek();
+    BootPhase phase = new BootPhase(this, parent, name, System.nanoTime() - originNanos);
+    synchronized (phases) {
+      if (parent == null) {
+        phases.add(phase);
+      } else {
+        parent.addChild(phase);
+      }
+    }
+    open.push(phase);
+    return phase;
+  }
+
+  void end(BootPhase phase) {
+    Deque<BootPhase> open = openPhases.get();
+    if (!open.contains(phase)) {
+      return;
+    }
+    // phases left open by a failure end with their parent
+    BootPhase closed;
+    do {
+      closed = open.pop();
+      closed.setDurationNanos(System.nanoTime() - originNanos - closed.getStartNanos());
+      if (jfrEvents != null) {
+        jfrEvents.emit(closed);
+      }
+    } while (closed != phase);
+  }
+
+  /**
+   * @return the top level phases, in start order
+   */
+  public List<BootPhase> getPhases() {
+    synchronized (phases) {
+      return Collections.unmodifiableList(new ArrayList<BootPhase>(phases));
+    }
+  }
+
+  /**
+   * Returns the phase tree as JSON, with times in milliseconds.
+   *
+   * @return the JSON report
+   */
+  public String toJson() {
+    StringWriter writer = new StringWriter();
+    try {
+      writeJson(writer);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return writer.toString();
+  }
+
+  /**
+   * Writes the phase tree as JSON, with times in milliseconds.
+   *
+   * @param writer
+   *          where the report is written
+   * @throws IOException
+   *           if the report cannot be written
+   */
+  public void writeJson(Writer writer) throws IOException {
+    writer.write("{\"phases\":");
+    synchronized (phases) {
+      writeJson(writer, phases);
+    }
+    writer.write('}');
+    writer.flush();
+  }
+
+  private static void writeJson(Writer writer, List<BootPhase> phases) throws IOException {
+    writer.write('[');
+    for (int i = 0; i < phases.size(); i++) {
+      BootPhase phase = phases.get(i);
+      if (i > 0) {
+        writer.write(',');
+      }
+      writer.write("{\"name\":");
+      writeString(writer, phase.getName());
+      writer.write(",\"startMillis\":");
+      writer.write(millis(phase.getStartNanos()));
+      writer.write(",\"durationMillis\":");
+      writer.write(phase.getDurationNanos() < 0 ? "null" : millis(phase.getDurationNanos()));
+      if (!phase.getChildren().isEmpty()) {
+        writer.write(",\"children\":");
+        writeJson(writer, phase.getChildren());
+      }
+      writer.write('}');
+    }
+    writer.write(']');
+  }
+
+  private static String millis(long nanos) {
+    return String.format(Locale.ROOT, "%.3f", nanos / 1000000d);
+  }
+
+  private static void writeString(Writer writer, String value) throws IOException {
+    writer.write('"');
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == '"' || c == '\\') {
+        writer.write('\\');
+        writer.write(c);
+      } else if (c < 0x20) {
+        writer.write(String.format("\\u%04x", (int) c));
+      } else {
+        writer.write(c);
+      }
+    }
+    writer.write('"');
+  }
+
+}
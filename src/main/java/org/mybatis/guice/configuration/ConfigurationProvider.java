@@ -23,6 +23,8 @@ import org.apache.ibatis.mapping.Environment;
 import org.apache.ibatis.session.AutoMappingBehavior;
 import org.apache.ibatis.session.Configuration;
 import org.apache.ibatis.session.ExecutorType;
+import org.mybatis.guice.boot.BootPhase;
+import org.mybatis.guice.boot.BootProfiler;
 import org.mybatis.guice.configuration.settings.ConfigurationSetting;
 import org.mybatis.guice.configuration.settings.MapperConfigurationSetting;
 
@@ -95,12 +97,19 @@ public class ConfigurationProvider implements Provider<Configuration>, Configura
   @Named("mybatis.configuration.failFast")
   private boolean failFast = false;
 
+  @com.google.inject.Inject(optional = true)
+  @Named("mybatis.configuration.lazyMapperRegistration")
+  private boolean lazyMapperRegistration = false;
+
   @com.google.inject.Inject(optional = true)
   private DatabaseIdProvider databaseIdProvider;
 
   @com.google.inject.Inject
   private DataSource dataSource;
 
+  @com.google.inject.Inject(optional = true)
+  private BootProfiler bootProfiler = BootProfiler.DISABLED;
+
   private Set<ConfigurationSetting> configurationSettings = new HashSet<ConfigurationSetting>();
   private Set<MapperConfigurationSetting> mapperConfigurationSettings = new HashSet<MapperConfigurationSetting>();
 
@@ -128,6 +137,28 @@ public class ConfigurationProvider implements Provider<Configuration>, Configura
     this.failFast = failFast;
   }
 
+  /**
+   * Flag to parse the mappers on first use rather than when the configuration is built.
+   *
+   * @param lazyMapperRegistration
+   *          flag to register the mappers lazily
+   * @since 3.12
+   */
+  public void setLazyMapperRegistration(boolean lazyMapperRegistration) {
+    this.lazyMapperRegistration = lazyMapperRegistration;
+  }
+
+  /**
+   * Sets the profiler recording the settings and mappers applied to the configuration.
+   *
+   * @param bootProfiler
+   *          the boot profiler
+   * @since 3.12
+   */
+  public void setBootProfiler(BootProfiler bootProfiler) {
+    this.bootProfiler = bootProfiler;
+  }
+
   @Override
   public void addConfigurationSetting(ConfigurationSetting configurationSetting) {
     this.configurationSettings.add(configurationSetting);
@@ -143,9 +174,12 @@ public class ConfigurationProvider implements Provider<Configuration>, Configura
    *
    * @param environment
    *          the environment
-   * @return new configuration
+   * @return new configuration, a {@link LazyMapperConfiguration} when the mappers are registered lazily
    */
   protected Configuration newConfiguration(Environment environment) {
+    if (lazyMapperRegistration) {
+      return new LazyMapperConfiguration(environment);
+    }
     return new Configuration(environment);
   }
 
@@ -165,20 +199,44 @@ public class ConfigurationProvider implements Provider<Configuration>, Configura
     configuration.setMapUnderscoreToCamelCase(mapUnderscoreToCamelCase);
 
     for (ConfigurationSetting setting : configurationSettings) {
-      setting.applyConfigurationSetting(configuration);
+      BootPhase phase = bootProfiler.start("setting " + setting.getClass().getName());
+      try {
+        setting.applyConfigurationSetting(configuration);
+      } finally {
+        phase.close();
+      }
     }
 
     try {
       if (databaseIdProvider != null) {
-        configuration.setDatabaseId(databaseIdProvider.getDatabaseId(dataSource));
+        BootPhase phase = bootProfiler.start("database id");
+        try {
+          configuration.setDatabaseId(databaseIdProvider.getDatabaseId(dataSource));
+        } finally {
+          phase.close();
+        }
       }
 
       for (MapperConfigurationSetting setting : mapperConfigurationSettings) {
-        setting.applyConfigurationSetting(configuration);
+        BootPhase phase = bootProfiler.start("mapper " + setting.getMapperClass().getName());
+        try {
+          if (configuration instanceof LazyMapperConfiguration) {
+            setting.applyLazyConfigurationSetting((LazyMapperConfiguration) configuration);
+          } else {
+            setting.applyConfigurationSetting(configuration);
+          }
+        } finally {
+          phase.close();
+        }
       }
 
       if (failFast) {
-        configuration.getMappedStatementNames();
+        BootPhase phase = bootProfiler.start("fail fast check");
+        try {
+          configuration.getMappedStatementNames();
+        } finally {
+          phase.close();
+        }
       }
     } catch (Throwable cause) {
       throw new ProvisionException("An error occurred while building the org.apache.ibatis.session.Configuration",
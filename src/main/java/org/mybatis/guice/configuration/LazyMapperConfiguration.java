@@ -0,0 +1,321 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.configuration;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.executor.keygen.KeyGenerator;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ParameterMap;
+import org.apache.ibatis.mapping.ResultMap;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSession;
+
+/**
+ * A MyBatis Configuration parsing its mappers on first use: when the mapper is requested, or when one of its
+ * statements, result maps, parameter maps or cache is looked up by id.
+ * <p>
+ * The mappers are registered under a write lock, and kept pending until fully parsed, so concurrent callers wait for
+ * the registration to complete; listing all the statements, as done by the fail fast check, registers all the mappers.
+ * The registration writes into the plain maps of the Configuration, so while mappers are pending the lookups of
+ * mappers, statements, result maps, parameter maps, key generators and caches take the read lock; once the last
+ * mapper is registered the maps no longer change and the lookups go lock free.
+ * </p>
+ *
+ * @since 3.12
+ */
+public class LazyMapperConfiguration extends Configuration {
+
+  private final Map<String, Class<?>> pendingMappers = new ConcurrentHashMap<String, Class<?>>();
+
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+  /**
+   * Whether mappers are pending, cleared under the write lock after the last registration, so that reading it false
+   * makes the registered elements visible.
+   */
+  private volatile boolean loading;
+
+  public LazyMapperConfiguration(Environment environment) {
+    super(environment);
+  }
+
+  /**
+   * Registers a mapper to be parsed on first use.
+   *
+   * @param type
+   *          the mapper type
+   */
+  public void addLazyMapper(Class<?> type) {
+    if (!hasMapper(type)) {
+      pendingMappers.put(type.getName(), type);
+      loading = true;
+    }
+  }
+
+  /**
+   * Tells whether the given mapper is still waiting to be parsed.
+   *
+   * @param type
+   *          the mapper type
+   * @return true if the mapper has not been used yet
+   */
+  public boolean isMapperPending(Class<?> type) {
+    return pendingMappers.containsKey(type.getName());
+  }
+
+  private void loadMapper(String namespace) {
+    if (!loading || !pendingMappers.containsKey(namespace)) {
+      return;
+    }
+    Lock writeLock = lock.writeLock();
+    writeLock.lock();
+    try {
+      Class<?> type = pendingMappers.get(namespace);
+      if (type != null) {
+        if (!hasMapper(type)) {
+          addMapper(type);
+        }
+        // removed once parsed, so that the threads not holding the lock never see a half registered mapper
+        pendingMappers.remove(namespace);
+        if (pendingMappers.isEmpty()) {
+          loading = false;
+        }
+      }
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  /**
+   * Takes the read lock while mappers are pending. The thread registering a mapper holds the write lock, and may take
+   * the read lock as well; the lookups never load a mapper while holding the read lock, which cannot be upgraded.
+   *
+   * @return the lock to release, or null if all the mappers are registered
+   */
+  private Lock readLock() {
+    if (!loading) {
+      return null;
+    }
+    Lock readLock = lock.readLock();
+    readLock.lock();
+    return readLock;
+  }
+
+  private static void unlock(Lock readLock) {
+    if (readLock != null) {
+      readLock.unlock();
+    }
+  }
+
+  private void loadMapperOf(String id) {
+    int lastDot = id.lastIndexOf('.');
+    if (lastDot > 0) {
+      loadMapper(id.substring(0, lastDot));
+    }
+  }
+
+  private void loadAllMappers() {
+    for (String namespace : pendingMappers.keySet()) {
+      loadMapper(namespace);
+    }
+  }
+
+  /**
+   * Resolves the elements waiting for other mappers under the write lock, as it adds them to the maps.
+   */
+  @Override
+  protected void buildAllStatements() {
+    if (!loading) {
+      super.buildAllStatements();
+      return;
+    }
+    boolean incomplete;
+    Lock readLock = readLock();
+    try {
+      incomplete = !incompleteResultMaps.isEmpty() || !incompleteCacheRefs.isEmpty()
+          || !incompleteStatements.isEmpty() || !incompleteMethods.isEmpty();
+    } finally {
+      unlock(readLock);
+    }
+    if (incomplete) {
+      Lock writeLock = lock.writeLock();
+      writeLock.lock();
+      try {
+        super.buildAllStatements();
+      } finally {
+        writeLock.unlock();
+      }
+    }
+  }
+
+  @Override
+  public <T> T getMapper(Class<T> type, SqlSession sqlSession) {
+    loadMapper(type.getName());
+    Lock readLock = readLock();
+    try {
+      return super.getMapper(type, sqlSession);
+    } finally {
+      unlock(readLock);
+    }
+  }
+
+  @Override
+  public boolean hasMapper(Class<?> type) {
+    Lock readLock = readLock();
+    try {
+      return super.hasMapper(type);
+    } finally {
+      unlock(readLock);
+    }
+  }
+
+  @Override
+  public MappedStatement getMappedStatement(String id, boolean validateIncompleteStatements) {
+    loadMapperOf(id);
+    if (validateIncompleteStatements) {
+      buildAllStatements();
+    }
+    Lock readLock = readLock();
+    try {
+      return super.getMappedStatement(id, false);
+    } finally {
+      unlock(readLock);
+    }
+  }
+
+  @Override
+  public boolean hasStatement(String statementName, boolean validateIncompleteStatements) {
+    loadMapperOf(statementName);
+    if (validateIncompleteStatements) {
+      buildAllStatements();
+    }
+    Lock readLock = readLock();
+    try {
+      return super.hasStatement(statementName, false);
+    } finally {
+      unlock(readLock);
+    }
+  }
+
+  @Override
+  public ResultMap getResultMap(String id) {
+    loadMapperOf(id);
+    Lock readLock = readLock();
+    try {
+      return super.getResultMap(id);
+    } finally {
+      unlock(readLock);
+    }
+  }
+
+  @Override
+  public boolean hasResultMap(String id) {
+    loadMapperOf(id);
+    Lock readLock = readLock();
+    try {
+      return super.hasResultMap(id);
+    } finally {
+      unlock(readLock);
+    }
+  }
+
+  @Override
+  public ParameterMap getParameterMap(String id) {
+    loadMapperOf(id);
+    Lock readLock = readLock();
+    try {
+      return super.getParameterMap(id);
+    } finally {
+      unlock(readLock);
+    }
+  }
+
+  @Override
+  public boolean hasParameterMap(String id) {
+    loadMapperOf(id);
+    Lock readLock = readLock();
+    try {
+      return super.hasParameterMap(id);
+    } finally {
+      unlock(readLock);
+    }
+  }
+
+  @Override
+  public KeyGenerator getKeyGenerator(String id) {
+    loadMapperOf(id);
+    Lock readLock = readLock();
+    try {
+      return super.getKeyGenerator(id);
+    } finally {
+      unlock(readLock);
+    }
+  }
+
+  @Override
+  public boolean hasKeyGenerator(String id) {
+    loadMapperOf(id);
+    Lock readLock = readLock();
+    try {
+      return super.hasKeyGenerator(id);
+    } finally {
+      unlock(readLock);
+    }
+  }
+
+  @Override
+  public Cache getCache(String id) {
+    loadMapper(id);
+    Lock readLock = readLock();
+    try {
+      return super.getCache(id);
+    } finally {
+      unlock(readLock);
+    }
+  }
+
+  @Override
+  public boolean hasCache(String id) {
+    loadMapper(id);
+    Lock readLock = readLock();
+    try {
+      return super.hasCache(id);
+    } finally {
+      unlock(readLock);
+    }
+  }
+
+  @Override
+  public Collection<String> getMappedStatementNames() {
+    loadAllMappers();
+    return super.getMappedStatementNames();
+  }
+
+  @Override
+  public Collection<MappedStatement> getMappedStatements() {
+    loadAllMappers();
+    return super.getMappedStatements();
+  }
+
+}
@@ -0,0 +1,538 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.configuration;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.apache.ibatis.builder.BuilderException;
+import org.apache.ibatis.builder.xml.XMLMapperBuilder;
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.executor.keygen.KeyGenerator;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ParameterMap;
+import org.apache.ibatis.mapping.ResultMap;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSessionFactory;
+
+/**
+ * Re-parses mapper XML files in a running Configuration, either on demand or when a watched directory changes.
+ * <p>
+ * The XML is parsed into a staging copy of the Configuration, sharing its settings, registries and plugins but holding
+ * its own copies of the statements, result maps, parameter maps, key generators, caches and SQL fragments; the
+ * elements redefined by the file replace the previous ones in these copies only. Once the whole file is parsed, the
+ * copies are swapped into the live Configuration at once: the maps read by the sessions are never modified, so
+ * in-flight sessions complete with the statements they already hold and the following calls use the new ones, with no
+ * lock on the query path. The second level cache of the namespace is kept, and cleared, so that the namespaces
+ * referring to it see the new statements too.
+ * </p>
+ * <p>
+ * Statements removed from the file are left in place. A file failing to parse, or referring to elements that are not
+ * loaded, leaves the Configuration unchanged. Settings changed on the Configuration after a reload are not seen by the
+ * statements it parsed.
+ * </p>
+ *
+ * @since 3.12
+ */
+@Singleton
+public class MapperXmlReloader implements Closeable {
+
+  /**
+   * The Configuration fields changed by the parsing of a mapper, copied before the parsing and swapped in after it.
+   */
+  private static final List<String> PARSED_FIELDS = Arrays.asList("resultMaps", "parameterMaps", "keyGenerators",
+      "caches", "sqlFragments", "loadedResources", "cacheRefMap", "mappedStatements");
+
+  /**
+   * The elements waiting for another mapper, which must all be resolved by the end of a reload.
+   */
+  private static final List<String> INCOMPLETE_FIELDS = Arrays.asList("incompleteStatements", "incompleteCacheRefs",
+      "incompleteResultMaps", "incompleteMethods");
+
+  private static final List<Field> CONFIGURATION_FIELDS = findConfigurationFields();
+
+  private static final Field STATEMENT_CACHE = findStatementCacheField();
+
+  /**
+   * {@code VarHandle.fullFence}, available since Java 9.
+   */
+  private static final Method FULL_FENCE = findFullFenceMethod();
+
+  /**
+   * The {@code sun.misc.Unsafe} instance whose {@code fullFence} is used on Java 8 instead.
+   */
+  private static final Object UNSAFE = FULL_FENCE == null ? findUnsafe() : null;
+
+  private static final Pattern NAMESPACE = Pattern.compile("(<mapper\\b[^>]*?\\bnamespace\\s*=\\s*)([\"'])(.*?)\\2");
+
+  private final Log log = LogFactory.getLog(getClass());
+
+  private final Configuration configuration;
+
+  private final AtomicInteger reloadCount = new AtomicInteger();
+
+  private final List<WatchService> watchServices = new ArrayList<WatchService>();
+
+  @Inject
+  public MapperXmlReloader(SqlSessionFactory sqlSessionFactory) {
+    this(sqlSessionFactory.getConfiguration());
+  }
+
+  public MapperXmlReloader(Configuration configuration) {
+    this.configuration = configuration;
+  }
+
+  private static List<Field> findConfigurationFields() {
+    try {
+      List<Field> fields = new ArrayList<Field>();
+      for (Field field : Configuration.class.getDeclaredFields()) {
+        if (!Modifier.isStatic(field.getModifiers())) {
+          field.setAccessible(true);
+          fields.add(field);
+        }
+      }
+      return fields;
+    } catch (Exception e) {
+      return null;
+    }
+  }
+
+  private static Field findStatementCacheField() {
+    try {
+      Field field = MappedStatement.class.getDeclaredField("cache");
+      field.setAccessible(true);
+      return field;
+    } catch (Exception e) {
+      return null;
+    }
+  }
+
+  private static Method findFullFenceMethod() {
+    try {
+      return Class.forName("java.lang.invoke.VarHandle").getMethod("fullFence");
+    } catch (Exception e) {
+      return null;
+    }
+  }
+
+  private static Object findUnsafe() {
+    try {
+      Field field = Class.forName("sun.misc.Unsafe").getDeclaredField("theUnsafe");
+      field.setAccessible(true);
+      return field.get(null);
+    } catch (Exception e) {
+      return null;
+    }
+  }
+
+  private static void fullFence() {
+    try {
+      if (FULL_FENCE != null) {
+        FULL_FENCE.invoke(null);
+      } else if (UNSAFE != null) {
+        UNSAFE.getClass().getMethod("fullFence").invoke(UNSAFE);
+      }
+    } catch (Exception e) {
+      throw new IllegalStateException("Impossible to order the Configuration updates", e);
+    }
+  }
+
+  /**
+   * Reloads a mapper XML file.
+   *
+   * @param mapperXml
+   *          the mapper file
+   * @return the number of statements swapped in
+   * @throws IOException
+   *           if the file cannot be read
+   */
+  public int reload(Path mapperXml) throws IOException {
+    return reload(mapperXml.toString(), Files.newInputStream(mapperXml));
+  }
+
+  /**
+   * Reloads a mapper XML resource from the classpath.
+   *
+   * @param resource
+   *          the mapper resource
+   * @return the number of statements swapped in
+   * @throws IOException
+   *           if the resource cannot be read
+   */
+  public int reload(String resource) throws IOException {
+    return reload(resource, Resources.getResourceAsStream(resource));
+  }
+
+  /**
+   * Reloads a mapper XML, closing the given stream.
+   *
+   * @param resource
+   *          the name the statements are reported under
+   * @param mapperXml
+   *          the mapper XML content
+   * @return the number of statements swapped in
+   * @throws IOException
+   *           if the content cannot be read
+   */
+  public synchronized int reload(String resource, InputStream mapperXml) throws IOException {
+    if (CONFIGURATION_FIELDS == null || STATEMENT_CACHE == null) {
+      mapperXml.close();
+      throw new IllegalStateException("Configuration does not expose its mapped statements, they cannot be reloaded");
+    }
+    reloadCount.incrementAndGet();
+    if (configuration instanceof LazyMapperConfiguration) {
+      // registers the pending mappers, which would otherwise be added to the maps about to be replaced
+      configuration.getMappedStatementNames();
+    }
+
+    String xml;
+    try (InputStream input = mapperXml) {
+      xml = readFully(input);
+    }
+    Matcher matcher = NAMESPACE.matcher(xml);
+    if (!matcher.find()) {
+      throw new BuilderException(String.format("Mapper XML '%s' does not declare a namespace", resource));
+    }
+
+    StagingConfiguration staging = stage();
+    staging.forget(resource, matcher.group(3));
+    new XMLMapperBuilder(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)), staging, resource,
+        staging.getSqlFragments()).parse();
+    if (staging.hasIncompleteElements()) {
+      throw new BuilderException(String.format("Mapper XML '%s' refers to elements that are not loaded", resource));
+    }
+    for (MappedStatement statement : staging.statements) {
+      Cache cache = staging.keptCaches.get(statement.getCache());
+      if (cache != null) {
+        setCache(statement, cache);
+      }
+    }
+
+    swap(staging);
+    staging.publish(configuration);
+    for (Cache cache : staging.keptCaches.values()) {
+      cache.clear();
+    }
+
+    int swapped = staging.statements.size();
+    if (log.isDebugEnabled()) {
+      log.debug(String.format("Reloaded %s statement(s) from '%s'", swapped, resource));
+    }
+    return swapped;
+  }
+
+  private StagingConfiguration stage() {
+    StagingConfiguration staging = new StagingConfiguration();
+    try {
+      for (Field field : CONFIGURATION_FIELDS) {
+        Object value = field.get(configuration);
+        if (PARSED_FIELDS.contains(field.getName())) {
+          value = copyOf(value);
+        } else if (INCOMPLETE_FIELDS.contains(field.getName())) {
+          value = new LinkedList<Object>();
+        }
+        field.set(staging, value);
+      }
+    } catch (IllegalAccessException e) {
+      throw new IllegalStateException("Impossible to copy the Configuration", e);
+    }
+    return staging;
+  }
+
+  /**
+   * Installs the parsed copies, the mapped statements last so that the elements they refer to are already in place.
+   * <p>
+   * The fields are final in {@code Configuration}, and written here through reflection: the Java memory model gives
+   * such writes no visibility guarantee, and the sessions read the fields without synchronization. It is acceptable
+   * because the fields are only read when an element is looked up, never cached by MyBatis, and a session seeing the
+   * previous map for a while only runs the previous statements, which remain complete. The fence before the writes
+   * makes the copies fully built before their references are published, and the one after them makes the references
+   * visible before the caches are cleared and the reload returns.
+   * </p>
+   */
+  private void swap(StagingConfiguration staging) {
+    fullFence();
+    try {
+      for (String name : PARSED_FIELDS) {
+        for (Field field : CONFIGURATION_FIELDS) {
+          if (field.getName().equals(name)) {
+            field.set(configuration, field.get(staging));
+          }
+        }
+      }
+    } catch (IllegalAccessException e) {
+      throw new IllegalStateException("Impossible to update the Configuration", e);
+    }
+    fullFence();
+  }
+
+  private static Object copyOf(Object value) {
+    if (value instanceof HashMap) {
+      return ((HashMap<?, ?>) value).clone();
+    }
+    if (value instanceof HashSet) {
+      return ((HashSet<?>) value).clone();
+    }
+    throw new IllegalStateException(String.format("Impossible to copy a Configuration %s", value.getClass()));
+  }
+
+  private static String readFully(InputStream input) throws IOException {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    byte[] buffer = new byte[8192];
+    int read;
+    while ((read = input.read(buffer)) != -1) {
+      output.write(buffer, 0, read);
+    }
+    return new String(output.toByteArray(), StandardCharsets.UTF_8);
+  }
+
+  private static void setCache(MappedStatement statement, Cache cache) {
+    try {
+      STATEMENT_CACHE.set(statement, cache);
+    } catch (IllegalAccessException e) {
+      throw new IllegalStateException("Impossible to set the cache of " + statement.getId(), e);
+    }
+  }
+
+  /**
+   * The Configuration a mapper XML is parsed into: the elements the file defines replace the previous ones instead of
+   * being rejected as duplicates, and the cache of the namespace is kept. Once published, the elements are looked up
+   * in the live Configuration, which the statements parsed here keep referring to.
+   */
+  private static final class StagingConfiguration extends Configuration {
+
+    private final Set<Object> parsed = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+
+    private final List<MappedStatement> statements = new ArrayList<MappedStatement>();
+
+    private final Map<Cache, Cache> keptCaches = new IdentityHashMap<Cache, Cache>();
+
+    private volatile Configuration published;
+
+    void publish(Configuration configuration) {
+      published = configuration;
+    }
+
+    /**
+     * Forgets that the file was loaded, and the SQL fragments of its namespace, which are only read while parsing.
+     */
+    void forget(String resource, String namespace) {
+      loadedResources.remove(resource);
+      for (String id : new ArrayList<String>(sqlFragments.keySet())) {
+        if (id.startsWith(namespace + ".")) {
+          redefine(sqlFragments, id);
+        }
+      }
+    }
+
+    boolean hasIncompleteElements() {
+      return !incompleteStatements.isEmpty() || !incompleteCacheRefs.isEmpty() || !incompleteResultMaps.isEmpty()
+          || !incompleteMethods.isEmpty();
+    }
+
+    /**
+     * Removes the previous element defined under the given id, unless it comes from the file being parsed, so that
+     * a duplicate in the file is still reported.
+     */
+    private <V> void redefine(Map<String, V> elements, String id) {
+      V previous = elements.getOrDefault(id, null);
+      if (previous == null || parsed.contains(previous)) {
+        return;
+      }
+      elements.remove(id);
+      String shortName = id.substring(id.lastIndexOf('.') + 1);
+      if (elements.getOrDefault(shortName, null) == previous) {
+        elements.remove(shortName);
+      }
+    }
+
+    @Override
+    public void addMappedStatement(MappedStatement ms) {
+      redefine(mappedStatements, ms.getId());
+      super.addMappedStatement(ms);
+      parsed.add(ms);
+      statements.add(ms);
+    }
+
+    @Override
+    public void addResultMap(ResultMap rm) {
+      redefine(resultMaps, rm.getId());
+      super.addResultMap(rm);
+      parsed.add(rm);
+    }
+
+    @Override
+    public void addParameterMap(ParameterMap pm) {
+      redefine(parameterMaps, pm.getId());
+      super.addParameterMap(pm);
+      parsed.add(pm);
+    }
+
+    @Override
+    public void addKeyGenerator(String id, KeyGenerator keyGenerator) {
+      redefine(keyGenerators, id);
+      super.addKeyGenerator(id, keyGenerator);
+      parsed.add(keyGenerator);
+    }
+
+    @Override
+    public void addCache(Cache cache) {
+      Cache previous = caches.getOrDefault(cache.getId(), null);
+      if (previous == null) {
+        super.addCache(cache);
+      } else {
+        keptCaches.put(cache, previous);
+      }
+    }
+
+    @Override
+    public MappedStatement getMappedStatement(String id, boolean validateIncompleteStatements) {
+      Configuration configuration = published;
+      return configuration == null ? super.getMappedStatement(id, validateIncompleteStatements)
+          : configuration.getMappedStatement(id, validateIncompleteStatements);
+    }
+
+    @Override
+    public boolean hasStatement(String statementName, boolean validateIncompleteStatements) {
+      Configuration configuration = published;
+      return configuration == null ? super.hasStatement(statementName, validateIncompleteStatements)
+          : configuration.hasStatement(statementName, validateIncompleteStatements);
+    }
+
+    @Override
+    public ResultMap getResultMap(String id) {
+      Configuration configuration = published;
+      return configuration == null ? super.getResultMap(id) : configuration.getResultMap(id);
+    }
+
+    @Override
+    public boolean hasResultMap(String id) {
+      Configuration configuration = published;
+      return configuration == null ? super.hasResultMap(id) : configuration.hasResultMap(id);
+    }
+
+    @Override
+    public ParameterMap getParameterMap(String id) {
+      Configuration configuration = published;
+      return configuration == null ? super.getParameterMap(id) : configuration.getParameterMap(id);
+    }
+
+    @Override
+    public KeyGenerator getKeyGenerator(String id) {
+      Configuration configuration = published;
+      return configuration == null ? super.getKeyGenerator(id) : configuration.getKeyGenerator(id);
+    }
+
+    @Override
+    public Cache getCache(String id) {
+      Configuration configuration = published;
+      return configuration == null ? super.getCache(id) : configuration.getCache(id);
+    }
+
+  }
+
+  /**
+   * Watches a directory, reloading every mapper XML file created or modified in it from a daemon thread.
+   *
+   * @param directory
+   *          the directory holding mapper XML files
+   * @throws IOException
+   *           if the directory cannot be watched
+   */
+  public synchronized void watch(final Path directory) throws IOException {
+    final WatchService watchService = directory.getFileSystem().newWatchService();
+    directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY);
+    watchServices.add(watchService);
+
+    Thread thread = new Thread(() -> {
+      try {
+        while (true) {
+          WatchKey key = watchService.take();
+          for (WatchEvent<?> event : key.pollEvents()) {
+            Object context = event.context();
+            if (context instanceof Path && context.toString().endsWith(".xml")) {
+              Path file = directory.resolve((Path) context);
+              try {
+                reload(file);
+              } catch (Exception e) {
+                log.error(String.format("Could not reload mapper XML '%s'", file), e);
+              }
+            }
+          }
+          key.reset();
+        }
+      } catch (InterruptedException | ClosedWatchServiceException e) {
+        // watching stopped
+      }
+    }, "mybatis-mapper-reload");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * @return the number of reloads attempted
+   */
+  public int getReloadCount() {
+    return reloadCount.get();
+  }
+
+  /**
+   * Stops watching all the directories.
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    for (WatchService watchService : watchServices) {
+      watchService.close();
+    }
+    watchServices.clear();
+  }
+
+}
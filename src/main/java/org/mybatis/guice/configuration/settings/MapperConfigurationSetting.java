@@ -16,6 +16,7 @@
 package org.mybatis.guice.configuration.settings;
 
 import org.apache.ibatis.session.Configuration;
+import org.mybatis.guice.configuration.LazyMapperConfiguration;
 
 public final class MapperConfigurationSetting {
 
@@ -25,10 +26,29 @@ public final class MapperConfigurationSetting {
     this.mapperClass = mapperClass;
   }
 
+  /**
+   * @return the mapper type
+   * @since 3.12
+   */
+  public Class<?> getMapperClass() {
+    return mapperClass;
+  }
+
   public void applyConfigurationSetting(Configuration configuration) {
     if (!configuration.hasMapper(mapperClass)) {
       configuration.addMapper(mapperClass);
     }
   }
 
+  /**
+   * Registers the mapper to be parsed on first use.
+   *
+   * @param configuration
+   *          the lazy configuration
+   * @since 3.12
+   */
+  public void applyLazyConfigurationSetting(LazyMapperConfiguration configuration) {
+    configuration.addLazyMapper(mapperClass);
+  }
+
 }
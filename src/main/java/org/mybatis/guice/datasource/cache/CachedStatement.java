@@ -0,0 +1,81 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.datasource.cache;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A physical prepared statement kept open across uses, along with the settings to restore before it is reused.
+ */
+final class CachedStatement {
+
+  private static final Set<String> STATE_CHANGING_METHODS = new HashSet<String>(Arrays.asList("addBatch",
+      "setQueryTimeout", "setMaxRows", "setLargeMaxRows", "setFetchSize", "setFetchDirection", "setMaxFieldSize"));
+
+  private final PreparedStatement statement;
+
+  private final int queryTimeout;
+
+  private final int maxRows;
+
+  private final int fetchSize;
+
+  private final int fetchDirection;
+
+  private final int maxFieldSize;
+
+  private boolean dirty;
+
+  CachedStatement(PreparedStatement statement) throws SQLException {
+    this.statement = statement;
+    this.queryTimeout = statement.getQueryTimeout();
+    this.maxRows = statement.getMaxRows();
+    this.fetchSize = statement.getFetchSize();
+    this.fetchDirection = statement.getFetchDirection();
+    this.maxFieldSize = statement.getMaxFieldSize();
+  }
+
+  PreparedStatement getStatement() {
+    return statement;
+  }
+
+  void beforeInvoke(String methodName) {
+    if (!dirty && STATE_CHANGING_METHODS.contains(methodName)) {
+      dirty = true;
+    }
+  }
+
+  /**
+   * Restores the statement as it was once prepared, so the next user does not inherit parameters or settings.
+   */
+  void reset() throws SQLException {
+    statement.clearParameters();
+    if (dirty) {
+      statement.clearBatch();
+      statement.setQueryTimeout(queryTimeout);
+      statement.setMaxRows(maxRows);
+      statement.setFetchSize(fetchSize);
+      statement.setFetchDirection(fetchDirection);
+      statement.setMaxFieldSize(maxFieldSize);
+      dirty = false;
+    }
+  }
+
+}
@@ -0,0 +1,92 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.datasource.cache;
+
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+/**
+ * Decorates a data source, routing the statements prepared on its connections through a
+ * {@link PreparedStatementCache}.
+ */
+final class CachingDataSource implements DataSource {
+
+  private final DataSource dataSource;
+
+  private final PreparedStatementCache cache;
+
+  CachingDataSource(DataSource dataSource, PreparedStatementCache cache) {
+    this.dataSource = dataSource;
+    this.cache = cache;
+  }
+
+  @Override
+  public Connection getConnection() throws SQLException {
+    return LogicalConnection.newProxy(dataSource.getConnection(), cache);
+  }
+
+  @Override
+  public Connection getConnection(String username, String password) throws SQLException {
+    return LogicalConnection.newProxy(dataSource.getConnection(username, password), cache);
+  }
+
+  @Override
+  public PrintWriter getLogWriter() throws SQLException {
+    return dataSource.getLogWriter();
+  }
+
+  @Override
+  public void setLogWriter(PrintWriter out) throws SQLException {
+    dataSource.setLogWriter(out);
+  }
+
+  @Override
+  public void setLoginTimeout(int seconds) throws SQLException {
+    dataSource.setLoginTimeout(seconds);
+  }
+
+  @Override
+  public int getLoginTimeout() throws SQLException {
+    return dataSource.getLoginTimeout();
+  }
+
+  @Override
+  public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+    return dataSource.getParentLogger();
+  }
+
+  @Override
+  public <T> T unwrap(Class<T> iface) throws SQLException {
+    if (iface.isInstance(this)) {
+      return iface.cast(this);
+    }
+    if (iface.isInstance(dataSource)) {
+      return iface.cast(dataSource);
+    }
+    return dataSource.unwrap(iface);
+  }
+
+  @Override
+  public boolean isWrapperFor(Class<?> iface) throws SQLException {
+    return iface.isInstance(this) || iface.isInstance(dataSource) || dataSource.isWrapperFor(iface);
+  }
+
+}
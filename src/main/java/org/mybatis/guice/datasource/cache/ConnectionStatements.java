@@ -0,0 +1,85 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.datasource.cache;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The idle statements of one physical connection, in LRU order.
+ */
+final class ConnectionStatements {
+
+  private final PreparedStatementCache cache;
+
+  private final LinkedHashMap<StatementKey, CachedStatement> idle = new LinkedHashMap<StatementKey, CachedStatement>(
+      16, 0.75f, true);
+
+  ConnectionStatements(PreparedStatementCache cache) {
+    this.cache = cache;
+  }
+
+  /**
+   * Takes the idle statement for the given key, if any; statements in use are never shared.
+   */
+  synchronized CachedStatement checkout(StatementKey key) {
+    CachedStatement statement = idle.remove(key);
+    if (statement == null) {
+      cache.miss();
+    } else {
+      cache.hit();
+    }
+    return statement;
+  }
+
+  /**
+   * Gives back a statement once the caller closed it.
+   */
+  void checkin(StatementKey key, CachedStatement statement) {
+    PreparedStatement surplus = null;
+    PreparedStatement evicted = null;
+    synchronized (this) {
+      if (idle.containsKey(key)) {
+        // the same SQL was prepared twice while in use, keep one only
+        surplus = statement.getStatement();
+      } else {
+        idle.put(key, statement);
+        if (idle.size() > cache.getMaxStatementsPerConnection()) {
+          Iterator<Map.Entry<StatementKey, CachedStatement>> eldest = idle.entrySet().iterator();
+          evicted = eldest.next().getValue().getStatement();
+          eldest.remove();
+          cache.evicted();
+        }
+      }
+    }
+    closeQuietly(surplus);
+    closeQuietly(evicted);
+  }
+
+  static void closeQuietly(PreparedStatement statement) {
+    if (statement != null) {
+      try {
+        statement.close();
+      } catch (SQLException e) {
+        // close quietly
+      }
+    }
+  }
+
+}
@@ -0,0 +1,94 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.datasource.cache;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import org.apache.ibatis.reflection.ExceptionUtil;
+import org.mybatis.guice.datasource.tenant.TenantContext;
+
+/**
+ * The connection handed to the caller: {@code prepareStatement} calls are served by the cache of the underlying
+ * physical connection.
+ */
+final class LogicalConnection implements InvocationHandler {
+
+  private static final Class<?>[] INTERFACES = new Class<?>[] { Connection.class };
+
+  private final Connection connection;
+
+  private final PreparedStatementCache cache;
+
+  /**
+   * The tenant the connection was checked out for: statements on unqualified tables are bound to its schema.
+   */
+  private final String tenant;
+
+  private ConnectionStatements statements;
+
+  private LogicalConnection(Connection connection, PreparedStatementCache cache) {
+    this.connection = connection;
+    this.cache = cache;
+    this.tenant = TenantContext.current();
+  }
+
+  static Connection newProxy(Connection connection, PreparedStatementCache cache) {
+    return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), INTERFACES,
+        new LogicalConnection(connection, cache));
+  }
+
+  @Override
+  public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+    try {
+      if ("prepareStatement".equals(method.getName())) {
+        return prepareStatement(method, args);
+      }
+      return method.invoke(connection, args);
+    } catch (InvocationTargetException e) {
+      throw ExceptionUtil.unwrapThrowable(e);
+    }
+  }
+
+  private PreparedStatement prepareStatement(Method method, Object[] args) throws Exception {
+    StatementKey key = new StatementKey(tenant, args);
+    ConnectionStatements connectionStatements = statements();
+    CachedStatement cached = connectionStatements.checkout(key);
+    if (cached == null) {
+      cached = new CachedStatement((PreparedStatement) method.invoke(connection, args));
+    }
+    return LogicalStatement.newProxy(key, cached, connectionStatements);
+  }
+
+  private ConnectionStatements statements() {
+    if (statements == null) {
+      Connection physicalConnection;
+      try {
+        physicalConnection = connection.unwrap(Connection.class);
+      } catch (SQLException e) {
+        physicalConnection = connection;
+      }
+      statements = cache.statementsOf(physicalConnection);
+    }
+    return statements;
+  }
+
+}
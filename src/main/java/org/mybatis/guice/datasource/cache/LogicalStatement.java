@@ -0,0 +1,93 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.datasource.cache;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import org.apache.ibatis.reflection.ExceptionUtil;
+
+/**
+ * The statement handed to the caller: closing it gives the physical statement back to the cache.
+ */
+final class LogicalStatement implements InvocationHandler {
+
+  private static final Class<?>[] INTERFACES = new Class<?>[] { PreparedStatement.class };
+
+  private final StatementKey key;
+
+  private final CachedStatement cached;
+
+  private final ConnectionStatements statements;
+
+  private boolean closed;
+
+  private LogicalStatement(StatementKey key, CachedStatement cached, ConnectionStatements statements) {
+    this.key = key;
+    this.cached = cached;
+    this.statements = statements;
+  }
+
+  static PreparedStatement newProxy(StatementKey key, CachedStatement cached, ConnectionStatements statements) {
+    return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(), INTERFACES,
+        new LogicalStatement(key, cached, statements));
+  }
+
+  @Override
+  public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+    String methodName = method.getName();
+    if ("close".equals(methodName)) {
+      close();
+      return null;
+    }
+    if ("isClosed".equals(methodName)) {
+      return closed || cached.getStatement().isClosed();
+    }
+    if (closed && method.getDeclaringClass() != Object.class) {
+      throw new SQLException("Statement is closed");
+    }
+
+    cached.beforeInvoke(methodName);
+    try {
+      return method.invoke(cached.getStatement(), args);
+    } catch (InvocationTargetException e) {
+      throw ExceptionUtil.unwrapThrowable(e);
+    }
+  }
+
+  private void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+
+    PreparedStatement statement = cached.getStatement();
+    try {
+      if (!statement.isClosed()) {
+        cached.reset();
+        statements.checkin(key, cached);
+      }
+    } catch (SQLException e) {
+      // a statement that cannot be reset is not worth keeping
+      ConnectionStatements.closeQuietly(statement);
+    }
+  }
+
+}
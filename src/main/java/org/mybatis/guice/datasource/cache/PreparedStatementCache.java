@@ -0,0 +1,153 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.datasource.cache;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+/**
+ * Caches prepared statements per physical connection, so that statements survive the close of the
+ * {@code SqlSession} that prepared them and are reused by the next session running on the same pooled connection.
+ * <p>
+ * The physical connection is discovered through {@link Connection#unwrap(Class)}: pools returning the physical
+ * connection from {@code unwrap}, like the MyBatis built-in {@code PooledDataSource}, share statements across
+ * checkouts, other pools still reuse statements within a checkout and should rather rely on their own statement cache.
+ * </p>
+ *
+ * @since 3.12
+ */
+public final class PreparedStatementCache {
+
+  private final int maxStatementsPerConnection;
+
+  private final Map<Connection, ConnectionStatements> connectionStatements = new IdentityHashMap<Connection, ConnectionStatements>();
+
+  private final AtomicLong hits = new AtomicLong();
+
+  private final AtomicLong misses = new AtomicLong();
+
+  private final AtomicLong evictions = new AtomicLong();
+
+  /**
+   * Instantiates a new prepared statement cache.
+   *
+   * @param maxStatementsPerConnection
+   *          the maximum number of statements kept open on each connection
+   */
+  public PreparedStatementCache(int maxStatementsPerConnection) {
+    if (maxStatementsPerConnection <= 0) {
+      throw new IllegalArgumentException("Parameter 'maxStatementsPerConnection' must be greater than 0");
+    }
+    this.maxStatementsPerConnection = maxStatementsPerConnection;
+  }
+
+  /**
+   * Wraps the given data source, so that the statements prepared on its connections go through this cache.
+   *
+   * @param dataSource
+   *          the data source
+   * @return the caching data source
+   */
+  public DataSource wrap(DataSource dataSource) {
+    return new CachingDataSource(dataSource, this);
+  }
+
+  ConnectionStatements statementsOf(Connection physicalConnection) {
+    synchronized (connectionStatements) {
+      ConnectionStatements statements = connectionStatements.get(physicalConnection);
+      if (statements == null) {
+        purgeClosedConnections();
+        statements = new ConnectionStatements(this);
+        connectionStatements.put(physicalConnection, statements);
+      }
+      return statements;
+    }
+  }
+
+  private void purgeClosedConnections() {
+    Iterator<Connection> connections = connectionStatements.keySet().iterator();
+    while (connections.hasNext()) {
+      try {
+        if (connections.next().isClosed()) {
+          connections.remove();
+        }
+      } catch (SQLException e) {
+        connections.remove();
+      }
+    }
+  }
+
+  int getMaxStatementsPerConnection() {
+    return maxStatementsPerConnection;
+  }
+
+  void hit() {
+    hits.incrementAndGet();
+  }
+
+  void miss() {
+    misses.incrementAndGet();
+  }
+
+  void evicted() {
+    evictions.incrementAndGet();
+  }
+
+  /**
+   * Gets the number of statements served from the cache.
+   *
+   * @return the number of cache hits
+   */
+  public long getHits() {
+    return hits.get();
+  }
+
+  /**
+   * Gets the number of statements that had to be prepared.
+   *
+   * @return the number of cache misses
+   */
+  public long getMisses() {
+    return misses.get();
+  }
+
+  /**
+   * Gets the number of statements closed to honor the cache bound.
+   *
+   * @return the number of evictions
+   */
+  public long getEvictions() {
+    return evictions.get();
+  }
+
+  /**
+   * Gets the number of physical connections currently tracked.
+   *
+   * @return the number of connections with cached statements
+   */
+  public int getConnectionCount() {
+    synchronized (connectionStatements) {
+      return connectionStatements.size();
+    }
+  }
+
+}
@@ -0,0 +1,59 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.datasource.cache;
+
+import java.util.Arrays;
+
+/**
+ * Identifies a prepared statement by the arguments of the {@code Connection.prepareStatement} variant that created it,
+ * and by the tenant it was prepared for.
+ */
+final class StatementKey {
+
+  private final Object[] arguments;
+
+  private final int hashCode;
+
+  StatementKey(String tenant, Object[] arguments) {
+    this.arguments = new Object[arguments.length + 1];
+    this.arguments[0] = tenant;
+    System.arraycopy(arguments, 0, this.arguments, 1, arguments.length);
+    this.hashCode = Arrays.deepHashCode(this.arguments);
+  }
+
+  @Override
+  public int hashCode() {
+    return hashCode;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (obj == null || getClass() != obj.getClass()) {
+      return false;
+    }
+    StatementKey other = (StatementKey) obj;
+    return hashCode == other.hashCode && Arrays.deepEquals(arguments, other.arguments);
+  }
+
+  @Override
+  public String toString() {
+    return Arrays.deepToString(arguments);
+  }
+
+}
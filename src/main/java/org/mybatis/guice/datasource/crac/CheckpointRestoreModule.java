@@ -0,0 +1,55 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.datasource.crac;
+
+import com.google.inject.AbstractModule;
+
+/**
+ * Installs a {@link DataSourceCheckpointResource} that closes the pool of the bound {@code DataSource} before a CRaC
+ * checkpoint and re-opens it after the restore.
+ *
+ * @since 3.12
+ */
+public final class CheckpointRestoreModule extends AbstractModule {
+
+  private final long drainTimeoutMillis;
+
+  /**
+   * Creates the module, waiting up to 10 seconds for the borrowed connections to be returned before a checkpoint.
+   */
+  public CheckpointRestoreModule() {
+    this(10000L);
+  }
+
+  /**
+   * Creates the module.
+   *
+   * @param drainTimeoutMillis
+   *          the time to wait for the borrowed connections to be returned before a checkpoint
+   */
+  public CheckpointRestoreModule(long drainTimeoutMillis) {
+    if (drainTimeoutMillis < 0) {
+      throw new IllegalArgumentException("Parameter 'drainTimeoutMillis' must not be negative");
+    }
+    this.drainTimeoutMillis = drainTimeoutMillis;
+  }
+
+  @Override
+  protected void configure() {
+    bind(DataSourceCheckpointResource.class).toInstance(new DataSourceCheckpointResource(drainTimeoutMillis));
+  }
+
+}
@@ -0,0 +1,371 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.datasource.crac;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.inject.Inject;
+import javax.sql.DataSource;
+
+import org.apache.ibatis.datasource.pooled.PooledDataSource;
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+import org.mybatis.guice.datasource.warmup.DataSourceWarmUp;
+import org.mybatis.guice.transactional.XASqlSessionManager;
+
+/**
+ * Closes the physical connections of the bound {@link DataSource} before a Coordinated Restore at Checkpoint (CRaC)
+ * checkpoint, and opens them again after the restore.
+ * <p>
+ * Before the checkpoint the pool is drained, waiting up to the drain timeout for the borrowed connections to be
+ * returned, its connections are closed and the global XA tokens are discarded; a pool still busy after the timeout, or
+ * one that cannot be closed and re-opened, fails the checkpoint. After the restore the pool re-opens its connections on
+ * demand, or immediately when a {@link DataSourceWarmUp} is bound.
+ * </p>
+ * <p>
+ * The pools of the bundled providers are each closed in their own way: the built-in pool closes its connections, C3P0
+ * is hard reset, Druid is restarted, the DBCP pools clear their idle connections and the BoneCP pool is shut down and
+ * replaced by a new one on the next connection. Other pools are restarted, hard reset or cleared, whichever they
+ * support.
+ * </p>
+ * <p>
+ * The resource registers itself with {@code org.crac.Core}, or {@code jdk.crac.Core} on a CRaC JDK, when the Injector
+ * is created; without a CRaC API on the classpath it is inert, but {@link #beforeCheckpoint()} and
+ * {@link #afterRestore()} can still be called directly.
+ * </p>
+ *
+ * @since 3.12
+ */
+public final class DataSourceCheckpointResource {
+
+  private static final String[] CORE_CLASSES = { "org.crac.Core", "jdk.crac.Core" };
+
+  private static final String[] EVICT_METHODS = { "restart", "hardReset", "clear" };
+
+  private static final String[] ACTIVE_COUNT_METHODS = { "getNumActive", "getActiveCount", "getNumBusyConnections",
+      "getTotalLeased" };
+
+  private final Log log = LogFactory.getLog(getClass());
+
+  private final long drainTimeoutMillis;
+
+  private final AtomicInteger checkpoints = new AtomicInteger();
+
+  private final AtomicInteger restores = new AtomicInteger();
+
+  private DataSource dataSource;
+
+  private DataSourceWarmUp warmUp;
+
+  // the CRaC context only holds its resources weakly
+  private Object registration;
+
+  DataSourceCheckpointResource(long drainTimeoutMillis) {
+    this.drainTimeoutMillis = drainTimeoutMillis;
+  }
+
+  /**
+   * Sets the warm-up run again after a restore.
+   *
+   * @param warmUp
+   *          the data source warm-up
+   */
+  @com.google.inject.Inject(optional = true)
+  public void setWarmUp(DataSourceWarmUp warmUp) {
+    this.warmUp = warmUp;
+  }
+
+  /**
+   * Registers the resource with the CRaC global context, if a CRaC API is available.
+   *
+   * @param dataSource
+   *          the data source to close before a checkpoint
+   */
+  @Inject
+  public void register(DataSource dataSource) {
+    this.dataSource = dataSource;
+    for (String coreClass : CORE_CLASSES) {
+      try {
+        Class<?> core = Class.forName(coreClass);
+        Class<?> resource = Class.forName(core.getPackage().getName() + ".Resource");
+        Object context = core.getMethod("getGlobalContext").invoke(null);
+        Object proxy = Proxy.newProxyInstance(resource.getClassLoader(), new Class<?>[] { resource },
+            new ResourceHandler());
+        context.getClass().getMethod("register", resource).invoke(context, proxy);
+        registration = proxy;
+        if (log.isDebugEnabled()) {
+          log.debug(String.format("Data source registered with %s", coreClass));
+        }
+        return;
+      } catch (ClassNotFoundException e) {
+        // try the next API
+      } catch (Exception e) {
+        log.warn(String.format("Could not register the data source with %s: %s", coreClass, e));
+        return;
+      }
+    }
+    if (log.isDebugEnabled()) {
+      log.debug("No CRaC API available, the data source is not registered for checkpoints");
+    }
+  }
+
+  /**
+   * Drains the pool and closes its connections.
+   *
+   * @throws Exception
+   *           if the pool does not drain within the timeout or cannot be closed
+   */
+  public synchronized void beforeCheckpoint() throws Exception {
+    long start = System.nanoTime();
+    drain();
+    if (!BundledPool.closeConnectionsOf(dataSource) && findMethod(ACTIVE_COUNT_METHODS) != null) {
+      Method evict = findMethod(EVICT_METHODS);
+      if (evict == null) {
+        throw new IllegalStateException(
+            String.format("Data source %s cannot be closed and re-opened", dataSource.getClass().getName()));
+      }
+      invoke(dataSource, evict);
+    }
+    int discarded = XASqlSessionManager.discardGlobalTokens();
+    if (discarded > 0) {
+      log.warn(String.format("Discarded %s global XA token(s) before checkpoint", discarded));
+    }
+    checkpoints.incrementAndGet();
+    if (log.isDebugEnabled()) {
+      log.debug(String.format("Data source closed for checkpoint in %s ms", (System.nanoTime() - start) / 1000000L));
+    }
+  }
+
+  /**
+   * Re-opens the pool connections, running the bound warm-up if any.
+   */
+  public synchronized void afterRestore() {
+    restores.incrementAndGet();
+    if (warmUp != null) {
+      warmUp.warmUp(dataSource);
+    }
+  }
+
+  private void drain() throws Exception {
+    long deadline = System.nanoTime() + drainTimeoutMillis * 1000000L;
+    int active;
+    while ((active = activeConnections()) > 0) {
+      if (System.nanoTime() - deadline >= 0) {
+        throw new IllegalStateException(String.format(
+            "Data source still has %s active connection(s) after %s ms, checkpoint refused", active,
+            drainTimeoutMillis));
+      }
+      Thread.sleep(10L);
+    }
+  }
+
+  private int activeConnections() throws Exception {
+    if (dataSource instanceof PooledDataSource) {
+      return ((PooledDataSource) dataSource).getPoolState().getActiveConnectionCount();
+    }
+    Method count = findMethod(ACTIVE_COUNT_METHODS);
+    return count == null ? 0 : ((Number) invoke(dataSource, count)).intValue();
+  }
+
+  private Method findMethod(String[] names) {
+    for (String name : names) {
+      try {
+        return dataSource.getClass().getMethod(name);
+      } catch (NoSuchMethodException e) {
+        // try the next name
+      }
+    }
+    return null;
+  }
+
+  private static Object invoke(Object target, Method method) throws Exception {
+    try {
+      return method.invoke(target);
+    } catch (InvocationTargetException e) {
+      Throwable cause = e.getCause();
+      throw cause instanceof Exception ? (Exception) cause : e;
+    }
+  }
+
+  /**
+   * @return true if the resource is registered with a CRaC API
+   */
+  public boolean isRegistered() {
+    return registration != null;
+  }
+
+  /**
+   * @return the number of checkpoints the data source was closed for
+   */
+  public int getCheckpoints() {
+    return checkpoints.get();
+  }
+
+  /**
+   * @return the number of restores the data source was re-opened after
+   */
+  public int getRestores() {
+    return restores.get();
+  }
+
+  private static Object invoke(Object target, String name) throws Exception {
+    return invoke(target, target.getClass().getMethod(name));
+  }
+
+  /**
+   * The pools of the bundled providers, matched by class name since their libraries are optional.
+   */
+  private enum BundledPool {
+
+    MYBATIS_POOLED("org.apache.ibatis.datasource.pooled.PooledDataSource") {
+      @Override
+      void closeConnections(Class<?> type, DataSource dataSource) {
+        ((PooledDataSource) dataSource).forceCloseAll();
+      }
+    },
+
+    MYBATIS_UNPOOLED("org.apache.ibatis.datasource.unpooled.UnpooledDataSource") {
+      @Override
+      void closeConnections(Class<?> type, DataSource dataSource) {
+        // no connection is kept open
+      }
+    },
+
+    C3P0("com.mchange.v2.c3p0.impl.AbstractPoolBackedDataSource") {
+      @Override
+      void closeConnections(Class<?> type, DataSource dataSource) throws Exception {
+        invoke(dataSource, "hardReset");
+      }
+    },
+
+    DRUID("com.alibaba.druid.pool.DruidDataSource") {
+      @Override
+      void closeConnections(Class<?> type, DataSource dataSource) throws Exception {
+        invoke(dataSource, "restart");
+      }
+    },
+
+    DBCP_BASIC("org.apache.commons.dbcp2.BasicDataSource") {
+      @Override
+      void closeConnections(Class<?> type, DataSource dataSource) throws Exception {
+        // close() cannot be undone, the idle connections of the pool are cleared instead
+        Method getConnectionPool = type.getDeclaredMethod("getConnectionPool");
+        getConnectionPool.setAccessible(true);
+        Object connectionPool = invoke(dataSource, getConnectionPool);
+        if (connectionPool != null) {
+          invoke(connectionPool, "clear");
+        }
+      }
+    },
+
+    DBCP_SHARED_POOL("org.apache.commons.dbcp2.datasources.SharedPoolDataSource") {
+      @Override
+      void closeConnections(Class<?> type, DataSource dataSource) throws Exception {
+        // close() cannot be undone, the idle connections of the keyed pool are cleared instead
+        Object pool = field(type, "pool").get(dataSource);
+        if (pool != null) {
+          invoke(pool, "clear");
+        }
+      }
+    },
+
+    DBCP_PER_USER_POOL("org.apache.commons.dbcp2.datasources.PerUserPoolDataSource") {
+      @Override
+      void closeConnections(Class<?> type, DataSource dataSource) throws Exception {
+        invoke(dataSource, "clear");
+      }
+    },
+
+    BONECP("com.jolbox.bonecp.BoneCPDataSource") {
+      @Override
+      void closeConnections(Class<?> type, DataSource dataSource) throws Exception {
+        // close() shuts the pool down for good, forgetting it makes the next connection create a new one
+        Field pool = field(type, "pool");
+        synchronized (dataSource) {
+          if (pool.get(dataSource) != null) {
+            invoke(dataSource, "close");
+            pool.set(dataSource, null);
+          }
+        }
+      }
+    };
+
+    private final String className;
+
+    BundledPool(String className) {
+      this.className = className;
+    }
+
+    /**
+     * Closes the connections of the pool, leaving it able to open new ones.
+     */
+    abstract void closeConnections(Class<?> type, DataSource dataSource) throws Exception;
+
+    /**
+     * Closes the connections of the given data source when it is one of the bundled pools.
+     *
+     * @return false if the data source is not a bundled pool
+     */
+    static boolean closeConnectionsOf(DataSource dataSource) throws Exception {
+      for (Class<?> type = dataSource.getClass(); type != null; type = type.getSuperclass()) {
+        for (BundledPool pool : values()) {
+          if (pool.className.equals(type.getName())) {
+            pool.closeConnections(type, dataSource);
+            return true;
+          }
+        }
+      }
+      return false;
+    }
+
+    static Field field(Class<?> type, String name) throws NoSuchFieldException {
+      Field field = type.getDeclaredField(name);
+      field.setAccessible(true);
+      return field;
+    }
+
+  }
+
+  private final class ResourceHandler implements InvocationHandler {
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      String name = method.getName();
+      if ("beforeCheckpoint".equals(name)) {
+        beforeCheckpoint();
+        return null;
+      }
+      if ("afterRestore".equals(name)) {
+        afterRestore();
+        return null;
+      }
+      if ("equals".equals(name)) {
+        return proxy == args[0];
+      }
+      if ("hashCode".equals(name)) {
+        return System.identityHashCode(proxy);
+      }
+      return DataSourceCheckpointResource.this.toString();
+    }
+
+  }
+
+}
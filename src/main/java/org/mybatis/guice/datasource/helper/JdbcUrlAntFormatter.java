@@ -25,6 +25,11 @@ import java.util.StringTokenizer;
 import javax.inject.Inject;
 import javax.inject.Provider;
 
+/**
+ * Formats a JDBC URL from a pattern with <code>${key|default}</code> placeholders, resolved from the Guice bindings,
+ * the system properties or the environment variables once the injector is set; the URL is built once when all the
+ * placeholders resolve to constants.
+ */
 public final class JdbcUrlAntFormatter implements Provider<String> {
 
   private static final String VAR_BEGIN = "$";
@@ -35,6 +40,10 @@ public final class JdbcUrlAntFormatter implements Provider<String> {
 
   private final List<KeyResolver> resolvers = new ArrayList<KeyResolver>();
 
+  private final int patternLength;
+
+  private String constantUrl;
+
   /**
    * Instantiates a new jdbc url ant formatter.
    *
@@ -42,6 +51,7 @@ public final class JdbcUrlAntFormatter implements Provider<String> {
    *          the pattern
    */
   public JdbcUrlAntFormatter(final String pattern) {
+    patternLength = pattern.length();
     int prev = 0;
     int pos;
     while ((pos = pattern.indexOf(VAR_BEGIN, prev)) >= 0) {
@@ -79,6 +89,9 @@ public final class JdbcUrlAntFormatter implements Provider<String> {
     if (prev < pattern.length()) {
       appenders.add(Providers.of(pattern.substring(prev)));
     }
+    if (resolvers.isEmpty()) {
+      constantUrl = format();
+    }
   }
 
   /**
@@ -89,14 +102,24 @@ public final class JdbcUrlAntFormatter implements Provider<String> {
    */
   @Inject
   public void setInjector(Injector injector) {
+    boolean constant = true;
     for (KeyResolver resolver : resolvers) {
       resolver.setInjector(injector);
+      constant &= resolver.isConstant();
     }
+    constantUrl = constant ? format() : null;
   }
 
   @Override
   public String get() {
-    StringBuilder buffer = new StringBuilder();
+    if (constantUrl != null) {
+      return constantUrl;
+    }
+    return format();
+  }
+
+  private String format() {
+    StringBuilder buffer = new StringBuilder(patternLength + 16);
     for (Provider<String> appender : appenders) {
       buffer.append(appender.get());
     }
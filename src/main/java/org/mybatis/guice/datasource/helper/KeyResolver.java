@@ -17,31 +17,75 @@ package org.mybatis.guice.datasource.helper;
 
 import static com.google.inject.name.Names.named;
 
+import com.google.inject.Binding;
 import com.google.inject.Injector;
 import com.google.inject.Key;
+import com.google.inject.spi.InstanceBinding;
 
-import javax.inject.Inject;
 import javax.inject.Provider;
 
+/**
+ * Resolves a <code>${key|default}</code> placeholder, looking in order for a Guice binding named after the key, a
+ * system property, an environment variable named after the key (as is, or upper-cased with dots and dashes replaced by
+ * underscores) and the default value.
+ * <p>
+ * The sources are looked up once, when the injector is set; only a binding that is not a constant is resolved at each
+ * call.
+ * </p>
+ */
 final class KeyResolver implements Provider<String> {
 
+  private final String name;
+
   private final Key<String> key;
 
   private final String defaultValue;
 
   private final String toString;
 
-  @Inject
-  private Injector injector;
+  private Provider<String> provider;
+
+  private String value;
 
   public KeyResolver(final String key, final String defaultValue) {
+    this.name = key;
     this.key = Key.get(String.class, named(key));
     this.defaultValue = defaultValue;
     toString = "${" + key + "}";
   }
 
   public void setInjector(Injector injector) {
-    this.injector = injector;
+    provider = null;
+    value = null;
+
+    Binding<String> binding = injector.getExistingBinding(key);
+    if (binding instanceof InstanceBinding) {
+      value = ((InstanceBinding<String>) binding).getInstance();
+    } else if (binding != null) {
+      provider = binding.getProvider();
+    } else {
+      value = lookupProperty();
+    }
+  }
+
+  private String lookupProperty() {
+    String property = System.getProperty(name);
+    if (property == null) {
+      property = System.getenv(name);
+    }
+    if (property == null) {
+      property = System.getenv(name.toUpperCase().replace('.', '_').replace('-', '_'));
+    }
+    return property;
+  }
+
+  /**
+   * Tells whether the resolved value is not going to change.
+   *
+   * @return true if the value is resolved once for all
+   */
+  boolean isConstant() {
+    return provider == null;
   }
 
   /**
@@ -49,14 +93,24 @@ final class KeyResolver implements Provider<String> {
    */
   @Override
   public String get() {
-    try {
-      return injector.getInstance(key);
-    } catch (Throwable e) {
-      if (defaultValue != null) {
-        return defaultValue;
+    if (provider != null) {
+      try {
+        return provider.get();
+      } catch (RuntimeException e) {
+        return fallback();
       }
-      return toString;
     }
+    if (value != null) {
+      return value;
+    }
+    return fallback();
+  }
+
+  private String fallback() {
+    if (defaultValue != null) {
+      return defaultValue;
+    }
+    return toString;
   }
 
   @Override
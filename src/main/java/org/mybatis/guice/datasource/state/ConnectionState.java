@@ -0,0 +1,44 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.datasource.state;
+
+/**
+ * The state last applied to, or read from, one physical connection; a null value means unknown.
+ * <p>
+ * A connection is used by one thread at a time, the pool publishing the state from one checkout to the next.
+ * </p>
+ */
+final class ConnectionState {
+
+  Integer transactionIsolation;
+
+  Boolean autoCommit;
+
+  Boolean readOnly;
+
+  /**
+   * The catalog, valid only when {@link #catalogKnown} is set, since null is a legal catalog.
+   */
+  String catalog;
+
+  boolean catalogKnown;
+
+  void forgetCatalog() {
+    catalog = null;
+    catalogKnown = false;
+  }
+
+}
@@ -0,0 +1,146 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.datasource.state;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import org.apache.ibatis.datasource.pooled.PooledDataSource;
+import org.apache.ibatis.datasource.unpooled.UnpooledDataSource;
+import org.mybatis.guice.datasource.tenant.TenantSchemaRouter;
+
+/**
+ * Remembers the isolation, auto-commit, read-only and catalog last applied to each physical connection, so that the
+ * calls setting a value the connection already has, and the calls reading a known value, never reach the driver.
+ * <p>
+ * Each {@code SqlSession} sets the isolation and the auto-commit mode of the connection it checks out, and resets the
+ * auto-commit mode when it closes; on several drivers each of these calls is a network round trip, even when the value
+ * does not change. The state survives across checkouts for the MyBatis built-in {@code PooledDataSource}, which does
+ * not alter the connections it pools, the physical connection being discovered through
+ * {@link Connection#unwrap(Class)}. Other pools restore the state of the connections on their own, behind the
+ * wrapper, so their connections start each checkout with an unknown state and only the redundant calls made within a
+ * checkout are saved. The catalog is forgotten at each checkout when the connections are routed by a
+ * {@link TenantSchemaRouter}. State changed by plain SQL statements, such as {@code SET TRANSACTION}, is not seen.
+ * </p>
+ *
+ * @since 3.12
+ */
+public final class ConnectionStateCache {
+
+  private final Map<Connection, ConnectionState> connectionStates = Collections
+      .synchronizedMap(new WeakHashMap<Connection, ConnectionState>());
+
+  private final AtomicLong skippedCalls = new AtomicLong();
+
+  private final AtomicLong forwardedCalls = new AtomicLong();
+
+  /**
+   * Not injectable on its own: the cache applies to the environment only when bound explicitly.
+   */
+  private ConnectionStateCache() {
+  }
+
+  /**
+   * Creates an empty connection state cache.
+   *
+   * @return the connection state cache
+   */
+  public static ConnectionStateCache create() {
+    return new ConnectionStateCache();
+  }
+
+  /**
+   * Wraps the given data source, so that the state of its connections goes through this cache.
+   *
+   * @param dataSource
+   *          the data source
+   * @return the state caching data source
+   */
+  public DataSource wrap(DataSource dataSource) {
+    boolean keepsState = isWrapperFor(dataSource, PooledDataSource.class)
+        || isWrapperFor(dataSource, UnpooledDataSource.class);
+    boolean routesCatalog = false;
+    if (isWrapperFor(dataSource, TenantSchemaRouter.class)) {
+      try {
+        routesCatalog = dataSource.unwrap(TenantSchemaRouter.class).getMode() == TenantSchemaRouter.Mode.CATALOG;
+      } catch (SQLException e) {
+        routesCatalog = true;
+      }
+    }
+    return new StateCachingDataSource(dataSource, this, keepsState, routesCatalog);
+  }
+
+  private static boolean isWrapperFor(DataSource dataSource, Class<?> type) {
+    if (type.isInstance(dataSource)) {
+      return true;
+    }
+    try {
+      return dataSource.isWrapperFor(type);
+    } catch (SQLException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Returns the state of a physical connection, created unknown the first time.
+   */
+  ConnectionState stateOf(Connection physicalConnection) {
+    synchronized (connectionStates) {
+      ConnectionState state = connectionStates.get(physicalConnection);
+      if (state == null) {
+        state = new ConnectionState();
+        connectionStates.put(physicalConnection, state);
+      }
+      return state;
+    }
+  }
+
+  void skipped() {
+    skippedCalls.incrementAndGet();
+  }
+
+  void forwarded() {
+    forwardedCalls.incrementAndGet();
+  }
+
+  /**
+   * @return the number of calls answered or skipped without reaching the driver, that is the round trips saved
+   */
+  public long getSkippedCalls() {
+    return skippedCalls.get();
+  }
+
+  /**
+   * @return the number of state calls that reached the driver
+   */
+  public long getForwardedCalls() {
+    return forwardedCalls.get();
+  }
+
+  /**
+   * @return the number of physical connections whose state is tracked across checkouts
+   */
+  public int getConnectionCount() {
+    return connectionStates.size();
+  }
+
+}
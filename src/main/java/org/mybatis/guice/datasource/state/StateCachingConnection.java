@@ -0,0 +1,183 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.datasource.state;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+
+import org.apache.ibatis.reflection.ExceptionUtil;
+
+/**
+ * The connection handed to the caller: the isolation, auto-commit, read-only and catalog calls are answered from the
+ * {@link ConnectionState} of the underlying physical connection when its value is known.
+ */
+final class StateCachingConnection implements InvocationHandler {
+
+  private static final Class<?>[] INTERFACES = new Class<?>[] { Connection.class };
+
+  private final Connection connection;
+
+  private final ConnectionState state;
+
+  private final ConnectionStateCache cache;
+
+  private StateCachingConnection(Connection connection, ConnectionState state, ConnectionStateCache cache) {
+    this.connection = connection;
+    this.state = state;
+    this.cache = cache;
+  }
+
+  static Connection newProxy(Connection connection, ConnectionState state, ConnectionStateCache cache) {
+    return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), INTERFACES,
+        new StateCachingConnection(connection, state, cache));
+  }
+
+  @Override
+  public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+    String name = method.getName();
+    int parameters = args == null ? 0 : args.length;
+    try {
+      if (parameters == 0) {
+        if ("getTransactionIsolation".equals(name)) {
+          return getTransactionIsolation(method);
+        }
+        if ("getAutoCommit".equals(name)) {
+          return getAutoCommit(method);
+        }
+        if ("isReadOnly".equals(name)) {
+          return isReadOnly(method);
+        }
+        if ("getCatalog".equals(name)) {
+          return getCatalog(method);
+        }
+      } else if (parameters == 1) {
+        if ("setTransactionIsolation".equals(name)) {
+          setTransactionIsolation(method, (Integer) args[0]);
+          return null;
+        }
+        if ("setAutoCommit".equals(name)) {
+          setAutoCommit(method, (Boolean) args[0]);
+          return null;
+        }
+        if ("setReadOnly".equals(name)) {
+          setReadOnly(method, (Boolean) args[0]);
+          return null;
+        }
+        if ("setCatalog".equals(name)) {
+          setCatalog(method, (String) args[0]);
+          return null;
+        }
+      }
+      return method.invoke(connection, args);
+    } catch (InvocationTargetException e) {
+      throw ExceptionUtil.unwrapThrowable(e);
+    }
+  }
+
+  private Object getTransactionIsolation(Method method) throws Exception {
+    if (state.transactionIsolation != null) {
+      cache.skipped();
+      return state.transactionIsolation;
+    }
+    cache.forwarded();
+    state.transactionIsolation = (Integer) method.invoke(connection);
+    return state.transactionIsolation;
+  }
+
+  private void setTransactionIsolation(Method method, Integer level) throws Exception {
+    if (level.equals(state.transactionIsolation)) {
+      cache.skipped();
+      return;
+    }
+    cache.forwarded();
+    state.transactionIsolation = null;
+    method.invoke(connection, level);
+    state.transactionIsolation = level;
+  }
+
+  private Object getAutoCommit(Method method) throws Exception {
+    if (state.autoCommit != null) {
+      cache.skipped();
+      return state.autoCommit;
+    }
+    cache.forwarded();
+    state.autoCommit = (Boolean) method.invoke(connection);
+    return state.autoCommit;
+  }
+
+  private void setAutoCommit(Method method, Boolean autoCommit) throws Exception {
+    if (autoCommit.equals(state.autoCommit)) {
+      cache.skipped();
+      return;
+    }
+    cache.forwarded();
+    state.autoCommit = null;
+    method.invoke(connection, autoCommit);
+    state.autoCommit = autoCommit;
+  }
+
+  private Object isReadOnly(Method method) throws Exception {
+    if (state.readOnly != null) {
+      cache.skipped();
+      return state.readOnly;
+    }
+    cache.forwarded();
+    state.readOnly = (Boolean) method.invoke(connection);
+    return state.readOnly;
+  }
+
+  private void setReadOnly(Method method, Boolean readOnly) throws Exception {
+    if (readOnly.equals(state.readOnly)) {
+      cache.skipped();
+      return;
+    }
+    cache.forwarded();
+    state.readOnly = null;
+    method.invoke(connection, readOnly);
+    state.readOnly = readOnly;
+  }
+
+  private Object getCatalog(Method method) throws Exception {
+    if (state.catalogKnown) {
+      cache.skipped();
+      return state.catalog;
+    }
+    cache.forwarded();
+    String catalog = (String) method.invoke(connection);
+    state.catalog = catalog;
+    state.catalogKnown = true;
+    return catalog;
+  }
+
+  private void setCatalog(Method method, String catalog) throws Exception {
+    if (state.catalogKnown && catalog != null && catalog.equals(state.catalog)) {
+      cache.skipped();
+      return;
+    }
+    cache.forwarded();
+    state.forgetCatalog();
+    method.invoke(connection, catalog);
+    // a null catalog is resolved by the driver, read it back the next time it is needed
+    if (catalog != null) {
+      state.catalog = catalog;
+      state.catalogKnown = true;
+    }
+  }
+
+}
@@ -0,0 +1,123 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.datasource.state;
+
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+/**
+ * Decorates a data source, routing the state calls made on its connections through a {@link ConnectionStateCache}.
+ */
+final class StateCachingDataSource implements DataSource {
+
+  private final DataSource dataSource;
+
+  private final ConnectionStateCache cache;
+
+  /**
+   * Whether the pool leaves the connection state alone between checkouts.
+   */
+  private final boolean keepsState;
+
+  /**
+   * Whether the catalog of the connections is switched at checkout, behind the wrapper.
+   */
+  private final boolean routesCatalog;
+
+  StateCachingDataSource(DataSource dataSource, ConnectionStateCache cache, boolean keepsState,
+      boolean routesCatalog) {
+    this.dataSource = dataSource;
+    this.cache = cache;
+    this.keepsState = keepsState;
+    this.routesCatalog = routesCatalog;
+  }
+
+  @Override
+  public Connection getConnection() throws SQLException {
+    return newProxy(dataSource.getConnection());
+  }
+
+  @Override
+  public Connection getConnection(String username, String password) throws SQLException {
+    return newProxy(dataSource.getConnection(username, password));
+  }
+
+  private Connection newProxy(Connection connection) {
+    ConnectionState state;
+    if (keepsState) {
+      Connection physicalConnection;
+      try {
+        physicalConnection = connection.unwrap(Connection.class);
+      } catch (SQLException e) {
+        physicalConnection = connection;
+      }
+      state = cache.stateOf(physicalConnection);
+      if (routesCatalog) {
+        state.forgetCatalog();
+      }
+    } else {
+      state = new ConnectionState();
+    }
+    return StateCachingConnection.newProxy(connection, state, cache);
+  }
+
+  @Override
+  public PrintWriter getLogWriter() throws SQLException {
+    return dataSource.getLogWriter();
+  }
+
+  @Override
+  public void setLogWriter(PrintWriter out) throws SQLException {
+    dataSource.setLogWriter(out);
+  }
+
+  @Override
+  public void setLoginTimeout(int seconds) throws SQLException {
+    dataSource.setLoginTimeout(seconds);
+  }
+
+  @Override
+  public int getLoginTimeout() throws SQLException {
+    return dataSource.getLoginTimeout();
+  }
+
+  @Override
+  public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+    return dataSource.getParentLogger();
+  }
+
+  @Override
+  public <T> T unwrap(Class<T> iface) throws SQLException {
+    if (iface.isInstance(this)) {
+      return iface.cast(this);
+    }
+    if (iface.isInstance(dataSource)) {
+      return iface.cast(dataSource);
+    }
+    return dataSource.unwrap(iface);
+  }
+
+  @Override
+  public boolean isWrapperFor(Class<?> iface) throws SQLException {
+    return iface.isInstance(this) || iface.isInstance(dataSource) || dataSource.isWrapperFor(iface);
+  }
+
+}
@@ -0,0 +1,114 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.datasource.tenant;
+
+/**
+ * The tenant the current thread works for, read by the {@link TenantSchemaRouter} when a connection is checked out.
+ * <p>
+ * It is set by {@link org.mybatis.guice.transactional.Transactional} methods declaring a {@link Tenant} parameter, or
+ * programmatically:
+ * </p>
+ *
+ * <pre>
+ * String previous = TenantContext.set("acme");
+ * try {
+ *   ...
+ * } finally {
+ *   TenantContext.restore(previous);
+ * }
+ * </pre>
+ *
+ * @since 3.12
+ */
+public final class TenantContext {
+
+  private static final ThreadLocal<String> CURRENT = new ThreadLocal<String>();
+
+  private TenantContext() {
+    // do nothing
+  }
+
+  /**
+   * Returns the tenant of the current thread.
+   *
+   * @return the tenant, null if none is set
+   */
+  public static String current() {
+    return CURRENT.get();
+  }
+
+  /**
+   * Sets the tenant of the current thread.
+   *
+   * @param tenant
+   *          the tenant
+   * @return the previous tenant, to be passed to {@link #restore(String)}
+   */
+  public static String set(String tenant) {
+    if (tenant == null) {
+      throw new IllegalArgumentException("Parameter 'tenant' must be not null");
+    }
+    String previous = CURRENT.get();
+    CURRENT.set(tenant);
+    return previous;
+  }
+
+  /**
+   * Runs a task for the given tenant, restoring the tenant of the current thread afterwards.
+   *
+   * @param tenant
+   *          the tenant, null to run the task for no tenant
+   * @param task
+   *          the task
+   */
+  public static void runAs(String tenant, Runnable task) {
+    String previous = CURRENT.get();
+    restore(tenant);
+    try {
+      task.run();
+    } finally {
+      restore(previous);
+    }
+  }
+
+  /**
+   * Returns a task running the given one for the tenant of the current thread, so that the tenant follows the work
+   * handed over to another thread.
+   *
+   * @param task
+   *          the task
+   * @return the task bound to the current tenant
+   */
+  public static Runnable wrap(final Runnable task) {
+    final String tenant = CURRENT.get();
+    return () -> runAs(tenant, task);
+  }
+
+  /**
+   * Sets again the tenant that was current before {@link #set(String)}.
+   *
+   * @param previous
+   *          the previous tenant, may be null
+   */
+  public static void restore(String previous) {
+    if (previous == null) {
+      CURRENT.remove();
+    } else {
+      CURRENT.set(previous);
+    }
+  }
+
+}
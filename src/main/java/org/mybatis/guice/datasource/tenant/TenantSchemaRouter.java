@@ -0,0 +1,198 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.datasource.tenant;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import org.apache.ibatis.datasource.pooled.PooledDataSource;
+import org.apache.ibatis.datasource.unpooled.UnpooledDataSource;
+
+/**
+ * Routes the connections of a shared pool to the schema, or catalog, of the tenant found in the {@link TenantContext}
+ * when they are checked out, so that all the tenants hosted on a server share one pool.
+ * <p>
+ * For the MyBatis built-in {@code PooledDataSource} and {@code UnpooledDataSource}, which do not alter the connections
+ * they hand out, the schema is switched on the physical connection, discovered through
+ * {@link Connection#unwrap(Class)}, and remembered per physical connection: checking out a connection already on the
+ * tenant schema costs no round trip. Other pools may reset the schema of their connections behind the wrapper, so
+ * their connections are switched at each checkout, through the pool connection. Connections checked out without a
+ * tenant are routed to the default schema, or rejected when there is none.
+ * </p>
+ *
+ * @since 3.12
+ */
+public final class TenantSchemaRouter {
+
+  /**
+   * How the tenant is selected on a connection.
+   */
+  public enum Mode {
+
+    /**
+     * Tenants are schemas, switched with {@link Connection#setSchema(String)}.
+     */
+    SCHEMA,
+
+    /**
+     * Tenants are catalogs, switched with {@link Connection#setCatalog(String)}, as done by MySQL.
+     */
+    CATALOG
+
+  }
+
+  private final Mode mode;
+
+  private final String defaultSchema;
+
+  private final Map<Connection, String> currentSchemas = Collections
+      .synchronizedMap(new WeakHashMap<Connection, String>());
+
+  private final AtomicLong switches = new AtomicLong();
+
+  private final AtomicLong skippedSwitches = new AtomicLong();
+
+  /**
+   * Creates a router rejecting the connections checked out without a tenant.
+   *
+   * @param mode
+   *          how the tenant is selected on a connection
+   */
+  public TenantSchemaRouter(Mode mode) {
+    this(mode, null);
+  }
+
+  /**
+   * Creates a router.
+   *
+   * @param mode
+   *          how the tenant is selected on a connection
+   * @param defaultSchema
+   *          the schema of the connections checked out without a tenant, null to reject them
+   */
+  public TenantSchemaRouter(Mode mode, String defaultSchema) {
+    if (mode == null) {
+      throw new IllegalArgumentException("Parameter 'mode' must be not null");
+    }
+    this.mode = mode;
+    this.defaultSchema = defaultSchema;
+  }
+
+  /**
+   * Decorates a data source so that its connections are routed to the current tenant schema.
+   *
+   * @param dataSource
+   *          the shared data source
+   * @return the routing data source
+   */
+  public DataSource wrap(DataSource dataSource) {
+    boolean keepsSchema = isWrapperFor(dataSource, PooledDataSource.class)
+        || isWrapperFor(dataSource, UnpooledDataSource.class);
+    return new TenantRoutingDataSource(dataSource, this, keepsSchema);
+  }
+
+  private static boolean isWrapperFor(DataSource dataSource, Class<?> type) {
+    if (type.isInstance(dataSource)) {
+      return true;
+    }
+    try {
+      return dataSource.isWrapperFor(type);
+    } catch (SQLException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Switches a checked out connection to the schema of the current tenant, unless it is known to be already there.
+   *
+   * @param connection
+   *          the checked out connection
+   * @param keepsSchema
+   *          whether the pool hands out its connections unchanged, so that their schema can be remembered
+   * @return the same connection
+   * @throws SQLException
+   *           if the schema cannot be switched
+   */
+  Connection route(Connection connection, boolean keepsSchema) throws SQLException {
+    String schema = TenantContext.current();
+    if (schema == null) {
+      schema = defaultSchema;
+    }
+    if (schema == null) {
+      throw new IllegalStateException("No tenant set in the TenantContext and no default schema to route to");
+    }
+
+    if (!keepsSchema) {
+      setSchema(connection, schema);
+      return connection;
+    }
+
+    Connection physicalConnection;
+    try {
+      physicalConnection = connection.unwrap(Connection.class);
+    } catch (SQLException e) {
+      physicalConnection = connection;
+    }
+
+    if (schema.equals(currentSchemas.get(physicalConnection))) {
+      skippedSwitches.incrementAndGet();
+      return connection;
+    }
+
+    currentSchemas.remove(physicalConnection);
+    setSchema(physicalConnection, schema);
+    currentSchemas.put(physicalConnection, schema);
+    return connection;
+  }
+
+  private void setSchema(Connection connection, String schema) throws SQLException {
+    if (mode == Mode.SCHEMA) {
+      connection.setSchema(schema);
+    } else {
+      connection.setCatalog(schema);
+    }
+    switches.incrementAndGet();
+  }
+
+  public Mode getMode() {
+    return mode;
+  }
+
+  public String getDefaultSchema() {
+    return defaultSchema;
+  }
+
+  /**
+   * @return the number of checkouts that switched the connection schema
+   */
+  public long getSwitches() {
+    return switches.get();
+  }
+
+  /**
+   * @return the number of checkouts of a connection known to be already on the tenant schema
+   */
+  public long getSkippedSwitches() {
+    return skippedSwitches.get();
+  }
+
+}
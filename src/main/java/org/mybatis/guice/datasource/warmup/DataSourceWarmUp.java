@@ -0,0 +1,296 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.datasource.warmup;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.inject.Inject;
+import javax.sql.DataSource;
+
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+
+/**
+ * Opens the configured number of connections in parallel, validates them and prepares the hot statements, so that the
+ * pool behind the bound {@link DataSource} is filled before the first request.
+ * <p>
+ * The warm-up runs while the Injector is created, and again after each restore when a checkpoint module is
+ * installed; the outcome of the last run is available through the readiness methods.
+ * </p>
+ *
+ * @since 3.12
+ */
+public final class DataSourceWarmUp {
+
+  /**
+   * The getters of the maximum pool size of the supported pools: the MyBatis built-in pool, HikariCP, DBCP, C3P0 and
+   * Druid.
+   */
+  private static final String[] POOL_SIZE_GETTERS = { "getPoolMaximumActiveConnections", "getMaximumPoolSize",
+      "getMaxTotal", "getMaxPoolSize", "getMaxActive" };
+
+  private final Log log = LogFactory.getLog(getClass());
+
+  private final int connections;
+
+  private final int threads;
+
+  private final long timeoutMillis;
+
+  private final String validationQuery;
+
+  private final List<String> statements;
+
+  private volatile List<Throwable> failures = Collections.emptyList();
+
+  private volatile int targetConnections;
+
+  private volatile int warmedConnections;
+
+  private volatile long elapsedMillis;
+
+  DataSourceWarmUp(int connections, int threads, long timeoutMillis, String validationQuery, List<String> statements) {
+    this.connections = connections;
+    this.threads = threads;
+    this.timeoutMillis = timeoutMillis;
+    this.validationQuery = validationQuery;
+    this.statements = statements;
+    this.targetConnections = connections;
+  }
+
+  /**
+   * Warms the given data source up.
+   *
+   * @param dataSource
+   *          the data source to warm up
+   */
+  @Inject
+  public void warmUp(final DataSource dataSource) {
+    long start = System.nanoTime();
+    int target = connections;
+    int poolSize = poolSize(dataSource);
+    if (poolSize > 0 && poolSize < target) {
+      // holding more connections than the pool can lend would block until the timeout
+      log.warn("Data source warm-up asked for " + connections + " connection(s), the pool holds at most " + poolSize);
+      target = poolSize;
+    }
+
+    List<Throwable> runFailures = new ArrayList<Throwable>();
+    final OpenedConnections opened = new OpenedConnections();
+    ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, target), new WarmUpThreadFactory());
+    try {
+      List<Future<?>> futures = new ArrayList<Future<?>>(target);
+      for (int i = 0; i < target; i++) {
+        futures.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws SQLException {
+            opened.add(openConnection(dataSource));
+            return null;
+          }
+        }));
+      }
+
+      // connections are all held until the last one is open, forcing the pool to create distinct connections
+      long deadline = start + MILLISECONDS.toNanos(timeoutMillis);
+      for (Future<?> future : futures) {
+        try {
+          future.get(Math.max(deadline - System.nanoTime(), 0L), NANOSECONDS);
+        } catch (ExecutionException e) {
+          runFailures.add(e.getCause());
+        } catch (TimeoutException e) {
+          runFailures.add(new TimeoutException("Data source warm-up timed out after " + timeoutMillis + " ms"));
+          break;
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          runFailures.add(e);
+          break;
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+      int warmed = opened.closeAll();
+      targetConnections = target;
+      warmedConnections = warmed;
+      failures = Collections.unmodifiableList(runFailures);
+      elapsedMillis = (System.nanoTime() - start) / 1000000L;
+    }
+
+    if (isReady()) {
+      if (log.isDebugEnabled()) {
+        log.debug("Data source warmed up with " + warmedConnections + " connection(s) in " + elapsedMillis + " ms");
+      }
+    } else {
+      log.warn("Data source warm-up opened " + warmedConnections + " of " + target + " connection(s) in "
+          + elapsedMillis + " ms, first failure: " + runFailures.get(0));
+    }
+  }
+
+  /**
+   * Reads the maximum size of the pool behind the data source, through the getter of the supported pools.
+   *
+   * @return the maximum pool size, 0 if unknown or unbounded
+   */
+  private static int poolSize(DataSource dataSource) {
+    for (String getter : POOL_SIZE_GETTERS) {
+      try {
+        Object size = dataSource.getClass().getMethod(getter).invoke(dataSource);
+        if (size instanceof Integer) {
+          return Math.max((Integer) size, 0);
+        }
+      } catch (NoSuchMethodException e) {
+        // not this pool
+      } catch (Exception e) {
+        return 0;
+      }
+    }
+    return 0;
+  }
+
+  private Connection openConnection(DataSource dataSource) throws SQLException {
+    Connection connection = dataSource.getConnection();
+    try {
+      if (validationQuery != null) {
+        Statement statement = connection.createStatement();
+        try {
+          statement.execute(validationQuery);
+        } finally {
+          statement.close();
+        }
+      }
+      for (String sql : statements) {
+        PreparedStatement statement = connection.prepareStatement(sql);
+        statement.close();
+      }
+      return connection;
+    } catch (SQLException e) {
+      close(connection);
+      throw e;
+    } catch (RuntimeException e) {
+      close(connection);
+      throw e;
+    }
+  }
+
+  private void close(Connection connection) {
+    try {
+      connection.close();
+    } catch (SQLException e) {
+      // close quietly
+    }
+  }
+
+  /**
+   * Checks whether all the configured connections, at most the pool maximum size, have been opened and validated
+   * before the timeout.
+   *
+   * @return true if the warm-up succeeded
+   */
+  public boolean isReady() {
+    return failures.isEmpty() && warmedConnections == targetConnections;
+  }
+
+  /**
+   * Gets the number of connections opened and validated.
+   *
+   * @return the number of connections opened and validated
+   */
+  public int getWarmedConnections() {
+    return warmedConnections;
+  }
+
+  /**
+   * Gets the warm-up duration.
+   *
+   * @return the warm-up duration in milliseconds
+   */
+  public long getElapsedMillis() {
+    return elapsedMillis;
+  }
+
+  /**
+   * Gets the errors raised while opening or validating the connections.
+   *
+   * @return the errors raised during the warm-up
+   */
+  public List<Throwable> getFailures() {
+    return failures;
+  }
+
+  /**
+   * The connections opened by the warm-up threads, held until the last one is open. A connection opened once the
+   * warm-up gave up waiting is closed at once instead of being held.
+   */
+  private final class OpenedConnections {
+
+    private final List<Connection> connections = new ArrayList<Connection>();
+
+    private boolean closed;
+
+    void add(Connection connection) {
+      synchronized (this) {
+        if (!closed) {
+          connections.add(connection);
+          return;
+        }
+      }
+      close(connection);
+    }
+
+    int closeAll() {
+      List<Connection> held;
+      synchronized (this) {
+        closed = true;
+        held = new ArrayList<Connection>(connections);
+      }
+      for (Connection connection : held) {
+        close(connection);
+      }
+      return held.size();
+    }
+
+  }
+
+  private static final class WarmUpThreadFactory implements ThreadFactory {
+
+    private final AtomicInteger count = new AtomicInteger();
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, "mybatis-warmup-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+
+  }
+
+}
@@ -0,0 +1,148 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.datasource.warmup;
+
+import com.google.inject.AbstractModule;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Installs a {@link DataSourceWarmUp} that fills the pool of the bound {@code DataSource} when the Injector is created.
+ *
+ * @since 3.12
+ */
+public final class DataSourceWarmUpModule extends AbstractModule {
+
+  private final DataSourceWarmUp warmUp;
+
+  private DataSourceWarmUpModule(DataSourceWarmUp warmUp) {
+    this.warmUp = warmUp;
+  }
+
+  @Override
+  protected void configure() {
+    bind(DataSourceWarmUp.class).toInstance(warmUp);
+  }
+
+  public static final class Builder {
+
+    private int connections = 1;
+
+    private int threads;
+
+    private long timeoutMillis = 30000L;
+
+    private String validationQuery;
+
+    private final List<String> statements = new ArrayList<String>();
+
+    /**
+     * Sets the number of connections to open, usually the pool minimum size; capped at the pool maximum size when the
+     * pool exposes it.
+     *
+     * @param connections
+     *          the number of connections to open
+     * @return the builder
+     */
+    public Builder setConnections(int connections) {
+      if (connections <= 0) {
+        throw new IllegalArgumentException("Parameter 'connections' must be greater than 0");
+      }
+      this.connections = connections;
+      return this;
+    }
+
+    /**
+     * Sets the number of threads opening the connections, defaults to the number of connections.
+     *
+     * @param threads
+     *          the number of threads
+     * @return the builder
+     */
+    public Builder setThreads(int threads) {
+      if (threads <= 0) {
+        throw new IllegalArgumentException("Parameter 'threads' must be greater than 0");
+      }
+      this.threads = threads;
+      return this;
+    }
+
+    /**
+     * Sets how long the Injector creation waits for the connections, 30 seconds by default; the connections not open
+     * by then are reported as a failure.
+     *
+     * @param timeout
+     *          the timeout
+     * @param unit
+     *          the timeout unit
+     * @return the builder
+     */
+    public Builder setTimeout(long timeout, TimeUnit unit) {
+      if (timeout <= 0) {
+        throw new IllegalArgumentException("Parameter 'timeout' must be greater than 0");
+      }
+      if (unit == null) {
+        throw new IllegalArgumentException("Parameter 'unit' must not be null");
+      }
+      this.timeoutMillis = unit.toMillis(timeout);
+      return this;
+    }
+
+    /**
+     * Sets the query executed on each opened connection.
+     *
+     * @param validationQuery
+     *          the validation query
+     * @return the builder
+     */
+    public Builder setValidationQuery(String validationQuery) {
+      this.validationQuery = validationQuery;
+      return this;
+    }
+
+    /**
+     * Adds statements to prepare on each opened connection.
+     *
+     * @param statements
+     *          the SQL of the statements to prepare
+     * @return the builder
+     */
+    public Builder addStatements(String... statements) {
+      if (statements == null) {
+        throw new IllegalArgumentException("Parameter 'statements' must not be null");
+      }
+      this.statements.addAll(Arrays.asList(statements));
+      return this;
+    }
+
+    /**
+     * Creates the module.
+     *
+     * @return the data source warm-up module
+     */
+    public DataSourceWarmUpModule create() {
+      int poolThreads = threads > 0 ? threads : connections;
+      return new DataSourceWarmUpModule(new DataSourceWarmUp(connections, poolThreads, timeoutMillis, validationQuery,
+          Collections.unmodifiableList(new ArrayList<String>(statements))));
+    }
+
+  }
+
+}
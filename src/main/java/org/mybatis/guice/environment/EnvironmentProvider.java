@@ -23,6 +23,9 @@ import javax.sql.DataSource;
 
 import org.apache.ibatis.mapping.Environment;
 import org.apache.ibatis.transaction.TransactionFactory;
+import org.mybatis.guice.datasource.cache.PreparedStatementCache;
+import org.mybatis.guice.datasource.state.ConnectionStateCache;
+import org.mybatis.guice.datasource.tenant.TenantSchemaRouter;
 
 /**
  * Provides the myBatis Environment.
@@ -43,6 +46,24 @@ public final class EnvironmentProvider implements Provider<Environment> {
   @Inject
   private DataSource dataSource;
 
+  /**
+   * The optional prepared statement cache the DataSource is wrapped with.
+   */
+  @com.google.inject.Inject(optional = true)
+  private PreparedStatementCache preparedStatementCache;
+
+  /**
+   * The optional connection state cache the DataSource is wrapped with.
+   */
+  @com.google.inject.Inject(optional = true)
+  private ConnectionStateCache connectionStateCache;
+
+  /**
+   * The optional router switching the DataSource connections to the current tenant schema.
+   */
+  @com.google.inject.Inject(optional = true)
+  private TenantSchemaRouter tenantSchemaRouter;
+
   public void setId(String id) {
     this.id = id;
   }
@@ -55,12 +76,34 @@ public final class EnvironmentProvider implements Provider<Environment> {
     this.dataSource = dataSource;
   }
 
+  public void setPreparedStatementCache(PreparedStatementCache preparedStatementCache) {
+    this.preparedStatementCache = preparedStatementCache;
+  }
+
+  public void setConnectionStateCache(ConnectionStateCache connectionStateCache) {
+    this.connectionStateCache = connectionStateCache;
+  }
+
+  public void setTenantSchemaRouter(TenantSchemaRouter tenantSchemaRouter) {
+    this.tenantSchemaRouter = tenantSchemaRouter;
+  }
+
   /**
    * {@inheritDoc}
    */
   @Override
   public Environment get() {
-    return new Environment(id, transactionFactory, dataSource);
+    DataSource environmentDataSource = dataSource;
+    if (tenantSchemaRouter != null) {
+      environmentDataSource = tenantSchemaRouter.wrap(environmentDataSource);
+    }
+    if (connectionStateCache != null) {
+      environmentDataSource = connectionStateCache.wrap(environmentDataSource);
+    }
+    if (preparedStatementCache != null) {
+      environmentDataSource = preparedStatementCache.wrap(environmentDataSource);
+    }
+    return new Environment(id, transactionFactory, environmentDataSource);
   }
 
 }
@@ -0,0 +1,105 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.mappers;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The bounded pool running the calls of the asynchronous mappers.
+ * <p>
+ * The queue is bounded too: once it is full, new calls are rejected with a {@link RejectedExecutionException} returned
+ * through their future, so callers can apply back-pressure instead of piling up work for the database.
+ * </p>
+ *
+ * @since 3.12
+ */
+public final class AsyncMapperExecutor implements Executor {
+
+  private final ThreadPoolExecutor executor;
+
+  /**
+   * Instantiates a new async mapper executor.
+   *
+   * @param threads
+   *          the number of threads, at most the number of connections of the data source is useful
+   * @param queueCapacity
+   *          the maximum number of calls waiting for a thread
+   */
+  public AsyncMapperExecutor(int threads, int queueCapacity) {
+    if (threads <= 0) {
+      throw new IllegalArgumentException("Parameter 'threads' must be greater than 0");
+    }
+    if (queueCapacity <= 0) {
+      throw new IllegalArgumentException("Parameter 'queueCapacity' must be greater than 0");
+    }
+    executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+        new ArrayBlockingQueue<Runnable>(queueCapacity), new AsyncMapperThreadFactory());
+    executor.allowCoreThreadTimeOut(true);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void execute(Runnable command) {
+    executor.execute(command);
+  }
+
+  /**
+   * Gets the number of calls waiting for a thread.
+   *
+   * @return the queue size
+   */
+  public int getQueueSize() {
+    return executor.getQueue().size();
+  }
+
+  /**
+   * Gets the number of calls being run.
+   *
+   * @return the number of active threads
+   */
+  public int getActiveCount() {
+    return executor.getActiveCount();
+  }
+
+  /**
+   * Stops accepting calls; the pending ones are still run.
+   */
+  public void shutdown() {
+    executor.shutdown();
+  }
+
+  private static final class AsyncMapperThreadFactory implements ThreadFactory {
+
+    private final AtomicInteger count = new AtomicInteger();
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, "mybatis-async-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+
+  }
+
+}
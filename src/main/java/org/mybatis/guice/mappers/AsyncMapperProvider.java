@@ -0,0 +1,266 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.mappers;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+
+import org.apache.ibatis.reflection.ExceptionUtil;
+import org.mybatis.guice.datasource.tenant.TenantContext;
+
+import com.google.inject.Injector;
+
+/**
+ * Provides the asynchronous facade of a MyBatis mapper.
+ * <p>
+ * Each method of the facade interface returns a {@link CompletableFuture} (or a {@link CompletionStage}) and matches
+ * a method of the mapper with the same name and parameters; calling it runs the mapper method on the
+ * {@link AsyncMapperExecutor}, in its own session, and completes the future with its result. The calls of the mapper
+ * methods annotated with {@link BatchedBy} are queued and dispatched together to their batch method. Default methods
+ * of the facade run on the calling thread, as they do on MyBatis mappers, typically combining other facade methods.
+ * </p>
+ *
+ * @since 3.12
+ */
+public final class AsyncMapperProvider<T> implements Provider<T> {
+
+  private static final int ALLOWED_MODES = MethodHandles.Lookup.PRIVATE | MethodHandles.Lookup.PROTECTED
+      | MethodHandles.Lookup.PACKAGE | MethodHandles.Lookup.PUBLIC;
+
+  /**
+   * {@code MethodHandles.privateLookupIn}, available since Java 9.
+   */
+  private static final Method PRIVATE_LOOKUP_IN = findPrivateLookupInMethod();
+
+  /**
+   * The private {@code Lookup} constructor used on Java 8 instead.
+   */
+  private static final Constructor<MethodHandles.Lookup> LOOKUP_CONSTRUCTOR = PRIVATE_LOOKUP_IN == null
+      ? findLookupConstructor()
+      : null;
+
+  private final Class<T> asyncMapperType;
+
+  private final Class<?> mapperType;
+
+  private final Map<Method, Method> mapperMethods;
+
+  private final Map<Method, Method> batchMethods = new HashMap<Method, Method>();
+
+  private final Map<Method, MethodHandle> defaultMethods = new HashMap<Method, MethodHandle>();
+
+  @Inject
+  private Injector injector;
+
+  @Inject
+  private AsyncMapperExecutor executor;
+
+  /**
+   * Instantiates a new async mapper provider.
+   *
+   * @param asyncMapperType
+   *          the facade interface
+   * @param mapperType
+   *          the mapper the calls are dispatched to
+   * @throws IllegalArgumentException
+   *           if a facade method does not return a future or does not match any mapper method, or if a default method
+   *           cannot be invoked
+   */
+  public AsyncMapperProvider(Class<T> asyncMapperType, Class<?> mapperType) {
+    this.asyncMapperType = asyncMapperType;
+    this.mapperType = mapperType;
+    this.mapperMethods = resolveMapperMethods(asyncMapperType, mapperType);
+    for (Method mapperMethod : mapperMethods.values()) {
+      if (mapperMethod.isAnnotationPresent(BatchedBy.class)) {
+        batchMethods.put(mapperMethod, MapperBatcher.resolveBatchMethod(mapperType, mapperMethod));
+      }
+    }
+    for (Method method : asyncMapperType.getMethods()) {
+      if (method.isDefault()) {
+        defaultMethods.put(method, findDefaultMethodHandle(method));
+      }
+    }
+  }
+
+  private static Method findPrivateLookupInMethod() {
+    try {
+      return MethodHandles.class.getMethod("privateLookupIn", Class.class, MethodHandles.Lookup.class);
+    } catch (NoSuchMethodException e) {
+      return null;
+    }
+  }
+
+  private static Constructor<MethodHandles.Lookup> findLookupConstructor() {
+    try {
+      Constructor<MethodHandles.Lookup> constructor = MethodHandles.Lookup.class.getDeclaredConstructor(Class.class,
+          int.class);
+      constructor.setAccessible(true);
+      return constructor;
+    } catch (Exception e) {
+      return null;
+    }
+  }
+
+  /**
+   * Resolves the handle invoking the body of a default method, as the MyBatis {@code MapperProxy} does.
+   */
+  private static MethodHandle findDefaultMethodHandle(Method method) {
+    Class<?> declaringClass = method.getDeclaringClass();
+    try {
+      if (PRIVATE_LOOKUP_IN != null) {
+        MethodHandles.Lookup lookup = (MethodHandles.Lookup) PRIVATE_LOOKUP_IN.invoke(null, declaringClass,
+            MethodHandles.lookup());
+        return lookup.findSpecial(declaringClass, method.getName(),
+            MethodType.methodType(method.getReturnType(), method.getParameterTypes()), declaringClass);
+      }
+      if (LOOKUP_CONSTRUCTOR != null) {
+        return LOOKUP_CONSTRUCTOR.newInstance(declaringClass, ALLOWED_MODES).unreflectSpecial(method, declaringClass);
+      }
+    } catch (Exception e) {
+      throw new IllegalArgumentException("Default method " + method.toGenericString() + " cannot be invoked", e);
+    }
+    throw new IllegalArgumentException(
+        "Default method " + method.toGenericString() + " cannot be invoked, no method handle lookup is available");
+  }
+
+  private static Map<Method, Method> resolveMapperMethods(Class<?> asyncMapperType, Class<?> mapperType) {
+    if (!asyncMapperType.isInterface()) {
+      throw new IllegalArgumentException(asyncMapperType.getName() + " must be an interface");
+    }
+
+    Map<Method, Method> mapperMethods = new HashMap<Method, Method>();
+    for (Method method : asyncMapperType.getMethods()) {
+      if (method.isDefault()) {
+        continue;
+      }
+      if (method.getReturnType() != CompletableFuture.class && method.getReturnType() != CompletionStage.class) {
+        throw new IllegalArgumentException(
+            "Method " + method.toGenericString() + " must return a CompletableFuture or a CompletionStage");
+      }
+      try {
+        mapperMethods.put(method, mapperType.getMethod(method.getName(), method.getParameterTypes()));
+      } catch (NoSuchMethodException e) {
+        throw new IllegalArgumentException(
+            "Method " + method.toGenericString() + " does not match any method of " + mapperType.getName(), e);
+      }
+    }
+    return mapperMethods;
+  }
+
+  public void setInjector(Injector injector) {
+    this.injector = injector;
+  }
+
+  public void setExecutor(AsyncMapperExecutor executor) {
+    this.executor = executor;
+  }
+
+  @Override
+  public T get() {
+    return asyncMapperType.cast(Proxy.newProxyInstance(asyncMapperType.getClassLoader(),
+        new Class<?>[] { asyncMapperType }, new AsyncMapper(injector.getInstance(mapperType))));
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hashCode(this.asyncMapperType);
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (obj == null) {
+      return false;
+    }
+    if (this.getClass() != obj.getClass()) {
+      return false;
+    }
+    AsyncMapperProvider other = (AsyncMapperProvider) obj;
+    return Objects.equals(this.asyncMapperType, other.asyncMapperType);
+  }
+
+  private final class AsyncMapper implements InvocationHandler {
+
+    private final Object mapper;
+
+    private final Map<Method, MapperBatcher> batchers = new HashMap<Method, MapperBatcher>();
+
+    AsyncMapper(Object mapper) {
+      this.mapper = mapper;
+      for (Map.Entry<Method, Method> batchMethod : batchMethods.entrySet()) {
+        batchers.put(batchMethod.getKey(), new MapperBatcher(mapper, batchMethod.getValue(),
+            batchMethod.getKey().getAnnotation(BatchedBy.class), executor));
+      }
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, final Object[] args) throws Throwable {
+      if (method.getDeclaringClass() == Object.class) {
+        if ("equals".equals(method.getName())) {
+          return proxy == args[0];
+        }
+        if ("hashCode".equals(method.getName())) {
+          return System.identityHashCode(proxy);
+        }
+        return "Async " + mapperType.getName() + " mapper";
+      }
+
+      MethodHandle defaultMethod = defaultMethods.get(method);
+      if (defaultMethod != null) {
+        return defaultMethod.bindTo(proxy).invokeWithArguments(args);
+      }
+
+      final Method mapperMethod = mapperMethods.get(method);
+
+      MapperBatcher batcher = batchers.get(mapperMethod);
+      if (batcher != null) {
+        return batcher.load(args[0]);
+      }
+
+      final CompletableFuture<Object> future = new CompletableFuture<Object>();
+      try {
+        executor.execute(TenantContext.wrap(() -> {
+          try {
+            future.complete(mapperMethod.invoke(mapper, args));
+          } catch (InvocationTargetException e) {
+            future.completeExceptionally(ExceptionUtil.unwrapThrowable(e));
+          } catch (Throwable t) {
+            future.completeExceptionally(t);
+          }
+        }));
+      } catch (RejectedExecutionException e) {
+        future.completeExceptionally(e);
+      }
+      return future;
+    }
+
+  }
+
+}
@@ -0,0 +1,74 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.mappers;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Pairs a single key mapper method with the mapper method loading many keys at once, so that the calls made through an
+ * asynchronous facade (see {@link AsyncMapperProvider}) are batched.
+ * <p>
+ * The calls queued while the {@link AsyncMapperExecutor} is busy are dispatched together, as a single call of the
+ * batch method with their distinct keys; its results are then matched back to each call by their key property. A key
+ * without result completes its call with {@code null}.
+ * </p>
+ *
+ * <pre>
+ * &#64;BatchedBy(value = "selectByIds", keyProperty = "id")
+ * &#64;Select("SELECT * FROM user WHERE id = #{id}")
+ * User selectById(int id);
+ *
+ * &#64;Select("&lt;script&gt;SELECT * FROM user WHERE id IN &lt;foreach item='id' collection='ids' open='(' separator=',' close=')'&gt;#{id}&lt;/foreach&gt;&lt;/script&gt;")
+ * List&lt;User&gt; selectByIds(&#64;Param("ids") Collection&lt;Integer&gt; ids);
+ * </pre>
+ *
+ * @since 3.12
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface BatchedBy {
+
+  /**
+   * Returns the name of the batch method, taking the keys as its only {@code Collection} parameter and returning a
+   * {@code List} of results.
+   *
+   * @return the batch method name
+   */
+  String value();
+
+  /**
+   * Returns the property of the results holding their key, which must be equal to the argument of the single key
+   * method once converted to the property type: an {@code int} argument matches a {@code long} property, while an
+   * argument that cannot be converted without loss fails its call. The keys of map results are compared by value when
+   * numeric.
+   *
+   * @return the key property
+   */
+  String keyProperty();
+
+  /**
+   * Returns the maximum number of keys passed to one batch method call.
+   *
+   * @return the maximum batch size
+   */
+  int maxBatchSize() default 100;
+
+}
@@ -0,0 +1,136 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.mappers;
+
+import static java.lang.String.format;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.ibatis.binding.BindingException;
+import org.apache.ibatis.binding.MapperMethod;
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+import org.apache.ibatis.reflection.ExceptionUtil;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionManager;
+import org.mybatis.guice.session.ManagedSessionAccess;
+
+/**
+ * A mapper implementation resolving all its statements upfront and running them straight on the managed
+ * {@link SqlSession} of the current thread.
+ * <p>
+ * The regular MyBatis mapper dispatches each call through the {@code MapperProxy}, a {@code MapperMethod} cache lookup
+ * and the reflective session proxy of the {@link SqlSessionManager}; here a call costs a single proxy dispatch and a
+ * lookup in an immutable map. Outside a managed session the resolved {@code MapperMethod} runs on the
+ * {@link SqlSessionManager} itself, which opens a session for the call as the regular mapper would; default methods
+ * and methods without a mapped statement are still served by the regular mapper.
+ * </p>
+ *
+ * @since 3.12
+ */
+final class DirectDispatchMapper implements InvocationHandler {
+
+  private static final Log log = LogFactory.getLog(DirectDispatchMapper.class);
+
+  private final Map<Method, MapperMethod> mapperMethods;
+
+  private final SqlSessionManager sqlSessionManager;
+
+  private final ThreadLocal<SqlSession> localSqlSession;
+
+  private final Object mapper;
+
+  private DirectDispatchMapper(Map<Method, MapperMethod> mapperMethods, SqlSessionManager sqlSessionManager,
+      ThreadLocal<SqlSession> localSqlSession, Object mapper) {
+    this.mapperMethods = mapperMethods;
+    this.sqlSessionManager = sqlSessionManager;
+    this.localSqlSession = localSqlSession;
+    this.mapper = mapper;
+  }
+
+  /**
+   * Creates the direct dispatch implementation of the given mapper, or the regular mapper when the
+   * {@link SqlSessionManager} does not expose its managed session.
+   *
+   * @param <T>
+   *          the mapper type
+   * @param mapperType
+   *          the mapper type
+   * @param sqlSessionManager
+   *          the session manager
+   * @return the mapper
+   */
+  static <T> T newInstance(Class<T> mapperType, SqlSessionManager sqlSessionManager) {
+    // loads the mapper first when it is registered lazily, so that its statements can be resolved below
+    T mapper = sqlSessionManager.getMapper(mapperType);
+    ThreadLocal<SqlSession> localSqlSession = ManagedSessionAccess.localSqlSession(sqlSessionManager);
+    if (localSqlSession == null) {
+      log.warn(format("SqlSessionManager does not expose its managed session, mapper %s is not dispatched directly",
+          mapperType.getName()));
+      return mapper;
+    }
+
+    Configuration configuration = sqlSessionManager.getConfiguration();
+    Map<Method, MapperMethod> mapperMethods = new HashMap<Method, MapperMethod>();
+    for (Method method : mapperType.getMethods()) {
+      if (method.isDefault() || Modifier.isStatic(method.getModifiers())) {
+        continue;
+      }
+      try {
+        mapperMethods.put(method, new MapperMethod(mapperType, method, configuration));
+      } catch (BindingException e) {
+        // left to the regular mapper, which reports the missing statement when the method is called
+        if (log.isDebugEnabled()) {
+          log.debug(format("Method %s of mapper %s is served by the regular mapper: %s", method.getName(),
+              mapperType.getName(), e.getMessage()));
+        }
+      }
+    }
+
+    return mapperType.cast(Proxy.newProxyInstance(mapperType.getClassLoader(), new Class<?>[] { mapperType },
+        new DirectDispatchMapper(mapperMethods, sqlSessionManager, localSqlSession, mapper)));
+  }
+
+  /**
+   * Tells whether calls to the given method bypass the regular mapper.
+   */
+  boolean isDispatchedDirectly(Method method) {
+    return mapperMethods.containsKey(method);
+  }
+
+  @Override
+  public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+    MapperMethod mapperMethod = mapperMethods.get(method);
+    if (mapperMethod == null) {
+      try {
+        return method.invoke(mapper, args);
+      } catch (InvocationTargetException e) {
+        throw ExceptionUtil.unwrapThrowable(e);
+      }
+    }
+
+    SqlSession sqlSession = localSqlSession.get();
+    return mapperMethod.execute(sqlSession != null ? sqlSession : sqlSessionManager, args);
+  }
+
+}
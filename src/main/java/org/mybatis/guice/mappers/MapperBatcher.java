@@ -0,0 +1,304 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.mappers;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.apache.ibatis.reflection.DefaultReflectorFactory;
+import org.apache.ibatis.reflection.MetaClass;
+import org.apache.ibatis.reflection.ReflectorFactory;
+import org.apache.ibatis.reflection.SystemMetaObject;
+import org.apache.ibatis.reflection.TypeParameterResolver;
+import org.mybatis.guice.datasource.tenant.TenantContext;
+
+/**
+ * Queues the calls of a {@link BatchedBy} method and dispatches them to its batch method, one batch per tenant, run
+ * for the {@link TenantContext tenant} the calls were made for.
+ *
+ * @since 3.12
+ */
+final class MapperBatcher {
+
+  private static final ReflectorFactory REFLECTOR_FACTORY = new DefaultReflectorFactory();
+
+  private static final Map<Class<?>, Class<?>> BOXED_TYPES = new HashMap<Class<?>, Class<?>>();
+
+  static {
+    BOXED_TYPES.put(int.class, Integer.class);
+    BOXED_TYPES.put(long.class, Long.class);
+    BOXED_TYPES.put(short.class, Short.class);
+    BOXED_TYPES.put(byte.class, Byte.class);
+    BOXED_TYPES.put(double.class, Double.class);
+    BOXED_TYPES.put(float.class, Float.class);
+    BOXED_TYPES.put(boolean.class, Boolean.class);
+    BOXED_TYPES.put(char.class, Character.class);
+  }
+
+  private final Object mapper;
+
+  private final Method batchMethod;
+
+  private final String keyProperty;
+
+  /**
+   * The type of the key property of the results, keys being converted to it before matching; null when unknown, as
+   * for map results, in which case numeric keys are compared by value.
+   */
+  private final Class<?> keyType;
+
+  private final int maxBatchSize;
+
+  private final Executor executor;
+
+  private List<PendingCall> pendingCalls = new ArrayList<PendingCall>();
+
+  MapperBatcher(Object mapper, Method batchMethod, BatchedBy batchedBy, Executor executor) {
+    this.mapper = mapper;
+    this.batchMethod = batchMethod;
+    this.keyProperty = batchedBy.keyProperty();
+    this.keyType = resolveKeyType(batchMethod, keyProperty);
+    this.maxBatchSize = batchedBy.maxBatchSize();
+    this.executor = executor;
+  }
+
+  /**
+   * Resolves the batch method paired with the given single key method.
+   *
+   * @param mapperType
+   *          the mapper type
+   * @param method
+   *          the single key method, annotated with {@link BatchedBy}
+   * @return the batch method
+   * @throws IllegalArgumentException
+   *           if the methods do not match the expected signatures, or if the results have no key property
+   */
+  static Method resolveBatchMethod(Class<?> mapperType, Method method) {
+    BatchedBy batchedBy = method.getAnnotation(BatchedBy.class);
+    if (method.getParameterTypes().length != 1) {
+      throw new IllegalArgumentException("Method " + method.toGenericString() + " must take a single key");
+    }
+    if (batchedBy.maxBatchSize() <= 0) {
+      throw new IllegalArgumentException("Method " + method.toGenericString() + " must have a positive batch size");
+    }
+    for (Method candidate : mapperType.getMethods()) {
+      if (candidate.getName().equals(batchedBy.value()) && candidate.getParameterTypes().length == 1
+          && candidate.getParameterTypes()[0].isAssignableFrom(ArrayList.class)
+          && List.class.isAssignableFrom(candidate.getReturnType())) {
+        // fails fast when the results have no key property
+        resolveKeyType(candidate, batchedBy.keyProperty());
+        return candidate;
+      }
+    }
+    throw new IllegalArgumentException("Method " + method.toGenericString() + " is batched by " + batchedBy.value()
+        + " but " + mapperType.getName() + " has no such method taking a Collection and returning a List");
+  }
+
+  /**
+   * Resolves the type of the key property from the element type of the list returned by the batch method.
+   *
+   * @return the boxed key property type, null if unknown
+   */
+  static Class<?> resolveKeyType(Method batchMethod, String keyProperty) {
+    Type returnType = TypeParameterResolver.resolveReturnType(batchMethod, batchMethod.getDeclaringClass());
+    if (!(returnType instanceof ParameterizedType)) {
+      return null;
+    }
+    Type elementType = ((ParameterizedType) returnType).getActualTypeArguments()[0];
+    if (elementType instanceof ParameterizedType) {
+      elementType = ((ParameterizedType) elementType).getRawType();
+    }
+    if (!(elementType instanceof Class) || elementType == Object.class
+        || Map.class.isAssignableFrom((Class<?>) elementType)) {
+      return null;
+    }
+    MetaClass metaClass = MetaClass.forClass((Class<?>) elementType, REFLECTOR_FACTORY);
+    if (!metaClass.hasGetter(keyProperty)) {
+      throw new IllegalArgumentException("Method " + batchMethod.toGenericString() + " returns "
+          + ((Class<?>) elementType).getName() + " which has no key property '" + keyProperty + "'");
+    }
+    Class<?> keyType = metaClass.getGetterType(keyProperty);
+    return keyType.isPrimitive() ? BOXED_TYPES.get(keyType) : keyType;
+  }
+
+  /**
+   * Converts a key to the type of the key property, so that an {@code int} argument matches a {@code long} property.
+   *
+   * @throws IllegalArgumentException
+   *           if the key cannot be converted without loss
+   */
+  private Object normalizeKey(Object key) {
+    if (key == null) {
+      return null;
+    }
+    if (keyType == null) {
+      // compared by value, whatever the numeric type returned by the driver
+      return key instanceof Number ? new BigDecimal(key.toString()).stripTrailingZeros() : key;
+    }
+    if (keyType.isInstance(key)) {
+      return key;
+    }
+    if (key instanceof Number && Number.class.isAssignableFrom(keyType)) {
+      Object converted = convertNumber((Number) key, keyType);
+      if (converted != null
+          && new BigDecimal(key.toString()).compareTo(new BigDecimal(converted.toString())) == 0) {
+        return converted;
+      }
+    } else if (keyType == String.class) {
+      return key.toString();
+    }
+    throw new IllegalArgumentException("Key " + key + " of type " + key.getClass().getName()
+        + " does not match the type " + keyType.getName() + " of key property '" + keyProperty + "'");
+  }
+
+  private static Object convertNumber(Number number, Class<?> type) {
+    try {
+      if (type == Integer.class) {
+        return number.intValue();
+      } else if (type == Long.class) {
+        return number.longValue();
+      } else if (type == Short.class) {
+        return number.shortValue();
+      } else if (type == Byte.class) {
+        return number.byteValue();
+      } else if (type == Double.class) {
+        return number.doubleValue();
+      } else if (type == Float.class) {
+        return number.floatValue();
+      } else if (type == BigInteger.class) {
+        return new BigDecimal(number.toString()).toBigIntegerExact();
+      } else if (type == BigDecimal.class) {
+        return new BigDecimal(number.toString());
+      }
+    } catch (ArithmeticException | NumberFormatException e) {
+      return null;
+    }
+    return null;
+  }
+
+  /**
+   * Queues a call, to be dispatched with the calls queued until the executor runs the batch.
+   *
+   * @param key
+   *          the key
+   * @return the future result
+   */
+  CompletableFuture<Object> load(Object key) {
+    CompletableFuture<Object> future = new CompletableFuture<Object>();
+    try {
+      key = normalizeKey(key);
+    } catch (IllegalArgumentException e) {
+      future.completeExceptionally(e);
+      return future;
+    }
+
+    boolean first;
+    synchronized (this) {
+      pendingCalls.add(new PendingCall(key, TenantContext.current(), future));
+      first = pendingCalls.size() == 1;
+    }
+
+    if (first) {
+      try {
+        executor.execute(this::dispatch);
+      } catch (RejectedExecutionException e) {
+        for (PendingCall pendingCall : takePendingCalls()) {
+          pendingCall.future.completeExceptionally(e);
+        }
+      }
+    }
+    return future;
+  }
+
+  private synchronized List<PendingCall> takePendingCalls() {
+    List<PendingCall> taken = pendingCalls;
+    pendingCalls = new ArrayList<PendingCall>();
+    return taken;
+  }
+
+  private void dispatch() {
+    Map<String, List<PendingCall>> callsByTenant = new LinkedHashMap<String, List<PendingCall>>();
+    for (PendingCall call : takePendingCalls()) {
+      callsByTenant.computeIfAbsent(call.tenant, tenant -> new ArrayList<PendingCall>()).add(call);
+    }
+    for (Map.Entry<String, List<PendingCall>> tenantCalls : callsByTenant.entrySet()) {
+      List<PendingCall> calls = tenantCalls.getValue();
+      TenantContext.runAs(tenantCalls.getKey(), () -> {
+        for (int from = 0; from < calls.size(); from += maxBatchSize) {
+          dispatch(calls.subList(from, Math.min(calls.size(), from + maxBatchSize)));
+        }
+      });
+    }
+  }
+
+  private void dispatch(List<PendingCall> calls) {
+    Set<Object> keys = new LinkedHashSet<Object>();
+    for (PendingCall call : calls) {
+      keys.add(call.key);
+    }
+
+    Map<Object, Object> results = new HashMap<Object, Object>();
+    try {
+      Collection<?> rows = (Collection<?>) MapperCall.invoke(mapper, batchMethod,
+          new Object[] { new ArrayList<Object>(keys) });
+      if (rows != null) {
+        for (Object row : rows) {
+          results.putIfAbsent(normalizeKey(SystemMetaObject.forObject(row).getValue(keyProperty)), row);
+        }
+      }
+    } catch (Throwable t) {
+      for (PendingCall call : calls) {
+        call.future.completeExceptionally(t);
+      }
+      return;
+    }
+
+    for (PendingCall call : calls) {
+      call.future.complete(results.get(call.key));
+    }
+  }
+
+  private static final class PendingCall {
+
+    private final Object key;
+
+    private final String tenant;
+
+    private final CompletableFuture<Object> future;
+
+    PendingCall(Object key, String tenant, CompletableFuture<Object> future) {
+      this.key = key;
+      this.tenant = tenant;
+      this.future = future;
+    }
+
+  }
+
+}
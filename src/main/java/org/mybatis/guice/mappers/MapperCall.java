@@ -0,0 +1,146 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.mappers;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import org.apache.ibatis.reflection.ExceptionUtil;
+import org.mybatis.guice.datasource.tenant.TenantContext;
+
+/**
+ * A mapper method call, equal to the calls of the same method with equal arguments made for the same tenant, so that
+ * its result can be shared.
+ *
+ * @since 3.12
+ */
+final class MapperCall {
+
+  private final Method method;
+
+  private final Object[] args;
+
+  private final String tenant;
+
+  private final int hashCode;
+
+  MapperCall(Method method, Object[] args) {
+    this.method = method;
+    this.args = args == null ? new Object[0] : args.clone();
+    // the same call made for two tenants reads two schemas
+    this.tenant = TenantContext.current();
+    this.hashCode = 31 * (31 * method.hashCode() + Arrays.deepHashCode(this.args)) + Objects.hashCode(tenant);
+  }
+
+  /**
+   * Runs the call on the given mapper.
+   *
+   * @param mapper
+   *          the mapper
+   * @return the result
+   * @throws Exception
+   *           the exception thrown by the mapper
+   */
+  Object invoke(Object mapper) throws Exception {
+    return invoke(mapper, method, args);
+  }
+
+  /**
+   * Runs the given method on the given mapper, unwrapping the reflection exceptions.
+   *
+   * @param mapper
+   *          the mapper
+   * @param method
+   *          the method
+   * @param args
+   *          the arguments
+   * @return the result
+   * @throws Exception
+   *           the exception thrown by the mapper
+   */
+  static Object invoke(Object mapper, Method method, Object[] args) throws Exception {
+    try {
+      return method.invoke(mapper, args);
+    } catch (InvocationTargetException e) {
+      Throwable cause = ExceptionUtil.unwrapThrowable(e);
+      if (cause instanceof Exception) {
+        throw (Exception) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new UndeclaredThrowableException(cause);
+    }
+  }
+
+  /**
+   * Runs the call on the given mapper, returning collection results unmodifiable since they are going to be shared.
+   *
+   * @param mapper
+   *          the mapper
+   * @return the result
+   * @throws Exception
+   *           the exception thrown by the mapper
+   */
+  Object invokeShared(Object mapper) throws Exception {
+    Object result = invoke(mapper);
+    Class<?> returnType = method.getReturnType();
+    if (result == null) {
+      return null;
+    } else if (returnType == List.class) {
+      return Collections.unmodifiableList((List<?>) result);
+    } else if (returnType == Set.class) {
+      return Collections.unmodifiableSet((Set<?>) result);
+    } else if (returnType == Collection.class) {
+      return Collections.unmodifiableCollection((Collection<?>) result);
+    } else if (returnType == Map.class) {
+      return Collections.unmodifiableMap((Map<?, ?>) result);
+    }
+    return result;
+  }
+
+  @Override
+  public int hashCode() {
+    return hashCode;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof MapperCall)) {
+      return false;
+    }
+    MapperCall other = (MapperCall) obj;
+    return method.equals(other.method) && Arrays.deepEquals(args, other.args) && Objects.equals(tenant, other.tenant);
+  }
+
+  @Override
+  public String toString() {
+    String call = method.getDeclaringClass().getName() + "." + method.getName() + Arrays.deepToString(args);
+    return tenant == null ? call : call + " for tenant " + tenant;
+  }
+
+}
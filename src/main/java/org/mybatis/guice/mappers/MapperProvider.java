@@ -18,6 +18,7 @@ package org.mybatis.guice.mappers;
 import java.util.Objects;
 
 import javax.inject.Inject;
+import javax.inject.Named;
 import javax.inject.Provider;
 
 import org.apache.ibatis.session.SqlSessionManager;
@@ -32,6 +33,13 @@ public final class MapperProvider<T> implements Provider<T> {
   @Inject
   private SqlSessionManager sqlSessionManager;
 
+  @Inject
+  private SingleFlightGroup singleFlightGroup;
+
+  @com.google.inject.Inject(optional = true)
+  @Named("mybatis.mapper.directDispatch")
+  private boolean directDispatch;
+
   public MapperProvider(Class<T> mapperType) {
     this.mapperType = mapperType;
   }
@@ -40,9 +48,31 @@ public final class MapperProvider<T> implements Provider<T> {
     this.sqlSessionManager = sqlSessionManager;
   }
 
+  public void setSingleFlightGroup(SingleFlightGroup singleFlightGroup) {
+    this.singleFlightGroup = singleFlightGroup;
+  }
+
+  /**
+   * Sets whether mappers dispatch their calls directly to the managed session.
+   *
+   * @param directDispatch
+   *          true to create direct dispatch mappers
+   * @since 3.12
+   */
+  public void setDirectDispatch(boolean directDispatch) {
+    this.directDispatch = directDispatch;
+  }
+
   @Override
   public T get() {
-    return this.sqlSessionManager.getMapper(mapperType);
+    T mapper;
+    if (directDispatch) {
+      mapper = DirectDispatchMapper.newInstance(mapperType, sqlSessionManager);
+    } else {
+      mapper = this.sqlSessionManager.getMapper(mapperType);
+    }
+    mapper = MemoizingMapper.wrapIfNeeded(mapperType, mapper);
+    return SingleFlightMapper.wrapIfNeeded(mapperType, mapper, singleFlightGroup, sqlSessionManager);
   }
 
   @Override
@@ -0,0 +1,40 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.mappers;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Memoizes the results of a mapper method for the duration of the enclosing
+ * {@link org.mybatis.guice.transactional.Transactional} method.
+ * <p>
+ * The first call with given arguments runs the statement, the following calls in the same transaction return the same
+ * result, even after updates: the method must read data that the transaction does not change. {@code List},
+ * {@code Set}, {@code Collection} and {@code Map} results are returned unmodifiable, since they are shared. Outside a
+ * transaction the method is called as usual.
+ * </p>
+ *
+ * @since 3.12
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface Memoize {
+}
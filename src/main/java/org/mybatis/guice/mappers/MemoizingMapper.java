@@ -0,0 +1,68 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.mappers;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import org.mybatis.guice.transactional.MemoizedResults;
+
+/**
+ * Serves the {@link Memoize} methods of a mapper from the {@link MemoizedResults} of the current transaction.
+ *
+ * @since 3.12
+ */
+final class MemoizingMapper implements InvocationHandler {
+
+  private final Object mapper;
+
+  private MemoizingMapper(Object mapper) {
+    this.mapper = mapper;
+  }
+
+  /**
+   * Wraps the given mapper when some of its methods are annotated with {@link Memoize}.
+   *
+   * @param <T>
+   *          the mapper type
+   * @param mapperType
+   *          the mapper type
+   * @param mapper
+   *          the mapper
+   * @return the memoizing mapper, or the given one if no method is memoized
+   */
+  static <T> T wrapIfNeeded(Class<T> mapperType, T mapper) {
+    for (Method method : mapperType.getMethods()) {
+      if (method.isAnnotationPresent(Memoize.class)) {
+        return mapperType.cast(Proxy.newProxyInstance(mapperType.getClassLoader(), new Class<?>[] { mapperType },
+            new MemoizingMapper(mapper)));
+      }
+    }
+    return mapper;
+  }
+
+  @Override
+  public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+    MemoizedResults memoizedResults = MemoizedResults.current();
+    if (memoizedResults == null || !method.isAnnotationPresent(Memoize.class)) {
+      return MapperCall.invoke(mapper, method, args);
+    }
+    MapperCall call = new MapperCall(method, args);
+    return memoizedResults.memoize(call, () -> call.invokeShared(mapper));
+  }
+
+}
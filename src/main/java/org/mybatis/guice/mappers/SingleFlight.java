@@ -0,0 +1,40 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.mappers;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Allows concurrent identical calls of a mapper read method to share a single execution.
+ * <p>
+ * While a call is running, the calls of the same method with equal arguments made by other threads wait for it and get
+ * its result, instead of running the statement again. Calls made inside a transaction always run their own statement,
+ * so that they see their own changes. Since the result is shared between threads, {@code List}, {@code Set},
+ * {@code Collection} and {@code Map} results are returned unmodifiable and the other results must not be modified.
+ * </p>
+ *
+ * @see SingleFlightGroup
+ * @since 3.12
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface SingleFlight {
+}
@@ -0,0 +1,112 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.mappers;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Singleton;
+
+/**
+ * Tracks the {@link SingleFlight} mapper calls in flight, so that identical concurrent calls share one execution.
+ *
+ * @since 3.12
+ */
+@Singleton
+public final class SingleFlightGroup {
+
+  private final ConcurrentMap<Object, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<Object, CompletableFuture<Object>>();
+
+  private final AtomicLong executions = new AtomicLong();
+
+  private final AtomicLong coalesced = new AtomicLong();
+
+  /**
+   * Runs the given call, unless an identical one is in flight, whose result is then returned.
+   *
+   * @param key
+   *          identifies the call
+   * @param call
+   *          the call
+   * @return the result
+   * @throws Exception
+   *           the exception thrown by the call
+   */
+  public Object execute(Object key, Callable<Object> call) throws Exception {
+    CompletableFuture<Object> flight = new CompletableFuture<Object>();
+    CompletableFuture<Object> leader = inFlight.putIfAbsent(key, flight);
+    if (leader != null) {
+      coalesced.incrementAndGet();
+      return await(leader);
+    }
+
+    executions.incrementAndGet();
+    try {
+      Object result = call.call();
+      flight.complete(result);
+      return result;
+    } catch (Exception | Error e) {
+      flight.completeExceptionally(e);
+      throw e;
+    } finally {
+      inFlight.remove(key, flight);
+    }
+  }
+
+  private static Object await(CompletableFuture<Object> leader) throws Exception {
+    try {
+      return leader.join();
+    } catch (CompletionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof Exception) {
+        throw (Exception) cause;
+      }
+      throw (Error) cause;
+    }
+  }
+
+  /**
+   * Gets the number of calls that ran their statement.
+   *
+   * @return the number of executions
+   */
+  public long getExecutions() {
+    return executions.get();
+  }
+
+  /**
+   * Gets the number of calls that shared the execution of an identical call.
+   *
+   * @return the number of coalesced calls
+   */
+  public long getCoalesced() {
+    return coalesced.get();
+  }
+
+  /**
+   * Gets the number of calls currently running.
+   *
+   * @return the number of calls in flight
+   */
+  public int getInFlight() {
+    return inFlight.size();
+  }
+
+}
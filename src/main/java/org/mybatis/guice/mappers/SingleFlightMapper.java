@@ -0,0 +1,78 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.mappers;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import org.apache.ibatis.session.SqlSessionManager;
+
+/**
+ * Runs the {@link SingleFlight} methods of a mapper through a {@link SingleFlightGroup}.
+ *
+ * @since 3.12
+ */
+final class SingleFlightMapper implements InvocationHandler {
+
+  private final Object mapper;
+
+  private final SingleFlightGroup group;
+
+  private final SqlSessionManager sqlSessionManager;
+
+  private SingleFlightMapper(Object mapper, SingleFlightGroup group, SqlSessionManager sqlSessionManager) {
+    this.mapper = mapper;
+    this.group = group;
+    this.sqlSessionManager = sqlSessionManager;
+  }
+
+  /**
+   * Wraps the given mapper when some of its methods are annotated with {@link SingleFlight}.
+   *
+   * @param <T>
+   *          the mapper type
+   * @param mapperType
+   *          the mapper type
+   * @param mapper
+   *          the mapper
+   * @param group
+   *          the calls in flight
+   * @param sqlSessionManager
+   *          the session manager, telling whether a call is made inside a transaction
+   * @return the single flight mapper, or the given one if no method is annotated
+   */
+  static <T> T wrapIfNeeded(Class<T> mapperType, T mapper, SingleFlightGroup group,
+      SqlSessionManager sqlSessionManager) {
+    for (Method method : mapperType.getMethods()) {
+      if (method.isAnnotationPresent(SingleFlight.class)) {
+        return mapperType.cast(Proxy.newProxyInstance(mapperType.getClassLoader(), new Class<?>[] { mapperType },
+            new SingleFlightMapper(mapper, group, sqlSessionManager)));
+      }
+    }
+    return mapper;
+  }
+
+  @Override
+  public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+    if (!method.isAnnotationPresent(SingleFlight.class) || sqlSessionManager.isManagedSessionStarted()) {
+      return MapperCall.invoke(mapper, method, args);
+    }
+    MapperCall call = new MapperCall(method, args);
+    return group.execute(call, () -> call.invokeShared(mapper));
+  }
+
+}
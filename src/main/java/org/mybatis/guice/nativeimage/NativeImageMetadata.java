@@ -0,0 +1,369 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.nativeimage;
+
+import com.google.inject.Binding;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Module;
+import com.google.inject.spi.Dependency;
+import com.google.inject.spi.InjectionPoint;
+import com.google.inject.spi.ProviderInstanceBinding;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ResultMap;
+import org.apache.ibatis.mapping.ResultMapping;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.type.TypeHandler;
+import org.mybatis.guice.mappers.AsyncMapperProvider;
+
+/**
+ * The GraalVM native-image metadata of a MyBatis Configuration: the reflection, dynamic proxy and resource
+ * configuration needed by its mappers, type handlers, aliases, interceptors, result and parameter types, and mapper
+ * XML files, plus the asynchronous mapper facades when collected from an Injector.
+ * <p>
+ * It is meant to run at build time, for example with the {@code exec-maven-plugin} in the {@code process-classes}
+ * phase, giving the module and the {@code META-INF/native-image/<groupId>/<artifactId>} output directory:
+ * </p>
+ *
+ * <pre>
+ * java org.mybatis.guice.nativeimage.NativeImageMetadata com.acme.PersistenceModule target/classes/META-INF/native-image/com.acme/app
+ * </pre>
+ *
+ * <p>
+ * The module must have a public no-argument constructor; it is installed in an Injector to build its Configuration,
+ * which does not connect to the database unless a DatabaseIdProvider is bound.
+ * </p>
+ *
+ * @since 3.12
+ */
+public final class NativeImageMetadata {
+
+  /**
+   * The interface lists of the dynamic proxies created by MyBatis and by this module around the sessions and the JDBC
+   * objects: the session manager, the pooled connections, the statement logging, the prepared statement cache and the
+   * connection state cache.
+   */
+  private static final List<List<Class<?>>> BUILT_IN_PROXIES = Arrays.asList(
+      Arrays.<Class<?>> asList(SqlSession.class), Arrays.<Class<?>> asList(Connection.class),
+      Arrays.<Class<?>> asList(Statement.class), Arrays.<Class<?>> asList(PreparedStatement.class),
+      Arrays.<Class<?>> asList(PreparedStatement.class, CallableStatement.class),
+      Arrays.<Class<?>> asList(ResultSet.class));
+
+  private final Set<String> reflectionTypes = new TreeSet<String>();
+
+  /**
+   * The interface lists of the proxies, keyed by their joined names to be written in a stable order.
+   */
+  private final Map<String, List<String>> proxies = new TreeMap<String, List<String>>();
+
+  private final Set<String> resources = new TreeSet<String>();
+
+  private NativeImageMetadata() {
+    for (List<Class<?>> interfaces : BUILT_IN_PROXIES) {
+      addProxy(interfaces);
+    }
+  }
+
+  /**
+   * Collects the metadata of a Configuration.
+   *
+   * @param configuration
+   *          the configuration
+   * @return the metadata
+   */
+  public static NativeImageMetadata of(Configuration configuration) {
+    NativeImageMetadata metadata = new NativeImageMetadata();
+
+    // registers the mappers still pending with a lazy mapper registration
+    configuration.getMappedStatementNames();
+
+    for (Class<?> mapper : configuration.getMapperRegistry().getMappers()) {
+      metadata.addReflectionType(mapper);
+      metadata.addProxy(Collections.<Class<?>> singletonList(mapper));
+      for (Method method : mapper.getMethods()) {
+        metadata.addReflectionType(method.getReturnType());
+        for (Class<?> parameterType : method.getParameterTypes()) {
+          metadata.addReflectionType(parameterType);
+        }
+      }
+    }
+
+    for (TypeHandler<?> typeHandler : configuration.getTypeHandlerRegistry().getTypeHandlers()) {
+      metadata.addReflectionType(typeHandler.getClass());
+    }
+
+    Set<Class<?>> defaultAliases = new HashSet<Class<?>>(
+        new Configuration().getTypeAliasRegistry().getTypeAliases().values());
+    for (Class<?> aliased : configuration.getTypeAliasRegistry().getTypeAliases().values()) {
+      if (!defaultAliases.contains(aliased)) {
+        metadata.addReflectionType(aliased);
+      }
+    }
+
+    for (Interceptor interceptor : configuration.getInterceptors()) {
+      metadata.addReflectionType(interceptor.getClass());
+      Intercepts intercepts = interceptor.getClass().getAnnotation(Intercepts.class);
+      if (intercepts != null) {
+        for (Signature signature : intercepts.value()) {
+          metadata.addProxy(Collections.<Class<?>> singletonList(signature.type()));
+        }
+      }
+    }
+
+    for (String name : configuration.getResultMapNames()) {
+      if (configuration.hasResultMap(name)) {
+        try {
+          metadata.addResultMap(configuration.getResultMap(name));
+        } catch (IllegalArgumentException e) {
+          // ambiguous short name, the result map is reached by its full id
+        }
+      }
+    }
+
+    for (String name : configuration.getMappedStatementNames()) {
+      MappedStatement statement;
+      try {
+        statement = configuration.getMappedStatement(name, false);
+      } catch (IllegalArgumentException e) {
+        // ambiguous short name, the statement is reached by its full id
+        continue;
+      }
+      if (statement.getParameterMap() != null) {
+        metadata.addReflectionType(statement.getParameterMap().getType());
+      }
+      for (ResultMap resultMap : statement.getResultMaps()) {
+        metadata.addResultMap(resultMap);
+      }
+      if (statement.getResource() != null && statement.getResource().endsWith(".xml")) {
+        metadata.resources.add(statement.getResource().replace('\\', '/'));
+      }
+    }
+
+    return metadata;
+  }
+
+  /**
+   * Collects the metadata of the Configuration of an Injector, and of the asynchronous mapper facades it binds.
+   *
+   * @param injector
+   *          the injector
+   * @return the metadata
+   */
+  public static NativeImageMetadata of(Injector injector) {
+    NativeImageMetadata metadata = of(injector.getInstance(SqlSessionFactory.class).getConfiguration());
+    for (Binding<?> binding : injector.getBindings().values()) {
+      if (binding instanceof ProviderInstanceBinding && isAsyncMapperBinding((ProviderInstanceBinding<?>) binding)) {
+        Class<?> asyncMapper = binding.getKey().getTypeLiteral().getRawType();
+        // the facade methods are matched, and its default methods invoked, reflectively
+        metadata.addReflectionType(asyncMapper);
+        metadata.addProxy(Collections.<Class<?>> singletonList(asyncMapper));
+      }
+    }
+    return metadata;
+  }
+
+  /**
+   * Tells whether a binding is provided by an {@link AsyncMapperProvider}, whose injection points are reported as the
+   * dependencies of the binding even when the provider is wrapped.
+   */
+  private static boolean isAsyncMapperBinding(ProviderInstanceBinding<?> binding) {
+    for (Dependency<?> dependency : binding.getDependencies()) {
+      InjectionPoint injectionPoint = dependency.getInjectionPoint();
+      if (injectionPoint != null && injectionPoint.getDeclaringType().getRawType() == AsyncMapperProvider.class) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void addProxy(List<Class<?>> interfaces) {
+    List<String> names = new ArrayList<String>();
+    for (Class<?> type : interfaces) {
+      names.add(type.getName());
+    }
+    proxies.put(String.join(",", names), Collections.unmodifiableList(names));
+  }
+
+  private void addResultMap(ResultMap resultMap) {
+    addReflectionType(resultMap.getType());
+    for (ResultMapping resultMapping : resultMap.getResultMappings()) {
+      addReflectionType(resultMapping.getJavaType());
+    }
+  }
+
+  private void addReflectionType(Class<?> type) {
+    while (type != null && type.isArray()) {
+      type = type.getComponentType();
+    }
+    // the properties of a bean may be declared by its superclasses
+    for (Class<?> current = type; current != null; current = current.getSuperclass()) {
+      if (current.isPrimitive() || current.getName().startsWith("java.") || current.getName().startsWith("javax.")) {
+        return;
+      }
+      if (!reflectionTypes.add(current.getName())) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Adds a resource, such as the MyBatis XML configuration, to the resource configuration.
+   *
+   * @param resource
+   *          the class path resource
+   * @return this metadata
+   */
+  public NativeImageMetadata addResource(String resource) {
+    resources.add(resource);
+    return this;
+  }
+
+  /**
+   * @return the names of the types accessed reflectively
+   */
+  public Set<String> getReflectionTypes() {
+    return Collections.unmodifiableSet(reflectionTypes);
+  }
+
+  /**
+   * @return the interface names of each dynamic proxy, in the order they are given to the proxy
+   */
+  public Collection<List<String>> getProxyInterfaces() {
+    return Collections.unmodifiableCollection(proxies.values());
+  }
+
+  /**
+   * @return the class path resources loaded at runtime
+   */
+  public Set<String> getResources() {
+    return Collections.unmodifiableSet(resources);
+  }
+
+  /**
+   * Writes {@code reflect-config.json}, {@code proxy-config.json} and {@code resource-config.json}.
+   *
+   * @param directory
+   *          the output directory, created if needed
+   * @throws IOException
+   *           if the files cannot be written
+   */
+  public void writeTo(Path directory) throws IOException {
+    Files.createDirectories(directory);
+
+    try (Writer writer = Files.newBufferedWriter(directory.resolve("reflect-config.json"), StandardCharsets.UTF_8)) {
+      writer.write("[\n");
+      for (Iterator<String> types = reflectionTypes.iterator(); types.hasNext();) {
+        writer.write("  {\"name\":");
+        writeString(writer, types.next());
+        writer.write(",\"allDeclaredConstructors\":true,\"allPublicConstructors\":true"
+            + ",\"allDeclaredMethods\":true,\"allPublicMethods\":true,\"allDeclaredFields\":true}");
+        writer.write(types.hasNext() ? ",\n" : "\n");
+      }
+      writer.write("]\n");
+    }
+
+    try (Writer writer = Files.newBufferedWriter(directory.resolve("proxy-config.json"), StandardCharsets.UTF_8)) {
+      writer.write("[\n");
+      for (Iterator<List<String>> proxy = proxies.values().iterator(); proxy.hasNext();) {
+        writer.write("  {\"interfaces\":[");
+        for (Iterator<String> interfaces = proxy.next().iterator(); interfaces.hasNext();) {
+          writeString(writer, interfaces.next());
+          if (interfaces.hasNext()) {
+            writer.write(",");
+          }
+        }
+        writer.write("]}");
+        writer.write(proxy.hasNext() ? ",\n" : "\n");
+      }
+      writer.write("]\n");
+    }
+
+    try (Writer writer = Files.newBufferedWriter(directory.resolve("resource-config.json"), StandardCharsets.UTF_8)) {
+      writer.write("{\"resources\":{\"includes\":[\n");
+      for (Iterator<String> includes = resources.iterator(); includes.hasNext();) {
+        writer.write("  {\"pattern\":");
+        writeString(writer, "\\Q" + includes.next() + "\\E");
+        writer.write("}");
+        writer.write(includes.hasNext() ? ",\n" : "\n");
+      }
+      writer.write("]}}\n");
+    }
+  }
+
+  private static void writeString(Writer writer, String value) throws IOException {
+    writer.write('"');
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == '"' || c == '\\') {
+        writer.write('\\');
+      }
+      writer.write(c);
+    }
+    writer.write('"');
+  }
+
+  /**
+   * Generates the metadata of a module.
+   *
+   * @param args
+   *          the module class name, the output directory, then optional class path resources to include
+   * @throws Exception
+   *           if the module cannot be installed or the files cannot be written
+   */
+  public static void main(String[] args) throws Exception {
+    if (args.length < 2) {
+      throw new IllegalArgumentException(
+          "Usage: NativeImageMetadata <module class> <output directory> [<resource>...]");
+    }
+    Module module = (Module) Class.forName(args[0]).getConstructor().newInstance();
+    NativeImageMetadata metadata = of(Guice.createInjector(module));
+    for (int i = 2; i < args.length; i++) {
+      metadata.addResource(args[i]);
+    }
+    metadata.writeTo(Paths.get(args[1]));
+  }
+
+}
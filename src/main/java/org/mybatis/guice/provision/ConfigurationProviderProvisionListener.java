@@ -23,28 +23,67 @@ import org.mybatis.guice.configuration.ConfigurationSettingListener;
 import org.mybatis.guice.configuration.settings.ConfigurationSetting;
 import org.mybatis.guice.configuration.settings.MapperConfigurationSetting;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import javax.inject.Provider;
 
+/**
+ * Applies configuration settings to the {@link ConfigurationSettingListener} when it is provisioned.
+ * <p>
+ * A listener created with {@link #create()} collects any number of settings, so that a module registers a single
+ * listener whatever the number of its settings. They are applied from the last added to the first, the order in which
+ * Guice runs separate listeners registered one after the other.
+ * </p>
+ */
 public final class ConfigurationProviderProvisionListener implements ProvisionListener {
 
-  private final ConfigurationProviderProvisionAction action;
+  private final List<ConfigurationProviderProvisionAction> actions =
+      new ArrayList<ConfigurationProviderProvisionAction>();
 
-  ConfigurationProviderProvisionListener(ConfigurationProviderProvisionAction action) {
-    this.action = action;
+  ConfigurationProviderProvisionListener() {
+    // settings are added later
   }
 
   @Override
   public <T> void onProvision(ProvisionInvocation<T> provision) {
     ConfigurationSettingListener configurationSettingListener = (ConfigurationSettingListener) provision.provision();
-    this.action.perform(configurationSettingListener);
+    for (int i = actions.size() - 1; i >= 0; i--) {
+      actions.get(i).perform(configurationSettingListener);
+    }
   }
 
-  public static <P extends Provider<? extends ConfigurationSetting>> ConfigurationProviderProvisionListener create(
+  /**
+   * Adds a setting, applied before the ones already added.
+   *
+   * @param configurationSetting
+   *          the setting
+   * @since 3.12
+   */
+  public void addConfigurationSetting(final ConfigurationSetting configurationSetting) {
+    actions.add(new ConfigurationProviderProvisionAction() {
+      @Override
+      public void perform(ConfigurationSettingListener configurationSettingListener) {
+        configurationSettingListener.addConfigurationSetting(configurationSetting);
+      }
+    });
+  }
+
+  /**
+   * Adds a setting provider, injected and applied before the settings already added.
+   *
+   * @param configurationSettingProvider
+   *          the setting provider
+   * @param binder
+   *          the binder the provider members injector is obtained from
+   * @since 3.12
+   */
+  public <P extends Provider<? extends ConfigurationSetting>> void addConfigurationSettingProvider(
       final P configurationSettingProvider, final Binder binder) {
     @SuppressWarnings("unchecked")
     final MembersInjector<P> membersInjector = (MembersInjector<P>) binder
         .getMembersInjector(configurationSettingProvider.getClass());
-    return new ConfigurationProviderProvisionListener(new ConfigurationProviderProvisionAction() {
+    actions.add(new ConfigurationProviderProvisionAction() {
       @Override
       public void perform(ConfigurationSettingListener configurationSettingListener) {
         membersInjector.injectMembers(configurationSettingProvider);
@@ -53,23 +92,58 @@ public final class ConfigurationProviderProvisionListener implements ProvisionLi
     });
   }
 
-  public static ConfigurationProviderProvisionListener create(final ConfigurationSetting configurationSetting) {
-    return new ConfigurationProviderProvisionListener(new ConfigurationProviderProvisionAction() {
+  /**
+   * Adds a mapper setting, applied before the settings already added.
+   *
+   * @param mapperConfigurationSetting
+   *          the mapper setting
+   * @since 3.12
+   */
+  public void addMapperConfigurationSetting(final MapperConfigurationSetting mapperConfigurationSetting) {
+    actions.add(new ConfigurationProviderProvisionAction() {
       @Override
       public void perform(ConfigurationSettingListener configurationSettingListener) {
-        configurationSettingListener.addConfigurationSetting(configurationSetting);
+        configurationSettingListener.addMapperConfigurationSetting(mapperConfigurationSetting);
       }
     });
   }
 
+  /**
+   * @return the number of settings added
+   * @since 3.12
+   */
+  public int size() {
+    return actions.size();
+  }
+
+  /**
+   * Creates a listener without settings, to be added with the {@code add} methods.
+   *
+   * @return the listener
+   * @since 3.12
+   */
+  public static ConfigurationProviderProvisionListener create() {
+    return new ConfigurationProviderProvisionListener();
+  }
+
+  public static <P extends Provider<? extends ConfigurationSetting>> ConfigurationProviderProvisionListener create(
+      final P configurationSettingProvider, final Binder binder) {
+    ConfigurationProviderProvisionListener listener = create();
+    listener.addConfigurationSettingProvider(configurationSettingProvider, binder);
+    return listener;
+  }
+
+  public static ConfigurationProviderProvisionListener create(final ConfigurationSetting configurationSetting) {
+    ConfigurationProviderProvisionListener listener = create();
+    listener.addConfigurationSetting(configurationSetting);
+    return listener;
+  }
+
   public static ConfigurationProviderProvisionListener create(
       final MapperConfigurationSetting mapperConfigurationSetting) {
-    return new ConfigurationProviderProvisionListener(new ConfigurationProviderProvisionAction() {
-      @Override
-      public void perform(ConfigurationSettingListener configurationSettingListener) {
-        configurationSettingListener.addMapperConfigurationSetting(mapperConfigurationSetting);
-      }
-    });
+    ConfigurationProviderProvisionListener listener = create();
+    listener.addMapperConfigurationSetting(mapperConfigurationSetting);
+    return listener;
   }
 
   private static interface ConfigurationProviderProvisionAction {
@@ -0,0 +1,76 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.session;
+
+import java.lang.reflect.Field;
+
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionManager;
+
+/**
+ * Reads the thread local holding the managed {@link SqlSession} of a {@link SqlSessionManager}, which MyBatis keeps
+ * private; shared by the transaction interceptors and the direct dispatch mappers.
+ *
+ * @since 3.12
+ */
+public final class ManagedSessionAccess {
+
+  private static final Field LOCAL_SQL_SESSION = findLocalSqlSessionField();
+
+  private ManagedSessionAccess() {
+    // do nothing
+  }
+
+  private static Field findLocalSqlSessionField() {
+    try {
+      Field field = SqlSessionManager.class.getDeclaredField("localSqlSession");
+      field.setAccessible(true);
+      return field;
+    } catch (Exception e) {
+      return null;
+    }
+  }
+
+  /**
+   * Tells whether the managed sessions can be read, that is whether the running MyBatis version and the security
+   * settings give access to the session manager thread local.
+   *
+   * @return true if {@link #localSqlSession(SqlSessionManager)} can be used
+   */
+  public static boolean isAvailable() {
+    return LOCAL_SQL_SESSION != null;
+  }
+
+  /**
+   * Returns the thread local holding the managed session of the given session manager.
+   *
+   * @param sqlSessionManager
+   *          the session manager
+   * @return the thread local, null if it cannot be read
+   */
+  @SuppressWarnings("unchecked")
+  public static ThreadLocal<SqlSession> localSqlSession(SqlSessionManager sqlSessionManager) {
+    if (LOCAL_SQL_SESSION == null) {
+      return null;
+    }
+    try {
+      return (ThreadLocal<SqlSession>) LOCAL_SQL_SESSION.get(sqlSessionManager);
+    } catch (IllegalAccessException e) {
+      return null;
+    }
+  }
+
+}
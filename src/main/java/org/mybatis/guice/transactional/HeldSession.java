@@ -0,0 +1,123 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.transactional;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ibatis.session.SqlSession;
+
+/**
+ * A managed session tracked by the {@link ManagedSessionTracker}, from the moment it is started until it is closed.
+ *
+ * @since 3.12
+ */
+public final class HeldSession {
+
+  private final ManagedSessionTracker tracker;
+
+  private final SqlSession session;
+
+  private final String description;
+
+  private final String threadName;
+
+  private final StackTraceElement[] openerStack;
+
+  private final long startNanos;
+
+  private volatile boolean reported;
+
+  private volatile boolean forceClosed;
+
+  HeldSession(ManagedSessionTracker tracker, SqlSession session, String description) {
+    this.tracker = tracker;
+    this.session = session;
+    this.description = description;
+    this.threadName = Thread.currentThread().getName();
+    this.openerStack = new Throwable().getStackTrace();
+    this.startNanos = System.nanoTime();
+  }
+
+  ManagedSessionTracker getTracker() {
+    return tracker;
+  }
+
+  SqlSession getSession() {
+    return session;
+  }
+
+  /**
+   * @return what started the session, the transactional method or the unit of work
+   */
+  public String getDescription() {
+    return description;
+  }
+
+  /**
+   * @return the name of the thread that started the session
+   */
+  public String getThreadName() {
+    return threadName;
+  }
+
+  /**
+   * @return the stack of the thread when it started the session
+   */
+  public StackTraceElement[] getOpenerStack() {
+    return openerStack.clone();
+  }
+
+  long getStartNanos() {
+    return startNanos;
+  }
+
+  public long getHeldNanos() {
+    return System.nanoTime() - startNanos;
+  }
+
+  public long getHeldMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(getHeldNanos());
+  }
+
+  /**
+   * @return true once the session was reported as held past the threshold
+   */
+  public boolean isReported() {
+    return reported;
+  }
+
+  void setReported() {
+    this.reported = true;
+  }
+
+  /**
+   * @return true if the session was closed by the tracker
+   */
+  public boolean isForceClosed() {
+    return forceClosed;
+  }
+
+  void setForceClosed() {
+    this.forceClosed = true;
+  }
+
+  @Override
+  public String toString() {
+    return "HeldSession [description=" + description + ", thread=" + threadName + ", heldMillis=" + getHeldMillis()
+        + "]";
+  }
+
+}
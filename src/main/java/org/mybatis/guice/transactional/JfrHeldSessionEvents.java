@@ -0,0 +1,116 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.transactional;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+
+/**
+ * Emits the sessions held past the threshold as {@code org.mybatis.guice.HeldSession} JFR events, through the
+ * {@code jdk.jfr.EventFactory} API looked up reflectively, so that JVMs without JFR still run the tracker.
+ */
+final class JfrHeldSessionEvents {
+
+  static final String EVENT_NAME = "org.mybatis.guice.HeldSession";
+
+  private static final Log log = LogFactory.getLog(JfrHeldSessionEvents.class);
+
+  private final Object eventFactory;
+
+  private final Method newEvent;
+
+  private final Method set;
+
+  private final Method commit;
+
+  private JfrHeldSessionEvents(Object eventFactory, Method newEvent, Method set, Method commit) {
+    this.eventFactory = eventFactory;
+    this.newEvent = newEvent;
+    this.set = set;
+    this.commit = commit;
+  }
+
+  /**
+   * Registers the event type.
+   *
+   * @return the events, null if the JVM does not support JFR
+   */
+  static JfrHeldSessionEvents create() {
+    try {
+      Class<?> annotationElement = Class.forName("jdk.jfr.AnnotationElement");
+      Constructor<?> annotationWithValue = annotationElement.getConstructor(Class.class, Object.class);
+      Class<?> valueDescriptor = Class.forName("jdk.jfr.ValueDescriptor");
+      Constructor<?> field = valueDescriptor.getConstructor(Class.class, String.class, List.class);
+
+      List<Object> eventAnnotations = Arrays.asList(
+          annotationWithValue.newInstance(annotation("jdk.jfr.Name"), EVENT_NAME),
+          annotationWithValue.newInstance(annotation("jdk.jfr.Label"), "MyBatis Held Session"),
+          annotationWithValue.newInstance(annotation("jdk.jfr.Category"), new String[] { "MyBatis" }),
+          annotationWithValue.newInstance(annotation("jdk.jfr.StackTrace"), Boolean.FALSE));
+      Class<? extends Annotation> label = annotation("jdk.jfr.Label");
+      List<Object> fields = Arrays.asList(
+          field.newInstance(String.class, "description",
+              Collections.singletonList(annotationWithValue.newInstance(label, "Description"))),
+          field.newInstance(String.class, "openerThread",
+              Collections.singletonList(annotationWithValue.newInstance(label, "Opener Thread"))),
+          field.newInstance(long.class, "heldDuration",
+              Arrays.asList(annotationWithValue.newInstance(label, "Held Duration"),
+                  annotationWithValue.newInstance(annotation("jdk.jfr.Timespan"), "NANOSECONDS"))),
+          field.newInstance(boolean.class, "forceClosed",
+              Collections.singletonList(annotationWithValue.newInstance(label, "Force Closed"))));
+
+      Class<?> eventFactoryType = Class.forName("jdk.jfr.EventFactory");
+      Object eventFactory = eventFactoryType.getMethod("create", List.class, List.class).invoke(null,
+          eventAnnotations, fields);
+      Class<?> event = Class.forName("jdk.jfr.Event");
+      return new JfrHeldSessionEvents(eventFactory, eventFactoryType.getMethod("newEvent"),
+          event.getMethod("set", int.class, Object.class), event.getMethod("commit"));
+    } catch (ReflectiveOperationException | LinkageError e) {
+      if (log.isDebugEnabled()) {
+        log.debug("JFR is not available, held sessions are not emitted as JFR events: " + e);
+      }
+      return null;
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Class<? extends Annotation> annotation(String name) throws ClassNotFoundException {
+    return (Class<? extends Annotation>) Class.forName(name);
+  }
+
+  void emit(HeldSession heldSession) {
+    try {
+      Object event = newEvent.invoke(eventFactory);
+      set.invoke(event, 0, heldSession.getDescription());
+      set.invoke(event, 1, heldSession.getThreadName());
+      set.invoke(event, 2, heldSession.getHeldNanos());
+      set.invoke(event, 3, heldSession.isForceClosed());
+      commit.invoke(event);
+    } catch (ReflectiveOperationException e) {
+      if (log.isDebugEnabled()) {
+        log.debug("Could not emit the JFR event of " + heldSession + ": " + e);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,117 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.transactional;
+
+import java.lang.reflect.Field;
+
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionManager;
+import org.apache.ibatis.session.defaults.DefaultSqlSession;
+import org.mybatis.guice.session.ManagedSessionAccess;
+
+/**
+ * Detaches and re-attaches the managed {@link SqlSession} bound to the current thread by a {@link SqlSessionManager}.
+ * <p>
+ * The suspended sessions are kept by the callers, on their own stack frames, so nested suspensions are naturally resumed
+ * in reverse order.
+ * </p>
+ *
+ * @since 3.12
+ */
+final class ManagedSessionSuspension {
+
+  private static final Field DIRTY = findDirtyField();
+
+  private ManagedSessionSuspension() {
+    // do nothing
+  }
+
+  private static Field findDirtyField() {
+    try {
+      Field field = DefaultSqlSession.class.getDeclaredField("dirty");
+      field.setAccessible(true);
+      return field;
+    } catch (Exception e) {
+      return null;
+    }
+  }
+
+  private static ThreadLocal<SqlSession> localSqlSession(SqlSessionManager sqlSessionManager) {
+    if (!ManagedSessionAccess.isAvailable()) {
+      throw new IllegalStateException("SqlSessionManager does not expose its managed session, it cannot be suspended");
+    }
+    return ManagedSessionAccess.localSqlSession(sqlSessionManager);
+  }
+
+  /**
+   * Returns the managed session bound to the current thread.
+   *
+   * @param sqlSessionManager
+   *          the session manager
+   * @return the managed session, null if none is started
+   */
+  static SqlSession current(SqlSessionManager sqlSessionManager) {
+    ThreadLocal<SqlSession> localSqlSession = localSqlSession(sqlSessionManager);
+    return localSqlSession == null ? null : localSqlSession.get();
+  }
+
+  /**
+   * Tells whether the managed session bound to the current thread ran statements changing data since its last commit
+   * or rollback.
+   *
+   * @param sqlSessionManager
+   *          the session manager
+   * @return false if the session is known not to be dirty, true otherwise
+   */
+  static boolean isDirty(SqlSessionManager sqlSessionManager) {
+    SqlSession sqlSession = current(sqlSessionManager);
+    if (DIRTY == null || !(sqlSession instanceof DefaultSqlSession)) {
+      return true;
+    }
+    try {
+      return DIRTY.getBoolean(sqlSession);
+    } catch (IllegalAccessException e) {
+      return true;
+    }
+  }
+
+  /**
+   * Removes the managed session from the current thread.
+   *
+   * @param sqlSessionManager
+   *          the session manager
+   * @return the suspended session, to be passed to {@link #resume(SqlSessionManager, SqlSession)}
+   */
+  static SqlSession suspend(SqlSessionManager sqlSessionManager) {
+    ThreadLocal<SqlSession> localSqlSession = localSqlSession(sqlSessionManager);
+    SqlSession suspended = localSqlSession.get();
+    localSqlSession.remove();
+    return suspended;
+  }
+
+  /**
+   * Binds a previously suspended session to the current thread again.
+   *
+   * @param sqlSessionManager
+   *          the session manager
+   * @param suspended
+   *          the suspended session
+   */
+  static void resume(SqlSessionManager sqlSessionManager, SqlSession suspended) {
+    localSqlSession(sqlSessionManager).set(suspended);
+  }
+
+}
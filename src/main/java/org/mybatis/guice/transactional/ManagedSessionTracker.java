@@ -0,0 +1,271 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.transactional;
+
+import static java.lang.String.format;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionManager;
+
+/**
+ * Tracks the managed sessions started by the {@link Transactional} methods, the {@link TransactionTemplate} and the
+ * {@link UnitOfWork}, and reports the ones held past a threshold, the usual symptom of a session never closed or of a
+ * transaction running for minutes while its pooled connection stays pinned.
+ * <p>
+ * The stack of the thread starting a session and the start time are recorded only while a tracker is started, and a
+ * background thread sweeps the open sessions: each session held longer than the
+ * {@code mybatis.sessionTracker.holdThreshold} constant, 30 seconds by default, is logged as a warning with the stack
+ * of its opener, counted and emitted as an {@code org.mybatis.guice.HeldSession} JFR event, once. When the
+ * {@code mybatis.sessionTracker.forceCloseThreshold} constant is set, sessions held longer are rolled back and closed
+ * by the sweeper, returning their connection to the pool and failing the statements their thread still runs. The
+ * sweep runs every {@code mybatis.sessionTracker.sweepInterval} milliseconds, 5 seconds by default.
+ * </p>
+ * <p>
+ * The sweeper closes the session while its own thread may still use it: the statement that thread is running can
+ * fail on the rollback or on the close, or complete in between, and a write completing between the rollback and the
+ * close is committed as the close restores the auto-commit mode of the connection. Forced closes are a last resort
+ * against leaked connections, not a transaction timeout.
+ * </p>
+ *
+ * <pre>
+ * bind(ManagedSessionTracker.class).asEagerSingleton();
+ * </pre>
+ *
+ * @since 3.12
+ */
+@Singleton
+public final class ManagedSessionTracker implements Closeable {
+
+  private static final int LOGGED_FRAMES = 20;
+
+  private static final Log log = LogFactory.getLog(ManagedSessionTracker.class);
+
+  /**
+   * The started tracker, null if none.
+   */
+  private static volatile ManagedSessionTracker current;
+
+  @com.google.inject.Inject(optional = true)
+  @Named("mybatis.sessionTracker.holdThreshold")
+  private long holdThreshold = 30000;
+
+  @com.google.inject.Inject(optional = true)
+  @Named("mybatis.sessionTracker.forceCloseThreshold")
+  private long forceCloseThreshold;
+
+  @com.google.inject.Inject(optional = true)
+  @Named("mybatis.sessionTracker.sweepInterval")
+  private long sweepInterval = 5000;
+
+  private final Set<HeldSession> heldSessions = ConcurrentHashMap.newKeySet();
+
+  private final AtomicLong longHolds = new AtomicLong();
+
+  private final AtomicLong forcedCloses = new AtomicLong();
+
+  private JfrHeldSessionEvents jfrEvents;
+
+  private ScheduledExecutorService sweeper;
+
+  /**
+   * Sets the duration past which a held session is reported.
+   *
+   * @param holdThreshold
+   *          the threshold in milliseconds
+   */
+  public void setHoldThreshold(long holdThreshold) {
+    this.holdThreshold = holdThreshold;
+  }
+
+  /**
+   * Sets the duration past which a held session is closed by the sweeper, 0 to never close them.
+   *
+   * @param forceCloseThreshold
+   *          the threshold in milliseconds
+   */
+  public void setForceCloseThreshold(long forceCloseThreshold) {
+    this.forceCloseThreshold = forceCloseThreshold;
+  }
+
+  /**
+   * Sets the sweep interval, 0 not to start the background sweeper.
+   *
+   * @param sweepInterval
+   *          the interval in milliseconds
+   */
+  public void setSweepInterval(long sweepInterval) {
+    this.sweepInterval = sweepInterval;
+  }
+
+  /**
+   * Starts tracking the managed sessions and sweeping them in the background.
+   */
+  @Inject
+  public synchronized void start() {
+    if (jfrEvents == null) {
+      jfrEvents = JfrHeldSessionEvents.create();
+    }
+    if (sweeper == null && sweepInterval > 0) {
+      sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "mybatis-session-sweeper");
+        thread.setDaemon(true);
+        return thread;
+      });
+      sweeper.scheduleWithFixedDelay(this::sweep, sweepInterval, sweepInterval, TimeUnit.MILLISECONDS);
+    }
+    current = this;
+  }
+
+  /**
+   * Stops tracking the managed sessions and stops the sweeper.
+   */
+  @Override
+  public synchronized void close() {
+    if (current == this) {
+      current = null;
+    }
+    if (sweeper != null) {
+      sweeper.shutdownNow();
+      sweeper = null;
+    }
+  }
+
+  /**
+   * Reports the sessions held past the threshold, and closes the ones held past the force-close threshold.
+   */
+  public void sweep() {
+    for (HeldSession heldSession : heldSessions) {
+      long heldMillis = heldSession.getHeldMillis();
+      if (heldMillis >= holdThreshold && !heldSession.isReported()) {
+        heldSession.setReported();
+        longHolds.incrementAndGet();
+        report(heldSession);
+      }
+      if (forceCloseThreshold > 0 && heldMillis >= forceCloseThreshold && heldSessions.remove(heldSession)) {
+        forceClose(heldSession);
+      }
+    }
+  }
+
+  private void report(HeldSession heldSession) {
+    StringBuilder message = new StringBuilder(format("Managed session started by %s on thread %s held for %s ms",
+        heldSession.getDescription(), heldSession.getThreadName(), heldSession.getHeldMillis()));
+    int frames = 0;
+    for (StackTraceElement frame : heldSession.getOpenerStack()) {
+      if (frames == LOGGED_FRAMES) {
+        break;
+      }
+      message.append(System.lineSeparator()).append("\tat ").append(frame);
+      frames++;
+    }
+    log.warn(message.toString());
+
+    if (jfrEvents != null) {
+      jfrEvents.emit(heldSession);
+    }
+  }
+
+  private void forceClose(HeldSession heldSession) {
+    heldSession.setForceClosed();
+    forcedCloses.incrementAndGet();
+    log.warn(format("Closing the managed session started by %s on thread %s, held for %s ms",
+        heldSession.getDescription(), heldSession.getThreadName(), heldSession.getHeldMillis()));
+    SqlSession session = heldSession.getSession();
+    try {
+      // forced, as the writes not made through the session leave it clean and would be committed by the close
+      session.rollback(true);
+    } catch (RuntimeException e) {
+      log.warn("Could not roll back the held session: " + e);
+    }
+    try {
+      session.close();
+    } catch (RuntimeException e) {
+      log.warn("Could not close the held session: " + e);
+    }
+
+    if (jfrEvents != null) {
+      jfrEvents.emit(heldSession);
+    }
+  }
+
+  /**
+   * @return the sessions currently open, oldest first
+   */
+  public List<HeldSession> getHeldSessions() {
+    List<HeldSession> sessions = new ArrayList<HeldSession>(heldSessions);
+    sessions.sort((a, b) -> Long.compare(a.getStartNanos(), b.getStartNanos()));
+    return sessions;
+  }
+
+  /**
+   * @return the number of sessions reported as held past the threshold since startup
+   */
+  public long getLongHolds() {
+    return longHolds.get();
+  }
+
+  /**
+   * @return the number of sessions closed by the sweeper since startup
+   */
+  public long getForcedCloses() {
+    return forcedCloses.get();
+  }
+
+  /**
+   * Starts tracking the managed session just started by the current thread.
+   *
+   * @return the held session, null if no tracker is started
+   */
+  static HeldSession track(SqlSessionManager sqlSessionManager, Object description) {
+    ManagedSessionTracker tracker = current;
+    if (tracker == null) {
+      return null;
+    }
+    SqlSession session = ManagedSessionSuspension.current(sqlSessionManager);
+    if (session == null) {
+      return null;
+    }
+    HeldSession heldSession = new HeldSession(tracker, session, String.valueOf(description));
+    tracker.heldSessions.add(heldSession);
+    return heldSession;
+  }
+
+  /**
+   * Stops tracking a managed session about to be closed by its thread.
+   */
+  static void untrack(HeldSession heldSession) {
+    if (heldSession != null) {
+      heldSession.getTracker().heldSessions.remove(heldSession);
+    }
+  }
+
+}
@@ -0,0 +1,138 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.transactional;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * The results of the {@link org.mybatis.guice.mappers.Memoize} mapper methods called in the transaction bound to the
+ * current thread.
+ * <p>
+ * A new instance is bound each time a {@link Transactional} method starts a new SqlSession, and dropped when that
+ * session is closed; methods joining the transaction share it, suspended transactions keep their own.
+ * </p>
+ *
+ * @since 3.12
+ */
+public final class MemoizedResults {
+
+  private static final ThreadLocal<MemoizedResults> CURRENT = new ThreadLocal<MemoizedResults>();
+
+  private static final Object NULL = new Object();
+
+  private final Map<Object, Object> results = new HashMap<Object, Object>();
+
+  private int hits;
+
+  private int misses;
+
+  private MemoizedResults() {
+    // do nothing
+  }
+
+  /**
+   * Returns the memoized results of the current thread transaction.
+   *
+   * @return the memoized results, null outside a transaction
+   */
+  public static MemoizedResults current() {
+    return CURRENT.get();
+  }
+
+  /**
+   * Binds new, empty, memoized results to the current thread.
+   *
+   * @return the previous results, to be passed to {@link #restore(MemoizedResults)}
+   */
+  static MemoizedResults start() {
+    MemoizedResults previous = CURRENT.get();
+    CURRENT.set(new MemoizedResults());
+    return previous;
+  }
+
+  /**
+   * Unbinds the memoized results of the current thread, when its transaction is suspended.
+   *
+   * @return the suspended results, to be passed to {@link #restore(MemoizedResults)}
+   */
+  static MemoizedResults suspend() {
+    MemoizedResults suspended = CURRENT.get();
+    CURRENT.remove();
+    return suspended;
+  }
+
+  /**
+   * Binds again the results that were current before {@link #start()} or {@link #suspend()}.
+   *
+   * @param previous
+   *          the previous results, may be null
+   */
+  static void restore(MemoizedResults previous) {
+    if (previous == null) {
+      CURRENT.remove();
+    } else {
+      CURRENT.set(previous);
+    }
+  }
+
+  /**
+   * Returns the result memoized under the given key, loading it the first time.
+   *
+   * @param <T>
+   *          the result type
+   * @param key
+   *          the key, usually the called method and its arguments
+   * @param loader
+   *          loads the result when it is not memoized yet
+   * @return the result
+   * @throws Exception
+   *           if the loader fails, in which case nothing is memoized
+   */
+  @SuppressWarnings("unchecked")
+  public <T> T memoize(Object key, Callable<T> loader) throws Exception {
+    Object result = results.get(key);
+    if (result != null) {
+      hits++;
+      return result == NULL ? null : (T) result;
+    }
+
+    misses++;
+    T loaded = loader.call();
+    results.put(key, loaded == null ? NULL : loaded);
+    return loaded;
+  }
+
+  /**
+   * Gets the number of calls served from the memoized results.
+   *
+   * @return the number of hits
+   */
+  public int getHits() {
+    return hits;
+  }
+
+  /**
+   * Gets the number of calls that had to run their statement.
+   *
+   * @return the number of misses
+   */
+  public int getMisses() {
+    return misses;
+  }
+
+}
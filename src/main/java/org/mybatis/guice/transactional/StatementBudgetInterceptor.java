@@ -0,0 +1,304 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.transactional;
+
+import java.lang.reflect.Proxy;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.executor.statement.StatementHandler;
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Plugin;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.reflection.MetaObject;
+import org.apache.ibatis.reflection.SystemMetaObject;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+
+/**
+ * Diagnostic MyBatis plugin counting the statements executed by each transaction, and reporting the transactions that
+ * execute too many statements or the same statement too many times, the usual symptom of N+1 queries.
+ * <p>
+ * The statements are counted per MyBatis executor, that is per SqlSession, and the count starts over when the session
+ * commits or rolls back. The session opened by a {@link Transactional} method, or by a {@link TransactionTemplate},
+ * runs exactly one transaction, so the budget applies to it as a whole, statements of the nested methods joining it
+ * included; a {@link Transactional.TxType#REQUIRES_NEW} method runs in a session, and a budget, of its own. A
+ * {@link UnitOfWork} session in auto-commit mode is counted as a whole, across all the statements run directly in the
+ * unit. The mapper calls made outside any managed session each open a session of their own, so the N+1 patterns
+ * outside a transaction or a unit of work are not detected.
+ * </p>
+ * <p>
+ * The mapper calls are counted as they reach the executor, answered from the session cache or not. The nested selects
+ * of the result maps, which MyBatis runs on the executor directly, bypassing the plugins, are counted as they reach
+ * the JDBC statement, so the N+1 queries of the {@code select} attribute of the associations and collections are
+ * reported as well.
+ * </p>
+ * <p>
+ * Each violation is logged as a warning, once per transaction, together with a sample of the stack of the offending
+ * thread; the violations are also counted and the most recent ones kept, for tests and metrics to check. The limits
+ * are set by the {@code mybatis.statementBudget.maxStatements} and {@code mybatis.statementBudget.maxRepeats}
+ * constants, 100 and 20 by default.
+ * </p>
+ *
+ * @since 3.12
+ */
+@Singleton
+public final class StatementBudgetInterceptor implements Interceptor {
+
+  private static final int RECENT_VIOLATIONS = 100;
+
+  private static final int LOGGED_FRAMES = 10;
+
+  private final Log log = LogFactory.getLog(getClass());
+
+  @com.google.inject.Inject(optional = true)
+  @Named("mybatis.statementBudget.maxStatements")
+  private int maxStatements = 100;
+
+  @com.google.inject.Inject(optional = true)
+  @Named("mybatis.statementBudget.maxRepeats")
+  private int maxRepeats = 20;
+
+  private final AtomicLong violationCount = new AtomicLong();
+
+  private final Deque<StatementBudgetViolation> recentViolations = new ArrayDeque<StatementBudgetViolation>();
+
+  /**
+   * The budget of each executor, keyed by the executor the statement handlers are created with. Weak keys, so the
+   * closed sessions are dropped.
+   */
+  private final Map<Object, ExecutorBudget> budgets = Collections
+      .synchronizedMap(new WeakHashMap<Object, ExecutorBudget>());
+
+  private final StatementCounter statementCounter = new StatementCounter();
+
+  public void setMaxStatements(int maxStatements) {
+    this.maxStatements = maxStatements;
+  }
+
+  public void setMaxRepeats(int maxRepeats) {
+    this.maxRepeats = maxRepeats;
+  }
+
+  /**
+   * Not used: {@link #plugin(Object)} wraps each executor with an interceptor of its own, holding the counts of its
+   * session, and the statement handlers with one looking that interceptor up, instead of this shared instance. Only
+   * proceeds if called anyway.
+   */
+  @Override
+  public Object intercept(Invocation invocation) throws Throwable {
+    return invocation.proceed();
+  }
+
+  @Override
+  public Object plugin(Object target) {
+    if (target instanceof Executor) {
+      ExecutorBudget budget = new ExecutorBudget();
+      budgets.put(unwrap(target), budget);
+      return Plugin.wrap(target, budget);
+    }
+    if (target instanceof StatementHandler) {
+      return Plugin.wrap(target, statementCounter);
+    }
+    return target;
+  }
+
+  @Override
+  public void setProperties(Properties properties) {
+    String value = properties.getProperty("maxStatements");
+    if (value != null) {
+      maxStatements = Integer.parseInt(value);
+    }
+    value = properties.getProperty("maxRepeats");
+    if (value != null) {
+      maxRepeats = Integer.parseInt(value);
+    }
+  }
+
+  /**
+   * Gets the number of violations reported since startup.
+   *
+   * @return the number of violations
+   */
+  public long getViolationCount() {
+    return violationCount.get();
+  }
+
+  /**
+   * Gets the most recent violations, oldest first.
+   *
+   * @return the recent violations
+   */
+  public List<StatementBudgetViolation> getRecentViolations() {
+    synchronized (recentViolations) {
+      return new ArrayList<StatementBudgetViolation>(recentViolations);
+    }
+  }
+
+  private void report(StatementBudgetViolation violation) {
+    violationCount.incrementAndGet();
+    synchronized (recentViolations) {
+      if (recentViolations.size() == RECENT_VIOLATIONS) {
+        recentViolations.removeFirst();
+      }
+      recentViolations.addLast(violation);
+    }
+
+    StringBuilder message = new StringBuilder(violation.toString());
+    int frames = 0;
+    for (StackTraceElement frame : violation.getStackSample()) {
+      if (frames == LOGGED_FRAMES) {
+        break;
+      }
+      if (!isFramework(frame.getClassName())) {
+        message.append(System.lineSeparator()).append("\tat ").append(frame);
+        frames++;
+      }
+    }
+    log.warn(message.toString());
+  }
+
+  /**
+   * Gets the object proxied by the plugins wrapping the given one: the executor MyBatis hands to the statement handlers
+   * is the one it created, not the plugin proxy.
+   */
+  private static Object unwrap(Object target) {
+    Object unwrapped = target;
+    while (Proxy.isProxyClass(unwrapped.getClass()) && Proxy.getInvocationHandler(unwrapped) instanceof Plugin) {
+      unwrapped = SystemMetaObject.forObject(Proxy.getInvocationHandler(unwrapped)).getValue("target");
+    }
+    return unwrapped;
+  }
+
+  private static boolean isFramework(String className) {
+    return className.startsWith("org.apache.ibatis.") || className.startsWith("java.lang.reflect.")
+        || className.startsWith("jdk.internal.") || className.startsWith("sun.reflect.")
+        || className.startsWith("com.sun.proxy.") || className.startsWith("jdk.proxy")
+        || className.startsWith(StatementBudgetInterceptor.class.getName());
+  }
+
+  /**
+   * The statements counted for one executor, that is one SqlSession, since its last commit or rollback.
+   */
+  @Intercepts({
+      @Signature(type = Executor.class, method = "update", args = { MappedStatement.class, Object.class }),
+      @Signature(type = Executor.class, method = "query", args = { MappedStatement.class, Object.class,
+          RowBounds.class, ResultHandler.class }),
+      @Signature(type = Executor.class, method = "queryCursor", args = { MappedStatement.class, Object.class,
+          RowBounds.class }),
+      @Signature(type = Executor.class, method = "commit", args = { boolean.class }),
+      @Signature(type = Executor.class, method = "rollback", args = { boolean.class }) })
+  private final class ExecutorBudget implements Interceptor {
+
+    private final Map<String, Integer> executions = new HashMap<String, Integer>();
+
+    private int statements;
+
+    /**
+     * The statement of the mapper call in progress, counted already, until it reaches the JDBC statement.
+     */
+    private MappedStatement executing;
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+      String method = invocation.getMethod().getName();
+      if ("commit".equals(method) || "rollback".equals(method)) {
+        try {
+          return invocation.proceed();
+        } finally {
+          executions.clear();
+          statements = 0;
+        }
+      }
+
+      MappedStatement mappedStatement = (MappedStatement) invocation.getArgs()[0];
+      count(mappedStatement.getId());
+      executing = mappedStatement;
+      try {
+        return invocation.proceed();
+      } finally {
+        executing = null;
+      }
+    }
+
+    /**
+     * Counts a statement reaching JDBC, unless it is the one of the mapper call in progress: a nested select.
+     */
+    void executed(MappedStatement mappedStatement) {
+      if (mappedStatement == executing) {
+        executing = null;
+      } else {
+        count(mappedStatement.getId());
+      }
+    }
+
+    private void count(String statementId) {
+      int repeats = executions.merge(statementId, 1, Integer::sum);
+      statements++;
+
+      if (statements == maxStatements + 1) {
+        report(new StatementBudgetViolation(StatementBudgetViolation.Type.STATEMENT_BUDGET, statementId,
+            maxStatements, new Throwable().getStackTrace()));
+      }
+      if (repeats == maxRepeats + 1) {
+        report(new StatementBudgetViolation(StatementBudgetViolation.Type.REPEATED_STATEMENT, statementId,
+            maxRepeats, new Throwable().getStackTrace()));
+      }
+    }
+
+  }
+
+  /**
+   * Hands the statements reaching JDBC to the budget of the executor that created their handler. The executors call
+   * {@code parameterize} once per execution, batched updates included.
+   */
+  @Intercepts({ @Signature(type = StatementHandler.class, method = "parameterize", args = { Statement.class }) })
+  private final class StatementCounter implements Interceptor {
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+      MetaObject handler = SystemMetaObject.forObject(unwrap(invocation.getTarget()));
+      if (handler.hasGetter("delegate")) {
+        handler = handler.metaObjectForProperty("delegate");
+      }
+      ExecutorBudget budget = budgets.get(handler.getValue("executor"));
+      if (budget != null) {
+        budget.executed((MappedStatement) handler.getValue("mappedStatement"));
+      }
+      return invocation.proceed();
+    }
+
+  }
+
+}
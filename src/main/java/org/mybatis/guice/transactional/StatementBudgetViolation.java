@@ -0,0 +1,100 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.transactional;
+
+/**
+ * A transaction that exceeded a limit of the {@link StatementBudgetInterceptor}.
+ *
+ * @since 3.12
+ */
+public final class StatementBudgetViolation {
+
+  /**
+   * The limits checked by the {@link StatementBudgetInterceptor}.
+   */
+  public enum Type {
+
+    /**
+     * Too many statements were executed in the transaction.
+     */
+    STATEMENT_BUDGET,
+
+    /**
+     * The same statement was executed too many times in the transaction, usually a N+1 query.
+     */
+    REPEATED_STATEMENT
+
+  }
+
+  private final Type type;
+
+  private final String statementId;
+
+  private final int limit;
+
+  private final String threadName;
+
+  private final StackTraceElement[] stackSample;
+
+  StatementBudgetViolation(Type type, String statementId, int limit, StackTraceElement[] stackSample) {
+    this.type = type;
+    this.statementId = statementId;
+    this.limit = limit;
+    this.threadName = Thread.currentThread().getName();
+    this.stackSample = stackSample;
+  }
+
+  public Type getType() {
+    return type;
+  }
+
+  /**
+   * Gets the id of the statement that exceeded the limit.
+   *
+   * @return the statement id, the last executed one for {@link Type#STATEMENT_BUDGET}
+   */
+  public String getStatementId() {
+    return statementId;
+  }
+
+  public int getLimit() {
+    return limit;
+  }
+
+  public String getThreadName() {
+    return threadName;
+  }
+
+  /**
+   * Gets the stack of the thread when the limit was exceeded, pointing at the code looping on the statements.
+   *
+   * @return the stack sample
+   */
+  public StackTraceElement[] getStackSample() {
+    return stackSample.clone();
+  }
+
+  @Override
+  public String toString() {
+    if (type == Type.STATEMENT_BUDGET) {
+      return String.format("Transaction on thread %s exceeded the budget of %s statements, last one: %s", threadName,
+          limit, statementId);
+    }
+    return String.format("Transaction on thread %s executed statement %s more than %s times", threadName,
+        statementId, limit);
+  }
+
+}
@@ -0,0 +1,123 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.transactional;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * The deadline of the transaction bound to the current thread, as declared by {@link Transactional#timeout()}.
+ *
+ * @since 3.12
+ */
+final class TransactionDeadline {
+
+  private static final ThreadLocal<TransactionDeadline> CURRENT = new ThreadLocal<TransactionDeadline>();
+
+  private final int timeout;
+
+  private final long deadlineNanos;
+
+  private TransactionDeadline(int timeout) {
+    this.timeout = timeout;
+    this.deadlineNanos = System.nanoTime() + SECONDS.toNanos(timeout);
+  }
+
+  /**
+   * Returns the deadline of the current thread transaction.
+   *
+   * @return the deadline, null if the current transaction has no timeout
+   */
+  static TransactionDeadline current() {
+    return CURRENT.get();
+  }
+
+  /**
+   * Binds a new deadline to the current thread.
+   *
+   * @param timeout
+   *          the transaction timeout, in seconds
+   * @return the previous deadline, to be passed to {@link #restore(TransactionDeadline)}
+   */
+  static TransactionDeadline start(int timeout) {
+    TransactionDeadline previous = CURRENT.get();
+    CURRENT.set(new TransactionDeadline(timeout));
+    return previous;
+  }
+
+  /**
+   * Unbinds the deadline of the current thread, when its transaction is suspended.
+   *
+   * @return the suspended deadline, to be passed to {@link #restore(TransactionDeadline)}
+   */
+  static TransactionDeadline suspend() {
+    TransactionDeadline suspended = CURRENT.get();
+    CURRENT.remove();
+    return suspended;
+  }
+
+  /**
+   * Binds again the deadline that was current before {@link #start(int)} or {@link #suspend()}.
+   *
+   * @param previous
+   *          the previous deadline, may be null
+   */
+  static void restore(TransactionDeadline previous) {
+    if (previous == null) {
+      CURRENT.remove();
+    } else {
+      CURRENT.set(previous);
+    }
+  }
+
+  int getTimeout() {
+    return timeout;
+  }
+
+  boolean isExpired() {
+    return remainingNanos() <= 0;
+  }
+
+  /**
+   * Returns the time left before the deadline, rounded up to whole seconds as expected by
+   * {@link java.sql.Statement#setQueryTimeout(int)}.
+   *
+   * @return the time left in seconds, 0 if the deadline has been reached
+   */
+  int remainingSeconds() {
+    long remaining = remainingNanos();
+    if (remaining <= 0) {
+      return 0;
+    }
+    return (int) Math.min(Integer.MAX_VALUE, (remaining + SECONDS.toNanos(1) - 1) / SECONDS.toNanos(1));
+  }
+
+  private long remainingNanos() {
+    return deadlineNanos - System.nanoTime();
+  }
+
+  /**
+   * Throws a {@link TransactionTimedOutException} if the deadline has been reached.
+   */
+  void check() {
+    if (isExpired()) {
+      throw new TransactionTimedOutException(
+          "Transaction timed out: deadline of " + timeout + " second(s) reached "
+              + NANOSECONDS.toMillis(-remainingNanos()) + " ms ago");
+    }
+  }
+
+}
@@ -0,0 +1,257 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.transactional;
+
+import org.apache.ibatis.session.ExecutorType;
+import org.mybatis.guice.transactional.Transactional.TxType;
+
+/**
+ * The attributes of a transaction, as declared by a {@link Transactional} annotation or built for a
+ * {@link TransactionTemplate}.
+ * <p>
+ * Definitions are immutable, so one instance is meant to be built once and shared by all the calls it applies to.
+ * </p>
+ *
+ * @since 3.12
+ */
+public final class TransactionDefinition {
+
+  /**
+   * The default definition: a {@link TxType#REQUIRED} transaction with the default executor and isolation.
+   */
+  public static final TransactionDefinition DEFAULT = new Builder().create();
+
+  private final TxType txType;
+
+  private final ExecutorType executorType;
+
+  private final Isolation isolation;
+
+  private final boolean force;
+
+  private final boolean rollbackOnly;
+
+  private final int timeout;
+
+  private final boolean readOnly;
+
+  private final Class<? extends Throwable> rethrowExceptionsAs;
+
+  private final String exceptionMessage;
+
+  /**
+   * The method the template calls run as, lets any error through.
+   */
+  private final TransactionalMethod templateMethod;
+
+  private TransactionDefinition(TxType txType, ExecutorType executorType, Isolation isolation, boolean force,
+      boolean rollbackOnly, int timeout, boolean readOnly, Class<? extends Throwable> rethrowExceptionsAs,
+      String exceptionMessage) {
+    this.txType = txType;
+    this.executorType = executorType;
+    this.isolation = isolation;
+    this.force = force;
+    this.rollbackOnly = rollbackOnly;
+    this.timeout = timeout;
+    this.readOnly = readOnly;
+    this.rethrowExceptionsAs = rethrowExceptionsAs;
+    this.exceptionMessage = exceptionMessage;
+    this.templateMethod = new TransactionalMethod(this);
+  }
+
+  /**
+   * Creates the definition declared by an annotation.
+   *
+   * @param transactional
+   *          the annotation
+   * @return the transaction definition
+   */
+  public static TransactionDefinition of(Transactional transactional) {
+    return new TransactionDefinition(transactional.value(), transactional.executorType(), transactional.isolation(),
+        transactional.force(), transactional.rollbackOnly(), transactional.timeout(), transactional.readOnly(),
+        transactional.rethrowExceptionsAs(), transactional.exceptionMessage());
+  }
+
+  public TxType getTxType() {
+    return txType;
+  }
+
+  public ExecutorType getExecutorType() {
+    return executorType;
+  }
+
+  public Isolation getIsolation() {
+    return isolation;
+  }
+
+  public boolean isForce() {
+    return force;
+  }
+
+  public boolean isRollbackOnly() {
+    return rollbackOnly;
+  }
+
+  public int getTimeout() {
+    return timeout;
+  }
+
+  public boolean isReadOnly() {
+    return readOnly;
+  }
+
+  public Class<? extends Throwable> getRethrowExceptionsAs() {
+    return rethrowExceptionsAs;
+  }
+
+  public String getExceptionMessage() {
+    return exceptionMessage;
+  }
+
+  TransactionalMethod getTemplateMethod() {
+    return templateMethod;
+  }
+
+  @Override
+  public String toString() {
+    return "TransactionDefinition [txType=" + txType + ", executorType=" + executorType + ", isolation=" + isolation
+        + ", force=" + force + ", rollbackOnly=" + rollbackOnly + ", timeout=" + timeout + ", readOnly=" + readOnly
+        + "]";
+  }
+
+  public static final class Builder {
+
+    private TxType txType = TxType.REQUIRED;
+
+    private ExecutorType executorType = ExecutorType.SIMPLE;
+
+    private Isolation isolation = Isolation.DEFAULT;
+
+    private boolean force;
+
+    private boolean rollbackOnly;
+
+    private int timeout = -1;
+
+    private boolean readOnly;
+
+    /**
+     * Sets the propagation, {@link TxType#REQUIRED} by default.
+     *
+     * @param txType
+     *          the propagation
+     * @return the builder
+     */
+    public Builder setTxType(TxType txType) {
+      if (txType == null) {
+        throw new IllegalArgumentException("Parameter 'txType' must not be null");
+      }
+      this.txType = txType;
+      return this;
+    }
+
+    /**
+     * Sets the executor type of the sessions started, {@link ExecutorType#SIMPLE} by default.
+     *
+     * @param executorType
+     *          the executor type
+     * @return the builder
+     */
+    public Builder setExecutorType(ExecutorType executorType) {
+      if (executorType == null) {
+        throw new IllegalArgumentException("Parameter 'executorType' must not be null");
+      }
+      this.executorType = executorType;
+      return this;
+    }
+
+    /**
+     * Sets the isolation of the sessions started, {@link Isolation#DEFAULT} by default.
+     *
+     * @param isolation
+     *          the isolation
+     * @return the builder
+     */
+    public Builder setIsolation(Isolation isolation) {
+      if (isolation == null) {
+        throw new IllegalArgumentException("Parameter 'isolation' must not be null");
+      }
+      this.isolation = isolation;
+      return this;
+    }
+
+    /**
+     * Forces the commit even when the session is not dirty.
+     *
+     * @param force
+     *          true to force the commit
+     * @return the builder
+     */
+    public Builder setForce(boolean force) {
+      this.force = force;
+      return this;
+    }
+
+    /**
+     * Rolls the transaction back even when no error is raised.
+     *
+     * @param rollbackOnly
+     *          true to always roll back
+     * @return the builder
+     */
+    public Builder setRollbackOnly(boolean rollbackOnly) {
+      this.rollbackOnly = rollbackOnly;
+      return this;
+    }
+
+    /**
+     * Sets the transaction timeout, no timeout by default.
+     *
+     * @param timeout
+     *          the timeout in seconds
+     * @return the builder
+     */
+    public Builder setTimeout(int timeout) {
+      this.timeout = timeout;
+      return this;
+    }
+
+    /**
+     * Marks the transaction as only reading, so that its connection is hinted read-only and the commit skipped when
+     * no statement changed data.
+     *
+     * @param readOnly
+     *          true if the transaction only reads
+     * @return the builder
+     */
+    public Builder setReadOnly(boolean readOnly) {
+      this.readOnly = readOnly;
+      return this;
+    }
+
+    /**
+     * Creates the definition.
+     *
+     * @return the transaction definition
+     */
+    public TransactionDefinition create() {
+      return new TransactionDefinition(txType, executorType, isolation, force, rollbackOnly, timeout, readOnly,
+          Exception.class, "");
+    }
+
+  }
+
+}
@@ -0,0 +1,76 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.transactional;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Singleton;
+
+/**
+ * Counts how the transactions started by the {@link Transactional} methods and the {@link TransactionTemplate} ended,
+ * one instance being shared by the injector.
+ *
+ * @since 3.12
+ */
+@Singleton
+public final class TransactionStatistics {
+
+  private final AtomicLong commits = new AtomicLong();
+
+  private final AtomicLong elidedCommits = new AtomicLong();
+
+  private final AtomicLong rollbacks = new AtomicLong();
+
+  void committed() {
+    commits.incrementAndGet();
+  }
+
+  void commitElided() {
+    elidedCommits.incrementAndGet();
+  }
+
+  void rolledBack() {
+    rollbacks.incrementAndGet();
+  }
+
+  /**
+   * @return the number of transactions committed on the connection
+   */
+  public long getCommits() {
+    return commits.get();
+  }
+
+  /**
+   * @return the number of transactions ended without a commit round trip, since no statement changed data
+   */
+  public long getElidedCommits() {
+    return elidedCommits.get();
+  }
+
+  /**
+   * @return the number of transactions rolled back
+   */
+  public long getRollbacks() {
+    return rollbacks.get();
+  }
+
+  @Override
+  public String toString() {
+    return "TransactionStatistics [commits=" + commits + ", elidedCommits=" + elidedCommits + ", rollbacks="
+        + rollbacks + "]";
+  }
+
+}
@@ -0,0 +1,150 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.transactional;
+
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.concurrent.Callable;
+
+import javax.inject.Inject;
+
+import org.apache.ibatis.session.SqlSessionManager;
+
+/**
+ * Runs code in a transaction without annotating a method, for lambdas and tasks submitted to executors.
+ * <p>
+ * The calls go through the same {@link TransactionalInvoker} as the {@link Transactional} methods, the JTA
+ * transactions included: a managed session already started on the current thread is joined, or suspended for
+ * {@link Transactional.TxType#REQUIRES_NEW}, and a session started by the call is committed when the callable returns
+ * and rolled back when it throws. The error raised by the callable is rethrown unchanged. Nothing is resolved by
+ * reflection, so a {@link TransactionDefinition} built once can be reused for every call.
+ * </p>
+ *
+ * <pre>
+ * private static final TransactionDefinition REQUIRES_NEW = new TransactionDefinition.Builder()
+ *     .setTxType(TxType.REQUIRES_NEW).create();
+ *
+ * executor.submit(() -&gt; transactionTemplate.execute(REQUIRES_NEW, () -&gt; mapper.insert(row)));
+ * </pre>
+ *
+ * @since 3.12
+ */
+public final class TransactionTemplate {
+
+  private static final Object[] NO_ARGUMENTS = new Object[0];
+
+  private final TransactionalInvoker invoker;
+
+  /**
+   * Creates a template running the calls in local transactions of the given session manager.
+   *
+   * @param sqlSessionManager
+   *          the session manager
+   */
+  public TransactionTemplate(SqlSessionManager sqlSessionManager) {
+    this(sqlSessionManager, new TransactionStatistics());
+  }
+
+  /**
+   * Creates a template running the calls in local transactions of the given session manager.
+   *
+   * @param sqlSessionManager
+   *          the session manager
+   * @param statistics
+   *          the counters of the transactions ended
+   */
+  public TransactionTemplate(SqlSessionManager sqlSessionManager, TransactionStatistics statistics) {
+    TransactionalMethodInterceptor interceptor = new TransactionalMethodInterceptor();
+    interceptor.setSqlSessionManager(sqlSessionManager);
+    interceptor.setTransactionStatistics(statistics);
+    this.invoker = interceptor;
+  }
+
+  /**
+   * Creates a template running the calls through the interceptors bound by the module, JTA transactions included.
+   *
+   * @param invoker
+   *          the transactional invoker of the module
+   */
+  @Inject
+  public TransactionTemplate(TransactionalInvoker invoker) {
+    this.invoker = invoker;
+  }
+
+  /**
+   * Calls the callable in a {@link TransactionDefinition#DEFAULT default} transaction.
+   *
+   * @param <T>
+   *          the result type
+   * @param callable
+   *          the code to run
+   * @return the callable result
+   * @throws Exception
+   *           the error raised by the callable or by the transaction
+   */
+  public <T> T execute(Callable<T> callable) throws Exception {
+    return execute(TransactionDefinition.DEFAULT, callable);
+  }
+
+  /**
+   * Calls the callable in a transaction.
+   *
+   * @param <T>
+   *          the result type
+   * @param definition
+   *          the transaction attributes
+   * @param callable
+   *          the code to run
+   * @return the callable result
+   * @throws Exception
+   *           the error raised by the callable or by the transaction
+   */
+  @SuppressWarnings("unchecked")
+  public <T> T execute(TransactionDefinition definition, Callable<T> callable) throws Exception {
+    try {
+      return (T) invoker.invoke(definition.getTemplateMethod(), NO_ARGUMENTS, callable::call);
+    } catch (Exception e) {
+      throw e;
+    } catch (Error e) {
+      throw e;
+    } catch (Throwable t) {
+      throw new UndeclaredThrowableException(t);
+    }
+  }
+
+  /**
+   * Runs the runnable in a transaction.
+   *
+   * @param definition
+   *          the transaction attributes
+   * @param runnable
+   *          the code to run
+   */
+  public void run(TransactionDefinition definition, Runnable runnable) {
+    try {
+      invoker.invoke(definition.getTemplateMethod(), NO_ARGUMENTS, () -> {
+        runnable.run();
+        return null;
+      });
+    } catch (RuntimeException e) {
+      throw e;
+    } catch (Error e) {
+      throw e;
+    } catch (Throwable t) {
+      throw new UndeclaredThrowableException(t);
+    }
+  }
+
+}
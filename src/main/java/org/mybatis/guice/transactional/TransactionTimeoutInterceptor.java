@@ -0,0 +1,81 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.transactional;
+
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.Properties;
+
+import org.apache.ibatis.executor.statement.StatementHandler;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Plugin;
+import org.apache.ibatis.plugin.Signature;
+
+/**
+ * MyBatis plugin that applies the remaining {@link Transactional#timeout()} budget as the JDBC query timeout of each
+ * statement, and refuses to execute statements once the transaction deadline has been reached.
+ * <p>
+ * The budget is applied when the statement is parameterized, which happens before every execution, including the
+ * executions of a statement reused by the {@code REUSE} and {@code BATCH} executors or served by a prepared statement
+ * cache, which skip {@code prepare}; the deadline is also checked before preparing, sparing the round trip.
+ * </p>
+ * <p>
+ * Statement handlers are wrapped only while a transaction with a timeout is running on the current thread, so the
+ * plugin costs nothing to the other statements.
+ * </p>
+ *
+ * @since 3.12
+ */
+@Intercepts({
+    @Signature(type = StatementHandler.class, method = "prepare", args = { Connection.class, Integer.class }),
+    @Signature(type = StatementHandler.class, method = "parameterize", args = { Statement.class }) })
+public final class TransactionTimeoutInterceptor implements Interceptor {
+
+  @Override
+  public Object intercept(Invocation invocation) throws Throwable {
+    TransactionDeadline deadline = TransactionDeadline.current();
+    if (deadline == null) {
+      return invocation.proceed();
+    }
+
+    deadline.check();
+    if ("parameterize".equals(invocation.getMethod().getName())) {
+      Statement statement = (Statement) invocation.getArgs()[0];
+      int remaining = deadline.remainingSeconds();
+      int queryTimeout = statement.getQueryTimeout();
+      if (queryTimeout == 0 || queryTimeout > remaining) {
+        statement.setQueryTimeout(Math.max(remaining, 1));
+      }
+    }
+    return invocation.proceed();
+  }
+
+  @Override
+  public Object plugin(Object target) {
+    if (TransactionDeadline.current() == null) {
+      return target;
+    }
+    return Plugin.wrap(target, this);
+  }
+
+  @Override
+  public void setProperties(Properties properties) {
+    // do nothing
+  }
+
+}
@@ -97,6 +97,35 @@ public @interface Transactional {
    */
   boolean rollbackOnly() default false;
 
+  /**
+   * The timeout, in seconds, of the transaction started by the annotated method.
+   *
+   * Without the {@link TransactionTimeoutInterceptor} plugin, the timeout is only checked once the method returns: the
+   * statements run to completion, however long they take, and the transaction is then rolled back if the timeout
+   * expired. Register the plugin to apply the remaining time as the query timeout of each statement and to fail the
+   * first statement past the deadline.
+   *
+   * The timeout applies only when the method starts a new session; methods joining an existing transaction are bound
+   * by the timeout of that transaction. This parameter is -1 (no timeout) by default.
+   *
+   * @return the transaction timeout in seconds, -1 for no timeout.
+   * @since 3.12
+   */
+  int timeout() default -1;
+
+  /**
+   * Flag to indicate that the transaction started by the annotated method only reads: its connection is hinted with
+   * {@code Connection.setReadOnly(true)} for the duration of the transaction, and the commit ends the transaction
+   * without a {@code COMMIT} when no statement changed data, {@link #force()} being ignored: the transaction is rolled
+   * back instead, so that the hint can be cleared before the connection returns to the pool.
+   *
+   * Like the timeout, the flag applies only when the method starts a new session.
+   *
+   * @return true if the transaction only reads
+   * @since 3.12
+   */
+  boolean readOnly() default false;
+
   //
   // from javax.transaction.Transactional
   //
@@ -185,7 +214,26 @@ public @interface Transactional {
      * be thrown.
      * </p>
      */
-    NEVER
+    NEVER,
+
+    /**
+     * <p>
+     * If called outside a transaction context, behaves like {@link #REQUIRED}.
+     * </p>
+     * <p>
+     * If called inside a transaction context, a JDBC savepoint is set on the inherited session connection before the
+     * method execution; if the method fails (or is {@link Transactional#rollbackOnly()}) the work is rolled back to the
+     * savepoint only, leaving the enclosing transaction active.
+     * </p>
+     * <p>
+     * This is not part of javax.transaction, it is only honored by the plain JDBC interceptor; in a JTA context, or
+     * whenever the environment uses a {@code ManagedTransactionFactory}, it is handled like {@link #REQUIRED} and no
+     * savepoint is set on the connection.
+     * </p>
+     *
+     * @since 3.12
+     */
+    NESTED
   }
 
   /**
@@ -0,0 +1,51 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.transactional;
+
+import com.google.inject.ImplementedBy;
+
+/**
+ * Runs method bodies with the semantics of their {@link Transactional} attributes, without Guice AOP.
+ * <p>
+ * The modules bind it to the interceptors they bind to the {@link Transactional} methods: the
+ * {@link TransactionalMethodInterceptor} alone, or preceded by the {@link TxTransactionalMethodInterceptor} when a
+ * {@code MyBatisJtaModule} has a {@code TransactionManager}. The {@link TransactionTemplate} and the wrappers of the
+ * {@link TransactionalWrapper} classes call it, so their transactions join the JTA transactions as the intercepted
+ * methods do.
+ * </p>
+ *
+ * @since 3.12
+ */
+@ImplementedBy(TransactionalMethodInterceptor.class)
+public interface TransactionalInvoker {
+
+  /**
+   * Runs a method body with the semantics of its {@link Transactional} attributes.
+   *
+   * @param transactionalMethod
+   *          the method being called
+   * @param arguments
+   *          the call arguments
+   * @param invocation
+   *          the method body
+   * @return the method result
+   * @throws Throwable
+   *           the error raised by the method or by the transaction
+   */
+  Object invoke(TransactionalMethod transactionalMethod, Object[] arguments, TransactionalMethod.Invocation invocation)
+      throws Throwable;
+
+}
@@ -0,0 +1,178 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.transactional;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+
+import org.mybatis.guice.datasource.tenant.Tenant;
+
+/**
+ * A method run by a {@link TransactionalInvoker}, with its {@link Transactional} attributes resolved once
+ * into a {@link TransactionDefinition}.
+ * <p>
+ * The wrappers generated for the {@link TransactionalWrapper} classes hold one instance per wrapped method and pass it
+ * to {@link TransactionalInvoker#invoke(TransactionalMethod, Object[], Invocation)}, so a call involves no
+ * reflection.
+ * </p>
+ *
+ * @since 3.12
+ */
+public final class TransactionalMethod {
+
+  private final Method method;
+
+  private final TransactionDefinition definition;
+
+  private final Class<?>[] exceptionTypes;
+
+  private final int tenantParameter;
+
+  private static final Class<?>[] ANY_EXCEPTION = new Class<?>[] { Throwable.class };
+
+  TransactionalMethod(Method method) {
+    this(method, method.getDeclaringClass());
+  }
+
+  /**
+   * Creates the method called on instances of the given type, whose annotation applies to the methods it inherits.
+   */
+  private TransactionalMethod(Method method, Class<?> type) {
+    Transactional transactional = method.getAnnotation(Transactional.class);
+
+    // The annotation may be present at the class level instead
+    if (transactional == null) {
+      transactional = type.getAnnotation(Transactional.class);
+    }
+    if (transactional == null) {
+      transactional = method.getDeclaringClass().getAnnotation(Transactional.class);
+    }
+    if (transactional == null) {
+      throw new IllegalArgumentException(
+          String.format("Method %s is not annotated with @Transactional", method.toGenericString()));
+    }
+    this.method = method;
+    this.definition = TransactionDefinition.of(transactional);
+    this.exceptionTypes = method.getExceptionTypes();
+    this.tenantParameter = tenantParameterOf(method);
+  }
+
+  /**
+   * Creates the method the {@link TransactionTemplate} calls run as: errors are rethrown unchanged.
+   */
+  TransactionalMethod(TransactionDefinition definition) {
+    this.method = null;
+    this.definition = definition;
+    this.exceptionTypes = ANY_EXCEPTION;
+    this.tenantParameter = -1;
+  }
+
+  private static int tenantParameterOf(Method method) {
+    Annotation[][] parameterAnnotations = method.getParameterAnnotations();
+    for (int i = 0; i < parameterAnnotations.length; i++) {
+      for (Annotation annotation : parameterAnnotations[i]) {
+        if (annotation instanceof Tenant) {
+          return i;
+        }
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Resolves a method declared or inherited by the given type.
+   *
+   * @param type
+   *          the type declaring or inheriting the method
+   * @param name
+   *          the method name
+   * @param parameterTypes
+   *          the method parameter types
+   * @return the transactional method
+   * @throws IllegalArgumentException
+   *           if the method does not exist or is not transactional
+   */
+  public static TransactionalMethod of(Class<?> type, String name, Class<?>... parameterTypes) {
+    for (Class<?> declaringType = type; declaringType != null; declaringType = declaringType.getSuperclass()) {
+      try {
+        return new TransactionalMethod(declaringType.getDeclaredMethod(name, parameterTypes), type);
+      } catch (NoSuchMethodException e) {
+        // look in the superclass
+      }
+    }
+    throw new IllegalArgumentException(String.format("Type %s has no method %s", type.getName(), name));
+  }
+
+  /**
+   * Rethrows any throwable, checked or not, as the transactional interceptor does.
+   *
+   * @param <E>
+   *          the type the throwable is seen as
+   * @param throwable
+   *          the throwable to rethrow
+   * @return never returns
+   * @throws E
+   *           always
+   */
+  @SuppressWarnings("unchecked")
+  public static <E extends Throwable> E rethrow(Throwable throwable) throws E {
+    throw (E) throwable;
+  }
+
+  /**
+   * @return the annotated method, null for the calls of a {@link TransactionTemplate}
+   */
+  public Method getMethod() {
+    return method;
+  }
+
+  public TransactionDefinition getDefinition() {
+    return definition;
+  }
+
+  Class<?>[] getExceptionTypes() {
+    return exceptionTypes;
+  }
+
+  @Override
+  public String toString() {
+    return method == null ? "TransactionTemplate call" : method.toGenericString();
+  }
+
+  String tenantOf(Object[] arguments) {
+    if (tenantParameter < 0 || arguments[tenantParameter] == null) {
+      return null;
+    }
+    return arguments[tenantParameter].toString();
+  }
+
+  /**
+   * The body of a transactional method.
+   */
+  public interface Invocation {
+
+    /**
+     * Runs the method body.
+     *
+     * @return the method result
+     * @throws Throwable
+     *           the error raised by the method
+     */
+    Object proceed() throws Throwable;
+
+  }
+
+}
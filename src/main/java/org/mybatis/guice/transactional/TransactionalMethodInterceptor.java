@@ -20,20 +20,32 @@ import static java.lang.Thread.currentThread;
 
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
 import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.inject.Inject;
 
 import org.aopalliance.intercept.MethodInterceptor;
 import org.aopalliance.intercept.MethodInvocation;
+import org.apache.ibatis.exceptions.ExceptionFactory;
 import org.apache.ibatis.logging.Log;
 import org.apache.ibatis.logging.LogFactory;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSession;
 import org.apache.ibatis.session.SqlSessionManager;
+import org.apache.ibatis.session.TransactionIsolationLevel;
+import org.apache.ibatis.transaction.managed.ManagedTransactionFactory;
+import org.mybatis.guice.datasource.tenant.TenantContext;
+import org.mybatis.guice.transactional.Transactional.TxType;
 
 /**
  * Method interceptor for {@link Transactional} annotation.
  */
-public final class TransactionalMethodInterceptor implements MethodInterceptor {
+public final class TransactionalMethodInterceptor implements MethodInterceptor, TransactionalInvoker {
 
   private static final Class<?>[] CAUSE_TYPES = new Class[] { Throwable.class };
 
@@ -44,12 +56,23 @@ public final class TransactionalMethodInterceptor implements MethodInterceptor {
    */
   private final Log log = LogFactory.getLog(getClass());
 
+  /**
+   * The intercepted methods, with their attributes resolved.
+   */
+  private final ConcurrentMap<Method, TransactionalMethod> methods =
+      new ConcurrentHashMap<Method, TransactionalMethod>();
+
   /**
    * The {@code SqlSessionManager} reference.
    */
   @Inject
   private SqlSessionManager sqlSessionManager;
 
+  /**
+   * The counters of the transactions ended.
+   */
+  private TransactionStatistics statistics = new TransactionStatistics();
+
   /**
    * Sets the SqlSessionManager instance.
    *
@@ -60,47 +83,192 @@ public final class TransactionalMethodInterceptor implements MethodInterceptor {
     this.sqlSessionManager = sqlSessionManager;
   }
 
+  /**
+   * Sets the counters of the transactions ended, shared by the injector.
+   *
+   * @param statistics
+   *          the transaction statistics
+   * @since 3.12
+   */
+  @com.google.inject.Inject(optional = true)
+  public void setTransactionStatistics(TransactionStatistics statistics) {
+    this.statistics = statistics;
+  }
+
   /**
    * {@inheritDoc}
    */
   @Override
   public Object invoke(MethodInvocation invocation) throws Throwable {
-    Method interceptedMethod = invocation.getMethod();
-    Transactional transactional = interceptedMethod.getAnnotation(Transactional.class);
-
-    // The annotation may be present at the class level instead
-    if (transactional == null) {
-      transactional = interceptedMethod.getDeclaringClass().getAnnotation(Transactional.class);
+    Method method = invocation.getMethod();
+    TransactionalMethod transactionalMethod = methods.get(method);
+    if (transactionalMethod == null) {
+      transactionalMethod = new TransactionalMethod(method);
+      methods.putIfAbsent(method, transactionalMethod);
     }
+    return invoke(transactionalMethod, invocation.getArguments(), invocation::proceed);
+  }
+
+  /**
+   * Runs a method body with the semantics of its {@link Transactional} attributes.
+   *
+   * @param transactionalMethod
+   *          the method being called
+   * @param arguments
+   *          the call arguments
+   * @param invocation
+   *          the method body
+   * @return the method result
+   * @throws Throwable
+   *           the error raised by the method or by the transaction
+   * @since 3.12
+   */
+  @Override
+  public Object invoke(TransactionalMethod transactionalMethod, Object[] arguments,
+      TransactionalMethod.Invocation invocation) throws Throwable {
+    TransactionDefinition definition = transactionalMethod.getDefinition();
 
     String debugPrefix = null;
     if (this.log.isDebugEnabled()) {
-      debugPrefix = format("[Intercepted method: %s]", interceptedMethod.toGenericString());
+      debugPrefix = format("[Intercepted method: %s]", transactionalMethod);
     }
 
+    TxType txType = definition.getTxType();
     boolean isSessionInherited = this.sqlSessionManager.isManagedSessionStarted();
+    UnitOfWork.Unit unit = isSessionInherited ? UnitOfWork.unitOfSession(sqlSessionManager) : null;
+    // the session of a unit of work is not a transaction until a method runs one on it
+    boolean isUnitOfWorkSession = unit != null && !unit.inTransaction;
+    String tenant = transactionalMethod.tenantOf(arguments);
+
+    if (txType == TxType.NEVER && isSessionInherited && !isUnitOfWorkSession) {
+      throw new IllegalStateException(format(
+          "A call is being made on method %s that forbids a transaction but there is a current transaction.",
+          transactionalMethod));
+    }
+
+    SqlSession suspendedSession = null;
+    TransactionDeadline suspendedDeadline = null;
+    MemoizedResults suspendedResults = null;
+    boolean suspend;
+    boolean runOnUnitOfWork = false;
+    if (isUnitOfWorkSession) {
+      // the transactions run on the connection of the unit, unless they need a session of their own
+      boolean transactional = txType != TxType.NOT_SUPPORTED && txType != TxType.NEVER;
+      suspend = tenant != null || (transactional && !canRunOnUnitOfWork(definition));
+      runOnUnitOfWork = transactional && !suspend;
+    } else {
+      suspend = isSessionInherited && (txType == TxType.REQUIRES_NEW || txType == TxType.NOT_SUPPORTED);
+    }
+    if (suspend) {
+      if (log.isDebugEnabled()) {
+        log.debug(format("%s - SqlSession of thread: %s suspended", debugPrefix, currentThread().getId()));
+      }
+
+      suspendedSession = ManagedSessionSuspension.suspend(sqlSessionManager);
+      suspendedDeadline = TransactionDeadline.suspend();
+      suspendedResults = MemoizedResults.suspend();
+      isSessionInherited = false;
+    }
+
+    String previousTenant = null;
+    try {
+      if (tenant != null) {
+        if (isSessionInherited && !tenant.equals(TenantContext.current())) {
+          throw new IllegalStateException(format("A call is being made on method %s for tenant '%s' but there is a "
+              + "current transaction for tenant '%s'.", transactionalMethod, tenant,
+              TenantContext.current()));
+        }
+        previousTenant = TenantContext.set(tenant);
+      }
+
+      if (txType == TxType.NOT_SUPPORTED || txType == TxType.NEVER) {
+        if (log.isDebugEnabled()) {
+          log.debug(format("%s - executing outside a transaction", debugPrefix));
+        }
+
+        return invocation.proceed();
+      }
+
+      if (runOnUnitOfWork) {
+        return invokeInUnitOfWork(transactionalMethod, arguments, invocation, unit, debugPrefix);
+      }
+
+      return invokeInTransaction(transactionalMethod, arguments, invocation, isSessionInherited, debugPrefix);
+    } finally {
+      if (tenant != null) {
+        TenantContext.restore(previousTenant);
+      }
+
+      if (suspendedSession != null) {
+        if (log.isDebugEnabled()) {
+          log.debug(format("%s - SqlSession of thread: %s resumed", debugPrefix, currentThread().getId()));
+        }
+
+        ManagedSessionSuspension.resume(sqlSessionManager, suspendedSession);
+        TransactionDeadline.restore(suspendedDeadline);
+        MemoizedResults.restore(suspendedResults);
+      }
+    }
+  }
+
+  private Object invokeInTransaction(TransactionalMethod transactionalMethod, Object[] arguments,
+      TransactionalMethod.Invocation invocation, boolean isSessionInherited, String debugPrefix) throws Throwable {
+    TransactionDefinition definition = transactionalMethod.getDefinition();
+    Savepoint savepoint = null;
+    TransactionDeadline deadline = null;
+    TransactionDeadline previousDeadline = null;
+    MemoizedResults previousResults = null;
+    HeldSession heldSession = null;
+    boolean readOnly = false;
 
     if (isSessionInherited) {
       if (log.isDebugEnabled()) {
         log.debug(format("%s - SqlSession already set for thread: %s", debugPrefix, currentThread().getId()));
       }
+
+      if (definition.getTxType() == TxType.NESTED) {
+        if (isManagedTransaction()) {
+          // the global transaction owns the connection, savepoints are not allowed on it: join as REQUIRED
+          if (log.isDebugEnabled()) {
+            log.debug(format("%s - SqlSession of thread: %s is managed, joining without a savepoint", debugPrefix,
+                currentThread().getId()));
+          }
+        } else {
+          savepoint = setSavepoint(debugPrefix);
+        }
+      }
     } else {
       if (log.isDebugEnabled()) {
         log.debug(
             format("%s - SqlSession not set for thread: %s, creating a new one", debugPrefix, currentThread().getId()));
       }
 
-      sqlSessionManager.startManagedSession(transactional.executorType(),
-          transactional.isolation().getTransactionIsolationLevel());
+      sqlSessionManager.startManagedSession(definition.getExecutorType(),
+          definition.getIsolation().getTransactionIsolationLevel());
+      heldSession = ManagedSessionTracker.track(sqlSessionManager, transactionalMethod);
+      previousResults = MemoizedResults.start();
+
+      if (definition.isReadOnly()) {
+        readOnly = setReadOnly(debugPrefix);
+      }
+
+      if (definition.getTimeout() > 0) {
+        previousDeadline = TransactionDeadline.start(definition.getTimeout());
+        deadline = TransactionDeadline.current();
+      }
     }
 
     Object object = null;
-    boolean needsRollback = transactional.rollbackOnly();
+    boolean needsRollback = definition.isRollbackOnly();
     try {
       object = invocation.proceed();
+
+      if (deadline != null) {
+        deadline.check();
+      }
     } catch (Throwable t) {
       needsRollback = true;
-      throw convertThrowableIfNeeded(invocation, transactional, t);
+      throw convertThrowableIfNeeded(transactionalMethod, arguments, t);
     } finally {
       if (!isSessionInherited) {
         try {
@@ -110,21 +278,57 @@ public final class TransactionalMethodInterceptor implements MethodInterceptor {
             }
 
             sqlSessionManager.rollback(true);
+            statistics.rolledBack();
           } else {
             if (log.isDebugEnabled()) {
               log.debug(debugPrefix + " - SqlSession of thread: " + currentThread().getId() + " committing");
             }
 
-            sqlSessionManager.commit(transactional.force());
+            // a read-only transaction is committed only if it changed data after all
+            boolean force = definition.isForce() && !definition.isReadOnly();
+            boolean dirty = force || ManagedSessionSuspension.isDirty(sqlSessionManager);
+            if (readOnly && !dirty) {
+              // ends the transaction on the connection, which some drivers require to clear the read-only hint
+              sqlSessionManager.rollback(true);
+            } else {
+              sqlSessionManager.commit(force);
+            }
+            if (dirty) {
+              statistics.committed();
+            } else {
+              statistics.commitElided();
+            }
           }
         } finally {
+          if (readOnly) {
+            restoreReadWrite(debugPrefix);
+          }
+
+          if (deadline != null) {
+            TransactionDeadline.restore(previousDeadline);
+          }
+
+          MemoizedResults memoizedResults = MemoizedResults.current();
+          if (log.isDebugEnabled() && memoizedResults.getMisses() > 0) {
+            log.debug(format("%s - memoized results of thread: %s, %s hit(s), %s miss(es)", debugPrefix,
+                currentThread().getId(), memoizedResults.getHits(), memoizedResults.getMisses()));
+          }
+          MemoizedResults.restore(previousResults);
+
           if (log.isDebugEnabled()) {
             log.debug(format("%s - SqlSession of thread: %s terminated its life-cycle, closing it", debugPrefix,
                 currentThread().getId()));
           }
 
+          ManagedSessionTracker.untrack(heldSession);
           sqlSessionManager.close();
         }
+      } else if (savepoint != null) {
+        if (needsRollback) {
+          rollbackToSavepoint(savepoint, debugPrefix);
+        } else {
+          releaseSavepoint(savepoint, debugPrefix);
+        }
       } else if (log.isDebugEnabled()) {
         log.debug(format("%s - SqlSession of thread: %s is inherited, skipped close operation", debugPrefix,
             currentThread().getId()));
@@ -134,18 +338,232 @@ public final class TransactionalMethodInterceptor implements MethodInterceptor {
     return object;
   }
 
-  private Throwable convertThrowableIfNeeded(MethodInvocation invocation, Transactional transactional, Throwable t) {
-    Method interceptedMethod = invocation.getMethod();
+  /**
+   * Tells whether a transaction can run on the session of a unit of work: the session executor is the default one and
+   * the connection is not owned by a transaction manager.
+   */
+  private boolean canRunOnUnitOfWork(TransactionDefinition definition) {
+    return definition.getExecutorType() == sqlSessionManager.getConfiguration().getDefaultExecutorType()
+        && !isManagedTransaction();
+  }
+
+  /**
+   * Runs a method body in a transaction on the auto-commit connection of a unit of work, restoring the auto-commit
+   * mode once the transaction is committed or rolled back.
+   */
+  private Object invokeInUnitOfWork(TransactionalMethod transactionalMethod, Object[] arguments,
+      TransactionalMethod.Invocation invocation, UnitOfWork.Unit unit, String debugPrefix) throws Throwable {
+    TransactionDefinition definition = transactionalMethod.getDefinition();
+    if (log.isDebugEnabled()) {
+      log.debug(format("%s - SqlSession of thread: %s belongs to a unit of work, running the transaction on it",
+          debugPrefix, currentThread().getId()));
+    }
+
+    // flushes the statements of the unit and forgets they changed data, nothing is committed in auto-commit mode
+    sqlSessionManager.commit();
+    Connection connection = sqlSessionManager.getConnection();
+    Integer previousIsolation = null;
+    try {
+      TransactionIsolationLevel isolation = definition.getIsolation().getTransactionIsolationLevel();
+      if (isolation != null && isolation.getLevel() != connection.getTransactionIsolation()) {
+        previousIsolation = connection.getTransactionIsolation();
+        connection.setTransactionIsolation(isolation.getLevel());
+      }
+      connection.setAutoCommit(false);
+    } catch (SQLException e) {
+      throw ExceptionFactory.wrapException("Error beginning the transaction of the unit of work.  Cause: " + e, e);
+    }
+    unit.inTransaction = true;
+    MemoizedResults previousResults = MemoizedResults.start();
+    boolean readOnly = definition.isReadOnly() && setReadOnly(debugPrefix);
+    TransactionDeadline previousDeadline = null;
+    TransactionDeadline deadline = null;
+    if (definition.getTimeout() > 0) {
+      previousDeadline = TransactionDeadline.start(definition.getTimeout());
+      deadline = TransactionDeadline.current();
+    }
+
+    Object object = null;
+    boolean needsRollback = definition.isRollbackOnly();
+    try {
+      object = invocation.proceed();
+
+      if (deadline != null) {
+        deadline.check();
+      }
+    } catch (Throwable t) {
+      needsRollback = true;
+      throw convertThrowableIfNeeded(transactionalMethod, arguments, t);
+    } finally {
+      try {
+        // the session of the unit is in auto-commit mode, only a forced commit or rollback reaches the connection
+        if (needsRollback) {
+          if (log.isDebugEnabled()) {
+            log.debug(debugPrefix + " - SqlSession of thread: " + currentThread().getId() + " rolling back");
+          }
+
+          sqlSessionManager.rollback(true);
+          statistics.rolledBack();
+        } else {
+          if (log.isDebugEnabled()) {
+            log.debug(debugPrefix + " - SqlSession of thread: " + currentThread().getId() + " committing");
+          }
+
+          boolean dirty = (definition.isForce() && !definition.isReadOnly())
+              || ManagedSessionSuspension.isDirty(sqlSessionManager);
+          sqlSessionManager.commit(dirty);
+          if (dirty) {
+            statistics.committed();
+          } else {
+            statistics.commitElided();
+          }
+        }
+      } finally {
+        if (deadline != null) {
+          TransactionDeadline.restore(previousDeadline);
+        }
+
+        MemoizedResults.restore(previousResults);
+        unit.inTransaction = false;
+
+        try {
+          connection.setAutoCommit(true);
+          if (previousIsolation != null) {
+            connection.setTransactionIsolation(previousIsolation);
+          }
+        } catch (SQLException e) {
+          throw ExceptionFactory.wrapException("Error ending the transaction of the unit of work.  Cause: " + e, e);
+        } finally {
+          // once back in auto-commit mode, the transaction ended even if its commit was elided
+          if (readOnly) {
+            restoreReadWrite(debugPrefix);
+          }
+        }
+      }
+    }
+
+    return object;
+  }
+
+  /**
+   * Hints the connection of the session just started as read-only; drivers rejecting the hint are ignored.
+   *
+   * @return true if the hint was applied
+   */
+  private boolean setReadOnly(String debugPrefix) {
+    try {
+      sqlSessionManager.getConnection().setReadOnly(true);
+      return true;
+    } catch (SQLException | RuntimeException e) {
+      if (log.isDebugEnabled()) {
+        log.debug(format("%s - SqlSession of thread: %s could not set the connection read-only: %s", debugPrefix,
+            currentThread().getId(), e));
+      }
+      return false;
+    }
+  }
+
+  /**
+   * Clears the read-only hint once the transaction ended, before the session returns the connection to the pool. The
+   * pools do not reset the hint, so a connection keeping it is discarded: its physical connection is closed, which
+   * the pools detect when it is returned.
+   */
+  private void restoreReadWrite(String debugPrefix) {
+    Connection connection = sqlSessionManager.getConnection();
+    try {
+      connection.setReadOnly(false);
+    } catch (SQLException | RuntimeException e) {
+      log.warn(format("%s - SqlSession of thread: %s could not restore the read-write mode of the connection, "
+          + "discarding it: %s", debugPrefix, currentThread().getId(), e));
+      try {
+        connection.unwrap(Connection.class).close();
+      } catch (SQLException | RuntimeException closeError) {
+        log.warn(format("%s - SqlSession of thread: %s could not discard the read-only connection: %s", debugPrefix,
+            currentThread().getId(), closeError));
+      }
+    }
+  }
+
+  /**
+   * Tells whether the transactions of the environment are managed by the container, as under a JTA transaction
+   * manager.
+   */
+  private boolean isManagedTransaction() {
+    Configuration configuration = sqlSessionManager.getConfiguration();
+    return configuration != null && configuration.getEnvironment() != null
+        && configuration.getEnvironment().getTransactionFactory() instanceof ManagedTransactionFactory;
+  }
+
+  /**
+   * Flushes the pending statements of the inherited session and marks a savepoint on its connection, so a
+   * {@link TxType#NESTED} method can be undone without rolling back the enclosing transaction.
+   */
+  private Savepoint setSavepoint(String debugPrefix) {
+    if (log.isDebugEnabled()) {
+      log.debug(format("%s - SqlSession of thread: %s setting savepoint", debugPrefix, currentThread().getId()));
+    }
+
+    sqlSessionManager.flushStatements();
+    try {
+      return sqlSessionManager.getConnection().setSavepoint();
+    } catch (SQLException e) {
+      throw ExceptionFactory.wrapException("Error setting savepoint.  Cause: " + e, e);
+    }
+  }
+
+  private void rollbackToSavepoint(Savepoint savepoint, String debugPrefix) {
+    if (log.isDebugEnabled()) {
+      log.debug(
+          format("%s - SqlSession of thread: %s rolling back to savepoint", debugPrefix, currentThread().getId()));
+    }
+
+    try {
+      // pending batched statements belong to the nested unit, execute them so the rollback discards them
+      sqlSessionManager.flushStatements();
+    } catch (RuntimeException e) {
+      if (log.isDebugEnabled()) {
+        log.debug(format("%s - ignoring flush failure before rolling back to savepoint: %s", debugPrefix, e));
+      }
+    }
+
+    try {
+      sqlSessionManager.getConnection().rollback(savepoint);
+    } catch (SQLException e) {
+      throw ExceptionFactory.wrapException("Error rolling back to savepoint.  Cause: " + e, e);
+    } finally {
+      // the local cache may hold results that no longer exist
+      sqlSessionManager.clearCache();
+    }
+  }
+
+  private void releaseSavepoint(Savepoint savepoint, String debugPrefix) {
+    if (log.isDebugEnabled()) {
+      log.debug(format("%s - SqlSession of thread: %s releasing savepoint", debugPrefix, currentThread().getId()));
+    }
+
+    try {
+      sqlSessionManager.getConnection().releaseSavepoint(savepoint);
+    } catch (SQLException e) {
+      // not every driver supports releasing, the savepoint is discarded on commit anyway
+      if (log.isDebugEnabled()) {
+        log.debug(format("%s - savepoint not released: %s", debugPrefix, e.getMessage()));
+      }
+    }
+  }
+
+  private Throwable convertThrowableIfNeeded(TransactionalMethod transactionalMethod, Object[] arguments,
+      Throwable t) {
+    TransactionDefinition definition = transactionalMethod.getDefinition();
 
     // check the caught exception is declared in the invoked method
-    for (Class<?> exceptionClass : interceptedMethod.getExceptionTypes()) {
+    for (Class<?> exceptionClass : transactionalMethod.getExceptionTypes()) {
       if (exceptionClass.isAssignableFrom(t.getClass())) {
         return t;
       }
     }
 
     // check the caught exception is of same rethrow type
-    if (transactional.rethrowExceptionsAs().isAssignableFrom(t.getClass())) {
+    if (definition.getRethrowExceptionsAs().isAssignableFrom(t.getClass())) {
       return t;
     }
 
@@ -154,8 +572,8 @@ public final class TransactionalMethodInterceptor implements MethodInterceptor {
     Object[] initargs;
     Class<?>[] initargsType;
 
-    if (transactional.exceptionMessage().length() != 0) {
-      errorMessage = format(transactional.exceptionMessage(), invocation.getArguments());
+    if (definition.getExceptionMessage().length() != 0) {
+      errorMessage = format(definition.getExceptionMessage(), arguments);
       initargs = new Object[] { errorMessage, t };
       initargsType = MESSAGE_CAUSE_TYPES;
     } else {
@@ -163,7 +581,7 @@ public final class TransactionalMethodInterceptor implements MethodInterceptor {
       initargsType = CAUSE_TYPES;
     }
 
-    Constructor<? extends Throwable> exceptionConstructor = getMatchingConstructor(transactional.rethrowExceptionsAs(),
+    Constructor<? extends Throwable> exceptionConstructor = getMatchingConstructor(definition.getRethrowExceptionsAs(),
         initargsType);
     Throwable rethrowEx = null;
     if (exceptionConstructor != null) {
@@ -171,13 +589,13 @@ public final class TransactionalMethodInterceptor implements MethodInterceptor {
         rethrowEx = exceptionConstructor.newInstance(initargs);
       } catch (Exception e) {
         errorMessage = format("Impossible to re-throw '%s', it needs the constructor with %s argument(s).",
-            transactional.rethrowExceptionsAs().getName(), Arrays.toString(initargsType));
+            definition.getRethrowExceptionsAs().getName(), Arrays.toString(initargsType));
         log.error(errorMessage, e);
         rethrowEx = new RuntimeException(errorMessage, e);
       }
     } else {
       errorMessage = format("Impossible to re-throw '%s', it needs the constructor with %s or %s argument(s).",
-          transactional.rethrowExceptionsAs().getName(), Arrays.toString(CAUSE_TYPES),
+          definition.getRethrowExceptionsAs().getName(), Arrays.toString(CAUSE_TYPES),
           Arrays.toString(MESSAGE_CAUSE_TYPES));
       log.error(errorMessage);
       rethrowEx = new RuntimeException(errorMessage);
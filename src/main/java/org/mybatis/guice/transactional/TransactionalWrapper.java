@@ -0,0 +1,47 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.transactional;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a class whose {@link Transactional} methods are wrapped at compile time instead of being intercepted by Guice
+ * AOP.
+ * <p>
+ * The {@code TransactionalWrapperProcessor} annotation processor generates, in the same package, a class named after
+ * the annotated one with the {@value #SUFFIX} suffix, nested class names being joined with {@code _}. It extends a
+ * non-final class, overriding the transactional methods it declares; for a final class it implements the class
+ * interfaces and delegates to an injected instance. The wrapper is bound in place of the original with
+ * {@code bindTransactionalWrapper(Class)}.
+ * </p>
+ *
+ * @since 3.12
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface TransactionalWrapper {
+
+  /**
+   * The suffix of the generated class names.
+   */
+  String SUFFIX = "_TransactionalWrapper";
+
+}
@@ -0,0 +1,47 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.transactional;
+
+import javax.inject.Inject;
+
+/**
+ * The {@link TransactionalInvoker} of a {@code MyBatisJtaModule} with a {@code TransactionManager}: the calls run
+ * through the {@link TxTransactionalMethodInterceptor}, then through the {@link TransactionalMethodInterceptor}, in the
+ * order the module binds them to the {@link Transactional} methods.
+ *
+ * @since 3.12
+ */
+public final class TxTransactionalInvoker implements TransactionalInvoker {
+
+  private final TxTransactionalMethodInterceptor txInterceptor;
+
+  private final TransactionalMethodInterceptor interceptor;
+
+  @Inject
+  public TxTransactionalInvoker(TxTransactionalMethodInterceptor txInterceptor,
+      TransactionalMethodInterceptor interceptor) {
+    this.txInterceptor = txInterceptor;
+    this.interceptor = interceptor;
+  }
+
+  @Override
+  public Object invoke(TransactionalMethod transactionalMethod, Object[] arguments,
+      TransactionalMethod.Invocation invocation) throws Throwable {
+    return txInterceptor.invoke(transactionalMethod, arguments,
+        () -> interceptor.invoke(transactionalMethod, arguments, invocation));
+  }
+
+}
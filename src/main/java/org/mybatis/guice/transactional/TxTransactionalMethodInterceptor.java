@@ -19,6 +19,8 @@ import static java.lang.String.format;
 
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import javax.ejb.ApplicationException;
 import javax.inject.Inject;
 import javax.inject.Provider;
@@ -40,6 +42,12 @@ public class TxTransactionalMethodInterceptor implements MethodInterceptor {
    */
   private final Log log = LogFactory.getLog(getClass());
 
+  /**
+   * The intercepted methods, with their attributes resolved.
+   */
+  private final ConcurrentMap<Method, TransactionalMethod> methods =
+      new ConcurrentHashMap<Method, TransactionalMethod>();
+
   @Inject
   private TransactionManager manager;
 
@@ -73,26 +81,45 @@ public class TxTransactionalMethodInterceptor implements MethodInterceptor {
    */
   @Override
   public Object invoke(MethodInvocation invocation) throws Throwable {
-    Method interceptedMethod = invocation.getMethod();
-    Transactional transactional = interceptedMethod.getAnnotation(Transactional.class);
-
-    // The annotation may be present at the class level instead
-    if (transactional == null) {
-      transactional = interceptedMethod.getDeclaringClass().getAnnotation(Transactional.class);
+    Method method = invocation.getMethod();
+    TransactionalMethod transactionalMethod = methods.get(method);
+    if (transactionalMethod == null) {
+      transactionalMethod = new TransactionalMethod(method);
+      methods.putIfAbsent(method, transactionalMethod);
     }
+    return invoke(transactionalMethod, invocation.getArguments(), invocation::proceed);
+  }
+
+  /**
+   * Runs a method body in the JTA transaction its {@link Transactional} attributes call for.
+   *
+   * @param transactionalMethod
+   *          the method being called
+   * @param arguments
+   *          the call arguments
+   * @param invocation
+   *          the method body
+   * @return the method result
+   * @throws Throwable
+   *           the error raised by the method or by the transaction
+   * @since 3.12
+   */
+  public Object invoke(TransactionalMethod transactionalMethod, Object[] arguments,
+      TransactionalMethod.Invocation invocation) throws Throwable {
+    TransactionDefinition transactional = transactionalMethod.getDefinition();
 
     String debugPrefix = null;
     if (this.log.isDebugEnabled()) {
-      debugPrefix = String.format("[Intercepted method: %s]", interceptedMethod.toGenericString());
+      debugPrefix = String.format("[Intercepted method: %s]", transactionalMethod);
     }
 
-    boolean needsRollback = transactional.rollbackOnly();
+    boolean needsRollback = transactional.isRollbackOnly();
     Object object = null;
     TransactionAttribute attribute = null;
 
     if (manager != null) {
-      TxType txType = transactional.value();
-      if (TxType.REQUIRED.equals(txType)) {
+      TxType txType = transactional.getTxType();
+      if (TxType.REQUIRED.equals(txType) || TxType.NESTED.equals(txType)) {
         attribute = TransactionAttribute.REQUIRED;
       } else if (TxType.REQUIRES_NEW.equals(txType)) {
         attribute = TransactionAttribute.REQUIRESNEW;
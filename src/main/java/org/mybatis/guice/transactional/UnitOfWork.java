@@ -0,0 +1,297 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.transactional;
+
+import static java.lang.String.format;
+
+import com.google.inject.Key;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionManager;
+
+/**
+ * Holds one managed {@link SqlSession} across a request or job boundary, so the mapper calls made outside a
+ * {@link Transactional} method share its connection instead of each opening a session of their own.
+ * <p>
+ * The session is opened in auto-commit mode, so every statement run directly in the unit is committed as it would be
+ * without one. The {@link Transactional} methods called in the unit run their transaction on its connection, turning
+ * auto-commit off until they commit or roll back, so the unit never holds a second connection; a method asking for
+ * another executor type or another tenant, or a connection owned by a JTA transaction manager, suspends the session of
+ * the unit and runs in a session of its own instead. A unit begun inside a transaction joins the transaction session.
+ * </p>
+ * <p>
+ * A thread holds at most one unit per {@link SqlSessionManager}. Beginning a unit on a thread that still holds one
+ * means the previous unit was never ended, usually because a pooled thread ran a task that forgot to call
+ * {@link #end()}: the leak is logged with the stack of the code that began it, its session is closed and a new unit is
+ * begun. {@link #call(Callable)} and {@link #wrap(Runnable)} end the units they begin, and join the unit already held
+ * by the thread instead of beginning one.
+ * </p>
+ *
+ * <pre>
+ * executor.submit(unitOfWork.wrap(() -&gt; {
+ *   for (Row row : mapper.findAll()) {
+ *     mapper.update(row);
+ *   }
+ * }));
+ * </pre>
+ *
+ * @since 3.12
+ */
+@Singleton
+public final class UnitOfWork {
+
+  private static final Log log = LogFactory.getLog(UnitOfWork.class);
+
+  /**
+   * The innermost unit held by the current thread, the units of other session managers linked from it.
+   */
+  private static final ThreadLocal<Unit> CURRENT = new ThreadLocal<Unit>();
+
+  private final SqlSessionManager sqlSessionManager;
+
+  private final AtomicLong leaks = new AtomicLong();
+
+  @Inject
+  public UnitOfWork(SqlSessionManager sqlSessionManager) {
+    this.sqlSessionManager = sqlSessionManager;
+  }
+
+  /**
+   * Begins a unit of work on the current thread.
+   */
+  public void begin() {
+    Unit leaked = find(sqlSessionManager);
+    if (leaked != null) {
+      leaks.incrementAndGet();
+      StringBuilder message = new StringBuilder(format(
+          "Unit of work begun %s ms ago on thread %s was never ended, closing its session. It was begun",
+          TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - leaked.startNanos), Thread.currentThread().getName()));
+      for (StackTraceElement frame : leaked.opener) {
+        message.append(System.lineSeparator()).append("\tat ").append(frame);
+      }
+      log.warn(message.toString());
+      end(leaked);
+    }
+
+    SqlSession session = null;
+    HeldSession heldSession = null;
+    if (!sqlSessionManager.isManagedSessionStarted()) {
+      sqlSessionManager.startManagedSession(true);
+      session = ManagedSessionSuspension.current(sqlSessionManager);
+      heldSession = ManagedSessionTracker.track(sqlSessionManager, this);
+    }
+    CURRENT.set(new Unit(sqlSessionManager, session, heldSession, CURRENT.get()));
+
+    if (log.isDebugEnabled()) {
+      log.debug(format("Unit of work begun on thread %s%s", Thread.currentThread().getName(),
+          session == null ? ", joining the current transaction" : ""));
+    }
+  }
+
+  /**
+   * Ends the unit of work held by the current thread and closes its session. Does nothing if the thread holds none.
+   */
+  public void end() {
+    Unit unit = find(sqlSessionManager);
+    if (unit != null) {
+      end(unit);
+    }
+  }
+
+  /**
+   * @return true if the current thread holds a unit of work
+   */
+  public boolean isActive() {
+    return find(sqlSessionManager) != null;
+  }
+
+  /**
+   * @return the number of units found never ended since startup
+   */
+  public long getLeaks() {
+    return leaks.get();
+  }
+
+  @Override
+  public String toString() {
+    return "UnitOfWork";
+  }
+
+  /**
+   * Calls the callable in a unit of work, joining the unit held by the current thread if any.
+   *
+   * @param <T>
+   *          the result type
+   * @param callable
+   *          the code to run
+   * @return the callable result
+   * @throws Exception
+   *           the error raised by the callable
+   */
+  public <T> T call(Callable<T> callable) throws Exception {
+    if (isActive()) {
+      return callable.call();
+    }
+    begin();
+    try {
+      return callable.call();
+    } finally {
+      end();
+    }
+  }
+
+  /**
+   * Wraps a task so that it runs in a unit of work, for the tasks submitted to executors.
+   *
+   * @param runnable
+   *          the task
+   * @return the wrapped task
+   */
+  public Runnable wrap(final Runnable runnable) {
+    if (runnable == null) {
+      throw new IllegalArgumentException("Parameter 'runnable' must not be null");
+    }
+    return () -> {
+      if (isActive()) {
+        runnable.run();
+        return;
+      }
+      begin();
+      try {
+        runnable.run();
+      } finally {
+        end();
+      }
+    };
+  }
+
+  private void end(Unit unit) {
+    try {
+      if (unit.session != null) {
+        ManagedSessionTracker.untrack(unit.heldSession);
+        if (unit.session == ManagedSessionSuspension.current(sqlSessionManager)) {
+          sqlSessionManager.close();
+        } else {
+          unit.session.close();
+        }
+      }
+    } finally {
+      unlink(unit);
+      if (log.isDebugEnabled()) {
+        log.debug(format("Unit of work ended on thread %s", Thread.currentThread().getName()));
+      }
+    }
+  }
+
+  /**
+   * Returns the unit of work whose session is the managed session of the current thread.
+   *
+   * @return the unit, null if the managed session is not the session of a unit of work
+   */
+  static Unit unitOfSession(SqlSessionManager sqlSessionManager) {
+    Unit unit = find(sqlSessionManager);
+    if (unit != null && unit.session != null && unit.session == ManagedSessionSuspension.current(sqlSessionManager)) {
+      return unit;
+    }
+    return null;
+  }
+
+  /**
+   * @return the innermost unit held by the current thread, null if none
+   */
+  static Unit current() {
+    return CURRENT.get();
+  }
+
+  private static Unit find(SqlSessionManager sqlSessionManager) {
+    for (Unit unit = CURRENT.get(); unit != null; unit = unit.previous) {
+      if (unit.sqlSessionManager == sqlSessionManager) {
+        return unit;
+      }
+    }
+    return null;
+  }
+
+  private static void unlink(Unit unit) {
+    Unit head = CURRENT.get();
+    if (head == unit) {
+      if (unit.previous == null) {
+        CURRENT.remove();
+      } else {
+        CURRENT.set(unit.previous);
+      }
+      return;
+    }
+    for (Unit u = head; u != null; u = u.previous) {
+      if (u.previous == unit) {
+        u.previous = unit.previous;
+        return;
+      }
+    }
+  }
+
+  static final class Unit {
+
+    final SqlSessionManager sqlSessionManager;
+
+    /**
+     * The session started by the unit, null if it joined a transaction.
+     */
+    final SqlSession session;
+
+    final HeldSession heldSession;
+
+    final StackTraceElement[] opener = new Throwable().getStackTrace();
+
+    final long startNanos = System.nanoTime();
+
+    Unit previous;
+
+    /**
+     * Whether a {@link Transactional} method is running its transaction on the session of the unit.
+     */
+    boolean inTransaction;
+
+    private Map<Key<?>, Object> scopedObjects;
+
+    Unit(SqlSessionManager sqlSessionManager, SqlSession session, HeldSession heldSession, Unit previous) {
+      this.sqlSessionManager = sqlSessionManager;
+      this.session = session;
+      this.heldSession = heldSession;
+      this.previous = previous;
+    }
+
+    Map<Key<?>, Object> getScopedObjects() {
+      if (scopedObjects == null) {
+        scopedObjects = new HashMap<Key<?>, Object>();
+      }
+      return scopedObjects;
+    }
+
+  }
+
+}
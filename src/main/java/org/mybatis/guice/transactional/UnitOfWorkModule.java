@@ -0,0 +1,69 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.transactional;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Key;
+import com.google.inject.OutOfScopeException;
+import com.google.inject.Provider;
+import com.google.inject.Scope;
+
+import java.util.Map;
+
+/**
+ * Binds the {@link UnitOfWorkScoped} scope. Install it once per injector, next to the MyBatis modules.
+ *
+ * @since 3.12
+ */
+public final class UnitOfWorkModule extends AbstractModule {
+
+  /**
+   * The scope of the {@link UnitOfWorkScoped} bindings.
+   */
+  public static final Scope UNIT_OF_WORK = new Scope() {
+
+    @Override
+    public <T> Provider<T> scope(final Key<T> key, final Provider<T> unscoped) {
+      return () -> {
+        UnitOfWork.Unit unit = UnitOfWork.current();
+        if (unit == null) {
+          throw new OutOfScopeException(
+              "Cannot access " + key + " outside of a unit of work, call UnitOfWork.begin() first");
+        }
+        Map<Key<?>, Object> scopedObjects = unit.getScopedObjects();
+        @SuppressWarnings("unchecked")
+        T scoped = (T) scopedObjects.get(key);
+        if (scoped == null && !scopedObjects.containsKey(key)) {
+          scoped = unscoped.get();
+          scopedObjects.put(key, scoped);
+        }
+        return scoped;
+      };
+    }
+
+    @Override
+    public String toString() {
+      return "UnitOfWorkModule.UNIT_OF_WORK";
+    }
+
+  };
+
+  @Override
+  protected void configure() {
+    bindScope(UnitOfWorkScoped.class, UNIT_OF_WORK);
+  }
+
+}
@@ -50,6 +50,18 @@ public class XASqlSessionManager implements XAResource {
     id = sqlSessionManager.getConfiguration().getEnvironment().getId();
   }
 
+  /**
+   * Discards the global tokens of the XA transactions still open, so that none survives a checkpoint of the JVM.
+   *
+   * @return the number of tokens discarded
+   * @since 3.12
+   */
+  public static int discardGlobalTokens() {
+    int discarded = globalTokens.size();
+    globalTokens.clear();
+    return discarded;
+  }
+
   public String getId() {
     return id;
   }
@@ -0,0 +1,459 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.transactional.processor;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.TypeParameterElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.ExecutableType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic.Kind;
+
+import org.mybatis.guice.transactional.Transactional;
+import org.mybatis.guice.transactional.TransactionalWrapper;
+
+/**
+ * Generates the wrappers of the classes annotated with {@link TransactionalWrapper}.
+ * <p>
+ * Each wrapped method hands its body to the injected {@code TransactionalInvoker} as a lambda, together with a
+ * {@code TransactionalMethod} resolved once per class, so the calls keep the commit and rollback semantics of the Guice
+ * AOP interception without generating classes at runtime.
+ * </p>
+ *
+ * @since 3.12
+ */
+public final class TransactionalWrapperProcessor extends AbstractProcessor {
+
+  private static final String INJECT = "javax.inject.Inject";
+
+  private static final String GUICE_INJECT = "com.google.inject.Inject";
+
+  @Override
+  public Set<String> getSupportedAnnotationTypes() {
+    return Collections.singleton(TransactionalWrapper.class.getName());
+  }
+
+  @Override
+  public SourceVersion getSupportedSourceVersion() {
+    return SourceVersion.latestSupported();
+  }
+
+  @Override
+  public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+    for (Element element : roundEnv.getElementsAnnotatedWith(TransactionalWrapper.class)) {
+      TypeElement type = (TypeElement) element;
+      if (!check(type)) {
+        continue;
+      }
+      try {
+        generate(type);
+      } catch (IOException e) {
+        error(type, "Could not write the transactional wrapper: " + e);
+      }
+    }
+    return true;
+  }
+
+  private boolean check(TypeElement type) {
+    if (type.getKind() != ElementKind.CLASS) {
+      error(type, "@TransactionalWrapper only applies to classes");
+      return false;
+    }
+    if (type.getModifiers().contains(Modifier.PRIVATE) || type.getModifiers().contains(Modifier.ABSTRACT)) {
+      error(type, "A @TransactionalWrapper class must be neither private nor abstract");
+      return false;
+    }
+    if (type.getNestingKind() != NestingKind.TOP_LEVEL && !type.getModifiers().contains(Modifier.STATIC)) {
+      error(type, "A nested @TransactionalWrapper class must be static");
+      return false;
+    }
+    if (isFinal(type) && type.getInterfaces().isEmpty()) {
+      error(type, "A final @TransactionalWrapper class must implement the interfaces it is bound to");
+      return false;
+    }
+    return true;
+  }
+
+  private void generate(TypeElement type) throws IOException {
+    String packageName = processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+    String wrapperName = wrapperSimpleName(type);
+    String qualifiedName = packageName.isEmpty() ? wrapperName : packageName + "." + wrapperName;
+
+    StringBuilder body = new StringBuilder();
+    List<String> methodFields = new ArrayList<String>();
+    String typeParameters = typeParameters(type.getTypeParameters());
+    String typeArguments = typeArguments(type.getTypeParameters());
+    String declaration;
+    if (isFinal(type)) {
+      declaration = "public final class " + wrapperName + typeParameters + " implements " + join(type.getInterfaces());
+      body.append("  private final ").append(type.getQualifiedName()).append(typeArguments).append(" delegate;\n\n");
+      body.append("  private final TransactionalInvoker invoker;\n\n");
+      body.append("  @").append(INJECT).append('\n');
+      body.append("  public ").append(wrapperName).append('(').append(type.getQualifiedName()).append(typeArguments)
+          .append(" delegate, TransactionalInvoker invoker) {\n");
+      body.append("    this.delegate = delegate;\n");
+      body.append("    this.invoker = invoker;\n");
+      body.append("  }\n");
+      for (ExecutableElement method : interfaceMethods(type).values()) {
+        ExecutableElement implementation = implementationOf(type, method);
+        appendMethod(body, type, method, isWrapped(type, implementation) ? implementation : null, "delegate",
+            methodFields);
+      }
+    } else {
+      declaration = "public class " + wrapperName + typeParameters + " extends " + type.getQualifiedName()
+          + typeArguments;
+      body.append("  private final TransactionalInvoker invoker;\n");
+      for (ExecutableElement constructor : injectableConstructors(type)) {
+        appendConstructor(body, wrapperName, constructor);
+      }
+      // the inherited methods are overridden too, as Guice AOP intercepts them
+      for (ExecutableElement method : ElementFilter
+          .methodsIn(processingEnv.getElementUtils().getAllMembers(type))) {
+        if (isWrapped(type, method)) {
+          if (method.getModifiers().contains(Modifier.FINAL)) {
+            error(method, "A final @Transactional method cannot be wrapped");
+          } else {
+            appendMethod(body, type, method, method, "super", methodFields);
+          }
+        }
+      }
+    }
+
+    try (PrintWriter writer = new PrintWriter(
+        processingEnv.getFiler().createSourceFile(qualifiedName, type).openWriter())) {
+      if (!packageName.isEmpty()) {
+        writer.println("package " + packageName + ";");
+        writer.println();
+      }
+      writer.println("import org.mybatis.guice.transactional.TransactionalMethod;");
+      writer.println("import org.mybatis.guice.transactional.TransactionalInvoker;");
+      writer.println();
+      writer.println("/**");
+      writer.println(" * Transactional wrapper of {@link " + type.getQualifiedName() + "}, generated by");
+      writer.println(" * {@code " + getClass().getName() + "}.");
+      writer.println(" */");
+      writer.println("@SuppressWarnings({ \"unchecked\", \"rawtypes\" })");
+      writer.println(declaration + " {");
+      writer.println();
+      for (String field : methodFields) {
+        writer.println(field);
+        writer.println();
+      }
+      writer.print(body);
+      writer.println();
+      writer.println("}");
+    }
+  }
+
+  private static String wrapperSimpleName(TypeElement type) {
+    StringBuilder name = new StringBuilder(type.getSimpleName());
+    for (Element enclosing = type.getEnclosingElement(); !(enclosing instanceof PackageElement); enclosing = enclosing
+        .getEnclosingElement()) {
+      name.insert(0, '_').insert(0, enclosing.getSimpleName());
+    }
+    return name.append(TransactionalWrapper.SUFFIX).toString();
+  }
+
+  private boolean isWrapped(TypeElement type, ExecutableElement method) {
+    if (method == null) {
+      return false;
+    }
+    TypeElement declaringType = (TypeElement) method.getEnclosingElement();
+    if (declaringType.getKind() != ElementKind.CLASS
+        || "java.lang.Object".equals(declaringType.getQualifiedName().toString())) {
+      return false;
+    }
+    Set<Modifier> modifiers = method.getModifiers();
+    if (modifiers.contains(Modifier.PRIVATE) || modifiers.contains(Modifier.STATIC)) {
+      return false;
+    }
+    // a package-private method of another package cannot be overridden
+    if (!modifiers.contains(Modifier.PUBLIC) && !modifiers.contains(Modifier.PROTECTED)
+        && processingEnv.getElementUtils().getPackageOf(declaringType) != processingEnv.getElementUtils()
+            .getPackageOf(type)) {
+      return false;
+    }
+    if (method.getAnnotation(Transactional.class) != null) {
+      return true;
+    }
+    return (type.getAnnotation(Transactional.class) != null || declaringType.getAnnotation(Transactional.class) != null)
+        && !modifiers.contains(Modifier.FINAL);
+  }
+
+  private Map<String, ExecutableElement> interfaceMethods(TypeElement type) {
+    Map<String, ExecutableElement> methods = new LinkedHashMap<String, ExecutableElement>();
+    for (TypeMirror interfaceType : type.getInterfaces()) {
+      TypeElement interfaceElement = (TypeElement) processingEnv.getTypeUtils().asElement(interfaceType);
+      for (ExecutableElement method : ElementFilter
+          .methodsIn(processingEnv.getElementUtils().getAllMembers(interfaceElement))) {
+        if (method.getModifiers().contains(Modifier.STATIC)
+            || "java.lang.Object".equals(((TypeElement) method.getEnclosingElement()).getQualifiedName().toString())) {
+          continue;
+        }
+        ExecutableType methodType = memberOf(type, method);
+        StringBuilder key = new StringBuilder(method.getSimpleName()).append('(');
+        for (TypeMirror parameterType : methodType.getParameterTypes()) {
+          key.append(processingEnv.getTypeUtils().erasure(parameterType)).append(',');
+        }
+        if (!methods.containsKey(key.toString())) {
+          methods.put(key.toString(), method);
+        }
+      }
+    }
+    return methods;
+  }
+
+  private ExecutableElement implementationOf(TypeElement type, ExecutableElement method) {
+    for (ExecutableElement candidate : ElementFilter
+        .methodsIn(processingEnv.getElementUtils().getAllMembers(type))) {
+      if (candidate.getEnclosingElement().getKind() != ElementKind.CLASS) {
+        continue;
+      }
+      if (processingEnv.getElementUtils().overrides(candidate, method, type)) {
+        return candidate;
+      }
+    }
+    return null;
+  }
+
+  private List<ExecutableElement> injectableConstructors(TypeElement type) {
+    List<ExecutableElement> injectable = new ArrayList<ExecutableElement>();
+    ExecutableElement noArguments = null;
+    for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+      if (constructor.getModifiers().contains(Modifier.PRIVATE)) {
+        continue;
+      }
+      if (hasAnnotation(constructor, INJECT) || hasAnnotation(constructor, GUICE_INJECT)) {
+        injectable.add(constructor);
+      } else if (constructor.getParameters().isEmpty()) {
+        noArguments = constructor;
+      }
+    }
+    if (injectable.isEmpty() && noArguments != null) {
+      injectable.add(noArguments);
+    }
+    if (injectable.isEmpty()) {
+      error(type, "A @TransactionalWrapper class needs an @Inject or a no-argument constructor");
+    }
+    return injectable;
+  }
+
+  private static boolean hasAnnotation(Element element, String annotationType) {
+    for (AnnotationMirror annotation : element.getAnnotationMirrors()) {
+      if (annotationType.equals(annotation.getAnnotationType().toString())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void appendConstructor(StringBuilder body, String wrapperName, ExecutableElement constructor) {
+    List<? extends VariableElement> parameters = constructor.getParameters();
+    body.append("\n  @").append(INJECT).append('\n');
+    body.append("  public ").append(wrapperName).append('(');
+    for (int i = 0; i < parameters.size(); i++) {
+      VariableElement parameter = parameters.get(i);
+      for (AnnotationMirror annotation : parameter.getAnnotationMirrors()) {
+        body.append(annotation).append(' ');
+      }
+      body.append(parameterType(parameter.asType(), constructor.isVarArgs() && i == parameters.size() - 1));
+      body.append(" arg").append(i).append(", ");
+    }
+    body.append("TransactionalInvoker invoker)");
+    appendThrows(body, constructor.getThrownTypes());
+    body.append(" {\n");
+    body.append("    super(").append(arguments(parameters.size())).append(");\n");
+    body.append("    this.invoker = invoker;\n");
+    body.append("  }\n");
+  }
+
+  private void appendMethod(StringBuilder body, TypeElement type, ExecutableElement method,
+      ExecutableElement transactional, String target, List<String> methodFields) {
+    ExecutableType methodType = memberOf(type, method);
+    List<? extends TypeMirror> parameterTypes = methodType.getParameterTypes();
+    TypeMirror returnType = methodType.getReturnType();
+    boolean isVoid = returnType.getKind() == TypeKind.VOID;
+    String name = method.getSimpleName().toString();
+    String call = target + "." + name + "(" + arguments(parameterTypes.size()) + ")";
+
+    body.append("\n  @Override\n  ");
+    for (Modifier modifier : method.getModifiers()) {
+      if (modifier == Modifier.PUBLIC || modifier == Modifier.PROTECTED) {
+        body.append(modifier).append(' ');
+      }
+    }
+    String methodTypeParameters = typeParameters(method.getTypeParameters());
+    if (!methodTypeParameters.isEmpty()) {
+      body.append(methodTypeParameters).append(' ');
+    }
+    body.append(returnType).append(' ').append(name).append('(');
+    for (int i = 0; i < parameterTypes.size(); i++) {
+      if (i > 0) {
+        body.append(", ");
+      }
+      body.append(parameterType(parameterTypes.get(i), method.isVarArgs() && i == parameterTypes.size() - 1));
+      body.append(" arg").append(i);
+    }
+    body.append(')');
+    appendThrows(body, methodType.getThrownTypes());
+    body.append(" {\n");
+
+    if (transactional == null) {
+      body.append("    ").append(isVoid ? "" : "return ").append(call).append(";\n");
+      body.append("  }\n");
+      return;
+    }
+
+    String field = "METHOD_" + methodFields.size();
+    StringBuilder declaration = new StringBuilder("  private static final TransactionalMethod ").append(field)
+        .append(" = TransactionalMethod.of(").append(type.getQualifiedName()).append(".class, \"").append(name)
+        .append('"');
+    for (VariableElement parameter : transactional.getParameters()) {
+      declaration.append(", ").append(processingEnv.getTypeUtils().erasure(parameter.asType())).append(".class");
+    }
+    methodFields.add(declaration.append(");").toString());
+
+    body.append("    try {\n");
+    body.append("      ");
+    if (!isVoid) {
+      body.append("return (").append(boxed(returnType)).append(") ");
+    }
+    body.append("invoker.invoke(").append(field).append(", ");
+    if (parameterTypes.isEmpty()) {
+      body.append("new Object[0]");
+    } else {
+      body.append("new Object[] { ").append(arguments(parameterTypes.size())).append(" }");
+    }
+    body.append(", () -> ");
+    if (isVoid) {
+      body.append("{\n        ").append(call).append(";\n        return null;\n      });\n");
+    } else {
+      body.append(call).append(");\n");
+    }
+    body.append("    } catch (Throwable t) {\n");
+    body.append("      throw TransactionalMethod.rethrow(t);\n");
+    body.append("    }\n");
+    body.append("  }\n");
+  }
+
+  private ExecutableType memberOf(TypeElement type, ExecutableElement method) {
+    return (ExecutableType) processingEnv.getTypeUtils().asMemberOf((DeclaredType) type.asType(), method);
+  }
+
+  private String boxed(TypeMirror type) {
+    if (type.getKind().isPrimitive()) {
+      return processingEnv.getTypeUtils().boxedClass(processingEnv.getTypeUtils().getPrimitiveType(type.getKind()))
+          .getQualifiedName().toString();
+    }
+    return type.toString();
+  }
+
+  private static String parameterType(TypeMirror type, boolean varArgs) {
+    String name = type.toString();
+    return varArgs ? name.substring(0, name.length() - 2) + "..." : name;
+  }
+
+  private static void appendThrows(StringBuilder body, List<? extends TypeMirror> thrownTypes) {
+    if (!thrownTypes.isEmpty()) {
+      body.append(" throws ").append(join(thrownTypes));
+    }
+  }
+
+  private static String typeParameters(List<? extends TypeParameterElement> typeParameters) {
+    if (typeParameters.isEmpty()) {
+      return "";
+    }
+    StringBuilder declaration = new StringBuilder("<");
+    for (TypeParameterElement typeParameter : typeParameters) {
+      if (declaration.length() > 1) {
+        declaration.append(", ");
+      }
+      declaration.append(typeParameter.getSimpleName());
+      List<? extends TypeMirror> bounds = typeParameter.getBounds();
+      if (!(bounds.size() == 1 && "java.lang.Object".equals(bounds.get(0).toString()))) {
+        declaration.append(" extends ").append(join(bounds).replace(", ", " & "));
+      }
+    }
+    return declaration.append('>').toString();
+  }
+
+  private static String typeArguments(List<? extends TypeParameterElement> typeParameters) {
+    if (typeParameters.isEmpty()) {
+      return "";
+    }
+    StringBuilder arguments = new StringBuilder("<");
+    for (TypeParameterElement typeParameter : typeParameters) {
+      if (arguments.length() > 1) {
+        arguments.append(", ");
+      }
+      arguments.append(typeParameter.getSimpleName());
+    }
+    return arguments.append('>').toString();
+  }
+
+  private static String arguments(int count) {
+    StringBuilder arguments = new StringBuilder();
+    for (int i = 0; i < count; i++) {
+      if (i > 0) {
+        arguments.append(", ");
+      }
+      arguments.append("arg").append(i);
+    }
+    return arguments.toString();
+  }
+
+  private static String join(List<? extends TypeMirror> types) {
+    StringBuilder joined = new StringBuilder();
+    for (TypeMirror type : types) {
+      if (joined.length() > 0) {
+        joined.append(", ");
+      }
+      joined.append(type);
+    }
+    return joined.toString();
+  }
+
+  private static boolean isFinal(TypeElement type) {
+    return type.getModifiers().contains(Modifier.FINAL);
+  }
+
+  private void error(Element element, String message) {
+    processingEnv.getMessager().printMessage(Kind.ERROR, message, element);
+  }
+
+}
@@ -0,0 +1,159 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.boot;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.Module;
+import com.google.inject.name.Names;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.apache.ibatis.io.ResolverUtil;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.junit.jupiter.api.Test;
+import org.mybatis.guice.MyBatisModule;
+import org.mybatis.guice.datasource.builtin.PooledDataSourceProvider;
+import org.mybatis.guice.datasource.helper.JdbcHelper;
+import org.mybatis.guice.nestedtx.NestedTxMapper;
+import org.mybatis.guice.nestedtx.TableRow;
+
+public class BootProfilerTest {
+
+  private static Module module(final boolean profiled) {
+    return new MyBatisModule() {
+      @Override
+      protected void initialize() {
+        if (profiled) {
+          enableBootProfiling();
+        }
+        bindDataSourceProviderType(PooledDataSourceProvider.class);
+        bindTransactionFactoryType(JdbcTransactionFactory.class);
+
+        install(JdbcHelper.HSQLDB_IN_MEMORY_NAMED);
+
+        Properties connectionProps = new Properties();
+        connectionProps.setProperty("mybatis.environment.id", "jdbc");
+        connectionProps.setProperty("JDBC.username", "sa");
+        connectionProps.setProperty("JDBC.password", "");
+        Names.bindProperties(binder(), connectionProps);
+
+        addSimpleAliases("org.mybatis.guice.nestedtx", new ResolverUtil.IsA(TableRow.class));
+        addMapperClass(NestedTxMapper.class);
+      }
+    };
+  }
+
+  private static BootPhase find(List<BootPhase> phases, String prefix) {
+    for (BootPhase phase : phases) {
+      if (phase.getName().startsWith(prefix)) {
+        return phase;
+      }
+      BootPhase child = find(phase.getChildren(), prefix);
+      if (child != null) {
+        return child;
+      }
+    }
+    return null;
+  }
+
+  @Test
+  public void shouldRecordPhaseTree() {
+    Injector injector = Guice.createInjector(module(true));
+    injector.getInstance(SqlSessionFactory.class);
+    BootProfiler profiler = injector.getInstance(BootProfiler.class);
+
+    assertNotNull(find(profiler.getPhases(), "scan org.mybatis.guice.nestedtx"));
+
+    BootPhase configuration = find(profiler.getPhases(), "provision org.apache.ibatis.session.Configuration");
+    assertNotNull(configuration);
+    BootPhase mapper = find(configuration.getChildren(), "mapper " + NestedTxMapper.class.getName());
+    assertNotNull(mapper);
+    assertTrue(mapper.getPath()
+        .endsWith("provision org.apache.ibatis.session.Configuration/mapper " + NestedTxMapper.class.getName()));
+    assertTrue(mapper.getDurationNanos() >= 0);
+    assertTrue(configuration.getDurationNanos() >= mapper.getDurationNanos());
+    assertNotNull(find(profiler.getPhases(), "provision " + PooledDataSourceProvider.class.getName()));
+    assertNotNull(find(profiler.getPhases(), "provision org.apache.ibatis.session.SqlSessionFactory"));
+
+    String json = profiler.toJson();
+    assertTrue(json.startsWith("{\"phases\":[{\"name\":\"scan org.mybatis.guice.nestedtx\""), json);
+    assertTrue(json.contains("\"name\":\"mapper " + NestedTxMapper.class.getName() + "\""), json);
+  }
+
+  @Test
+  public void shouldNotBindProfilerUnlessEnabled() {
+    Injector injector = Guice.createInjector(module(false));
+    injector.getInstance(SqlSessionFactory.class);
+
+    assertNull(injector.getExistingBinding(Key.get(BootProfiler.class)));
+    assertSame(BootPhase.NONE, BootProfiler.DISABLED.start("phase"));
+    assertTrue(BootProfiler.DISABLED.getPhases().isEmpty());
+  }
+
+  @Test
+  public void shouldEndPhasesLeftOpenWithTheirParent() {
+    BootProfiler profiler = BootProfiler.create();
+    BootPhase outer = profiler.start("outer");
+    BootPhase inner = profiler.start("inner \"quoted\"");
+    outer.close();
+    inner.close();
+
+    assertTrue(inner.getDurationNanos() >= 0);
+    assertEquals("outer/inner \"quoted\"", inner.getPath());
+    assertTrue(profiler.toJson().contains("\"name\":\"inner \\\"quoted\\\"\""));
+    assertFalse(profiler.start("next").getPath().contains("outer"));
+  }
+
+  @Test
+  public void shouldEmitJfrEvents() throws Exception {
+    Path file = Files.createTempFile("boot", ".jfr");
+    try (Recording recording = new Recording()) {
+      recording.enable(JfrBootPhaseEvents.EVENT_NAME);
+      recording.start();
+      Guice.createInjector(module(true)).getInstance(SqlSessionFactory.class);
+      recording.stop();
+      recording.dump(file);
+    }
+
+    List<String> paths = new ArrayList<String>();
+    for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+      if (JfrBootPhaseEvents.EVENT_NAME.equals(event.getEventType().getName())) {
+        paths.add(event.getString("path"));
+      }
+    }
+    Files.delete(file);
+    assertTrue(paths.contains("scan org.mybatis.guice.nestedtx"), paths.toString());
+  }
+
+}
@@ -0,0 +1,343 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.configuration;
+
+import static org.apache.ibatis.io.Resources.getResourceAsReader;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.name.Names;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.jdbc.ScriptRunner;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSessionManager;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mybatis.guice.MyBatisModule;
+import org.mybatis.guice.datasource.builtin.PooledDataSourceProvider;
+import org.mybatis.guice.datasource.helper.JdbcHelper;
+import org.mybatis.guice.nestedtx.NestedTxMapper;
+import org.mybatis.guice.nestedtx.TableRow;
+
+public class LazyMapperConfigurationTest {
+
+  public interface LazyAMapper {
+
+    @Select("select * from table1 where id = #{id}")
+    TableRow selectById(int id);
+
+    @Select("select * from table1 where name = #{name}")
+    List<TableRow> selectByName(String name);
+
+    @Select("select count(*) from table1")
+    int count();
+
+  }
+
+  public interface LazyBMapper {
+
+    @Select("select * from table1 where id = #{id}")
+    TableRow selectById(int id);
+
+    @Select("select * from table1 where name = #{name}")
+    List<TableRow> selectByName(String name);
+
+    @Select("select count(*) from table1")
+    int count();
+
+  }
+
+  public interface LazyCMapper {
+
+    @Select("select * from table1 where id = #{id}")
+    TableRow selectById(int id);
+
+    @Select("select * from table1 where name = #{name}")
+    List<TableRow> selectByName(String name);
+
+    @Select("select count(*) from table1")
+    int count();
+
+  }
+
+  public interface LazyDMapper {
+
+    @Select("select * from table1 where id = #{id}")
+    TableRow selectById(int id);
+
+    @Select("select * from table1 where name = #{name}")
+    List<TableRow> selectByName(String name);
+
+    @Select("select count(*) from table1")
+    int count();
+
+  }
+
+  public interface LazyEMapper {
+
+    @Select("select * from table1 where id = #{id}")
+    TableRow selectById(int id);
+
+    @Select("select * from table1 where name = #{name}")
+    List<TableRow> selectByName(String name);
+
+    @Select("select count(*) from table1")
+    int count();
+
+  }
+
+  public interface LazyFMapper {
+
+    @Select("select * from table1 where id = #{id}")
+    TableRow selectById(int id);
+
+    @Select("select * from table1 where name = #{name}")
+    List<TableRow> selectByName(String name);
+
+    @Select("select count(*) from table1")
+    int count();
+
+  }
+
+  public interface LazyGMapper {
+
+    @Select("select * from table1 where id = #{id}")
+    TableRow selectById(int id);
+
+    @Select("select * from table1 where name = #{name}")
+    List<TableRow> selectByName(String name);
+
+    @Select("select count(*) from table1")
+    int count();
+
+  }
+
+  public interface LazyHMapper {
+
+    @Select("select * from table1 where id = #{id}")
+    TableRow selectById(int id);
+
+    @Select("select * from table1 where name = #{name}")
+    List<TableRow> selectByName(String name);
+
+    @Select("select count(*) from table1")
+    int count();
+
+  }
+
+  public interface LazyIMapper {
+
+    @Select("select * from table1 where id = #{id}")
+    TableRow selectById(int id);
+
+    @Select("select * from table1 where name = #{name}")
+    List<TableRow> selectByName(String name);
+
+    @Select("select count(*) from table1")
+    int count();
+
+  }
+
+  public interface LazyJMapper {
+
+    @Select("select * from table1 where id = #{id}")
+    TableRow selectById(int id);
+
+    @Select("select * from table1 where name = #{name}")
+    List<TableRow> selectByName(String name);
+
+    @Select("select count(*) from table1")
+    int count();
+
+  }
+
+  public interface LazyKMapper {
+
+    @Select("select * from table1 where id = #{id}")
+    TableRow selectById(int id);
+
+    @Select("select * from table1 where name = #{name}")
+    List<TableRow> selectByName(String name);
+
+    @Select("select count(*) from table1")
+    int count();
+
+  }
+
+  public interface LazyLMapper {
+
+    @Select("select * from table1 where id = #{id}")
+    TableRow selectById(int id);
+
+    @Select("select * from table1 where name = #{name}")
+    List<TableRow> selectByName(String name);
+
+    @Select("select count(*) from table1")
+    int count();
+
+  }
+
+  private static final String SELECT_ALL = NestedTxMapper.class.getName() + ".selectAllTable1";
+
+  private static final List<Class<?>> LAZY_MAPPERS = Arrays.<Class<?>>asList(LazyAMapper.class, LazyBMapper.class,
+      LazyCMapper.class, LazyDMapper.class, LazyEMapper.class, LazyFMapper.class, LazyGMapper.class,
+      LazyHMapper.class, LazyIMapper.class, LazyJMapper.class, LazyKMapper.class, LazyLMapper.class);
+
+  private Injector injector;
+
+  private LazyMapperConfiguration configuration;
+
+  @BeforeEach
+  public void setup() throws Exception {
+    injector = Guice.createInjector(new MyBatisModule() {
+      @Override
+      protected void initialize() {
+        bindDataSourceProviderType(PooledDataSourceProvider.class);
+        bindTransactionFactoryType(JdbcTransactionFactory.class);
+
+        install(JdbcHelper.HSQLDB_IN_MEMORY_NAMED);
+
+        Properties connectionProps = new Properties();
+        connectionProps.setProperty("mybatis.environment.id", "jdbc");
+        connectionProps.setProperty("JDBC.username", "sa");
+        connectionProps.setProperty("JDBC.password", "");
+        Names.bindProperties(binder(), connectionProps);
+
+        lazyMapperRegistration(true);
+        addMapperClass(NestedTxMapper.class);
+      }
+    });
+
+    configuration = (LazyMapperConfiguration) injector.getInstance(Configuration.class);
+
+    ScriptRunner runner = new ScriptRunner(configuration.getEnvironment().getDataSource().getConnection());
+    runner.setAutoCommit(true);
+    runner.setStopOnError(true);
+    runner.runScript(getResourceAsReader("org/mybatis/guice/nestedtx/setupdb.sql"));
+    runner.closeConnection();
+  }
+
+  @Test
+  public void shouldParseMapperOnStatementLookup() {
+    assertTrue(configuration.isMapperPending(NestedTxMapper.class));
+    assertFalse(configuration.hasMapper(NestedTxMapper.class));
+
+    assertEquals(0, injector.getInstance(SqlSessionManager.class).selectList(SELECT_ALL).size());
+
+    assertFalse(configuration.isMapperPending(NestedTxMapper.class));
+    assertTrue(configuration.hasMapper(NestedTxMapper.class));
+  }
+
+  @Test
+  public void shouldParseMapperOnInjection() {
+    NestedTxMapper mapper = injector.getInstance(NestedTxMapper.class);
+
+    assertFalse(configuration.isMapperPending(NestedTxMapper.class));
+    assertEquals(0, mapper.selectAllTable1().size());
+  }
+
+  @Test
+  public void shouldParseMapperOnceUnderConcurrency() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<MappedStatement>> lookups = new ArrayList<Future<MappedStatement>>();
+      for (int i = 0; i < 8; i++) {
+        lookups.add(executor.submit((Callable<MappedStatement>) () -> configuration.getMappedStatement(SELECT_ALL)));
+      }
+      MappedStatement first = lookups.get(0).get();
+      for (Future<MappedStatement> lookup : lookups) {
+        assertEquals(first, lookup.get());
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void shouldLookUpLoadedMappersWhileLoadingOthers() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      for (int round = 0; round < 20; round++) {
+        LazyMapperConfiguration lazyConfiguration = new LazyMapperConfiguration(null);
+        lazyConfiguration.addLazyMapper(NestedTxMapper.class);
+        for (Class<?> type : LAZY_MAPPERS) {
+          lazyConfiguration.addLazyMapper(type);
+        }
+        lazyConfiguration.getMappedStatement(SELECT_ALL);
+
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicBoolean loaded = new AtomicBoolean();
+        List<Future<Integer>> lookups = new ArrayList<Future<Integer>>();
+        for (int i = 0; i < 4; i++) {
+          lookups.add(executor.submit(() -> {
+            start.await();
+            int count = 0;
+            while (!loaded.get()) {
+              assertEquals(SELECT_ALL, lazyConfiguration.getMappedStatement(SELECT_ALL).getId());
+              assertTrue(lazyConfiguration.hasMapper(NestedTxMapper.class));
+              count++;
+            }
+            return count;
+          }));
+        }
+        List<Future<?>> loads = new ArrayList<Future<?>>();
+        for (int i = 0; i < 4; i++) {
+          int first = i;
+          loads.add(executor.submit(() -> {
+            start.await();
+            for (int j = first; j < LAZY_MAPPERS.size(); j += 4) {
+              String namespace = LAZY_MAPPERS.get(j).getName();
+              assertTrue(lazyConfiguration.hasStatement(namespace + ".selectById"));
+              assertTrue(lazyConfiguration.hasStatement(namespace + ".count"));
+            }
+            return null;
+          }));
+        }
+
+        start.countDown();
+        for (Future<?> load : loads) {
+          load.get();
+        }
+        loaded.set(true);
+        for (Future<Integer> lookup : lookups) {
+          lookup.get();
+        }
+        assertEquals(3 * LAZY_MAPPERS.size() + 4, lazyConfiguration.getMappedStatementNames().stream()
+            .filter(name -> name.indexOf('.') > 0).count());
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+}
@@ -0,0 +1,211 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.configuration;
+
+import static org.apache.ibatis.io.Resources.getResourceAsReader;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.name.Names;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Properties;
+
+import org.apache.ibatis.builder.BuilderException;
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.jdbc.ScriptRunner;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ResultMap;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSessionManager;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mybatis.guice.MyBatisModule;
+import org.mybatis.guice.datasource.builtin.PooledDataSourceProvider;
+import org.mybatis.guice.datasource.helper.JdbcHelper;
+import org.mybatis.guice.nestedtx.NestedTxMapper;
+import org.mybatis.guice.nestedtx.TableRow;
+
+public class MapperXmlReloaderTest {
+
+  private static final String COUNT = "reload.Queries.countTable1";
+
+  private Injector injector;
+
+  private Configuration configuration;
+
+  private MapperXmlReloader reloader;
+
+  private Path directory;
+
+  @BeforeEach
+  public void setup() throws Exception {
+    injector = Guice.createInjector(new MyBatisModule() {
+      @Override
+      protected void initialize() {
+        bindDataSourceProviderType(PooledDataSourceProvider.class);
+        bindTransactionFactoryType(JdbcTransactionFactory.class);
+
+        install(JdbcHelper.HSQLDB_IN_MEMORY_NAMED);
+
+        Properties connectionProps = new Properties();
+        connectionProps.setProperty("mybatis.environment.id", "jdbc");
+        connectionProps.setProperty("JDBC.username", "sa");
+        connectionProps.setProperty("JDBC.password", "");
+        Names.bindProperties(binder(), connectionProps);
+
+        addMapperClass(NestedTxMapper.class);
+      }
+    });
+
+    configuration = injector.getInstance(Configuration.class);
+
+    ScriptRunner runner = new ScriptRunner(configuration.getEnvironment().getDataSource().getConnection());
+    runner.setAutoCommit(true);
+    runner.setStopOnError(true);
+    runner.runScript(getResourceAsReader("org/mybatis/guice/nestedtx/setupdb.sql"));
+    runner.closeConnection();
+
+    TableRow row = new TableRow();
+    row.setId(1);
+    row.setName("one");
+    injector.getInstance(NestedTxMapper.class).insertTable1(row);
+
+    reloader = injector.getInstance(MapperXmlReloader.class);
+    directory = Files.createTempDirectory("mappers");
+  }
+
+  @AfterEach
+  public void tearDown() throws Exception {
+    reloader.close();
+  }
+
+  private Path writeMapper(String sql) throws Exception {
+    return writeMapperStatements("  <select id=\"countTable1\" resultType=\"int\">" + sql + "</select>\n");
+  }
+
+  private Path writeMapperStatements(String statements) throws Exception {
+    Path file = directory.resolve("Queries.xml");
+    String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\" ?>\n"
+        + "<!DOCTYPE mapper PUBLIC \"-//mybatis.org//DTD Mapper 3.0//EN\" \"http://mybatis.org/dtd/mybatis-3-mapper.dtd\">\n"
+        + "<mapper namespace=\"reload.Queries\">\n" + statements + "</mapper>\n";
+    Files.write(file, xml.getBytes(StandardCharsets.UTF_8));
+    return file;
+  }
+
+  private int count() {
+    return injector.getInstance(SqlSessionManager.class).<Integer> selectOne(COUNT);
+  }
+
+  @Test
+  public void shouldSwapStatementsInPlace() throws Exception {
+    assertEquals(1, reloader.reload(writeMapper("select count(*) from table1")));
+    MappedStatement loaded = configuration.getMappedStatement(COUNT);
+    assertEquals(1, count());
+
+    assertEquals(1, reloader.reload(writeMapper("select count(*) + 10 from table1")));
+    assertEquals(11, count());
+    assertSame(configuration.getMappedStatement(COUNT), configuration.getMappedStatement("countTable1"));
+    assertTrue(configuration.getMappedStatement(COUNT) != loaded);
+    for (String name : configuration.getMappedStatementNames()) {
+      assertTrue(!name.contains("$reload"), name);
+    }
+  }
+
+  @Test
+  public void shouldKeepStatementsWhenParsingFails() throws Exception {
+    reloader.reload(writeMapper("select count(*) from table1"));
+    MappedStatement loaded = configuration.getMappedStatement(COUNT);
+    int names = configuration.getMappedStatementNames().size();
+
+    assertThrows(BuilderException.class, () -> reloader.reload(writeMapperStatements(
+        "  <select id=\"countTable1\" resultType=\"int\">select 0 from table1</select>\n"
+            + "  <select id=\"broken\" resultType=\"no.such.Type\">select 0 from table1</select>\n")));
+
+    assertSame(loaded, configuration.getMappedStatement(COUNT));
+    assertEquals(names, configuration.getMappedStatementNames().size());
+    assertEquals(1, count());
+  }
+
+  @Test
+  public void shouldNotModifyTheStatementsReadBySessions() throws Exception {
+    reloader.reload(writeMapper("select count(*) from table1"));
+    Collection<String> names = configuration.getMappedStatementNames();
+    int count = names.size();
+
+    reloader.reload(writeMapperStatements(
+        "  <select id=\"countTable1\" resultType=\"int\">select 0 from table1</select>\n"
+            + "  <select id=\"countAgain\" resultType=\"int\">select count(*) from table1</select>\n"));
+
+    assertEquals(count, names.size());
+    assertTrue(configuration.hasStatement("reload.Queries.countAgain"));
+    assertEquals(0, count());
+  }
+
+  @Test
+  public void shouldReplaceTheElementsOfTheNamespaceAndKeepItsCache() throws Exception {
+    String statements = "  <cache/>\n" + "  <sql id=\"columns\">id, name</sql>\n"
+        + "  <resultMap id=\"row\" type=\"org.mybatis.guice.nestedtx.TableRow\">"
+        + "<id property=\"id\" column=\"id\"/></resultMap>\n"
+        + "  <select id=\"selectRows\" resultMap=\"row\">select <include refid=\"columns\"/> from table1</select>\n";
+    reloader.reload(writeMapperStatements(
+        statements + "  <select id=\"countTable1\" resultType=\"int\">select count(*) from table1</select>\n"));
+    Cache cache = configuration.getCache("reload.Queries");
+    ResultMap row = configuration.getResultMap("reload.Queries.row");
+    assertEquals(1, count());
+    assertEquals(1, cache.getSize());
+
+    reloader.reload(writeMapperStatements(
+        statements + "  <select id=\"countTable1\" resultType=\"int\">select count(*) + 10 from table1</select>\n"));
+
+    assertSame(cache, configuration.getCache("reload.Queries"));
+    assertSame(cache, configuration.getMappedStatement(COUNT).getCache());
+    assertEquals(0, cache.getSize());
+    assertEquals(11, count());
+    assertTrue(row != configuration.getResultMap("reload.Queries.row"));
+    assertSame(configuration.getResultMap("reload.Queries.row"), configuration.getResultMap("row"));
+    for (String name : configuration.getCacheNames()) {
+      assertSame(cache, configuration.getCache(name));
+    }
+    for (String name : configuration.getResultMapNames()) {
+      assertTrue(!name.contains("$reload"), name);
+    }
+  }
+
+  @Test
+  public void shouldReloadWatchedFiles() throws Exception {
+    reloader.reload(writeMapper("select count(*) from table1"));
+    reloader.watch(directory);
+
+    writeMapper("select count(*) + 100 from table1");
+
+    long deadline = System.currentTimeMillis() + 30000;
+    while (count() != 101 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(50);
+    }
+    assertEquals(101, count());
+  }
+
+}
@@ -0,0 +1,145 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.datasource.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import javax.sql.DataSource;
+
+import org.apache.ibatis.datasource.pooled.PooledDataSource;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mybatis.guice.MyBatisModule;
+
+public class PreparedStatementCacheTest {
+
+  private static final String SELECT_USERS = "SELECT USER_NAME FROM INFORMATION_SCHEMA.SYSTEM_USERS WHERE USER_NAME = ?";
+
+  private static final String SELECT_SCHEMAS = "SELECT SCHEMA_NAME FROM INFORMATION_SCHEMA.SCHEMATA";
+
+  private PooledDataSource pooledDataSource;
+
+  @BeforeEach
+  public void setup() {
+    pooledDataSource = new PooledDataSource("org.hsqldb.jdbcDriver", "jdbc:hsqldb:mem:statement_cache", "sa", "");
+    pooledDataSource.setPoolMaximumActiveConnections(1);
+  }
+
+  @Test
+  public void shouldRejectNonPositiveSize() {
+    assertThrows(IllegalArgumentException.class, () -> new PreparedStatementCache(0));
+  }
+
+  @Test
+  public void shouldReuseStatementAcrossConnectionCheckouts() throws SQLException {
+    PreparedStatementCache cache = new PreparedStatementCache(4);
+    DataSource dataSource = cache.wrap(pooledDataSource);
+
+    assertEquals("SA", selectUser(dataSource, "SA"));
+    assertEquals("SA", selectUser(dataSource, "SA"));
+
+    assertEquals(1, cache.getMisses());
+    assertEquals(1, cache.getHits());
+    assertEquals(1, cache.getConnectionCount());
+  }
+
+  @Test
+  public void shouldEvictLeastRecentlyUsedStatement() throws SQLException {
+    PreparedStatementCache cache = new PreparedStatementCache(1);
+    DataSource dataSource = cache.wrap(pooledDataSource);
+
+    try (Connection connection = dataSource.getConnection()) {
+      connection.prepareStatement(SELECT_USERS).close();
+      connection.prepareStatement(SELECT_SCHEMAS).close();
+      connection.prepareStatement(SELECT_USERS).close();
+    }
+
+    assertEquals(3, cache.getMisses());
+    assertEquals(2, cache.getEvictions());
+  }
+
+  @Test
+  public void shouldResetStatementBeforeReuse() throws SQLException {
+    PreparedStatementCache cache = new PreparedStatementCache(4);
+    DataSource dataSource = cache.wrap(pooledDataSource);
+
+    try (Connection connection = dataSource.getConnection()) {
+      PreparedStatement statement = connection.prepareStatement(SELECT_SCHEMAS);
+      statement.setMaxRows(1);
+      statement.close();
+      assertTrue(statement.isClosed());
+
+      statement = connection.prepareStatement(SELECT_SCHEMAS);
+      assertFalse(statement.isClosed());
+      assertEquals(0, statement.getMaxRows());
+      statement.close();
+    }
+    assertEquals(1, cache.getHits());
+  }
+
+  @Test
+  public void shouldWrapEnvironmentDataSource() throws SQLException {
+    final PooledDataSource pooledDataSource = this.pooledDataSource;
+    Injector injector = Guice.createInjector(new MyBatisModule() {
+      @Override
+      protected void initialize() {
+        environmentId("test");
+        bindDataSourceProvider(() -> pooledDataSource);
+        bindTransactionFactoryType(JdbcTransactionFactory.class);
+        usePreparedStatementCache(8);
+      }
+    });
+
+    Environment environment = injector.getInstance(Environment.class);
+    assertTrue(environment.getDataSource().isWrapperFor(PooledDataSource.class));
+
+    SqlSessionFactory sqlSessionFactory = injector.getInstance(SqlSessionFactory.class);
+    for (int i = 0; i < 2; i++) {
+      try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+        sqlSession.getConnection().prepareStatement(SELECT_SCHEMAS).close();
+      }
+    }
+
+    PreparedStatementCache cache = injector.getInstance(PreparedStatementCache.class);
+    assertEquals(1, cache.getHits());
+  }
+
+  private static String selectUser(DataSource dataSource, String userName) throws SQLException {
+    try (Connection connection = dataSource.getConnection();
+        PreparedStatement statement = connection.prepareStatement(SELECT_USERS)) {
+      statement.setString(1, userName);
+      try (ResultSet resultSet = statement.executeQuery()) {
+        return resultSet.next() ? resultSet.getString(1) : null;
+      }
+    }
+  }
+
+}
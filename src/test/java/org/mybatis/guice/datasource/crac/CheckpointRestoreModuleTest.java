@@ -0,0 +1,250 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.datasource.crac;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.alibaba.druid.pool.DruidDataSource;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Module;
+import com.google.inject.Scopes;
+import com.google.inject.name.Names;
+import com.jolbox.bonecp.BoneCPDataSource;
+import com.mchange.v2.c3p0.ComboPooledDataSource;
+
+import java.sql.Connection;
+
+import javax.sql.DataSource;
+
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.apache.commons.dbcp2.cpdsadapter.DriverAdapterCPDS;
+import org.apache.commons.dbcp2.datasources.PerUserPoolDataSource;
+import org.apache.commons.dbcp2.datasources.SharedPoolDataSource;
+import org.apache.ibatis.datasource.pooled.PooledDataSource;
+import org.apache.ibatis.datasource.unpooled.UnpooledDataSource;
+import org.hsqldb.jdbc.JDBCConnection;
+import org.junit.jupiter.api.Test;
+import org.mybatis.guice.datasource.builtin.PooledDataSourceProvider;
+import org.mybatis.guice.datasource.warmup.DataSourceWarmUp;
+import org.mybatis.guice.datasource.warmup.DataSourceWarmUpModule;
+
+public class CheckpointRestoreModuleTest {
+
+  private Injector createInjector(final String url, Module... modules) {
+    return Guice.createInjector(new AbstractModule() {
+      @Override
+      protected void configure() {
+        bind(ClassLoader.class).annotatedWith(Names.named("JDBC.driverClassLoader"))
+            .toInstance(getClass().getClassLoader());
+        bindConstant().annotatedWith(Names.named("JDBC.driver")).to("org.hsqldb.jdbcDriver");
+        bindConstant().annotatedWith(Names.named("JDBC.url")).to(url);
+        bindConstant().annotatedWith(Names.named("JDBC.username")).to("sa");
+        bindConstant().annotatedWith(Names.named("JDBC.password")).to("");
+        bind(DataSource.class).toProvider(PooledDataSourceProvider.class).in(Scopes.SINGLETON);
+        for (Module module : modules) {
+          install(module);
+        }
+      }
+    });
+  }
+
+  @Test
+  public void closeBeforeCheckpointAndWarmUpAfterRestore() throws Exception {
+    Injector injector = createInjector("jdbc:hsqldb:mem:crac", new CheckpointRestoreModule(),
+        new DataSourceWarmUpModule.Builder().setConnections(2).create());
+    DataSourceCheckpointResource resource = injector.getInstance(DataSourceCheckpointResource.class);
+    PooledDataSource dataSource = (PooledDataSource) injector.getInstance(DataSource.class);
+    assertFalse(resource.isRegistered());
+    assertEquals(2, dataSource.getPoolState().getIdleConnectionCount());
+
+    resource.beforeCheckpoint();
+    assertEquals(0, dataSource.getPoolState().getIdleConnectionCount());
+    assertEquals(1, resource.getCheckpoints());
+
+    resource.afterRestore();
+    assertEquals(2, dataSource.getPoolState().getIdleConnectionCount());
+    assertEquals(1, resource.getRestores());
+    assertEquals(2, injector.getInstance(DataSourceWarmUp.class).getWarmedConnections());
+  }
+
+  @Test
+  public void refuseCheckpointWhileConnectionsAreBorrowed() throws Exception {
+    Injector injector = createInjector("jdbc:hsqldb:mem:crac_busy", new CheckpointRestoreModule(50L));
+    DataSourceCheckpointResource resource = injector.getInstance(DataSourceCheckpointResource.class);
+    PooledDataSource dataSource = (PooledDataSource) injector.getInstance(DataSource.class);
+
+    try (Connection connection = dataSource.getConnection()) {
+      assertThrows(IllegalStateException.class, resource::beforeCheckpoint);
+      assertEquals(1, dataSource.getPoolState().getActiveConnectionCount());
+    }
+    assertEquals(0, resource.getCheckpoints());
+
+    resource.beforeCheckpoint();
+    assertEquals(0, dataSource.getPoolState().getIdleConnectionCount());
+    assertEquals(1, resource.getCheckpoints());
+  }
+
+  @Test
+  public void closeUnpooledConnections() throws Exception {
+    UnpooledDataSource dataSource = new UnpooledDataSource("org.hsqldb.jdbcDriver", "jdbc:hsqldb:mem:crac_unpooled", "sa",
+        "");
+    checkpointAndRestore(dataSource);
+  }
+
+  @Test
+  public void closeC3p0Connections() throws Exception {
+    ComboPooledDataSource dataSource = new ComboPooledDataSource();
+    dataSource.setDriverClass("org.hsqldb.jdbcDriver");
+    dataSource.setJdbcUrl("jdbc:hsqldb:mem:crac_c3p0");
+    dataSource.setUser("sa");
+    dataSource.setPassword("");
+    try {
+      Connection physicalConnection;
+      try (Connection connection = dataSource.getConnection()) {
+        physicalConnection = connection.unwrap(JDBCConnection.class);
+      }
+      DataSourceCheckpointResource resource = checkpoint(dataSource);
+      // c3p0 destroys the connections on its helper threads, and counting them would start a new pool
+      long deadline = System.currentTimeMillis() + 5000;
+      while (!physicalConnection.isClosed() && System.currentTimeMillis() < deadline) {
+        Thread.sleep(10);
+      }
+      assertTrue(physicalConnection.isClosed());
+      restore(resource, dataSource);
+    } finally {
+      dataSource.close();
+    }
+  }
+
+  @Test
+  public void closeDruidConnections() throws Exception {
+    DruidDataSource dataSource = new DruidDataSource();
+    dataSource.setDriverClassName("org.hsqldb.jdbcDriver");
+    dataSource.setUrl("jdbc:hsqldb:mem:crac_druid");
+    dataSource.setUsername("sa");
+    dataSource.setPassword("");
+    try {
+      DataSourceCheckpointResource resource = checkpoint(dataSource);
+      assertEquals(0, dataSource.getPoolingCount());
+      restore(resource, dataSource);
+    } finally {
+      dataSource.close();
+    }
+  }
+
+  @Test
+  public void closeDbcpBasicConnections() throws Exception {
+    BasicDataSource dataSource = new BasicDataSource();
+    dataSource.setDriverClassName("org.hsqldb.jdbcDriver");
+    dataSource.setUrl("jdbc:hsqldb:mem:crac_dbcp");
+    dataSource.setUsername("sa");
+    dataSource.setPassword("");
+    try {
+      DataSourceCheckpointResource resource = checkpoint(dataSource);
+      assertEquals(0, dataSource.getNumIdle());
+      restore(resource, dataSource);
+      assertEquals(1, dataSource.getNumIdle());
+    } finally {
+      dataSource.close();
+    }
+  }
+
+  @Test
+  public void closeDbcpSharedPoolConnections() throws Exception {
+    SharedPoolDataSource dataSource = new SharedPoolDataSource();
+    dataSource.setConnectionPoolDataSource(newConnectionPoolDataSource("jdbc:hsqldb:mem:crac_dbcp_shared"));
+    try {
+      DataSourceCheckpointResource resource = checkpoint(dataSource);
+      assertEquals(0, dataSource.getNumIdle());
+      restore(resource, dataSource);
+      assertEquals(1, dataSource.getNumIdle());
+    } finally {
+      dataSource.close();
+    }
+  }
+
+  @Test
+  public void closeDbcpPerUserPoolConnections() throws Exception {
+    PerUserPoolDataSource dataSource = new PerUserPoolDataSource();
+    dataSource.setConnectionPoolDataSource(newConnectionPoolDataSource("jdbc:hsqldb:mem:crac_dbcp_per_user"));
+    try {
+      DataSourceCheckpointResource resource = checkpoint(dataSource);
+      assertEquals(0, dataSource.getNumIdle());
+      restore(resource, dataSource);
+      assertEquals(1, dataSource.getNumIdle());
+    } finally {
+      dataSource.close();
+    }
+  }
+
+  @Test
+  public void closeBoneCpConnections() throws Exception {
+    BoneCPDataSource dataSource = new BoneCPDataSource();
+    dataSource.setDriverClass("org.hsqldb.jdbcDriver");
+    dataSource.setJdbcUrl("jdbc:hsqldb:mem:crac_bonecp");
+    dataSource.setUsername("sa");
+    dataSource.setPassword("");
+    try {
+      DataSourceCheckpointResource resource = checkpoint(dataSource);
+      assertNull(dataSource.getPool());
+      restore(resource, dataSource);
+      assertNotNull(dataSource.getPool());
+    } finally {
+      dataSource.close();
+    }
+  }
+
+  private static DriverAdapterCPDS newConnectionPoolDataSource(String url) throws Exception {
+    DriverAdapterCPDS connectionPoolDataSource = new DriverAdapterCPDS();
+    connectionPoolDataSource.setDriver("org.hsqldb.jdbcDriver");
+    connectionPoolDataSource.setUrl(url);
+    connectionPoolDataSource.setUser("sa");
+    connectionPoolDataSource.setPassword("");
+    return connectionPoolDataSource;
+  }
+
+  private static void checkpointAndRestore(DataSource dataSource) throws Exception {
+    restore(checkpoint(dataSource), dataSource);
+  }
+
+  private static DataSourceCheckpointResource checkpoint(DataSource dataSource) throws Exception {
+    DataSourceCheckpointResource resource = new DataSourceCheckpointResource(1000L);
+    resource.register(dataSource);
+    try (Connection connection = dataSource.getConnection()) {
+      assertTrue(connection.isValid(1));
+    }
+    resource.beforeCheckpoint();
+    assertEquals(1, resource.getCheckpoints());
+    return resource;
+  }
+
+  private static void restore(DataSourceCheckpointResource resource, DataSource dataSource) throws Exception {
+    resource.afterRestore();
+    try (Connection connection = dataSource.getConnection()) {
+      assertTrue(connection.isValid(1));
+    }
+    assertEquals(1, resource.getRestores());
+  }
+
+}
@@ -0,0 +1,87 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.datasource.helper;
+
+import static com.google.inject.name.Names.named;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+public class JdbcUrlAntFormatterTest {
+
+  @AfterEach
+  public void clearSystemProperty() {
+    System.clearProperty("JDBC.test.schema");
+  }
+
+  @Test
+  public void shouldFormatConstantUrlOnce() {
+    JdbcUrlAntFormatter formatter = new JdbcUrlAntFormatter("jdbc:mysql://${JDBC.host|localhost}:${JDBC.port}/db");
+    Injector injector = Guice.createInjector(new AbstractModule() {
+      @Override
+      protected void configure() {
+        bindConstant().annotatedWith(named("JDBC.port")).to("3306");
+      }
+    });
+    formatter.setInjector(injector);
+
+    String url = formatter.get();
+    assertEquals("jdbc:mysql://localhost:3306/db", url);
+    assertSame(url, formatter.get());
+  }
+
+  @Test
+  public void shouldResolveSystemProperty() {
+    System.setProperty("JDBC.test.schema", "test");
+    JdbcUrlAntFormatter formatter = new JdbcUrlAntFormatter("jdbc:hsqldb:mem:${JDBC.test.schema}");
+    formatter.setInjector(Guice.createInjector());
+
+    assertEquals("jdbc:hsqldb:mem:test", formatter.get());
+  }
+
+  @Test
+  public void shouldKeepUnresolvedPlaceholder() {
+    JdbcUrlAntFormatter formatter = new JdbcUrlAntFormatter("jdbc:hsqldb:mem:${JDBC.unknown.schema}$$");
+    formatter.setInjector(Guice.createInjector());
+
+    assertEquals("jdbc:hsqldb:mem:${JDBC.unknown.schema}$", formatter.get());
+  }
+
+  @Test
+  public void shouldResolveProviderBindingAtEachCall() {
+    final AtomicInteger counter = new AtomicInteger();
+    JdbcUrlAntFormatter formatter = new JdbcUrlAntFormatter("jdbc:hsqldb:mem:db${JDBC.counter}");
+    formatter.setInjector(Guice.createInjector(new AbstractModule() {
+      @Override
+      protected void configure() {
+        bind(String.class).annotatedWith(named("JDBC.counter"))
+            .toProvider(() -> String.valueOf(counter.incrementAndGet()));
+      }
+    }));
+
+    assertEquals("jdbc:hsqldb:mem:db1", formatter.get());
+    assertEquals("jdbc:hsqldb:mem:db2", formatter.get());
+  }
+
+}
@@ -0,0 +1,173 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.datasource.state;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+import org.apache.ibatis.datasource.pooled.PooledDataSource;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.TransactionIsolationLevel;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mybatis.guice.MyBatisModule;
+
+public class ConnectionStateCacheTest {
+
+  private PooledDataSource pooledDataSource;
+
+  @BeforeEach
+  public void setup() {
+    pooledDataSource = new PooledDataSource("org.hsqldb.jdbcDriver", "jdbc:hsqldb:mem:connection_state", "sa", "");
+    pooledDataSource.setPoolMaximumActiveConnections(1);
+  }
+
+  @Test
+  public void shouldSkipUnchangedStateAcrossCheckouts() throws SQLException {
+    ConnectionStateCache cache = ConnectionStateCache.create();
+    DataSource dataSource = cache.wrap(pooledDataSource);
+
+    try (Connection connection = dataSource.getConnection()) {
+      connection.setTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE);
+      connection.setReadOnly(true);
+      connection.setReadOnly(false);
+    }
+    assertEquals(3, cache.getForwardedCalls());
+    assertEquals(0, cache.getSkippedCalls());
+
+    try (Connection connection = dataSource.getConnection()) {
+      connection.setTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE);
+      assertEquals(Connection.TRANSACTION_SERIALIZABLE, connection.getTransactionIsolation());
+      assertFalse(connection.isReadOnly());
+
+      Connection physicalConnection = connection.unwrap(Connection.class);
+      assertEquals(Connection.TRANSACTION_SERIALIZABLE, physicalConnection.getTransactionIsolation());
+      assertFalse(physicalConnection.isReadOnly());
+    }
+    assertEquals(3, cache.getForwardedCalls());
+    assertEquals(3, cache.getSkippedCalls());
+    assertEquals(1, cache.getConnectionCount());
+  }
+
+  @Test
+  public void shouldForgetStateOfUnknownPools() throws SQLException {
+    ConnectionStateCache cache = ConnectionStateCache.create();
+    DataSource unknownPool = new DataSource() {
+      // hides the built-in pool, which is not known to keep the state of its connections
+      private final DataSource dataSource = pooledDataSource;
+
+      @Override
+      public Connection getConnection() throws SQLException {
+        return dataSource.getConnection();
+      }
+
+      @Override
+      public Connection getConnection(String username, String password) throws SQLException {
+        return dataSource.getConnection(username, password);
+      }
+
+      @Override
+      public PrintWriter getLogWriter() {
+        return null;
+      }
+
+      @Override
+      public void setLogWriter(PrintWriter out) {
+      }
+
+      @Override
+      public void setLoginTimeout(int seconds) {
+      }
+
+      @Override
+      public int getLoginTimeout() {
+        return 0;
+      }
+
+      @Override
+      public Logger getParentLogger() {
+        return null;
+      }
+
+      @Override
+      public <T> T unwrap(Class<T> iface) throws SQLException {
+        throw new SQLException("Not a wrapper");
+      }
+
+      @Override
+      public boolean isWrapperFor(Class<?> iface) {
+        return false;
+      }
+    };
+    DataSource dataSource = cache.wrap(unknownPool);
+
+    for (int i = 0; i < 2; i++) {
+      try (Connection connection = dataSource.getConnection()) {
+        connection.setReadOnly(true);
+        connection.setReadOnly(true);
+        connection.setReadOnly(false);
+      }
+    }
+    assertEquals(4, cache.getForwardedCalls());
+    assertEquals(2, cache.getSkippedCalls());
+    assertEquals(0, cache.getConnectionCount());
+  }
+
+  @Test
+  public void shouldWrapEnvironmentDataSource() throws SQLException {
+    final PooledDataSource pooledDataSource = this.pooledDataSource;
+    Injector injector = Guice.createInjector(new MyBatisModule() {
+      @Override
+      protected void initialize() {
+        environmentId("test");
+        bindDataSourceProvider(() -> pooledDataSource);
+        bindTransactionFactoryType(JdbcTransactionFactory.class);
+        useConnectionStateCache();
+      }
+    });
+
+    Environment environment = injector.getInstance(Environment.class);
+    assertTrue(environment.getDataSource().isWrapperFor(PooledDataSource.class));
+
+    SqlSessionFactory sqlSessionFactory = injector.getInstance(SqlSessionFactory.class);
+    for (int i = 0; i < 3; i++) {
+      try (SqlSession sqlSession = sqlSessionFactory.openSession(TransactionIsolationLevel.READ_COMMITTED)) {
+        sqlSession.getConnection();
+      }
+    }
+
+    // each session sets the isolation, reads then clears the auto-commit, and reads then restores it on close: the
+    // first session learns the state, the next ones only switch the auto-commit mode
+    ConnectionStateCache cache = injector.getInstance(ConnectionStateCache.class);
+    assertEquals(4 + 2 + 2, cache.getForwardedCalls());
+    assertEquals(1 + 3 + 3, cache.getSkippedCalls());
+  }
+
+}
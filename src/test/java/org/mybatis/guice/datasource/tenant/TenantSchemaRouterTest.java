@@ -0,0 +1,196 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.datasource.tenant;
+
+import static org.apache.ibatis.io.Resources.getResourceAsReader;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.name.Names;
+
+import java.io.StringReader;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.util.Properties;
+
+import javax.inject.Inject;
+import javax.sql.DataSource;
+
+import org.apache.ibatis.jdbc.ScriptRunner;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mybatis.guice.MyBatisModule;
+import org.mybatis.guice.datasource.builtin.PooledDataSourceProvider;
+import org.mybatis.guice.datasource.helper.JdbcHelper;
+import org.mybatis.guice.nestedtx.NestedTxMapper;
+import org.mybatis.guice.nestedtx.TableRow;
+import org.mybatis.guice.transactional.Transactional;
+
+public class TenantSchemaRouterTest {
+
+  public static class TenantService {
+
+    @Inject
+    NestedTxMapper mapper;
+
+    @Inject
+    TenantService self;
+
+    @Transactional
+    public void insert(@Tenant String tenant, int id) {
+      TableRow row = new TableRow();
+      row.setId(id);
+      row.setName(tenant);
+      mapper.insertTable1(row);
+    }
+
+    @Transactional
+    public int count(@Tenant String tenant) {
+      return mapper.selectAllTable1().size();
+    }
+
+    @Transactional
+    public int countDefault() {
+      return mapper.selectAllTable1().size();
+    }
+
+    @Transactional
+    public int countAcross(@Tenant String tenant, String otherTenant) {
+      return count(tenant) + self.count(otherTenant);
+    }
+
+  }
+
+  private Injector injector;
+
+  private TenantService service;
+
+  private TenantSchemaRouter router;
+
+  @BeforeEach
+  public void setup() throws Exception {
+    injector = Guice.createInjector(new MyBatisModule() {
+      @Override
+      protected void initialize() {
+        bindDataSourceProviderType(PooledDataSourceProvider.class);
+        bindTransactionFactoryType(JdbcTransactionFactory.class);
+
+        install(JdbcHelper.HSQLDB_IN_MEMORY_NAMED);
+
+        Properties connectionProps = new Properties();
+        connectionProps.setProperty("mybatis.environment.id", "jdbc");
+        connectionProps.setProperty("JDBC.username", "sa");
+        connectionProps.setProperty("JDBC.password", "");
+        Names.bindProperties(binder(), connectionProps);
+
+        useTenantSchemaRouting(TenantSchemaRouter.Mode.SCHEMA, "PUBLIC");
+        usePreparedStatementCache(10);
+        addMapperClass(NestedTxMapper.class);
+      }
+    });
+
+    DataSource dataSource = injector.getInstance(DataSource.class);
+    ScriptRunner runner = new ScriptRunner(dataSource.getConnection());
+    runner.setAutoCommit(true);
+    runner.setStopOnError(true);
+    runner.setLogWriter(null);
+    runner.runScript(getResourceAsReader("org/mybatis/guice/nestedtx/setupdb.sql"));
+    runner.runScript(new StringReader("drop schema tenant_a if exists cascade;\n"
+        + "drop schema tenant_b if exists cascade;\n" + "create schema tenant_a authorization dba;\n"
+        + "create schema tenant_b authorization dba;\n"
+        + "create table tenant_a.table1 (id integer not null primary key, name varchar(80) not null);\n"
+        + "create table tenant_b.table1 (id integer not null primary key, name varchar(80) not null);\n"));
+    runner.closeConnection();
+
+    service = injector.getInstance(TenantService.class);
+    router = injector.getInstance(TenantSchemaRouter.class);
+  }
+
+  @Test
+  public void shouldRouteToTenantSchema() {
+    service.insert("TENANT_A", 1);
+    service.insert("TENANT_A", 2);
+    service.insert("TENANT_B", 1);
+
+    assertEquals(2, service.count("TENANT_A"));
+    assertEquals(1, service.count("TENANT_B"));
+    assertEquals(0, service.countDefault());
+    assertNull(TenantContext.current());
+  }
+
+  @Test
+  public void shouldSkipRedundantSwitches() {
+    service.count("TENANT_A");
+    long switches = router.getSwitches();
+
+    service.count("TENANT_A");
+    service.count("TENANT_A");
+
+    assertEquals(switches, router.getSwitches());
+    assertTrue(router.getSkippedSwitches() >= 2);
+  }
+
+  @Test
+  public void shouldSwitchEachCheckoutOfOtherPools() throws Exception {
+    final DataSource pool = injector.getInstance(DataSource.class);
+    DataSource otherPool = (DataSource) Proxy.newProxyInstance(DataSource.class.getClassLoader(),
+        new Class<?>[] { DataSource.class }, (proxy, method, args) -> {
+          try {
+            return method.invoke(pool, args);
+          } catch (InvocationTargetException e) {
+            throw e.getCause();
+          }
+        });
+    TenantSchemaRouter otherRouter = new TenantSchemaRouter(TenantSchemaRouter.Mode.SCHEMA, "PUBLIC");
+    DataSource dataSource = otherRouter.wrap(otherPool);
+
+    String previous = TenantContext.set("TENANT_A");
+    try {
+      try (Connection connection = dataSource.getConnection()) {
+        // as done by the pools restoring the connections they get back
+        connection.setSchema("PUBLIC");
+      }
+      try (Connection connection = dataSource.getConnection()) {
+        assertEquals("TENANT_A", connection.getSchema());
+      }
+    } finally {
+      TenantContext.restore(previous);
+    }
+    assertEquals(2, otherRouter.getSwitches());
+    assertEquals(0, otherRouter.getSkippedSwitches());
+  }
+
+  @Test
+  public void shouldRejectJoiningTransactionOfAnotherTenant() {
+    assertEquals(0, service.countAcross("TENANT_A", "TENANT_A"));
+    assertThrows(IllegalStateException.class, () -> service.countAcross("TENANT_A", "TENANT_B"));
+    assertNull(TenantContext.current());
+  }
+
+  @Test
+  public void shouldRejectConnectionsWithoutTenantWithoutDefaultSchema() {
+    DataSource dataSource = new TenantSchemaRouter(TenantSchemaRouter.Mode.SCHEMA)
+        .wrap(injector.getInstance(DataSource.class));
+    assertThrows(IllegalStateException.class, dataSource::getConnection);
+  }
+
+}
@@ -0,0 +1,131 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.datasource.warmup;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Scopes;
+import com.google.inject.name.Names;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.sql.DataSource;
+
+import org.apache.ibatis.datasource.pooled.PooledDataSource;
+import org.junit.jupiter.api.Test;
+import org.mybatis.guice.datasource.builtin.PooledDataSourceProvider;
+
+public class DataSourceWarmUpModuleTest {
+
+  private Injector createInjector(final String url, DataSourceWarmUpModule warmUpModule) {
+    return createInjector(url, 10, warmUpModule);
+  }
+
+  private Injector createInjector(final String url, final int maximumActiveConnections,
+      DataSourceWarmUpModule warmUpModule) {
+    return Guice.createInjector(new AbstractModule() {
+      @Override
+      protected void configure() {
+        bindConstant().annotatedWith(Names.named("mybatis.pooled.maximumActiveConnections"))
+            .to(maximumActiveConnections);
+        bind(ClassLoader.class).annotatedWith(Names.named("JDBC.driverClassLoader"))
+            .toInstance(getClass().getClassLoader());
+        bindConstant().annotatedWith(Names.named("JDBC.driver")).to("org.hsqldb.jdbcDriver");
+        bindConstant().annotatedWith(Names.named("JDBC.url")).to(url);
+        bindConstant().annotatedWith(Names.named("JDBC.username")).to("sa");
+        bindConstant().annotatedWith(Names.named("JDBC.password")).to("");
+        bind(DataSource.class).toProvider(PooledDataSourceProvider.class).in(Scopes.SINGLETON);
+      }
+    }, warmUpModule);
+  }
+
+  @Test
+  public void warmUp() {
+    Injector injector = createInjector("jdbc:hsqldb:mem:warmup",
+        new DataSourceWarmUpModule.Builder().setConnections(3).setThreads(2)
+            .setValidationQuery("SELECT 1 FROM INFORMATION_SCHEMA.SYSTEM_USERS")
+            .addStatements("SELECT USER_NAME FROM INFORMATION_SCHEMA.SYSTEM_USERS WHERE USER_NAME = ?").create());
+
+    DataSourceWarmUp warmUp = injector.getInstance(DataSourceWarmUp.class);
+    assertTrue(warmUp.isReady());
+    assertEquals(3, warmUp.getWarmedConnections());
+    assertTrue(warmUp.getFailures().isEmpty());
+
+    PooledDataSource dataSource = (PooledDataSource) injector.getInstance(DataSource.class);
+    assertEquals(3, dataSource.getPoolState().getIdleConnectionCount());
+  }
+
+  @Test
+  public void warmUpFailure() {
+    Injector injector = createInjector("jdbc:hsqldb:mem:warmup_failure",
+        new DataSourceWarmUpModule.Builder().setConnections(2).setValidationQuery("SELECT * FROM NOT_A_TABLE")
+            .create());
+
+    DataSourceWarmUp warmUp = injector.getInstance(DataSourceWarmUp.class);
+    assertFalse(warmUp.isReady());
+    assertEquals(0, warmUp.getWarmedConnections());
+    assertEquals(2, warmUp.getFailures().size());
+  }
+
+  @Test
+  public void warmUpCappedAtPoolSize() {
+    Injector injector = createInjector("jdbc:hsqldb:mem:warmup_capped", 2,
+        new DataSourceWarmUpModule.Builder().setConnections(5).setTimeout(5, TimeUnit.SECONDS).create());
+
+    DataSourceWarmUp warmUp = injector.getInstance(DataSourceWarmUp.class);
+    assertTrue(warmUp.isReady());
+    assertEquals(2, warmUp.getWarmedConnections());
+
+    PooledDataSource dataSource = (PooledDataSource) injector.getInstance(DataSource.class);
+    assertEquals(2, dataSource.getPoolState().getIdleConnectionCount());
+  }
+
+  @Test
+  public void warmUpTimeout() {
+    final DataSource dataSource = (DataSource) Proxy.newProxyInstance(getClass().getClassLoader(),
+        new Class<?>[] { DataSource.class }, new InvocationHandler() {
+          @Override
+          public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if ("getConnection".equals(method.getName())) {
+              Thread.sleep(10000L);
+            }
+            throw new UnsupportedOperationException(method.getName());
+          }
+        });
+    Injector injector = Guice.createInjector(new AbstractModule() {
+      @Override
+      protected void configure() {
+        bind(DataSource.class).toInstance(dataSource);
+      }
+    }, new DataSourceWarmUpModule.Builder().setConnections(2).setTimeout(100, TimeUnit.MILLISECONDS).create());
+
+    DataSourceWarmUp warmUp = injector.getInstance(DataSourceWarmUp.class);
+    assertFalse(warmUp.isReady());
+    assertEquals(0, warmUp.getWarmedConnections());
+    assertTrue(warmUp.getFailures().get(0) instanceof TimeoutException);
+    assertTrue(warmUp.getElapsedMillis() < 10000L);
+  }
+
+}
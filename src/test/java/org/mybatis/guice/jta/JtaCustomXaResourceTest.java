@@ -15,9 +15,11 @@
  */
 package org.mybatis.guice.jta;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import javax.sql.DataSource;
+import javax.transaction.Status;
 
 import org.apache.aries.transaction.AriesTransactionManager;
 import org.apache.aries.transaction.internal.AriesTransactionManagerImpl;
@@ -30,6 +32,7 @@ import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInfo;
 import org.mybatis.guice.MyBatisJtaModule;
+import org.mybatis.guice.transactional.TransactionTemplate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -88,11 +91,15 @@ public class JtaCustomXaResourceTest {
 
             bind(JtaService2Impl.class);
             bind(JtaProcess.class);
+            bind(TransactionTemplate.class);
+            bindTransactionalWrapper(JtaWrappedService.class);
           }
         });
 
         expose(JtaService2Impl.class);
         expose(JtaProcess.class);
+        expose(TransactionTemplate.class);
+        expose(JtaWrappedService.class);
       };
     });
 
@@ -122,4 +129,18 @@ public class JtaCustomXaResourceTest {
     }
     assertTrue(CustomXaResourceProvider.isProviderCalled());
   }
+
+  @Test
+  public void testTemplateRunsInJtaTransaction() throws Exception {
+    TransactionTemplate template = injector.getInstance(TransactionTemplate.class);
+    assertEquals(Status.STATUS_ACTIVE, (int) template.execute(() -> manager.getStatus()));
+    assertEquals(Status.STATUS_NO_TRANSACTION, manager.getStatus());
+  }
+
+  @Test
+  public void testWrapperRunsInJtaTransaction() throws Exception {
+    JtaWrappedService service = injector.getInstance(JtaWrappedService.class);
+    assertEquals(Status.STATUS_ACTIVE, service.transactionStatus());
+    assertEquals(Status.STATUS_NO_TRANSACTION, manager.getStatus());
+  }
 }
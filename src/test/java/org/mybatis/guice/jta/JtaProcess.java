@@ -207,6 +207,31 @@ public class JtaProcess {
     throw new JtaRollbackException();
   }
 
+  /**
+   * begin NESTED insert(id=1) commit NESTED
+   * 
+   * have 1 rows
+   */
+  @Transactional(Transactional.TxType.NESTED)
+  public void nested(int offset) {
+    LOGGER.info("insert NESTED transaction");
+    inserts(offset);
+  }
+
+  /**
+   * begin REQUIRED insert(id=1) begin NESTED insert(id=2) commit NESTED commit REQUIRED
+   * 
+   * have 2 rows
+   */
+  @Transactional
+  public void requiredAndNested() {
+    JtaProcess process = getProvider();
+
+    LOGGER.info("insert REQUIED transaction");
+    process.inserts(1);
+    process.nested(2);
+  }
+
   private void inserts(JtaService1Impl service, int offset) {
     TableRow tr = new TableRow();
     tr.setId(offset);
@@ -156,6 +156,19 @@ public class JtaXaTest {
     checkCountRows(testInfo, 1);
   }
 
+  /**
+   * begin REQUIRED insert(id=1) begin NESTED insert(id=2) commit NESTED commit REQUIRED
+   * 
+   * NESTED joins the global transaction, no savepoint being set on the enlisted connections
+   * 
+   * have 2 rows
+   */
+  @Test
+  public void testRequiredAndNested(TestInfo testInfo) throws Exception {
+    process.requiredAndNested();
+    checkCountRows(testInfo, 2);
+  }
+
   /**
    * begin REQUIRED insert(id=1) roll back REQUIRED
    * 
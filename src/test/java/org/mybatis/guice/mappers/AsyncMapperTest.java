@@ -0,0 +1,199 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.mappers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mybatis.guice.nestedtx.NestedTxFixture.createInjector;
+import static org.mybatis.guice.nestedtx.NestedTxFixture.row;
+
+import com.google.inject.Injector;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.apache.ibatis.exceptions.PersistenceException;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mybatis.guice.mappers.async.AsyncScannedMapper;
+import org.mybatis.guice.mappers.async.ScannedMapper;
+import org.mybatis.guice.nestedtx.NestedTxMapper;
+import org.mybatis.guice.nestedtx.NestedTxModule;
+import org.mybatis.guice.nestedtx.TableRow;
+
+public class AsyncMapperTest {
+
+  public interface AsyncNestedTxMapper {
+
+    CompletableFuture<Integer> insertTable1(TableRow row);
+
+    CompletionStage<List<TableRow>> selectAllTable1();
+
+    default CompletableFuture<Integer> countTable1() {
+      return selectAllTable1().thenApply(List::size).toCompletableFuture();
+    }
+
+  }
+
+  public interface InvalidAsyncMapper {
+
+    List<TableRow> selectAllTable1();
+
+  }
+
+  public interface OtherAsyncNestedTxMapper {
+
+    CompletableFuture<List<TableRow>> selectAllTable1();
+
+  }
+
+  private Injector injector;
+
+  private AsyncNestedTxMapper asyncMapper;
+
+  private abstract static class AsyncMapperModule extends NestedTxModule {
+
+    AsyncMapperModule() {
+      withProperty("JDBC.autoCommit", "false");
+    }
+
+    @Override
+    protected final void configureTest() {
+      addMappers();
+      asyncMapperExecutor(2, 10);
+    }
+
+    abstract void addMappers();
+
+  }
+
+  @BeforeEach
+  public void setup() throws Exception {
+    injector = createInjector(new AsyncMapperModule() {
+      @Override
+      void addMappers() {
+        addAsyncMapperClass(AsyncNestedTxMapper.class, NestedTxMapper.class);
+      }
+    });
+    asyncMapper = injector.getInstance(AsyncNestedTxMapper.class);
+  }
+
+  @Test
+  public void shouldRunOnExecutor() throws Exception {
+    assertEquals(1, asyncMapper.insertTable1(row(1, "Fred")).get().intValue());
+
+    List<TableRow> rows = asyncMapper.selectAllTable1().toCompletableFuture().get();
+    assertEquals(1, rows.size());
+    assertEquals(1, injector.getInstance(NestedTxMapper.class).selectAllTable1().size());
+  }
+
+  @Test
+  public void shouldRunDefaultMethod() throws Exception {
+    asyncMapper.insertTable1(row(1, "Fred")).get();
+
+    assertEquals(1, asyncMapper.countTable1().get().intValue());
+  }
+
+  @Test
+  public void shouldCompleteExceptionally() throws Exception {
+    asyncMapper.insertTable1(row(1, "Fred")).get();
+
+    ExecutionException e = assertThrows(ExecutionException.class,
+        () -> asyncMapper.insertTable1(row(1, "Barney")).get());
+    assertTrue(e.getCause() instanceof PersistenceException);
+  }
+
+  @Test
+  public void shouldAcceptMapperAddedTwice() throws Exception {
+    Injector injector = createInjector(new AsyncMapperModule() {
+      @Override
+      void addMappers() {
+        addMapperClass(NestedTxMapper.class);
+        addAsyncMapperClass(AsyncNestedTxMapper.class, NestedTxMapper.class);
+        addMapperClasses("org.mybatis.guice.nestedtx");
+      }
+    });
+
+    injector.getInstance(NestedTxMapper.class).insertTable1(row(1, "Fred"));
+    assertEquals(1, injector.getInstance(AsyncNestedTxMapper.class).countTable1().get().intValue());
+  }
+
+  @Test
+  public void shouldShareMapperBetweenFacades() throws Exception {
+    Injector injector = createInjector(new AsyncMapperModule() {
+      @Override
+      void addMappers() {
+        addAsyncMapperClass(AsyncNestedTxMapper.class, NestedTxMapper.class);
+        addAsyncMapperClass(OtherAsyncNestedTxMapper.class, NestedTxMapper.class);
+      }
+    });
+
+    injector.getInstance(AsyncNestedTxMapper.class).insertTable1(row(1, "Fred")).get();
+    assertEquals(1, injector.getInstance(OtherAsyncNestedTxMapper.class).selectAllTable1().get().size());
+  }
+
+  @Test
+  public void shouldNotAddScannedFacadeAsMapper() throws Exception {
+    Injector injector = createInjector(new AsyncMapperModule() {
+      @Override
+      void addMappers() {
+        addMapperClasses("org.mybatis.guice.mappers.async");
+        addAsyncMapperClass(AsyncScannedMapper.class, ScannedMapper.class);
+      }
+    });
+
+    assertEquals(0, injector.getInstance(AsyncScannedMapper.class).selectAllTable2().get().size());
+    assertFalse(injector.getInstance(SqlSessionFactory.class).getConfiguration().hasMapper(AsyncScannedMapper.class));
+  }
+
+  @Test
+  public void shouldRejectInvalidFacade() {
+    assertThrows(IllegalArgumentException.class,
+        () -> new AsyncMapperProvider<InvalidAsyncMapper>(InvalidAsyncMapper.class, NestedTxMapper.class));
+  }
+
+  @Test
+  public void shouldRejectWhenQueueIsFull() throws Exception {
+    AsyncMapperExecutor executor = new AsyncMapperExecutor(1, 1);
+    CountDownLatch latch = new CountDownLatch(1);
+    try {
+      executor.execute(() -> {
+        try {
+          latch.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      });
+      executor.execute(() -> {
+      });
+
+      assertThrows(RejectedExecutionException.class, () -> executor.execute(() -> {
+      }));
+      assertEquals(1, executor.getQueueSize());
+    } finally {
+      latch.countDown();
+      executor.shutdown();
+    }
+  }
+
+}
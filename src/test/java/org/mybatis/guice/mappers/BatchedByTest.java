@@ -0,0 +1,281 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.mappers;
+
+import static org.apache.ibatis.io.Resources.getResourceAsReader;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.name.Names;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.jdbc.ScriptRunner;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mybatis.guice.MyBatisModule;
+import org.mybatis.guice.datasource.builtin.PooledDataSourceProvider;
+import org.mybatis.guice.datasource.tenant.TenantContext;
+import org.mybatis.guice.datasource.helper.JdbcHelper;
+import org.mybatis.guice.nestedtx.NestedTxMapper;
+import org.mybatis.guice.nestedtx.TableRow;
+
+public class BatchedByTest {
+
+  public interface BatchedMapper {
+
+    @BatchedBy(value = "selectByIds", keyProperty = "id")
+    @Select({ "select * from table1 where id = #{id}" })
+    TableRow selectById(int id);
+
+    @Select({ "<script>select * from table1 where id in",
+        "<foreach item='id' collection='ids' open='(' separator=',' close=')'>#{id}</foreach></script>" })
+    List<TableRow> selectByIds(@Param("ids") Collection<Integer> ids);
+
+    @BatchedBy(value = "selectByLongIds", keyProperty = "id")
+    @Select({ "select * from table1 where id = #{id}" })
+    TableRow selectByLongId(long id);
+
+    @Select({ "<script>select * from table1 where id in",
+        "<foreach item='id' collection='ids' open='(' separator=',' close=')'>#{id}</foreach></script>" })
+    List<TableRow> selectByLongIds(@Param("ids") Collection<Long> ids);
+
+    @BatchedBy(value = "selectMapsByIds", keyProperty = "ID")
+    @Select({ "select * from table1 where id = #{id}" })
+    Map<String, Object> selectMapById(long id);
+
+    @Select({ "<script>select * from table1 where id in",
+        "<foreach item='id' collection='ids' open='(' separator=',' close=')'>#{id}</foreach></script>" })
+    List<Map<String, Object>> selectMapsByIds(@Param("ids") Collection<Long> ids);
+
+    @BatchedBy(value = "selectByNames", keyProperty = "id")
+    @Select({ "select * from table1 where name = #{name}" })
+    TableRow selectByName(String name);
+
+    @Select({ "<script>select * from table1 where name in",
+        "<foreach item='name' collection='names' open='(' separator=',' close=')'>#{name}</foreach></script>" })
+    List<TableRow> selectByNames(@Param("names") Collection<String> names);
+
+  }
+
+  public interface AsyncBatchedMapper {
+
+    CompletableFuture<TableRow> selectById(int id);
+
+    CompletableFuture<List<TableRow>> selectByIds(Collection<Integer> ids);
+
+    CompletableFuture<TableRow> selectByLongId(long id);
+
+    CompletableFuture<Map<String, Object>> selectMapById(long id);
+
+    CompletableFuture<TableRow> selectByName(String name);
+
+  }
+
+  public interface InvalidBatchedMapper {
+
+    @BatchedBy(value = "selectByNames", keyProperty = "id")
+    @Select({ "select * from table1 where id = #{id}" })
+    TableRow selectById(int id);
+
+  }
+
+  public interface AsyncInvalidBatchedMapper {
+
+    CompletableFuture<TableRow> selectById(int id);
+
+  }
+
+  @Intercepts({ @Signature(type = Executor.class, method = "query", args = { MappedStatement.class, Object.class,
+      RowBounds.class, ResultHandler.class }) })
+  public static class QueryCounter implements Interceptor {
+
+    static final AtomicInteger QUERIES = new AtomicInteger();
+
+    static final List<String> TENANTS = Collections.synchronizedList(new ArrayList<String>());
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+      QUERIES.incrementAndGet();
+      TENANTS.add(TenantContext.current());
+      return invocation.proceed();
+    }
+
+  }
+
+  private Injector injector;
+
+  @BeforeEach
+  public void setup() throws Exception {
+    injector = Guice.createInjector(new MyBatisModule() {
+      @Override
+      protected void initialize() {
+        bindDataSourceProviderType(PooledDataSourceProvider.class);
+        bindTransactionFactoryType(JdbcTransactionFactory.class);
+
+        install(JdbcHelper.HSQLDB_IN_MEMORY_NAMED);
+
+        Properties connectionProps = new Properties();
+        connectionProps.setProperty("mybatis.environment.id", "jdbc");
+        connectionProps.setProperty("JDBC.username", "sa");
+        connectionProps.setProperty("JDBC.password", "");
+        Names.bindProperties(binder(), connectionProps);
+
+        addMapperClass(NestedTxMapper.class);
+        addAsyncMapperClass(AsyncBatchedMapper.class, BatchedMapper.class);
+        addInterceptorClass(QueryCounter.class);
+        asyncMapperExecutor(1, 100);
+      }
+    });
+
+    ScriptRunner runner = new ScriptRunner(injector.getInstance(SqlSessionFactory.class).getConfiguration()
+        .getEnvironment().getDataSource().getConnection());
+    runner.setAutoCommit(true);
+    runner.setStopOnError(true);
+    runner.runScript(getResourceAsReader("org/mybatis/guice/nestedtx/setupdb.sql"));
+    runner.closeConnection();
+
+    NestedTxMapper mapper = injector.getInstance(NestedTxMapper.class);
+    for (int id = 1; id <= 3; id++) {
+      TableRow row = new TableRow();
+      row.setId(id);
+      row.setName("name" + id);
+      mapper.insertTable1(row);
+    }
+  }
+
+  @Test
+  public void shouldDispatchQueuedCallsAsOneBatch() throws Exception {
+    AsyncBatchedMapper asyncMapper = injector.getInstance(AsyncBatchedMapper.class);
+    AsyncMapperExecutor executor = injector.getInstance(AsyncMapperExecutor.class);
+
+    CountDownLatch release = new CountDownLatch(1);
+    executor.execute(() -> {
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+
+    QueryCounter.QUERIES.set(0);
+    CompletableFuture<TableRow> first = asyncMapper.selectById(1);
+    CompletableFuture<TableRow> second = asyncMapper.selectById(2);
+    CompletableFuture<TableRow> again = asyncMapper.selectById(2);
+    CompletableFuture<TableRow> missing = asyncMapper.selectById(99);
+    release.countDown();
+
+    assertEquals("name1", first.get().getName());
+    assertEquals("name2", second.get().getName());
+    assertEquals("name2", again.get().getName());
+    assertNull(missing.get());
+    assertEquals(1, QueryCounter.QUERIES.get());
+  }
+
+  @Test
+  public void shouldRunCallsForTheirTenant() throws Exception {
+    AsyncBatchedMapper asyncMapper = injector.getInstance(AsyncBatchedMapper.class);
+    AsyncMapperExecutor executor = injector.getInstance(AsyncMapperExecutor.class);
+
+    CountDownLatch release = new CountDownLatch(1);
+    executor.execute(() -> {
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+
+    QueryCounter.TENANTS.clear();
+    CompletableFuture<TableRow> first;
+    CompletableFuture<List<TableRow>> rows;
+    String previous = TenantContext.set("tenant_a");
+    try {
+      first = asyncMapper.selectById(1);
+      rows = asyncMapper.selectByIds(Arrays.asList(1, 2));
+    } finally {
+      TenantContext.restore(previous);
+    }
+    CompletableFuture<TableRow> second;
+    previous = TenantContext.set("tenant_b");
+    try {
+      second = asyncMapper.selectById(2);
+    } finally {
+      TenantContext.restore(previous);
+    }
+    release.countDown();
+
+    assertEquals("name1", first.get().getName());
+    assertEquals("name2", second.get().getName());
+    assertEquals(2, rows.get().size());
+    // the batch queued first is split per tenant, then the plain call runs
+    assertEquals(Arrays.asList("tenant_a", "tenant_b", "tenant_a"), QueryCounter.TENANTS);
+  }
+
+  @Test
+  public void shouldMatchKeysOfAnotherNumericType() throws Exception {
+    AsyncBatchedMapper asyncMapper = injector.getInstance(AsyncBatchedMapper.class);
+
+    CompletableFuture<TableRow> first = asyncMapper.selectByLongId(1L);
+    CompletableFuture<TableRow> second = asyncMapper.selectByLongId(2L);
+    CompletableFuture<Map<String, Object>> map = asyncMapper.selectMapById(3L);
+
+    assertEquals("name1", first.get().getName());
+    assertEquals("name2", second.get().getName());
+    assertEquals("name3", map.get().get("NAME"));
+  }
+
+  @Test
+  public void shouldFailOnKeyTypeMismatch() {
+    AsyncBatchedMapper asyncMapper = injector.getInstance(AsyncBatchedMapper.class);
+
+    ExecutionException e = assertThrows(ExecutionException.class, () -> asyncMapper.selectByName("name1").get());
+    assertTrue(e.getCause() instanceof IllegalArgumentException);
+  }
+
+  @Test
+  public void shouldRejectMissingBatchMethod() {
+    assertThrows(IllegalArgumentException.class, () -> new AsyncMapperProvider<AsyncInvalidBatchedMapper>(
+        AsyncInvalidBatchedMapper.class, InvalidBatchedMapper.class));
+  }
+
+}
@@ -0,0 +1,95 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.mappers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mybatis.guice.nestedtx.NestedTxFixture.row;
+
+import com.google.inject.Injector;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import org.apache.ibatis.session.SqlSessionManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mybatis.guice.nestedtx.NestedTxFixture;
+import org.mybatis.guice.nestedtx.NestedTxMapper;
+import org.mybatis.guice.nestedtx.NestedTxModule;
+
+public class DirectDispatchMapperTest {
+
+  private SqlSessionManager sqlSessionManager;
+
+  private NestedTxMapper mapper;
+
+  @BeforeEach
+  public void setup() throws Exception {
+    Injector injector = createInjector(false);
+
+    sqlSessionManager = injector.getInstance(SqlSessionManager.class);
+    mapper = injector.getInstance(NestedTxMapper.class);
+  }
+
+  private static Injector createInjector(final boolean lazyMapperRegistration) throws Exception {
+    return NestedTxFixture.createInjector(new NestedTxModule() {
+      @Override
+      protected void configureTest() {
+        lazyMapperRegistration(lazyMapperRegistration);
+        useDirectMapperDispatch(true);
+      }
+    }.withProperty("JDBC.autoCommit", "false"));
+  }
+
+  @Test
+  public void shouldBindDirectDispatchMapper() {
+    assertTrue(Proxy.getInvocationHandler(mapper) instanceof DirectDispatchMapper);
+  }
+
+  @Test
+  public void shouldDispatchDirectlyWithLazyRegistration() throws Exception {
+    NestedTxMapper lazyMapper = createInjector(true).getInstance(NestedTxMapper.class);
+
+    DirectDispatchMapper handler = (DirectDispatchMapper) Proxy.getInvocationHandler(lazyMapper);
+    for (Method method : NestedTxMapper.class.getMethods()) {
+      assertTrue(handler.isDispatchedDirectly(method), method.getName());
+    }
+  }
+
+  @Test
+  public void shouldRunInManagedSession() {
+    sqlSessionManager.startManagedSession();
+    try {
+      mapper.insertTable1(row(1, "Fred"));
+      assertEquals(1, mapper.selectAllTable1().size());
+    } finally {
+      sqlSessionManager.rollback(true);
+      sqlSessionManager.close();
+    }
+
+    assertEquals(0, mapper.selectAllTable1().size());
+  }
+
+  @Test
+  public void shouldRunWithoutManagedSession() {
+    mapper.insertTable1(row(1, "Fred"));
+
+    assertEquals(1, mapper.selectAllTable1().size());
+    assertEquals(mapper.toString(), mapper.toString());
+  }
+
+}
@@ -0,0 +1,153 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.mappers;
+
+import static org.apache.ibatis.io.Resources.getResourceAsReader;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.name.Names;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.jdbc.ScriptRunner;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.junit.jupiter.api.Test;
+import org.mybatis.guice.MyBatisModule;
+import org.mybatis.guice.datasource.builtin.PooledDataSourceProvider;
+import org.mybatis.guice.datasource.tenant.TenantContext;
+import org.mybatis.guice.datasource.helper.JdbcHelper;
+import org.mybatis.guice.nestedtx.TableRow;
+
+public class SingleFlightTest {
+
+  public interface SingleFlightMapper {
+
+    @SingleFlight
+    @Select({ "select * from table1" })
+    List<TableRow> selectAllTable1();
+
+  }
+
+  @Test
+  public void shouldShareInFlightExecution() throws Exception {
+    SingleFlightGroup group = new SingleFlightGroup();
+    CountDownLatch running = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    Object result = new Object();
+
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      Future<Object> leader = executor.submit(() -> group.execute("key", () -> {
+        running.countDown();
+        release.await();
+        return result;
+      }));
+      running.await();
+
+      Future<Object> follower = executor.submit(() -> group.execute("key", () -> new Object()));
+      while (group.getCoalesced() == 0) {
+        Thread.sleep(1);
+      }
+      release.countDown();
+
+      assertSame(result, leader.get(5, TimeUnit.SECONDS));
+      assertSame(result, follower.get(5, TimeUnit.SECONDS));
+    } finally {
+      executor.shutdownNow();
+    }
+
+    assertEquals(1, group.getExecutions());
+    assertEquals(1, group.getCoalesced());
+    assertEquals(0, group.getInFlight());
+  }
+
+  @Test
+  public void shouldNotKeepFailedExecution() throws Exception {
+    SingleFlightGroup group = new SingleFlightGroup();
+
+    assertThrows(IllegalStateException.class, () -> group.execute("key", () -> {
+      throw new IllegalStateException();
+    }));
+    assertEquals("ok", group.execute("key", () -> "ok"));
+    assertEquals(2, group.getExecutions());
+  }
+
+  @Test
+  public void shouldNotShareCallsOfAnotherTenant() throws Exception {
+    Method method = SingleFlightMapper.class.getMethod("selectAllTable1");
+    MapperCall call = new MapperCall(method, null);
+    MapperCall tenantCall;
+    String previous = TenantContext.set("tenant_a");
+    try {
+      tenantCall = new MapperCall(method, null);
+      assertEquals(tenantCall, new MapperCall(method, null));
+    } finally {
+      TenantContext.restore(previous);
+    }
+
+    assertNotEquals(call, tenantCall);
+    assertEquals(call, new MapperCall(method, null));
+  }
+
+  @Test
+  public void shouldRunMapperThroughGroup() throws Exception {
+    Injector injector = Guice.createInjector(new MyBatisModule() {
+      @Override
+      protected void initialize() {
+        bindDataSourceProviderType(PooledDataSourceProvider.class);
+        bindTransactionFactoryType(JdbcTransactionFactory.class);
+
+        install(JdbcHelper.HSQLDB_IN_MEMORY_NAMED);
+
+        Properties connectionProps = new Properties();
+        connectionProps.setProperty("mybatis.environment.id", "jdbc");
+        connectionProps.setProperty("JDBC.username", "sa");
+        connectionProps.setProperty("JDBC.password", "");
+        Names.bindProperties(binder(), connectionProps);
+
+        addMapperClass(SingleFlightMapper.class);
+      }
+    });
+
+    ScriptRunner runner = new ScriptRunner(injector.getInstance(SqlSessionFactory.class).getConfiguration()
+        .getEnvironment().getDataSource().getConnection());
+    runner.setAutoCommit(true);
+    runner.setStopOnError(true);
+    runner.runScript(getResourceAsReader("org/mybatis/guice/nestedtx/setupdb.sql"));
+    runner.closeConnection();
+
+    SingleFlightMapper mapper = injector.getInstance(SingleFlightMapper.class);
+    List<TableRow> rows = mapper.selectAllTable1();
+    assertEquals(0, rows.size());
+    assertThrows(UnsupportedOperationException.class, () -> rows.add(new TableRow()));
+    assertEquals(1, injector.getInstance(SingleFlightGroup.class).getExecutions());
+  }
+
+}
@@ -0,0 +1,103 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.mappers.memoize;
+
+import static org.apache.ibatis.io.Resources.getResourceAsReader;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.name.Names;
+
+import java.util.Properties;
+
+import org.apache.ibatis.jdbc.ScriptRunner;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mybatis.guice.MyBatisModule;
+import org.mybatis.guice.datasource.builtin.PooledDataSourceProvider;
+import org.mybatis.guice.datasource.helper.JdbcHelper;
+import org.mybatis.guice.transactional.MemoizedResults;
+
+public class MemoizeTest {
+
+  private MemoizedService service;
+
+  @BeforeEach
+  public void setup() throws Exception {
+    Injector injector = Guice.createInjector(new MyBatisModule() {
+      @Override
+      protected void initialize() {
+        bindDataSourceProviderType(PooledDataSourceProvider.class);
+        bindTransactionFactoryType(JdbcTransactionFactory.class);
+
+        install(JdbcHelper.HSQLDB_IN_MEMORY_NAMED);
+
+        Properties connectionProps = new Properties();
+        connectionProps.setProperty("mybatis.environment.id", "jdbc");
+        connectionProps.setProperty("JDBC.username", "sa");
+        connectionProps.setProperty("JDBC.password", "");
+        connectionProps.setProperty("JDBC.autoCommit", "false");
+        Names.bindProperties(binder(), connectionProps);
+
+        addMapperClass(MemoizedMapper.class);
+        bind(MemoizedService.class);
+      }
+    });
+
+    ScriptRunner runner = new ScriptRunner(injector.getInstance(SqlSessionFactory.class).getConfiguration()
+        .getEnvironment().getDataSource().getConnection());
+    runner.setAutoCommit(true);
+    runner.setStopOnError(true);
+    runner.runScript(getResourceAsReader("org/mybatis/guice/nestedtx/setupdb.sql"));
+    runner.closeConnection();
+
+    service = injector.getInstance(MemoizedService.class);
+  }
+
+  @Test
+  public void shouldMemoizeWithinTransaction() {
+    assertEquals(0, service.selectTwiceAfterInsert());
+  }
+
+  @Test
+  public void shouldCountHitsPerTransaction() {
+    MemoizedResults memoizedResults = service.selectByIds(1, 2, 1, 1);
+    assertEquals(2, memoizedResults.getHits());
+    assertEquals(2, memoizedResults.getMisses());
+
+    memoizedResults = service.selectByIds(1);
+    assertEquals(0, memoizedResults.getHits());
+    assertEquals(1, memoizedResults.getMisses());
+    assertNull(MemoizedResults.current());
+  }
+
+  @Test
+  public void shouldReturnUnmodifiableResults() {
+    assertThrows(UnsupportedOperationException.class, () -> service.modifyResult());
+  }
+
+  @Test
+  public void shouldNotMemoizeOutsideTransaction() {
+    assertFalse(service.isMemoizedOutsideTransaction());
+  }
+
+}
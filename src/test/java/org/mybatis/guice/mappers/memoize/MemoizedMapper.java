@@ -0,0 +1,38 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.mappers.memoize;
+
+import java.util.List;
+
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Select;
+import org.mybatis.guice.mappers.Memoize;
+import org.mybatis.guice.nestedtx.TableRow;
+
+public interface MemoizedMapper {
+
+  @Insert({ "insert into table1 (id, name) values (#{id}, #{name})" })
+  int insertTable1(TableRow row);
+
+  @Memoize
+  @Select({ "select * from table1" })
+  List<TableRow> selectAllTable1();
+
+  @Memoize
+  @Select({ "select * from table1 where id = #{id}" })
+  TableRow selectTable1(int id);
+
+}
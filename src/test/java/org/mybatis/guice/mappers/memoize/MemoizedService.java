@@ -0,0 +1,66 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.mappers.memoize;
+
+import java.util.List;
+
+import javax.inject.Inject;
+
+import org.mybatis.guice.nestedtx.TableRow;
+import org.mybatis.guice.transactional.MemoizedResults;
+import org.mybatis.guice.transactional.Transactional;
+
+public class MemoizedService {
+
+  @Inject
+  private MemoizedMapper mapper;
+
+  @Transactional
+  public int selectTwiceAfterInsert() {
+    List<TableRow> before = mapper.selectAllTable1();
+    mapper.insertTable1(row(1, "Fred"));
+    List<TableRow> after = mapper.selectAllTable1();
+    if (before != after) {
+      throw new IllegalStateException("Result not memoized");
+    }
+    return after.size();
+  }
+
+  @Transactional
+  public MemoizedResults selectByIds(int... ids) {
+    for (int id : ids) {
+      mapper.selectTable1(id);
+    }
+    return MemoizedResults.current();
+  }
+
+  @Transactional
+  public void modifyResult() {
+    mapper.selectAllTable1().add(row(2, "Wilma"));
+  }
+
+  public boolean isMemoizedOutsideTransaction() {
+    return mapper.selectAllTable1() == mapper.selectAllTable1();
+  }
+
+  static TableRow row(int id, String name) {
+    TableRow row = new TableRow();
+    row.setId(id);
+    row.setName(name);
+    return row;
+  }
+
+}
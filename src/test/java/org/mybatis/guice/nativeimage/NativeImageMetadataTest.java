@@ -0,0 +1,114 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.nativeimage;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.inject.name.Names;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.CallableStatement;
+import java.sql.PreparedStatement;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.executor.statement.StatementHandler;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.junit.jupiter.api.Test;
+import org.mybatis.guice.Address;
+import org.mybatis.guice.AddressTypeHandler;
+import org.mybatis.guice.Contact;
+import org.mybatis.guice.ContactMapper;
+import org.mybatis.guice.CountUpdateInterceptor;
+import org.mybatis.guice.CustomLongTypeHandler;
+import org.mybatis.guice.CustomType;
+import org.mybatis.guice.MyBatisModule;
+import org.mybatis.guice.datasource.builtin.PooledDataSourceProvider;
+import org.mybatis.guice.datasource.helper.JdbcHelper;
+import org.mybatis.guice.transactional.TransactionTimeoutInterceptor;
+
+public class NativeImageMetadataTest {
+
+  public interface AsyncContactMapper {
+
+    CompletableFuture<Contact> getById(Integer id);
+
+  }
+
+  public static class ContactModule extends MyBatisModule {
+
+    @Override
+    protected void initialize() {
+      bindDataSourceProviderType(PooledDataSourceProvider.class);
+      bindTransactionFactoryType(JdbcTransactionFactory.class);
+
+      install(JdbcHelper.HSQLDB_IN_MEMORY_NAMED);
+
+      Properties connectionProps = new Properties();
+      connectionProps.setProperty("mybatis.environment.id", "test");
+      connectionProps.setProperty("JDBC.username", "sa");
+      connectionProps.setProperty("JDBC.password", "");
+      Names.bindProperties(binder(), connectionProps);
+
+      addAlias("contact").to(Contact.class);
+      lazyMapperRegistration(true);
+      addMapperClass(ContactMapper.class);
+      addAsyncMapperClass(AsyncContactMapper.class, ContactMapper.class);
+      handleType(CustomType.class).with(CustomLongTypeHandler.class);
+      handleType(Address.class).with(AddressTypeHandler.class);
+      addInterceptorClass(CountUpdateInterceptor.class);
+      addInterceptorClass(TransactionTimeoutInterceptor.class);
+    }
+
+  }
+
+  @Test
+  public void shouldGenerateMetadataOfRegisteredComponents() throws Exception {
+    Path directory = Files.createTempDirectory("native-image");
+    NativeImageMetadata.main(new String[] { ContactModule.class.getName(), directory.toString(),
+        "mybatis-config.xml" });
+
+    String reflect = new String(Files.readAllBytes(directory.resolve("reflect-config.json")), StandardCharsets.UTF_8);
+    assertTrue(reflect.contains("{\"name\":\"" + ContactMapper.class.getName() + "\","), reflect);
+    assertTrue(reflect.contains("{\"name\":\"" + Contact.class.getName() + "\","), reflect);
+    assertTrue(reflect.contains("{\"name\":\"" + AddressTypeHandler.class.getName() + "\","), reflect);
+    assertTrue(reflect.contains("{\"name\":\"" + CustomLongTypeHandler.class.getName() + "\","), reflect);
+    assertTrue(reflect.contains("{\"name\":\"" + CountUpdateInterceptor.class.getName() + "\","), reflect);
+    assertTrue(reflect.contains("{\"name\":\"" + AsyncContactMapper.class.getName() + "\","), reflect);
+    assertFalse(reflect.contains("\"java.lang.String\""), reflect);
+
+    String proxy = new String(Files.readAllBytes(directory.resolve("proxy-config.json")), StandardCharsets.UTF_8);
+    assertTrue(proxy.contains("{\"interfaces\":[\"" + ContactMapper.class.getName() + "\"]}"), proxy);
+    assertTrue(proxy.contains("{\"interfaces\":[\"" + SqlSession.class.getName() + "\"]}"), proxy);
+    assertTrue(proxy.contains("{\"interfaces\":[\"" + Executor.class.getName() + "\"]}"), proxy);
+    assertTrue(proxy.contains("{\"interfaces\":[\"" + StatementHandler.class.getName() + "\"]}"), proxy);
+    assertTrue(proxy.contains("{\"interfaces\":[\"" + AsyncContactMapper.class.getName() + "\"]}"), proxy);
+    assertTrue(proxy.contains("{\"interfaces\":[\"" + PreparedStatement.class.getName() + "\",\""
+        + CallableStatement.class.getName() + "\"]}"), proxy);
+    assertFalse(proxy.contains("{\"interfaces\":[\"" + CallableStatement.class.getName() + "\"]}"), proxy);
+
+    String resource = new String(Files.readAllBytes(directory.resolve("resource-config.json")),
+        StandardCharsets.UTF_8);
+    assertTrue(resource.contains("{\"pattern\":\"\\\\Qorg/mybatis/guice/ContactMapper.xml\\\\E\"}"), resource);
+    assertTrue(resource.contains("{\"pattern\":\"\\\\Qmybatis-config.xml\\\\E\"}"), resource);
+  }
+
+}
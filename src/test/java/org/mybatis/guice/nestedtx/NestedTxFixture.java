@@ -0,0 +1,69 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.nestedtx;
+
+import static org.apache.ibatis.io.Resources.getResourceAsReader;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Module;
+
+import java.io.IOException;
+import java.sql.SQLException;
+
+import org.apache.ibatis.jdbc.ScriptRunner;
+import org.apache.ibatis.session.SqlSessionFactory;
+
+/**
+ * Creates the injectors of the tests running the {@link NestedTxMapper}, with the tables of {@code setupdb.sql}.
+ */
+public final class NestedTxFixture {
+
+  private NestedTxFixture() {
+  }
+
+  /**
+   * Creates an injector, and the tables in the database of its {@link NestedTxModule}.
+   *
+   * @param modules
+   *          the modules, a {@link NestedTxModule} among them
+   * @return the injector
+   * @throws IOException
+   *           if the script cannot be read
+   * @throws SQLException
+   *           if the database cannot be reached
+   */
+  public static Injector createInjector(Module... modules) throws IOException, SQLException {
+    Injector injector = Guice.createInjector(modules);
+
+    ScriptRunner runner = new ScriptRunner(injector.getInstance(SqlSessionFactory.class).getConfiguration()
+        .getEnvironment().getDataSource().getConnection());
+    runner.setAutoCommit(true);
+    runner.setStopOnError(true);
+    runner.setLogWriter(null);
+    runner.runScript(getResourceAsReader("org/mybatis/guice/nestedtx/setupdb.sql"));
+    runner.closeConnection();
+    return injector;
+  }
+
+  public static TableRow row(int id, String name) {
+    TableRow row = new TableRow();
+    row.setId(id);
+    row.setName(name);
+    return row;
+  }
+
+}
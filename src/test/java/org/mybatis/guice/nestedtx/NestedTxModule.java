@@ -0,0 +1,73 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.nestedtx;
+
+import com.google.inject.name.Names;
+
+import java.util.Properties;
+
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.mybatis.guice.MyBatisModule;
+import org.mybatis.guice.datasource.builtin.PooledDataSourceProvider;
+import org.mybatis.guice.datasource.helper.JdbcHelper;
+
+/**
+ * The MyBatis module of the tests running the {@link NestedTxMapper} on a pooled in-memory HSQLDB database, created by
+ * {@link NestedTxFixture#createInjector(com.google.inject.Module...)}.
+ */
+public class NestedTxModule extends MyBatisModule {
+
+  private final Properties connectionProps = new Properties();
+
+  public NestedTxModule() {
+    connectionProps.setProperty("mybatis.environment.id", "jdbc");
+    connectionProps.setProperty("JDBC.username", "sa");
+    connectionProps.setProperty("JDBC.password", "");
+  }
+
+  /**
+   * Sets a property bound with the connection ones.
+   *
+   * @param key
+   *          the property name
+   * @param value
+   *          the property value
+   * @return this module
+   */
+  public NestedTxModule withProperty(String key, String value) {
+    connectionProps.setProperty(key, value);
+    return this;
+  }
+
+  @Override
+  protected final void initialize() {
+    bindDataSourceProviderType(PooledDataSourceProvider.class);
+    bindTransactionFactoryType(JdbcTransactionFactory.class);
+
+    install(JdbcHelper.HSQLDB_IN_MEMORY_NAMED);
+    Names.bindProperties(binder(), connectionProps);
+
+    addMapperClass(NestedTxMapper.class);
+    configureTest();
+  }
+
+  /**
+   * Adds the mappers, services and settings of a test.
+   */
+  protected void configureTest() {
+  }
+
+}
@@ -19,6 +19,7 @@ import java.util.List;
 
 import javax.inject.Inject;
 
+import org.apache.ibatis.session.ExecutorType;
 import org.mybatis.guice.transactional.Transactional;
 
 public class NestedTxService {
@@ -127,4 +128,150 @@ public class NestedTxService {
       insertTable2(tr);
     }
   }
+
+  @Transactional(Transactional.TxType.NESTED)
+  public void insertTable2Pair(TableRow first, TableRow second) {
+    insertTable2(first);
+    insertTable2(second);
+  }
+
+  @Transactional
+  public void nestedBadInsertRollbackToSavepoint() {
+    TableRow tr = new TableRow();
+    tr.setId(1);
+    tr.setName("Fred");
+    insertTable1(tr);
+
+    tr = new TableRow();
+    tr.setId(1);
+    tr.setName("Barney");
+    insertTable2(tr);
+
+    TableRow good = new TableRow();
+    good.setId(2);
+    good.setName("Betty");
+    TableRow bad = new TableRow();
+    bad.setId(1);
+    bad.setName("Wilma");
+    try {
+      insertTable2Pair(good, bad);
+    } catch (Exception e) {
+      // ignore - both rows of the pair should be rolled back
+    }
+  }
+
+  @Transactional(Transactional.TxType.REQUIRES_NEW)
+  public int insertTable1RequiresNew(TableRow row) {
+    return mapper.insertTable1(row);
+  }
+
+  @Transactional(Transactional.TxType.NOT_SUPPORTED)
+  public int insertTable1NotSupported(TableRow row) {
+    return mapper.insertTable1(row);
+  }
+
+  @Transactional(Transactional.TxType.NEVER)
+  public List<TableRow> selectAllTable1Never() {
+    return mapper.selectAllTable1();
+  }
+
+  @Transactional
+  public void requiresNewThenBadInsert() {
+    TableRow tr = new TableRow();
+    tr.setId(1);
+    tr.setName("Barney");
+    insertTable2(tr);
+
+    tr = new TableRow();
+    tr.setId(1);
+    tr.setName("Fred");
+    insertTable1RequiresNew(tr);
+
+    tr = new TableRow();
+    tr.setId(1);
+    tr.setName("Betty");
+    insertTable2(tr);
+  }
+
+  @Transactional
+  public void requiresNewThenGoodInsert() {
+    TableRow tr = new TableRow();
+    tr.setId(1);
+    tr.setName("Barney");
+    insertTable2(tr);
+
+    tr = new TableRow();
+    tr.setId(1);
+    tr.setName("Fred");
+    insertTable1RequiresNew(tr);
+
+    tr = new TableRow();
+    tr.setId(2);
+    tr.setName("Betty");
+    insertTable2(tr);
+  }
+
+  @Transactional
+  public void notSupportedThenBadInsert() {
+    TableRow tr = new TableRow();
+    tr.setId(1);
+    tr.setName("Barney");
+    insertTable2(tr);
+
+    tr = new TableRow();
+    tr.setId(1);
+    tr.setName("Fred");
+    insertTable1NotSupported(tr);
+
+    tr = new TableRow();
+    tr.setId(1);
+    tr.setName("Betty");
+    insertTable2(tr);
+  }
+
+  @Transactional
+  public List<TableRow> neverInsideTransaction() {
+    return selectAllTable1Never();
+  }
+
+  @Transactional(timeout = 1)
+  public void slowInserts(boolean insertAfterTimeout) {
+    TableRow tr = new TableRow();
+    tr.setId(1);
+    tr.setName("Fred");
+    insertTable1(tr);
+
+    try {
+      Thread.sleep(1100);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    if (insertAfterTimeout) {
+      tr = new TableRow();
+      tr.setId(1);
+      tr.setName("Barney");
+      insertTable2(tr);
+    }
+  }
+
+  @Transactional(timeout = 1, executorType = ExecutorType.REUSE)
+  public void slowReusedInserts() {
+    TableRow tr = new TableRow();
+    tr.setId(1);
+    tr.setName("Fred");
+    insertTable1(tr);
+
+    try {
+      Thread.sleep(1100);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    // the same statement, reused without being prepared again
+    tr = new TableRow();
+    tr.setId(2);
+    tr.setName("Wilma");
+    insertTable1(tr);
+  }
 }
@@ -17,12 +17,15 @@ package org.mybatis.guice.nestedtx;
 
 import static org.apache.ibatis.io.Resources.getResourceAsReader;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.util.List;
 import java.util.Properties;
 
 import javax.sql.DataSource;
 
+import org.apache.ibatis.exceptions.PersistenceException;
 import org.apache.ibatis.jdbc.ScriptRunner;
 import org.apache.ibatis.mapping.Environment;
 import org.apache.ibatis.session.SqlSessionFactory;
@@ -32,6 +35,8 @@ import org.junit.jupiter.api.Test;
 import org.mybatis.guice.MyBatisModule;
 import org.mybatis.guice.datasource.builtin.PooledDataSourceProvider;
 import org.mybatis.guice.datasource.helper.JdbcHelper;
+import org.mybatis.guice.transactional.TransactionTimedOutException;
+import org.mybatis.guice.transactional.TransactionTimeoutInterceptor;
 
 import com.google.inject.Guice;
 import com.google.inject.Injector;
@@ -61,6 +66,7 @@ public class NestedTxTest {
         Names.bindProperties(binder(), connectionProps);
 
         addMapperClass(NestedTxMapper.class);
+        addInterceptorClass(TransactionTimeoutInterceptor.class);
         bind(NestedTxService.class);
       }
     });
@@ -124,4 +130,96 @@ public class NestedTxTest {
     tableRows = service.selectAllTable2();
     assertEquals(2, tableRows.size());
   }
+
+  @Test
+  public void testNestedBadInsertRollbackToSavepoint() {
+    service.nestedBadInsertRollbackToSavepoint();
+
+    List<TableRow> tableRows = service.selectAllTable1();
+    assertEquals(1, tableRows.size());
+
+    tableRows = service.selectAllTable2();
+    assertEquals(1, tableRows.size());
+    assertEquals("Barney", tableRows.get(0).getName());
+  }
+
+  @Test
+  public void testRequiresNewSurvivesOuterRollback() {
+    try {
+      service.requiresNewThenBadInsert();
+    } catch (Exception e) {
+      // ignore - should rollback the outer transaction only
+    }
+
+    List<TableRow> tableRows = service.selectAllTable1();
+    assertEquals(1, tableRows.size());
+
+    tableRows = service.selectAllTable2();
+    assertEquals(0, tableRows.size());
+  }
+
+  @Test
+  public void testRequiresNewResumesOuterSession() {
+    service.requiresNewThenGoodInsert();
+
+    List<TableRow> tableRows = service.selectAllTable1();
+    assertEquals(1, tableRows.size());
+
+    tableRows = service.selectAllTable2();
+    assertEquals(2, tableRows.size());
+  }
+
+  @Test
+  public void testNotSupportedSurvivesOuterRollback() {
+    try {
+      service.notSupportedThenBadInsert();
+    } catch (Exception e) {
+      // ignore - should rollback the outer transaction only
+    }
+
+    List<TableRow> tableRows = service.selectAllTable1();
+    assertEquals(1, tableRows.size());
+
+    tableRows = service.selectAllTable2();
+    assertEquals(0, tableRows.size());
+  }
+
+  @Test
+  public void testNeverOutsideTransaction() {
+    assertEquals(0, service.selectAllTable1Never().size());
+  }
+
+  @Test
+  public void testNeverInsideTransaction() {
+    assertThrows(IllegalStateException.class, () -> service.neverInsideTransaction());
+  }
+
+  @Test
+  public void testTimeoutBeforeStatement() {
+    PersistenceException e = assertThrows(PersistenceException.class, () -> service.slowInserts(true));
+    assertTrue(e.getCause() instanceof TransactionTimedOutException, () -> "unexpected cause: " + e.getCause());
+
+    List<TableRow> tableRows = service.selectAllTable1();
+    assertEquals(0, tableRows.size());
+
+    tableRows = service.selectAllTable2();
+    assertEquals(0, tableRows.size());
+  }
+
+  @Test
+  public void testTimeoutAtCompletion() {
+    assertThrows(TransactionTimedOutException.class, () -> service.slowInserts(false));
+
+    List<TableRow> tableRows = service.selectAllTable1();
+    assertEquals(0, tableRows.size());
+  }
+
+  @Test
+  public void testTimeoutBeforeReusedStatement() {
+    PersistenceException e = assertThrows(PersistenceException.class, () -> service.slowReusedInserts());
+    assertTrue(e.getCause() instanceof TransactionTimedOutException, () -> "unexpected cause: " + e.getCause());
+
+    List<TableRow> tableRows = service.selectAllTable1();
+    assertEquals(0, tableRows.size());
+  }
 }
@@ -0,0 +1,69 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.provision;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.inject.spi.ProvisionListener.ProvisionInvocation;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mybatis.guice.configuration.ConfigurationSettingListener;
+import org.mybatis.guice.configuration.settings.ConfigurationSetting;
+import org.mybatis.guice.configuration.settings.MapperConfigurationSetting;
+
+@ExtendWith(MockitoExtension.class)
+public class ConfigurationProviderProvisionListenerTest {
+
+  @Mock
+  private ProvisionInvocation<ConfigurationSettingListener> provision;
+
+  @Mock
+  private ConfigurationSettingListener configurationSettingListener;
+
+  @Mock
+  private ConfigurationSetting first;
+
+  @Mock
+  private ConfigurationSetting second;
+
+  @Test
+  public void shouldApplyAllSettingsOnSingleProvision() {
+    MapperConfigurationSetting mapper = new MapperConfigurationSetting(Object.class);
+    ConfigurationProviderProvisionListener listener = ConfigurationProviderProvisionListener.create();
+    listener.addConfigurationSetting(first);
+    listener.addMapperConfigurationSetting(mapper);
+    listener.addConfigurationSetting(second);
+    assertEquals(3, listener.size());
+
+    when(provision.provision()).thenReturn(configurationSettingListener);
+    listener.onProvision(provision);
+
+    verify(provision, times(1)).provision();
+    InOrder order = inOrder(configurationSettingListener);
+    order.verify(configurationSettingListener).addConfigurationSetting(second);
+    order.verify(configurationSettingListener).addMapperConfigurationSetting(mapper);
+    order.verify(configurationSettingListener).addConfigurationSetting(first);
+  }
+
+}
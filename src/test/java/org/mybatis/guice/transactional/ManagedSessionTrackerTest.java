@@ -0,0 +1,130 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.transactional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mybatis.guice.nestedtx.NestedTxFixture.createInjector;
+import static org.mybatis.guice.nestedtx.NestedTxFixture.row;
+
+import com.google.inject.Injector;
+
+import java.sql.Statement;
+
+import org.apache.ibatis.session.SqlSessionManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mybatis.guice.nestedtx.NestedTxMapper;
+import org.mybatis.guice.nestedtx.NestedTxModule;
+
+public class ManagedSessionTrackerTest {
+
+  private ManagedSessionTracker tracker;
+
+  private UnitOfWork unitOfWork;
+
+  private TransactionTemplate template;
+
+  private NestedTxMapper mapper;
+
+  private SqlSessionManager sqlSessionManager;
+
+  @BeforeEach
+  public void setup() throws Exception {
+    Injector injector = createInjector(new NestedTxModule());
+
+    template = injector.getInstance(TransactionTemplate.class);
+    unitOfWork = injector.getInstance(UnitOfWork.class);
+    mapper = injector.getInstance(NestedTxMapper.class);
+    sqlSessionManager = injector.getInstance(SqlSessionManager.class);
+
+    tracker = new ManagedSessionTracker();
+    tracker.setSweepInterval(0);
+    tracker.setHoldThreshold(0);
+    tracker.start();
+  }
+
+  @AfterEach
+  public void stop() {
+    tracker.close();
+  }
+
+  @Test
+  public void reportsLongHolds() throws Exception {
+    template.execute(() -> {
+      mapper.insertTable1(row(1, "one"));
+      tracker.sweep();
+      tracker.sweep();
+      assertEquals(1, tracker.getHeldSessions().size());
+      HeldSession heldSession = tracker.getHeldSessions().get(0);
+      assertEquals("TransactionTemplate call", heldSession.getDescription());
+      assertEquals(Thread.currentThread().getName(), heldSession.getThreadName());
+      assertTrue(heldSession.isReported());
+      return null;
+    });
+
+    assertEquals(1, tracker.getLongHolds());
+    assertTrue(tracker.getHeldSessions().isEmpty());
+    assertEquals(0, tracker.getForcedCloses());
+  }
+
+  @Test
+  public void forceClosesHeldSession() throws Exception {
+    tracker.setForceCloseThreshold(1);
+    unitOfWork.begin();
+    Thread.sleep(10);
+    HeldSession heldSession = tracker.getHeldSessions().get(0);
+    tracker.sweep();
+
+    assertTrue(heldSession.isForceClosed());
+    assertEquals(1, tracker.getForcedCloses());
+    assertTrue(tracker.getHeldSessions().isEmpty());
+    assertThrows(RuntimeException.class, () -> mapper.insertTable1(row(1, "closed")));
+
+    unitOfWork.end();
+    assertFalse(sqlSessionManager.isManagedSessionStarted());
+    assertTrue(mapper.selectAllTable1().isEmpty());
+  }
+
+  @Test
+  public void rollsBackForceClosedSession() throws Exception {
+    tracker.setForceCloseThreshold(1);
+    assertThrows(RuntimeException.class, () -> template.execute(() -> {
+      try (Statement statement = sqlSessionManager.getConnection().createStatement()) {
+        statement.executeUpdate("insert into table1 (id, name) values (1, 'uncommitted')");
+      }
+      Thread.sleep(10);
+      tracker.sweep();
+      return null;
+    }));
+
+    assertEquals(1, tracker.getForcedCloses());
+    assertTrue(mapper.selectAllTable1().isEmpty());
+  }
+
+  @Test
+  public void ignoresSessionsWhenStopped() throws Exception {
+    tracker.close();
+    template.execute(() -> {
+      assertTrue(tracker.getHeldSessions().isEmpty());
+      return null;
+    });
+  }
+
+}
@@ -0,0 +1,177 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.transactional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mybatis.guice.nestedtx.NestedTxFixture.createInjector;
+import static org.mybatis.guice.nestedtx.NestedTxFixture.row;
+
+import com.google.inject.Injector;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+
+import javax.inject.Inject;
+
+import org.apache.ibatis.datasource.pooled.PooledDataSource;
+import org.apache.ibatis.datasource.unpooled.UnpooledDataSource;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mybatis.guice.MyBatisModule;
+import org.mybatis.guice.nestedtx.NestedTxMapper;
+import org.mybatis.guice.nestedtx.TableRow;
+
+public class ReadOnlyTransactionTest {
+
+  public static class ReadOnlyService {
+
+    @Inject
+    private NestedTxMapper mapper;
+
+    @Transactional(readOnly = true)
+    public List<TableRow> selectTable1() {
+      return mapper.selectAllTable1();
+    }
+
+  }
+
+  /**
+   * Rejects the read-only changes in the middle of a transaction, as the PostgreSQL driver does, and the return to
+   * read-write when the connections are broken.
+   */
+  private static final class StrictReadOnlyDataSource extends UnpooledDataSource {
+
+    private volatile boolean broken;
+
+    StrictReadOnlyDataSource() {
+      super("org.hsqldb.jdbcDriver", "jdbc:hsqldb:mem:readonly", "sa", "");
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+      Connection connection = super.getConnection();
+      boolean[] inTransaction = new boolean[1];
+      return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Connection.class },
+          (proxy, method, args) -> {
+            String name = method.getName();
+            if ("setReadOnly".equals(name) && (inTransaction[0] || broken && !(Boolean) args[0])) {
+              throw new SQLException("Cannot change transaction read-only property in the middle of a transaction.");
+            }
+            if (name.startsWith("prepare") || "createStatement".equals(name)) {
+              inTransaction[0] = !connection.getAutoCommit();
+            } else if ("commit".equals(name) || "rollback".equals(name) || "setAutoCommit".equals(name)) {
+              inTransaction[0] = false;
+            }
+            try {
+              return method.invoke(connection, args);
+            } catch (InvocationTargetException e) {
+              throw e.getCause();
+            }
+          });
+    }
+
+  }
+
+  private PooledDataSource dataSource;
+
+  private StrictReadOnlyDataSource strictDataSource;
+
+  private ReadOnlyService service;
+
+  private UnitOfWork unitOfWork;
+
+  private NestedTxMapper mapper;
+
+  @BeforeEach
+  public void setup() throws Exception {
+    strictDataSource = new StrictReadOnlyDataSource();
+    dataSource = new PooledDataSource(strictDataSource);
+    // computes the type code of the pooled connections, which this constructor leaves unset
+    dataSource.forceCloseAll();
+    Injector injector = createInjector(new UnitOfWorkModule(), new MyBatisModule() {
+      @Override
+      protected void initialize() {
+        environmentId("jdbc");
+        bindDataSourceProvider(() -> dataSource);
+        bindTransactionFactoryType(JdbcTransactionFactory.class);
+
+        addMapperClass(NestedTxMapper.class);
+        bind(ReadOnlyService.class);
+      }
+    });
+
+    service = injector.getInstance(ReadOnlyService.class);
+    unitOfWork = injector.getInstance(UnitOfWork.class);
+    mapper = injector.getInstance(NestedTxMapper.class);
+  }
+
+  private void assertPooledConnectionWritable() throws SQLException {
+    try (Connection connection = dataSource.getConnection()) {
+      assertFalse(connection.isReadOnly());
+    }
+  }
+
+  @Test
+  public void restoresReadWriteConnection() throws Exception {
+    mapper.insertTable1(row(1, "one"));
+
+    assertEquals(1, service.selectTable1().size());
+
+    assertEquals(1, dataSource.getPoolState().getIdleConnectionCount());
+    assertPooledConnectionWritable();
+    mapper.insertTable1(row(2, "two"));
+    assertEquals(2, mapper.selectAllTable1().size());
+  }
+
+  @Test
+  public void restoresReadWriteConnectionOfUnitOfWork() throws Exception {
+    mapper.insertTable1(row(1, "one"));
+
+    unitOfWork.begin();
+    try {
+      assertEquals(1, service.selectTable1().size());
+      mapper.insertTable1(row(2, "two"));
+    } finally {
+      unitOfWork.end();
+    }
+
+    assertPooledConnectionWritable();
+    assertEquals(2, mapper.selectAllTable1().size());
+  }
+
+  @Test
+  public void discardsConnectionStayingReadOnly() throws Exception {
+    mapper.selectAllTable1();
+    strictDataSource.broken = true;
+    try {
+      service.selectTable1();
+    } finally {
+      strictDataSource.broken = false;
+    }
+
+    assertEquals(1, dataSource.getPoolState().getBadConnectionCount());
+    assertEquals(0, dataSource.getPoolState().getIdleConnectionCount());
+    assertPooledConnectionWritable();
+    assertTrue(mapper.selectAllTable1().isEmpty());
+  }
+
+}
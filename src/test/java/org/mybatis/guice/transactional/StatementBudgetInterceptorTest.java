@@ -0,0 +1,204 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.transactional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mybatis.guice.nestedtx.NestedTxFixture.createInjector;
+import static org.mybatis.guice.nestedtx.NestedTxFixture.row;
+
+import com.google.inject.Injector;
+
+import java.util.Arrays;
+import java.util.List;
+
+import javax.inject.Inject;
+
+import org.apache.ibatis.annotations.One;
+import org.apache.ibatis.annotations.Result;
+import org.apache.ibatis.annotations.Results;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.session.SqlSessionManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mybatis.guice.nestedtx.NestedTxMapper;
+import org.mybatis.guice.nestedtx.NestedTxModule;
+import org.mybatis.guice.nestedtx.TableRow;
+
+public class StatementBudgetInterceptorTest {
+
+  public static class JoinedRow {
+
+    private int id;
+
+    private TableRow other;
+
+    public int getId() {
+      return id;
+    }
+
+    public void setId(int id) {
+      this.id = id;
+    }
+
+    public TableRow getOther() {
+      return other;
+    }
+
+    public void setOther(TableRow other) {
+      this.other = other;
+    }
+
+  }
+
+  public interface NestedSelectMapper {
+
+    @Select({ "select id from table1 order by id" })
+    @Results({ @Result(property = "id", column = "id", id = true),
+        @Result(property = "other", column = "id", one = @One(select = "selectTable2Row")) })
+    List<JoinedRow> selectJoined();
+
+    @Select({ "select * from table2 where id = #{id}" })
+    TableRow selectTable2Row(int id);
+
+  }
+
+  public static class LoopingService {
+
+    @Inject
+    private NestedTxMapper mapper;
+
+    @Transactional
+    public void selectTable1(int times) {
+      for (int i = 0; i < times; i++) {
+        mapper.selectAllTable1();
+      }
+    }
+
+    @Inject
+    private NestedSelectMapper nestedSelectMapper;
+
+    @Transactional
+    public List<JoinedRow> selectJoined() {
+      return nestedSelectMapper.selectJoined();
+    }
+
+    @Transactional
+    public void selectBothTables(int times) {
+      for (int i = 0; i < times; i++) {
+        mapper.selectAllTable1();
+        mapper.selectAllTable2();
+      }
+    }
+
+  }
+
+  private StatementBudgetInterceptor interceptor;
+
+  private LoopingService service;
+
+  private SqlSessionManager sqlSessionManager;
+
+  private NestedTxMapper mapper;
+
+  @BeforeEach
+  public void setup() throws Exception {
+    Injector injector = createInjector(new NestedTxModule() {
+      @Override
+      protected void configureTest() {
+        addMapperClass(NestedSelectMapper.class);
+        addInterceptorClass(StatementBudgetInterceptor.class);
+        bind(LoopingService.class);
+      }
+    }.withProperty("JDBC.autoCommit", "false").withProperty("mybatis.statementBudget.maxStatements", "5")
+        .withProperty("mybatis.statementBudget.maxRepeats", "2"));
+
+    interceptor = injector.getInstance(StatementBudgetInterceptor.class);
+    service = injector.getInstance(LoopingService.class);
+    sqlSessionManager = injector.getInstance(SqlSessionManager.class);
+    mapper = injector.getInstance(NestedTxMapper.class);
+  }
+
+  @Test
+  public void shouldStayWithinBudget() {
+    service.selectTable1(2);
+    service.selectTable1(2);
+
+    assertEquals(0, interceptor.getViolationCount());
+  }
+
+  @Test
+  public void shouldReportRepeatedStatementOncePerTransaction() {
+    service.selectTable1(5);
+
+    List<StatementBudgetViolation> violations = interceptor.getRecentViolations();
+    assertEquals(1, violations.size());
+    StatementBudgetViolation violation = violations.get(0);
+    assertEquals(StatementBudgetViolation.Type.REPEATED_STATEMENT, violation.getType());
+    assertEquals(NestedTxMapper.class.getName() + ".selectAllTable1", violation.getStatementId());
+    assertEquals(2, violation.getLimit());
+    assertTrue(Arrays.stream(violation.getStackSample())
+        .anyMatch(frame -> frame.getMethodName().equals("selectTable1")));
+  }
+
+  @Test
+  public void shouldStartOverAtEachTransactionOfASession() {
+    sqlSessionManager.startManagedSession();
+    try {
+      for (int i = 0; i < 3; i++) {
+        mapper.selectAllTable1();
+        mapper.selectAllTable1();
+        sqlSessionManager.commit(true);
+      }
+    } finally {
+      sqlSessionManager.close();
+    }
+
+    assertEquals(0, interceptor.getViolationCount());
+  }
+
+  @Test
+  public void shouldReportStatementBudget() {
+    service.selectBothTables(3);
+
+    List<StatementBudgetViolation> violations = interceptor.getRecentViolations();
+    assertEquals(3, violations.size());
+    assertEquals(StatementBudgetViolation.Type.REPEATED_STATEMENT, violations.get(0).getType());
+    assertEquals(StatementBudgetViolation.Type.STATEMENT_BUDGET, violations.get(1).getType());
+    assertEquals(5, violations.get(1).getLimit());
+    assertEquals(StatementBudgetViolation.Type.REPEATED_STATEMENT, violations.get(2).getType());
+    assertEquals(3, interceptor.getViolationCount());
+  }
+
+  @Test
+  public void shouldCountNestedSelects() {
+    for (int i = 1; i <= 3; i++) {
+      mapper.insertTable1(row(i, "Fred"));
+      mapper.insertTable2(row(i, "Barney"));
+    }
+
+    List<JoinedRow> rows = service.selectJoined();
+
+    assertEquals(3, rows.size());
+    assertEquals("Barney", rows.get(2).getOther().getName());
+    List<StatementBudgetViolation> violations = interceptor.getRecentViolations();
+    assertEquals(1, violations.size());
+    assertEquals(StatementBudgetViolation.Type.REPEATED_STATEMENT, violations.get(0).getType());
+    assertEquals(NestedSelectMapper.class.getName() + ".selectTable2Row", violations.get(0).getStatementId());
+    assertTrue(violations.get(0).toString().startsWith("Transaction on thread"));
+  }
+
+}
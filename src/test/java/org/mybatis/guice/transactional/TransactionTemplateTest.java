@@ -0,0 +1,113 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.transactional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mybatis.guice.nestedtx.NestedTxFixture.createInjector;
+import static org.mybatis.guice.nestedtx.NestedTxFixture.row;
+
+import com.google.inject.Injector;
+
+import java.io.IOException;
+
+import org.apache.ibatis.session.SqlSessionManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mybatis.guice.nestedtx.NestedTxMapper;
+import org.mybatis.guice.nestedtx.NestedTxModule;
+import org.mybatis.guice.transactional.Transactional.TxType;
+
+public class TransactionTemplateTest {
+
+  private static final TransactionDefinition REQUIRES_NEW = new TransactionDefinition.Builder()
+      .setTxType(TxType.REQUIRES_NEW).create();
+
+  private TransactionTemplate template;
+
+  private NestedTxMapper mapper;
+
+  private SqlSessionManager sqlSessionManager;
+
+  private TransactionStatistics statistics;
+
+  @BeforeEach
+  public void setup() throws Exception {
+    Injector injector = createInjector(new NestedTxModule());
+
+    template = injector.getInstance(TransactionTemplate.class);
+    mapper = injector.getInstance(NestedTxMapper.class);
+    sqlSessionManager = injector.getInstance(SqlSessionManager.class);
+    statistics = injector.getInstance(TransactionStatistics.class);
+  }
+
+  @Test
+  public void commitAndRollback() throws Exception {
+    assertEquals(Integer.valueOf(2), template.execute(() -> {
+      assertTrue(sqlSessionManager.isManagedSessionStarted());
+      return mapper.insertTable1(row(1, "one")) + mapper.insertTable1(row(2, "two"));
+    }));
+    assertFalse(sqlSessionManager.isManagedSessionStarted());
+
+    IOException error = new IOException("failed");
+    assertSame(error, assertThrows(IOException.class, () -> template.execute(() -> {
+      mapper.insertTable1(row(3, "three"));
+      throw error;
+    })));
+    assertEquals(2, mapper.selectAllTable1().size());
+  }
+
+  @Test
+  public void joinAndRequireNew() throws Exception {
+    assertThrows(IllegalStateException.class, () -> template.execute(() -> {
+      template.run(REQUIRES_NEW, () -> mapper.insertTable1(row(1, "independent")));
+      template.execute(() -> mapper.insertTable1(row(2, "joined")));
+      throw new IllegalStateException("rollback the outer transaction");
+    }));
+
+    assertEquals(1, mapper.selectAllTable1().size());
+    assertEquals("independent", mapper.selectAllTable1().get(0).getName());
+  }
+
+  @Test
+  public void rollbackOnly() throws Exception {
+    TransactionDefinition rollbackOnly = new TransactionDefinition.Builder().setRollbackOnly(true).create();
+    template.run(rollbackOnly, () -> mapper.insertTable1(row(1, "discarded")));
+    assertTrue(mapper.selectAllTable1().isEmpty());
+  }
+
+  @Test
+  public void readOnlyElidesCommit() throws Exception {
+    TransactionDefinition readOnly = new TransactionDefinition.Builder().setReadOnly(true).setForce(true).create();
+    template.execute(readOnly, () -> {
+      assertTrue(sqlSessionManager.getConnection().isReadOnly());
+      return mapper.selectAllTable1();
+    });
+    assertEquals(1, statistics.getElidedCommits());
+    assertEquals(0, statistics.getCommits());
+
+    template.execute(() -> {
+      assertFalse(sqlSessionManager.getConnection().isReadOnly());
+      return mapper.insertTable1(row(1, "written"));
+    });
+    assertEquals(1, statistics.getCommits());
+    assertEquals(1, mapper.selectAllTable1().size());
+  }
+
+}
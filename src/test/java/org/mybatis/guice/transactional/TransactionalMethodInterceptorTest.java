@@ -17,7 +17,9 @@ package org.mybatis.guice.transactional;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.fail;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.nullable;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -25,6 +27,7 @@ import static org.mockito.Mockito.when;
 import org.aopalliance.intercept.MethodInvocation;
 import org.apache.ibatis.session.ExecutorType;
 import org.apache.ibatis.session.SqlSessionManager;
+import org.apache.ibatis.session.TransactionIsolationLevel;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -33,6 +36,8 @@ import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.io.IOException;
 import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.Savepoint;
 
 @ExtendWith(MockitoExtension.class)
 public class TransactionalMethodInterceptorTest {
@@ -41,6 +46,10 @@ public class TransactionalMethodInterceptorTest {
   private MethodInvocation invocation;
   @Mock
   private SqlSessionManager sqlSessionManager;
+  @Mock
+  private Connection connection;
+  @Mock
+  private Savepoint savepoint;
 
   @BeforeEach
   public void beforeTest() {
@@ -323,6 +332,100 @@ public class TransactionalMethodInterceptorTest {
     verify(sqlSessionManager).close();
   }
 
+  @Test
+  public void invoke_Nested() throws Throwable {
+    Method method = MethodAnnotationNested.class.getMethod("transaction");
+    when(invocation.getMethod()).thenReturn(method);
+    when(invocation.proceed()).thenReturn(true);
+    when(sqlSessionManager.isManagedSessionStarted()).thenReturn(true);
+    when(sqlSessionManager.getConnection()).thenReturn(connection);
+    when(connection.setSavepoint()).thenReturn(savepoint);
+
+    Object returned = transactionalMethodInterceptor.invoke(invocation);
+
+    assertEquals(true, returned);
+    verify(sqlSessionManager).flushStatements();
+    verify(connection).releaseSavepoint(savepoint);
+    verify(connection, never()).rollback(savepoint);
+    verify(sqlSessionManager, never()).commit(anyBoolean());
+    verify(sqlSessionManager, never()).rollback(anyBoolean());
+    verify(sqlSessionManager, never()).close();
+  }
+
+  @Test
+  public void invoke_Nested_Exception() throws Throwable {
+    Method method = MethodAnnotationNested.class.getMethod("transaction");
+    when(invocation.getMethod()).thenReturn(method);
+    when(invocation.proceed()).thenThrow(new RuntimeException("test"));
+    when(sqlSessionManager.isManagedSessionStarted()).thenReturn(true);
+    when(sqlSessionManager.getConnection()).thenReturn(connection);
+    when(connection.setSavepoint()).thenReturn(savepoint);
+
+    try {
+      transactionalMethodInterceptor.invoke(invocation);
+      fail("Expected RuntimeException");
+    } catch (RuntimeException e) {
+      // Success.
+    }
+
+    verify(connection).rollback(savepoint);
+    verify(connection, never()).releaseSavepoint(savepoint);
+    verify(sqlSessionManager).clearCache();
+    verify(sqlSessionManager, never()).commit(anyBoolean());
+    verify(sqlSessionManager, never()).rollback(anyBoolean());
+    verify(sqlSessionManager, never()).close();
+  }
+
+  @Test
+  public void invoke_Nested_NoSession() throws Throwable {
+    Method method = MethodAnnotationNested.class.getMethod("transaction");
+    when(invocation.getMethod()).thenReturn(method);
+    Transactional transactional = method.getAnnotation(Transactional.class);
+    when(invocation.proceed()).thenReturn(true);
+
+    Object returned = transactionalMethodInterceptor.invoke(invocation);
+
+    assertEquals(true, returned);
+    verify(sqlSessionManager).startManagedSession(transactional.executorType(),
+        transactional.isolation().getTransactionIsolationLevel());
+    verify(sqlSessionManager, never()).getConnection();
+    verify(sqlSessionManager).commit(transactional.force());
+    verify(sqlSessionManager).close();
+  }
+
+  @Test
+  public void invoke_Never_SessionStarted() throws Throwable {
+    Method method = MethodAnnotationNever.class.getMethod("transaction");
+    when(invocation.getMethod()).thenReturn(method);
+    when(sqlSessionManager.isManagedSessionStarted()).thenReturn(true);
+
+    try {
+      transactionalMethodInterceptor.invoke(invocation);
+      fail("Expected IllegalStateException");
+    } catch (IllegalStateException e) {
+      // Success.
+    }
+
+    verify(invocation, never()).proceed();
+    verify(sqlSessionManager, never()).commit(anyBoolean());
+    verify(sqlSessionManager, never()).close();
+  }
+
+  @Test
+  public void invoke_NotSupported() throws Throwable {
+    Method method = MethodAnnotationNotSupported.class.getMethod("transaction");
+    when(invocation.getMethod()).thenReturn(method);
+    when(invocation.proceed()).thenReturn(true);
+
+    Object returned = transactionalMethodInterceptor.invoke(invocation);
+
+    assertEquals(true, returned);
+    verify(sqlSessionManager, never()).startManagedSession(any(ExecutorType.class),
+        nullable(TransactionIsolationLevel.class));
+    verify(sqlSessionManager, never()).commit(anyBoolean());
+    verify(sqlSessionManager, never()).close();
+  }
+
   private static class MethodAnnotation {
     @Transactional
     public void transaction() {
@@ -353,6 +456,24 @@ public class TransactionalMethodInterceptorTest {
     }
   }
 
+  private static class MethodAnnotationNested {
+    @Transactional(Transactional.TxType.NESTED)
+    public void transaction() {
+    }
+  }
+
+  private static class MethodAnnotationNever {
+    @Transactional(Transactional.TxType.NEVER)
+    public void transaction() {
+    }
+  }
+
+  private static class MethodAnnotationNotSupported {
+    @Transactional(Transactional.TxType.NOT_SUPPORTED)
+    public void transaction() {
+    }
+  }
+
   @Transactional
   private static class ClassAnnotation {
     @SuppressWarnings("unused")
@@ -0,0 +1,164 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.transactional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mybatis.guice.nestedtx.NestedTxFixture.createInjector;
+import static org.mybatis.guice.nestedtx.NestedTxFixture.row;
+
+import com.google.inject.Injector;
+import com.google.inject.ProvisionException;
+
+import java.sql.Connection;
+
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mybatis.guice.nestedtx.NestedTxMapper;
+import org.mybatis.guice.nestedtx.NestedTxModule;
+import org.mybatis.guice.transactional.Transactional.TxType;
+
+public class UnitOfWorkTest {
+
+  private static final TransactionDefinition REQUIRES_NEW = new TransactionDefinition.Builder()
+      .setTxType(TxType.REQUIRES_NEW).create();
+
+  private Injector injector;
+
+  private UnitOfWork unitOfWork;
+
+  private TransactionTemplate template;
+
+  private NestedTxMapper mapper;
+
+  private SqlSessionManager sqlSessionManager;
+
+  @BeforeEach
+  public void setup() throws Exception {
+    Injector injector = createInjector(new UnitOfWorkModule(), new NestedTxModule());
+
+    template = injector.getInstance(TransactionTemplate.class);
+    unitOfWork = injector.getInstance(UnitOfWork.class);
+    this.injector = injector;
+    mapper = injector.getInstance(NestedTxMapper.class);
+    sqlSessionManager = injector.getInstance(SqlSessionManager.class);
+  }
+
+  @Test
+  public void sharesOneSession() throws Exception {
+    unitOfWork.begin();
+    try {
+      assertTrue(unitOfWork.isActive());
+      SqlSession session = ManagedSessionSuspension.current(sqlSessionManager);
+      mapper.insertTable1(row(1, "autocommitted"));
+      assertSame(session, ManagedSessionSuspension.current(sqlSessionManager));
+
+      assertThrows(IllegalStateException.class, () -> template.execute(() -> {
+        assertSame(session, ManagedSessionSuspension.current(sqlSessionManager));
+        assertFalse(sqlSessionManager.getConnection().getAutoCommit());
+        mapper.insertTable1(row(2, "rolled back"));
+        throw new IllegalStateException("rollback the transaction");
+      }));
+      assertSame(session, ManagedSessionSuspension.current(sqlSessionManager));
+      assertTrue(sqlSessionManager.getConnection().getAutoCommit());
+      assertEquals(1, mapper.selectAllTable1().size());
+    } finally {
+      unitOfWork.end();
+    }
+
+    assertFalse(unitOfWork.isActive());
+    assertFalse(sqlSessionManager.isManagedSessionStarted());
+    assertEquals(1, mapper.selectAllTable1().size());
+  }
+
+  @Test
+  public void runsTransactionsOnTheUnitConnection() throws Exception {
+    TransactionStatistics statistics = injector.getInstance(TransactionStatistics.class);
+    unitOfWork.begin();
+    try {
+      Connection connection = sqlSessionManager.getConnection();
+      template.execute(() -> {
+        assertSame(connection, sqlSessionManager.getConnection());
+        mapper.insertTable1(row(1, "committed"));
+        // a nested call joins the transaction of the unit
+        template.execute(() -> mapper.insertTable1(row(2, "joined")));
+        assertFalse(connection.getAutoCommit());
+        return null;
+      });
+      assertTrue(connection.getAutoCommit());
+      assertEquals(1, statistics.getCommits());
+
+      assertThrows(IllegalStateException.class, () -> template.run(REQUIRES_NEW, () -> {
+        mapper.insertTable1(row(3, "rolled back"));
+        throw new IllegalStateException("rollback the transaction");
+      }));
+      assertTrue(connection.getAutoCommit());
+      assertEquals(1, statistics.getRollbacks());
+    } finally {
+      unitOfWork.end();
+    }
+    assertEquals(2, mapper.selectAllTable1().size());
+  }
+
+  @Test
+  public void closesLeakedUnit() throws Exception {
+    unitOfWork.begin();
+    SqlSession leaked = ManagedSessionSuspension.current(sqlSessionManager);
+    unitOfWork.begin();
+    assertEquals(1, unitOfWork.getLeaks());
+    assertNotSame(leaked, ManagedSessionSuspension.current(sqlSessionManager));
+
+    unitOfWork.wrap(() -> mapper.insertTable1(row(1, "joined"))).run();
+    assertTrue(unitOfWork.isActive());
+    unitOfWork.end();
+    assertFalse(sqlSessionManager.isManagedSessionStarted());
+    assertEquals(1, unitOfWork.getLeaks());
+  }
+
+  @Test
+  public void joinsTransaction() throws Exception {
+    template.execute(() -> {
+      SqlSession session = ManagedSessionSuspension.current(sqlSessionManager);
+      unitOfWork.call(() -> mapper.insertTable1(row(1, "in transaction")));
+      assertSame(session, ManagedSessionSuspension.current(sqlSessionManager));
+      return null;
+    });
+    assertEquals(1, mapper.selectAllTable1().size());
+  }
+
+  @Test
+  public void scopesToUnit() throws Exception {
+    assertThrows(ProvisionException.class, () -> injector.getInstance(Scoped.class));
+
+    Scoped first = unitOfWork.call(() -> {
+      Scoped scoped = injector.getInstance(Scoped.class);
+      assertSame(scoped, injector.getInstance(Scoped.class));
+      return scoped;
+    });
+    assertNotSame(first, unitOfWork.call(() -> injector.getInstance(Scoped.class)));
+  }
+
+  @UnitOfWorkScoped
+  static class Scoped {
+  }
+
+}
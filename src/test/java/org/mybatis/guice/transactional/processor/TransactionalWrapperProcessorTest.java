@@ -0,0 +1,140 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.transactional.processor;
+
+import static org.apache.ibatis.io.Resources.getResourceAsReader;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mybatis.guice.transactional.processor.WrappedRowService.row;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.name.Names;
+
+import java.util.Arrays;
+import java.util.Properties;
+
+import javax.sql.DataSource;
+
+import org.apache.ibatis.exceptions.PersistenceException;
+import org.apache.ibatis.jdbc.ScriptRunner;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mybatis.guice.MyBatisModule;
+import org.mybatis.guice.datasource.builtin.PooledDataSourceProvider;
+import org.mybatis.guice.datasource.helper.JdbcHelper;
+import org.mybatis.guice.nestedtx.NestedTxMapper;
+
+public class TransactionalWrapperProcessorTest {
+
+  private Injector injector;
+
+  @BeforeEach
+  public void setup() throws Exception {
+    injector = createInjector(true);
+  }
+
+  private static Injector createInjector(final boolean bindWrappers) throws Exception {
+    Injector injector = Guice.createInjector(new MyBatisModule() {
+      @Override
+      protected void initialize() {
+        bindDataSourceProviderType(PooledDataSourceProvider.class);
+        bindTransactionFactoryType(JdbcTransactionFactory.class);
+
+        install(JdbcHelper.HSQLDB_IN_MEMORY_NAMED);
+
+        Properties connectionProps = new Properties();
+        connectionProps.setProperty("mybatis.environment.id", "jdbc");
+        connectionProps.setProperty("JDBC.username", "sa");
+        connectionProps.setProperty("JDBC.password", "");
+        Names.bindProperties(binder(), connectionProps);
+
+        addMapperClass(NestedTxMapper.class);
+        if (bindWrappers) {
+          bindTransactionalWrapper(WrappedRowService.class);
+          bindTransactionalWrapper(FinalRowService.class);
+        }
+      }
+    });
+
+    DataSource dataSource = injector.getInstance(SqlSessionFactory.class).getConfiguration().getEnvironment()
+        .getDataSource();
+    ScriptRunner runner = new ScriptRunner(dataSource.getConnection());
+    runner.setAutoCommit(true);
+    runner.setStopOnError(true);
+    runner.setLogWriter(null);
+    runner.runScript(getResourceAsReader("org/mybatis/guice/nestedtx/setupdb.sql"));
+    runner.closeConnection();
+    return injector;
+  }
+
+  @Test
+  public void wrapperIsBoundWithoutAop() {
+    assertSame(WrappedRowService_TransactionalWrapper.class, injector.getInstance(WrappedRowService.class).getClass());
+    assertSame(FinalRowService_TransactionalWrapper.class, injector.getInstance(RowService.class).getClass());
+  }
+
+  @Test
+  public void commitAndRollback() {
+    WrappedRowService service = injector.getInstance(WrappedRowService.class);
+    service.insertAll(row(1, "one"), row(2, "two"));
+    assertEquals(2, service.count());
+
+    assertThrows(PersistenceException.class, () -> service.insertAll(row(3, "three"), row(1, "duplicate")));
+    assertEquals(2, service.count());
+    assertEquals("b", service.max(Arrays.asList("a", "b")));
+  }
+
+  @Test
+  public void rethrowAsDeclared() {
+    WrappedRowService service = injector.getInstance(WrappedRowService.class);
+    RowServiceException e = assertThrows(RowServiceException.class, () -> service.insertAndFail("row"));
+    assertEquals("Could not insert row", e.getMessage());
+    assertTrue(e.getCause() instanceof PersistenceException);
+    assertEquals(0, service.count());
+  }
+
+  @Test
+  public void finalClassDelegate() {
+    RowService service = injector.getInstance(RowService.class);
+    service.insertPair(row(1, "one"), row(2, "two"));
+    assertThrows(PersistenceException.class, () -> service.insertPair(row(3, "three"), row(3, "duplicate")));
+    assertEquals(2, service.count());
+  }
+
+  @Test
+  public void inheritedMethodIsWrapped() {
+    WrappedRowService service = injector.getInstance(WrappedRowService.class);
+    service.insertPair(row(1, "one"), row(2, "two"));
+    assertThrows(PersistenceException.class, () -> service.insertPair(row(3, "three"), row(3, "duplicate")));
+    assertEquals(2, service.count());
+  }
+
+  @Test
+  public void unboundClassIsIntercepted() throws Exception {
+    WrappedRowService service = createInjector(false).getInstance(WrappedRowService.class);
+    assertNotSame(WrappedRowService.class, service.getClass());
+    assertNotSame(WrappedRowService_TransactionalWrapper.class, service.getClass());
+    assertThrows(PersistenceException.class, () -> service.insertPair(row(1, "one"), row(1, "duplicate")));
+    assertEquals(0, service.count());
+  }
+
+}
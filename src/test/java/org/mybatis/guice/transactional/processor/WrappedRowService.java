@@ -0,0 +1,72 @@
+/**
+ *    Copyright 2009-2020 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.mybatis.guice.transactional.processor;
+
+import java.util.List;
+
+import javax.inject.Inject;
+
+import org.mybatis.guice.nestedtx.NestedTxMapper;
+import org.mybatis.guice.nestedtx.TableRow;
+import org.mybatis.guice.transactional.Transactional;
+import org.mybatis.guice.transactional.TransactionalWrapper;
+
+@TransactionalWrapper
+public class WrappedRowService extends RowServiceSupport {
+
+  @Inject
+  public WrappedRowService(NestedTxMapper mapper) {
+    super(mapper);
+  }
+
+  @Transactional
+  public void insertAll(TableRow... rows) {
+    for (TableRow row : rows) {
+      mapper.insertTable1(row);
+    }
+  }
+
+  @Transactional(rethrowExceptionsAs = RowServiceException.class, exceptionMessage = "Could not insert %s")
+  public int insertAndFail(String name) throws RowServiceException {
+    mapper.insertTable1(row(1, name));
+    mapper.insertTable1(row(1, name));
+    return 2;
+  }
+
+  @Transactional
+  public int count() {
+    return mapper.selectAllTable1().size();
+  }
+
+  @Transactional
+  public <T extends Comparable<T>> T max(List<T> values) {
+    T max = null;
+    for (T value : values) {
+      if (max == null || value.compareTo(max) > 0) {
+        max = value;
+      }
+    }
+    return max;
+  }
+
+  static TableRow row(int id, String name) {
+    TableRow row = new TableRow();
+    row.setId(id);
+    row.setName(name);
+    return row;
+  }
+
+}